@@ -0,0 +1,124 @@
+package uk.ac.bris.cs.scotlandyard.ai;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.graph.CompactGraph;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+
+/**
+ * Scores many positions of one game at once.
+ * <br>
+ * Positions are passed in the form written by {@link PackedState#pack(int[], int)}, back to back
+ * with a stride of {@link PackedState#packedLength()}. Scores are from MrX's point of view, from
+ * 0 (certain loss) to 1 (certain win); finished games are scored by the caller. Implementations
+ * must be safe to call from multiple threads.
+ */
+@FunctionalInterface
+public interface BatchEvaluator {
+
+	/**
+	 * @param prototype any state of the game, describing the graph and the players; must not be
+	 * modified
+	 * @param positions the packed positions
+	 * @param count number of positions
+	 * @param scores receives the score of the i-th position at index i
+	 */
+	void evaluate(@Nonnull PackedState prototype, @Nonnull int[] positions, int count,
+	              @Nonnull double[] scores);
+
+	/**
+	 * Returns an evaluator that scores the number of hops between MrX and the nearest detective.
+	 * Requires a distance table, see {@link CompactGraph#distance(int, int)}.
+	 *
+	 * @param horizon the distance from which MrX is considered safe
+	 * @return the evaluator
+	 */
+	@Nonnull static BatchEvaluator mrXDistance(int horizon) {
+		if (horizon < 1) throw new IllegalArgumentException("Horizon must be > 0");
+		return (prototype, positions, count, scores) -> {
+			CompactGraph graph = prototype.graph();
+			int stride = prototype.packedLength(), players = prototype.players();
+			for (int i = 0, offset = 0; i < count; i++, offset += stride) {
+				int mrX = PackedState.packedLocation(positions, offset, 0);
+				int nearest = horizon;
+				for (int slot = 1; slot < players; slot++)
+					nearest = Math.min(nearest, graph.distance(mrX,
+							PackedState.packedLocation(positions, offset, slot)));
+				scores[i] = (double) nearest / horizon;
+			}
+		};
+	}
+
+	/**
+	 * Returns an evaluator that scores the number of neighbours MrX can reach with his tickets
+	 * that are neither occupied by nor adjacent to a detective, relative to the highest degree of
+	 * the graph. Requires a distance table, see {@link CompactGraph#distance(int, int)}.
+	 *
+	 * @return the evaluator
+	 */
+	@Nonnull static BatchEvaluator escapeRoutes() {
+		int[] masks = Arrays.stream(Ticket.values()).mapToInt(CompactGraph::ticketMask).toArray();
+		return (prototype, positions, count, scores) -> {
+			CompactGraph graph = prototype.graph();
+			int stride = prototype.packedLength(), players = prototype.players();
+			for (int i = 0, offset = 0; i < count; i++, offset += stride) {
+				int usable = 0;
+				for (Ticket t : Ticket.values())
+					if (PackedState.packedTickets(positions, offset, 0, t.ordinal()) > 0)
+						usable |= masks[t.ordinal()];
+				int from = PackedState.packedLocation(positions, offset, 0), routes = 0;
+				for (int e = graph.firstEdge(from); e < graph.endEdge(from); e++) {
+					if ((graph.transports(e) & usable) == 0) continue;
+					boolean safe = true;
+					for (int slot = 1; slot < players && safe; slot++)
+						safe = graph.distance(graph.target(e),
+								PackedState.packedLocation(positions, offset, slot)) > 1;
+					if (safe) routes++;
+				}
+				scores[i] = Math.min(1, (double) routes / graph.maxDegree());
+			}
+		};
+	}
+
+	/**
+	 * Returns an evaluator that scores how uncertain the detectives are about MrX's location,
+	 * as the entropy of their belief relative to the entropy of a uniform belief over all nodes.
+	 * <br>
+	 * Positions only record how many tickets MrX used since the root, not their order, so the
+	 * belief at the root is propagated once per used ticket in ticket order. If a reveal round
+	 * was passed since the root the detectives are considered certain.
+	 *
+	 * @param root the state the positions descend from
+	 * @param belief the detectives' belief at the root, see {@link MrXBelief#asSeenByDetectives}
+	 * @return the evaluator
+	 */
+	@Nonnull static BatchEvaluator beliefEntropy(@Nonnull PackedState root,
+	                                            @Nonnull MrXBelief belief) {
+		return new BeliefEntropyEvaluator(root, belief);
+	}
+
+	/**
+	 * @param weights the weight of each evaluator, summing up to 1
+	 * @param evaluators the evaluators to combine
+	 * @return an evaluator that scores the weighted sum of the given evaluators
+	 */
+	@Nonnull static BatchEvaluator weighted(@Nonnull double[] weights,
+	                                        @Nonnull BatchEvaluator... evaluators) {
+		if (weights.length != evaluators.length)
+			throw new IllegalArgumentException("One weight per evaluator required");
+		double[] w = weights.clone();
+		BatchEvaluator[] e = evaluators.clone();
+		for (BatchEvaluator evaluator : e) Objects.requireNonNull(evaluator);
+		return (prototype, positions, count, scores) -> {
+			double[] partial = new double[count];
+			Arrays.fill(scores, 0, count, 0);
+			for (int k = 0; k < e.length; k++) {
+				e[k].evaluate(prototype, positions, count, partial);
+				for (int i = 0; i < count; i++) scores[i] += w[k] * partial[i];
+			}
+		};
+	}
+}
@@ -0,0 +1,99 @@
+package uk.ac.bris.cs.scotlandyard.ai;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+import uk.ac.bris.cs.scotlandyard.graph.CompactGraph;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+
+/**
+ * See {@link BatchEvaluator#beliefEntropy(PackedState, MrXBelief)}
+ */
+final class BeliefEntropyEvaluator implements BatchEvaluator {
+
+	// tickets that move MrX, in the order they are propagated
+	private static final Ticket[] MOVES =
+			{Ticket.TAXI, Ticket.BUS, Ticket.UNDERGROUND, Ticket.SECRET};
+
+	private final CompactGraph graph;
+	private final double[] root;
+	private final int[] rootTickets;
+	private final int rootLogSize;
+	private final boolean[] reveal;
+	private final double maxEntropy;
+
+	BeliefEntropyEvaluator(PackedState root, MrXBelief belief) {
+		this.graph = root.graph();
+		if (belief.graph() != graph) throw new IllegalArgumentException("Different graphs");
+		this.root = new double[graph.nodeCount()];
+		for (int i = 0; i < this.root.length; i++) this.root[i] = belief.probability(i);
+		this.rootTickets = new int[root.players() * PackedState.TICKETS];
+		for (int slot = 0; slot < root.players(); slot++)
+			for (Ticket t : Ticket.values())
+				rootTickets[slot * PackedState.TICKETS + t.ordinal()] = root.tickets(slot, t);
+		this.rootLogSize = root.logSize();
+		this.reveal = new boolean[root.rounds()];
+		for (int r = 1; r <= reveal.length; r++) reveal[r - 1] = root.isRevealRound(r);
+		this.maxEntropy = Math.log(graph.nodeCount());
+	}
+
+	@Override public void evaluate(PackedState prototype, int[] positions, int count,
+	                               double[] scores) {
+		Objects.requireNonNull(prototype);
+		int stride = prototype.packedLength(), players = prototype.players();
+		double[] p = new double[root.length], next = new double[root.length];
+		for (int i = 0, offset = 0; i < count; i++, offset += stride) {
+			int logSize = PackedState.packedLogSize(positions, offset);
+			boolean revealed = false;
+			for (int entry = rootLogSize; entry < logSize && entry < reveal.length; entry++)
+				revealed |= reveal[entry];
+			if (revealed || maxEntropy == 0) {
+				scores[i] = 0;
+				continue;
+			}
+			System.arraycopy(root, 0, p, 0, p.length);
+			for (Ticket t : MOVES) {
+				int used = used(positions, offset, players, t.ordinal());
+				int mask = CompactGraph.ticketMask(t);
+				for (int step = 0; step < used; step++) {
+					spread(p, next, mask);
+					double[] swap = p;
+					p = next;
+					next = swap;
+				}
+			}
+			for (int slot = 1; slot < players; slot++)
+				p[PackedState.packedLocation(positions, offset, slot)] = 0;
+			scores[i] = entropy(p) / maxEntropy;
+		}
+	}
+
+	// MrX's tickets used since the root, counting those handed over by the detectives
+	private int used(int[] positions, int offset, int players, int ticket) {
+		int used = rootTickets[ticket] - PackedState.packedTickets(positions, offset, 0, ticket);
+		for (int slot = 1; slot < players; slot++)
+			used += rootTickets[slot * PackedState.TICKETS + ticket]
+					- PackedState.packedTickets(positions, offset, slot, ticket);
+		return Math.max(0, used);
+	}
+
+	private void spread(double[] p, double[] next, int mask) {
+		Arrays.fill(next, 0);
+		for (int from = 0; from < p.length; from++) {
+			if (p[from] == 0) continue;
+			int degree = 0;
+			for (int e = graph.firstEdge(from); e < graph.endEdge(from); e++)
+				if ((graph.transports(e) & mask) != 0) degree++;
+			for (int e = graph.firstEdge(from); e < graph.endEdge(from); e++)
+				if ((graph.transports(e) & mask) != 0) next[graph.target(e)] += p[from] / degree;
+		}
+	}
+
+	private static double entropy(double[] p) {
+		double sum = 0, h = 0;
+		for (double x : p) sum += x;
+		if (sum == 0) return 0;
+		for (double x : p) if (x > 0) h -= x / sum * Math.log(x / sum);
+		return h;
+	}
+}
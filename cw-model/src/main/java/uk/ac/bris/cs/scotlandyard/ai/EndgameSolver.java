@@ -0,0 +1,205 @@
+package uk.ac.bris.cs.scotlandyard.ai;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
+import java.util.stream.IntStream;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Solves late game positions exactly by retrograde analysis.
+ * <br>
+ * Starting from one or more root positions the solver first enumerates every reachable position,
+ * grouped by {@link PackedState#ply()}. Since every move increases the ply, positions of the last
+ * ply can only be terminal and each earlier ply depends only on later ones: the plies are solved
+ * backwards, every ply in parallel, a position being won for the side to move if any successor
+ * is. MrX's location is treated as known, so results are exact for every determinization of a
+ * hidden MrX. Enumeration stops early if the positions would exceed the horizon, and solving
+ * can be bounded in time so that it fits in a move.
+ */
+public final class EndgameSolver {
+
+	private static final byte MRX_WINS = PackedState.MRX_WINS;
+	private static final byte DETECTIVES_WIN = PackedState.DETECTIVES_WIN;
+	private static final Successors NONE = new Successors(new int[0], new long[0], new int[0]);
+
+	// positions of one ply stored back to back
+	private static final class Ply {
+		final int width;
+		int[] packed;
+		long[] keys = new long[16];
+		int size;
+		Ply(int width) {
+			this.width = width;
+			this.packed = new int[keys.length * width];
+		}
+		void add(int[] from, int offset, long key) {
+			if (size == keys.length) {
+				keys = Arrays.copyOf(keys, size * 2);
+				packed = Arrays.copyOf(packed, size * 2 * width);
+			}
+			System.arraycopy(from, offset, packed, size * width, width);
+			keys[size++] = key;
+		}
+	}
+
+	// successors of one position
+	private static final class Successors {
+		final int[] packed;
+		final long[] keys;
+		final int[] plies;
+		Successors(int[] packed, long[] keys, int[] plies) {
+			this.packed = packed;
+			this.keys = keys;
+			this.plies = plies;
+		}
+	}
+
+	private final int maxRounds;
+	private final int maxPositions;
+
+	/**
+	 * @param maxRounds maximum number of rounds left, including the current one, for a root
+	 * @param maxPositions maximum number of positions to solve
+	 */
+	public EndgameSolver(int maxRounds, int maxPositions) {
+		if (maxRounds < 1) throw new IllegalArgumentException("Rounds must be > 0");
+		if (maxPositions < 1) throw new IllegalArgumentException("Positions must be > 0");
+		this.maxRounds = maxRounds;
+		this.maxPositions = maxPositions;
+	}
+
+	/**
+	 * @param root the position to solve
+	 * @return the tablebase; empty if the position is outside the horizon
+	 */
+	@Nonnull public Optional<EndgameTablebase> solve(@Nonnull PackedState root) {
+		return solve(List.of(root));
+	}
+
+	/**
+	 * @param roots positions of the same game to solve together
+	 * @return the tablebase of all positions reachable from the roots; empty if any of them is
+	 * outside the horizon
+	 */
+	@Nonnull public Optional<EndgameTablebase> solve(@Nonnull Iterable<PackedState> roots) {
+		return solve(roots, () -> false);
+	}
+
+	/**
+	 * @param roots positions of the same game to solve together
+	 * @param budget maximum duration of the solve
+	 * @param terminate stops the solve early when set
+	 * @return the tablebase of all positions reachable from the roots; empty if any of them is
+	 * outside the horizon or the solve was stopped
+	 */
+	@Nonnull public Optional<EndgameTablebase> solve(@Nonnull Iterable<PackedState> roots,
+	                                                 @Nonnull Duration budget,
+	                                                 @Nonnull AtomicBoolean terminate) {
+		long deadline = System.nanoTime() + budget.toNanos();
+		return solve(roots, () -> terminate.get() || System.nanoTime() - deadline > 0);
+	}
+
+	private Optional<EndgameTablebase> solve(Iterable<PackedState> roots, BooleanSupplier stop) {
+		PackedState prototype = null;
+		var plies = new TreeMap<Integer, Ply>();
+		var seen = new HashSet<Long>();
+		for (PackedState root : roots) {
+			if (root.rounds() - root.round() + 1 > maxRounds) return Optional.empty();
+			if (prototype == null) prototype = root.copy();
+			int[] packed = new int[root.packedLength()];
+			root.pack(packed, 0);
+			long key = root.key();
+			if (seen.add(key)) plies.computeIfAbsent(root.ply(), p -> new Ply(packed.length))
+					.add(packed, 0, key);
+		}
+		if (prototype == null) throw new IllegalArgumentException("No roots");
+		if (!enumerate(prototype, plies, seen, stop)) return Optional.empty();
+
+		long[] keys = seen.stream().mapToLong(Long::longValue).toArray();
+		seen.clear();
+		var hash = PerfectHash.build(keys);
+		byte[] results = new byte[hash.slots()];
+		for (Ply ply : plies.descendingMap().values()) {
+			solve(prototype, ply, hash, results, stop);
+			if (stop.getAsBoolean()) return Optional.empty();
+		}
+		return Optional.of(EndgameTablebase.of(hash, keys, results));
+	}
+
+	private boolean enumerate(PackedState prototype, TreeMap<Integer, Ply> plies,
+	                          HashSet<Long> seen, BooleanSupplier stop) {
+		for (Map.Entry<Integer, Ply> entry = plies.firstEntry(); entry != null;
+		     entry = plies.higherEntry(entry.getKey())) {
+			if (stop.getAsBoolean()) return false;
+			Ply ply = entry.getValue();
+			var successors = IntStream.range(0, ply.size).parallel()
+					.mapToObj(i -> stop.getAsBoolean() ? NONE : expand(prototype, ply, i))
+					.toArray(Successors[]::new);
+			if (stop.getAsBoolean()) return false;
+			for (Successors s : successors) {
+				for (int i = 0; i < s.keys.length; i++) {
+					if (!seen.add(s.keys[i])) continue;
+					if (seen.size() > maxPositions) return false;
+					plies.computeIfAbsent(s.plies[i], p -> new Ply(ply.width))
+							.add(s.packed, i * ply.width, s.keys[i]);
+				}
+			}
+		}
+		return true;
+	}
+
+	private static Successors expand(PackedState prototype, Ply ply, int index) {
+		var state = prototype.copy();
+		state.unpack(ply.packed, index * ply.width);
+		if (state.winner() != PackedState.NONE)
+			return NONE;
+		long[] moves = new long[state.maxMoves()];
+		int count = state.generate(moves);
+		int[] packed = new int[count * ply.width];
+		long[] keys = new long[count];
+		int[] plies = new int[count];
+		var next = state.copy();
+		for (int i = 0; i < count; i++) {
+			next.copyFrom(state).apply(moves[i]);
+			next.pack(packed, i * ply.width);
+			keys[i] = next.key();
+			plies[i] = next.ply();
+		}
+		return new Successors(packed, keys, plies);
+	}
+
+	// positions left out once stopped stay unsolved, the caller then drops the results
+	private static void solve(PackedState prototype, Ply ply, PerfectHash hash, byte[] results,
+	                          BooleanSupplier stop) {
+		IntStream.range(0, ply.size).parallel().forEach(i -> {
+			if (stop.getAsBoolean()) return;
+			var state = prototype.copy();
+			state.unpack(ply.packed, i * ply.width);
+			results[hash.slot(ply.keys[i])] = (byte) solve(state, hash, results);
+		});
+	}
+
+	private static int solve(PackedState state, PerfectHash hash, byte[] results) {
+		int winner = state.winner();
+		if (winner != PackedState.NONE) return winner;
+		long[] moves = new long[state.maxMoves()];
+		int count = state.generate(moves);
+		if (count == 0) return state.winnerWhenStuck();
+		byte win = state.isMrXTurn() ? MRX_WINS : DETECTIVES_WIN;
+		var next = state.copy();
+		for (int i = 0; i < count; i++) {
+			next.copyFrom(state).apply(moves[i]);
+			// successors are on later plies and therefore already solved
+			if (results[hash.slot(next.key())] == win) return win;
+		}
+		return win == MRX_WINS ? DETECTIVES_WIN : MRX_WINS;
+	}
+}
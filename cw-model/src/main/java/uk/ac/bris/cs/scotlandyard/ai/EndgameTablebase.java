@@ -0,0 +1,124 @@
+package uk.ac.bris.cs.scotlandyard.ai;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Objects;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Exact results of positions solved by {@link EndgameSolver}, indexed by a {@link PerfectHash}
+ * of their {@link PackedState#key()}.
+ * <br>
+ * The layout is a 24 byte header (magic, version, positions, slots, buckets, reserved) followed
+ * by the int displacement of every bucket, a 32-bit check of the key in every slot and one
+ * result byte per slot, all little endian. A probe reads one displacement, one check and one
+ * result, so it costs about as much as hashing the position. Files are memory mapped on load.
+ * Instances are immutable and safe to share between threads.
+ */
+public final class EndgameTablebase {
+
+	static final int MAGIC = 0x53594542; // "SYEB"
+	static final int VERSION = 1;
+	private static final int HEADER_BYTES = 24;
+
+	private final ByteBuffer buffer;
+	private final int size;
+	private final int slots;
+	private final int buckets;
+	private final int checks;
+	private final int results;
+
+	private EndgameTablebase(ByteBuffer buffer) {
+		this.buffer = buffer.order(ByteOrder.LITTLE_ENDIAN);
+		if (buffer.capacity() < HEADER_BYTES || buffer.getInt(0) != MAGIC)
+			throw new IllegalArgumentException("Not an endgame tablebase");
+		if (buffer.getInt(4) != VERSION)
+			throw new IllegalArgumentException("Unsupported tablebase version " + buffer.getInt(4));
+		this.size = buffer.getInt(8);
+		this.slots = buffer.getInt(12);
+		this.buckets = buffer.getInt(16);
+		this.checks = HEADER_BYTES + buckets * 4;
+		this.results = checks + slots * 4;
+		if (size < 0 || slots < size || buckets < 1
+				|| buffer.capacity() != (long) HEADER_BYTES + buckets * 4L + slots * 5L)
+			throw new IllegalArgumentException("Truncated or corrupt endgame tablebase");
+	}
+
+	/**
+	 * @param hash the perfect hash of the keys
+	 * @param keys the solved position keys
+	 * @param results the result of every key indexed by its slot
+	 * @return an in-memory tablebase
+	 */
+	static EndgameTablebase of(PerfectHash hash, long[] keys, byte[] results) {
+		int[] displacements = hash.displacements();
+		var buffer = ByteBuffer.allocate(HEADER_BYTES + displacements.length * 4
+				+ hash.slots() * 5).order(ByteOrder.LITTLE_ENDIAN)
+				.putInt(MAGIC).putInt(VERSION).putInt(keys.length)
+				.putInt(hash.slots()).putInt(displacements.length).putInt(0);
+		for (int d : displacements) buffer.putInt(d);
+		int checks = buffer.position();
+		for (long key : keys) buffer.putInt(checks + hash.slot(key) * 4, check(key));
+		buffer.position(checks + hash.slots() * 4);
+		buffer.put(results);
+		buffer.rewind();
+		return new EndgameTablebase(buffer);
+	}
+
+	/**
+	 * @param file the tablebase file
+	 * @return the memory mapped tablebase
+	 * @throws IOException if the file cannot be read
+	 * @throws IllegalArgumentException if the file is not a valid tablebase
+	 */
+	@Nonnull public static EndgameTablebase load(@Nonnull Path file) throws IOException {
+		try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			return new EndgameTablebase(
+					channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+		}
+	}
+
+	/**
+	 * @param file the file to write, replaced if it exists
+	 * @throws IOException if the file cannot be written
+	 */
+	public void write(@Nonnull Path file) throws IOException {
+		var data = buffer.duplicate();
+		data.rewind();
+		try (var channel = FileChannel.open(Objects.requireNonNull(file),
+				StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+				StandardOpenOption.WRITE)) {
+			while (data.hasRemaining()) channel.write(data);
+		}
+	}
+
+	private static int check(long key) { return (int) (key >>> 32); }
+
+	/**
+	 * @return number of solved positions
+	 */
+	public int size() { return size; }
+
+	/**
+	 * @param key the position key, see {@link PackedState#key()}
+	 * @return {@link PackedState#MRX_WINS} or {@link PackedState#DETECTIVES_WIN} under perfect
+	 * play with full information; {@link PackedState#NONE} if the position was not solved
+	 */
+	public int probe(long key) {
+		int bucket = PerfectHash.bucket(key, buckets);
+		int slot = PerfectHash.slot(key, buffer.getInt(HEADER_BYTES + bucket * 4), slots);
+		if (buffer.getInt(checks + slot * 4) != check(key)) return PackedState.NONE;
+		return buffer.get(results + slot);
+	}
+
+	/**
+	 * @param state the position
+	 * @return the result of the position, see {@link #probe(long)}
+	 */
+	public int probe(@Nonnull PackedState state) { return probe(state.key()); }
+}
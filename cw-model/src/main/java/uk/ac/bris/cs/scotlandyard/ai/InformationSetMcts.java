@@ -0,0 +1,419 @@
+package uk.ac.bris.cs.scotlandyard.ai;
+
+import com.google.common.collect.ImmutableMap;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Objects;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.IntStream;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import uk.ac.bris.cs.scotlandyard.model.Board;
+import uk.ac.bris.cs.scotlandyard.model.Move;
+
+/**
+ * Single observer information set Monte Carlo tree search (SO-ISMCTS).
+ * <br>
+ * MrX's location is hidden from the detectives, so every iteration first samples a
+ * determinization: a concrete location for MrX drawn from the {@link MrXBelief} of the board. The
+ * iteration then descends a tree shared by all determinizations, only considering children whose
+ * moves are legal in the sampled position and counting how often each child was available for
+ * the UCB term. When MrX himself is searching the belief collapses to his actual location.
+ * <br>
+ * Workers search in parallel, each with its own {@link NodePool} and random source. Their trees
+ * are merged into a single tree at the end of the search. All node storage is preallocated and
+ * reused between searches, full pools evict their least visited leaves, so memory stays bounded
+ * no matter how long the game or the search runs. One search may run at a time per instance.
+ * <br>
+ * Optionally, all detective moves of a round are searched as one ply of joint moves from a
+ * {@link JointMoveGenerator}, which avoids searching every ordering of the same outcome. The
+ * move returned for the detectives is then the first move of the best joint move. This is off by
+ * default: the generator enumerates the whole product of the detectives' moves, thousands of
+ * children at a node of five detectives, so a search of a few seconds barely visits each child.
+ * <br>
+ * With an {@link EndgameTablebase} solved positions are scored exactly instead of being played
+ * out, which also ends the descent at the first solved node. With a {@link BatchEvaluator}
+ * leaves are not played out either: each worker collects a batch of leaves, counting a visit
+ * without reward on their paths so that the following descents spread out, then scores the
+ * whole batch at once and adds the rewards.
+ */
+public final class InformationSetMcts {
+
+	/**
+	 * Result of a search
+	 */
+	public static final class Result {
+		/**
+		 * The most visited move at the root
+		 */
+		public final Move move;
+		/**
+		 * Total number of iterations across all workers
+		 */
+		public final long iterations;
+		/**
+		 * Number of nodes in the merged tree
+		 */
+		public final int nodes;
+		/**
+		 * Visit count for every move of the root in the merged tree
+		 */
+		public final ImmutableMap<Move, Integer> visits;
+		Result(Move move, long iterations, int nodes, ImmutableMap<Move, Integer> visits) {
+			this.move = move;
+			this.iterations = iterations;
+			this.nodes = nodes;
+			this.visits = visits;
+		}
+		@Override public String toString() {
+			return move + " after " + iterations + " iterations, " + nodes + " nodes";
+		}
+	}
+
+	private static final double EVICT_FRACTION = 0.25;
+	// result of a descent whose leaf waits for batch evaluation
+	private static final int PENDING = -1;
+
+	private final PlayoutEngine engine;
+	private final int workers;
+	private final int capacity;
+	private final double exploration;
+	private final boolean jointDetectiveMoves;
+	private NodePool[] pools;
+	private NodePool merged;
+	private EndgameTablebase tablebase;
+	private BatchEvaluator evaluator;
+	private int batchSize;
+
+	/**
+	 * Creates a search with epsilon-greedy play-outs, one worker per processor and 2^20 nodes.
+	 */
+	public InformationSetMcts() {
+		this(PlayoutPolicy.epsilonGreedy(0.2),
+				Runtime.getRuntime().availableProcessors(), 1 << 20, 0.7);
+	}
+
+	/**
+	 * Creates a search that moves the detectives one at a time.
+	 *
+	 * @param policy the play-out policy
+	 * @param workers number of parallel workers
+	 * @param capacity number of tree nodes shared between the workers, the merged tree has the
+	 * same capacity
+	 * @param exploration the UCB exploration constant
+	 */
+	public InformationSetMcts(@Nonnull PlayoutPolicy policy, int workers, int capacity,
+	                          double exploration) {
+		this(policy, workers, capacity, exploration, false);
+	}
+
+	/**
+	 * @param policy the play-out policy
+	 * @param workers number of parallel workers
+	 * @param capacity number of tree nodes shared between the workers, the merged tree has the
+	 * same capacity
+	 * @param exploration the UCB exploration constant
+	 * @param jointDetectiveMoves whether to search each detective round as a single ply
+	 */
+	public InformationSetMcts(@Nonnull PlayoutPolicy policy, int workers, int capacity,
+	                          double exploration, boolean jointDetectiveMoves) {
+		if (workers < 1) throw new IllegalArgumentException("Workers must be > 0");
+		if (capacity < workers) throw new IllegalArgumentException("Capacity < workers");
+		this.engine = new PlayoutEngine(Objects.requireNonNull(policy));
+		this.workers = workers;
+		this.capacity = capacity;
+		this.exploration = exploration;
+		this.jointDetectiveMoves = jointDetectiveMoves;
+	}
+
+	/**
+	 * @param tablebase solved positions to probe during the following searches; null to disable
+	 */
+	public synchronized void setTablebase(@Nullable EndgameTablebase tablebase) {
+		this.tablebase = tablebase;
+	}
+
+	/**
+	 * @param evaluator scores leaves instead of play-outs in the following searches; null to
+	 * play out leaves again
+	 * @param batchSize number of leaves each worker scores at once
+	 */
+	public synchronized void setEvaluator(@Nullable BatchEvaluator evaluator, int batchSize) {
+		if (batchSize < 1) throw new IllegalArgumentException("Batch size must be > 0");
+		this.evaluator = evaluator;
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * @param board the board to search, must have available moves
+	 * @param iterations maximum number of iterations across all workers
+	 * @param budget maximum duration of the search
+	 * @param terminate stops the search early when set
+	 * @param seed the random seed
+	 * @return the search result
+	 */
+	@Nonnull public synchronized Result search(@Nonnull Board board, long iterations,
+	                                           @Nonnull Duration budget,
+	                                           @Nonnull AtomicBoolean terminate, long seed) {
+		var available = board.getAvailableMoves();
+		if (available.isEmpty()) throw new IllegalArgumentException("No moves available");
+		if (pools == null) {
+			pools = new NodePool[workers];
+			for (int i = 0; i < workers; i++) pools[i] = new NodePool(capacity / workers);
+			merged = new NodePool(capacity);
+		}
+		var belief = MrXBelief.of(board);
+		var base = PackedState.of(board, belief.graph().nodeId(belief.sample(
+				new SplittableRandom(seed))));
+		long deadline = System.nanoTime() + budget.toNanos();
+		var root = new SplittableRandom(seed);
+		var randoms = new SplittableRandom[workers];
+		for (int i = 0; i < workers; i++) randoms[i] = root.split();
+		long[] done = new long[workers];
+		IntStream.range(0, workers).parallel().forEach(i -> {
+			long quota = iterations / workers + (i < iterations % workers ? 1 : 0);
+			done[i] = new Worker(pools[i], base, belief, randoms[i])
+					.run(quota, deadline, terminate);
+		});
+
+		merged.clear();
+		for (NodePool pool : pools) merge(pool, NodePool.ROOT, merged, NodePool.ROOT);
+		// joint moves sharing their first move are added up
+		var visits = new HashMap<Move, Integer>();
+		Move best = null;
+		int bestVisits = -1;
+		for (int c = merged.firstChild(NodePool.ROOT); c != NodePool.NIL;
+		     c = merged.nextSibling(c)) {
+			Move move = base.decode(merged.action(c));
+			visits.merge(move, merged.visits(c), Integer::sum);
+			if (merged.visits(c) > bestVisits && available.contains(move)) {
+				best = move;
+				bestVisits = merged.visits(c);
+			}
+		}
+		if (best == null) best = available.iterator().next();
+		long total = 0;
+		for (long n : done) total += n;
+		return new Result(best, total, merged.used(), ImmutableMap.copyOf(visits));
+	}
+
+	private static void merge(NodePool from, int source, NodePool to, int target) {
+		to.add(target, from.visits(source), from.availability(source), from.reward(source));
+		for (int c = from.firstChild(source); c != NodePool.NIL; c = from.nextSibling(c)) {
+			int child = to.findChild(target, from.action(c));
+			if (child == NodePool.NIL) child = to.addChild(target, from.action(c));
+			if (child == NodePool.NIL) return;
+			merge(from, c, to, child);
+		}
+	}
+
+	private final class Worker {
+		private final NodePool pool;
+		private final PackedState base;
+		private final PackedState state;
+		private final MrXBelief belief;
+		private final SplittableRandom random;
+		private final long[] moves;
+		private final JointMoveGenerator joint;
+		private long[] candidates;
+		private boolean[] matched;
+		private long[] keys;
+		private int[] values;
+		private int[] stamps;
+		private final int[] path;
+		private int stamp;
+		private final int[] batch;
+		private final int[][] paths;
+		private final int[] depths;
+		private final double[] scores;
+		private int pending;
+
+		Worker(NodePool pool, PackedState base, MrXBelief belief, SplittableRandom random) {
+			this.pool = pool;
+			this.base = base;
+			this.state = base.copy();
+			this.belief = belief;
+			this.random = random;
+			this.moves = new long[base.maxMoves()];
+			this.joint = jointDetectiveMoves && base.supportsJointMoves()
+					? new JointMoveGenerator() : null;
+			ensureIndexCapacity(moves.length);
+			// a game has at most one ply per player and round
+			this.path = new int[(base.rounds() + 1) * base.players() * 2 + 2];
+			int size = evaluator == null ? 0 : batchSize;
+			this.batch = new int[size * base.packedLength()];
+			this.paths = new int[size][path.length];
+			this.depths = new int[size];
+			this.scores = new double[size];
+		}
+
+		long run(long quota, long deadline, AtomicBoolean terminate) {
+			pool.clear();
+			long n = 0;
+			while (n < quota && !terminate.get()) {
+				if ((n & 63) == 0 && System.nanoTime() > deadline) break;
+				iterate();
+				n++;
+			}
+			flush();
+			return n;
+		}
+
+		private void iterate() {
+			if (pool.isFull()) {
+				// pending paths must not point to evicted nodes
+				flush();
+				pool.evict(EVICT_FRACTION);
+			}
+			state.copyFrom(base);
+			state.setMrXLocation(belief.sample(random));
+			int node = NodePool.ROOT, depth = 0, winner;
+			path[depth++] = node;
+			while (true) {
+				winner = state.winner();
+				if (winner != PackedState.NONE) break;
+				// the root is always expanded so that its moves can be compared
+				if (tablebase != null && depth > 1
+						&& (winner = tablebase.probe(state)) != PackedState.NONE) break;
+				int count;
+				if (joint != null && !state.isMrXTurn()) {
+					count = joint.generate(state);
+					candidates = joint.moves();
+				} else {
+					count = state.generate(moves);
+					candidates = moves;
+				}
+				if (count == 0) {
+					winner = state.winnerWhenStuck();
+					break;
+				}
+				index(count);
+				int best = NodePool.NIL, unexpanded = count;
+				double bestScore = Double.NEGATIVE_INFINITY;
+				for (int c = pool.firstChild(node); c != NodePool.NIL; c = pool.nextSibling(c)) {
+					int i = lookup(pool.action(c));
+					if (i == -1) continue;
+					matched[i] = true;
+					unexpanded--;
+					pool.markAvailable(c);
+					double score = ucb(c);
+					if (score > bestScore) {
+						best = c;
+						bestScore = score;
+					}
+				}
+				if (unexpanded > 0) {
+					long move = pickUnexpanded(count, unexpanded);
+					int child = pool.addChild(node, move);
+					if (child != NodePool.NIL) {
+						pool.markAvailable(child);
+						state.apply(move);
+						path[depth++] = child;
+						winner = finish();
+						break;
+					}
+				}
+				if (best == NodePool.NIL) {
+					winner = finish();
+					break;
+				}
+				state.apply(pool.action(best));
+				node = best;
+				path[depth++] = node;
+			}
+			pool.update(NodePool.ROOT, 0);
+			if (winner == PENDING) {
+				enqueue(depth);
+				return;
+			}
+			for (int i = 1; i < depth; i++) {
+				boolean mrX = PackedState.isMrXMove(pool.action(path[i]));
+				pool.update(path[i], mrX == (winner == PackedState.MRX_WINS) ? 1 : 0);
+			}
+		}
+
+		private void enqueue(int depth) {
+			state.pack(batch, pending * state.packedLength());
+			System.arraycopy(path, 0, paths[pending], 0, depth);
+			depths[pending] = depth;
+			for (int i = 1; i < depth; i++) pool.update(path[i], 0);
+			if (++pending == batchSize) flush();
+		}
+
+		private void flush() {
+			if (pending == 0) return;
+			evaluator.evaluate(base, batch, pending, scores);
+			for (int k = 0; k < pending; k++) {
+				for (int i = 1; i < depths[k]; i++) {
+					int node = paths[k][i];
+					boolean mrX = PackedState.isMrXMove(pool.action(node));
+					pool.add(node, 0, 0, mrX ? scores[k] : 1 - scores[k]);
+				}
+			}
+			pending = 0;
+		}
+
+		private int finish() {
+			if (tablebase != null) {
+				int solved = tablebase.probe(state);
+				if (solved != PackedState.NONE) return solved;
+			}
+			if (evaluator != null) return PENDING;
+			return engine.playout(state, moves, random);
+		}
+
+		private double ucb(int node) {
+			int visits = pool.visits(node);
+			if (visits == 0) return Double.POSITIVE_INFINITY;
+			return pool.reward(node) / visits
+					+ exploration * Math.sqrt(Math.log(pool.availability(node)) / visits);
+		}
+
+		private long pickUnexpanded(int count, int unexpanded) {
+			int k = random.nextInt(unexpanded);
+			for (int i = 0; i < count; i++)
+				if (!matched[i] && k-- == 0) return candidates[i];
+			throw new AssertionError();
+		}
+
+		private void ensureIndexCapacity(int count) {
+			if (matched != null && matched.length >= count) return;
+			matched = new boolean[count];
+			int size = Integer.highestOneBit(count * 2 - 1) << 1;
+			keys = new long[size];
+			values = new int[size];
+			stamps = new int[size];
+			stamp = 0;
+		}
+
+		private void index(int count) {
+			ensureIndexCapacity(count);
+			stamp++;
+			int mask = keys.length - 1;
+			for (int i = 0; i < count; i++) {
+				matched[i] = false;
+				int h = hash(candidates[i]) & mask;
+				while (stamps[h] == stamp) h = (h + 1) & mask;
+				stamps[h] = stamp;
+				keys[h] = candidates[i];
+				values[h] = i;
+			}
+		}
+
+		private int lookup(long move) {
+			int mask = keys.length - 1;
+			for (int h = hash(move) & mask; stamps[h] == stamp; h = (h + 1) & mask)
+				if (keys[h] == move) return values[h];
+			return -1;
+		}
+
+		private int hash(long move) {
+			long h = move * 0x9E3779B97F4A7C15L;
+			return (int) (h ^ (h >>> 32));
+		}
+	}
+}
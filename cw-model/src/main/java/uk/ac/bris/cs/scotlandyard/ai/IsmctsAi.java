@@ -0,0 +1,98 @@
+package uk.ac.bris.cs.scotlandyard.ai;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.Ai;
+import uk.ac.bris.cs.scotlandyard.model.Board;
+import uk.ac.bris.cs.scotlandyard.model.Move;
+
+/**
+ * An {@link Ai} backed by {@link InformationSetMcts}, plays either side.
+ * <br>
+ * If the system property {@value #BOOK_PROPERTY} names an {@link OpeningBook} file, MrX plays
+ * book moves whenever the position is in the book and searches otherwise. In the last
+ * {@value #ENDGAME_ROUNDS} rounds the positions reachable from every possible location of MrX are
+ * solved with an {@link EndgameSolver} if there are few enough of them, and the search probes the
+ * resulting tablebase. Solving and searching share the time budget of a move and both stop when
+ * asked to terminate; a solve that fails is not retried within the same round.
+ */
+public final class IsmctsAi implements Ai {
+
+	/**
+	 * System property holding the path of the opening book
+	 */
+	public static final String BOOK_PROPERTY = "scotlandyard.ai.book";
+
+	static final int ENDGAME_ROUNDS = 2;
+	private static final Duration BUDGET = Duration.ofSeconds(5);
+	private static final Duration SOLVE_BUDGET = BUDGET.dividedBy(2);
+	private static final EndgameSolver SOLVER = new EndgameSolver(ENDGAME_ROUNDS, 1 << 20);
+
+	private InformationSetMcts search;
+	private OpeningBook book;
+	private EndgameTablebase tablebase;
+	// the round whose roots could not be solved, -1 if none
+	private int failedRound = -1;
+
+	@Nonnull @Override public String name() { return "IS-MCTS"; }
+
+	@Override public void onStart() {
+		search = new InformationSetMcts();
+		String path = System.getProperty(BOOK_PROPERTY);
+		if (path == null) return;
+		try {
+			book = OpeningBook.load(Paths.get(path));
+		} catch (IOException e) {
+			throw new UncheckedIOException("Cannot load opening book " + path, e);
+		}
+	}
+
+	@Nonnull @Override public Move pickMove(@Nonnull Board board,
+	                                        @Nonnull AtomicBoolean terminate) {
+		if (search == null) onStart();
+		if (book != null) {
+			var move = book.lookup(board);
+			if (move.isPresent()) return move.get();
+		}
+		long start = System.nanoTime();
+		prepareTablebase(board, terminate);
+		var left = BUDGET.minusNanos(System.nanoTime() - start);
+		if (left.isNegative()) left = Duration.ZERO;
+		return search.search(board, Long.MAX_VALUE, left, terminate, start).move;
+	}
+
+	private void prepareTablebase(Board board, AtomicBoolean terminate) {
+		// counted the same way as PackedState#round, before paying for a root per MrX location
+		boolean mrXTurn = board.getAvailableMoves().stream()
+				.anyMatch(move -> move.commencedBy().isMrX());
+		int round = board.getMrXTravelLog().size() + (mrXTurn ? 1 : 0);
+		if (board.getSetup().rounds.size() - round + 1 > ENDGAME_ROUNDS) return;
+		// the next round has fewer positions left, so it may be worth another try
+		if (round == failedRound) return;
+		var belief = MrXBelief.of(board);
+		var graph = belief.graph();
+		var roots = new ArrayList<PackedState>();
+		for (int i = 0; i < graph.nodeCount(); i++)
+			if (belief.probability(i) > 0) roots.add(PackedState.of(board, graph.nodeId(i)));
+		// a tablebase of an earlier move covers all positions reachable from it
+		if (tablebase != null && roots.stream()
+				.allMatch(root -> tablebase.probe(root) != PackedState.NONE)) return;
+		tablebase = SOLVER.solve(roots, SOLVE_BUDGET, terminate).orElse(null);
+		if (tablebase == null) failedRound = round;
+		search.setTablebase(tablebase);
+	}
+
+	@Override public void onTerminate() {
+		search = null;
+		book = null;
+		tablebase = null;
+		failedRound = -1;
+	}
+}
@@ -0,0 +1,164 @@
+package uk.ac.bris.cs.scotlandyard.ai;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.graph.CompactGraph;
+
+/**
+ * Generates joint moves that take every remaining detective through the rest of a round at once.
+ * <br>
+ * Detectives move one at a time, but the order only matters where one detective moves onto the
+ * node another one is leaving. A joint move records just the ticket and destination of each
+ * detective, so every distinct outcome of the round is generated exactly once instead of once
+ * per ordering. An outcome is valid if some ordering reaches it: destinations are distinct, no
+ * two detectives swap nodes, and a detective only stays put if it cannot move once the others
+ * are done. {@link PackedState#decode(long)} resolves blocking by moving the first detective in
+ * slot order whose destination is free. If any detective can capture MrX the only joint move is
+ * the first such capture, as the game ends with it.
+ * <br>
+ * Moves are written to an internal buffer that grows as needed, so instances should be reused.
+ * Instances are not thread safe.
+ */
+public final class JointMoveGenerator {
+
+	private static final int UNCLAIMED = -1;
+
+	private long[] moves = new long[64];
+	private int count;
+	private PackedState state;
+	private CompactGraph graph;
+	private int mrX;
+	private int[] claimed = new int[0];
+	private int[] originOf = new int[0];
+	private final int[] remaining = new int[8];
+	private final int[] destination = new int[8];
+	private int remainingCount;
+
+	/**
+	 * @param state a state where the detectives are to move and that
+	 * {@link PackedState#supportsJointMoves() supports joint moves}
+	 * @return number of generated moves
+	 */
+	public int generate(@Nonnull PackedState state) {
+		if (Objects.requireNonNull(state).isMrXTurn())
+			throw new IllegalArgumentException("MrX is to move");
+		if (!state.supportsJointMoves())
+			throw new IllegalArgumentException("Graph degree too high for joint moves");
+		this.state = state;
+		this.graph = state.graph();
+		this.mrX = state.location(0);
+		count = 0;
+		remainingCount = 0;
+		for (int slot = 1; slot < state.players(); slot++)
+			if (!state.hasPlayed(slot)) remaining[remainingCount++] = slot;
+		if (capture()) return count;
+		if (claimed.length != graph.nodeCount()) {
+			claimed = new int[graph.nodeCount()];
+			originOf = new int[graph.nodeCount()];
+		}
+		Arrays.fill(claimed, UNCLAIMED);
+		Arrays.fill(originOf, UNCLAIMED);
+		for (int slot = 1; slot < state.players(); slot++) {
+			if (state.hasPlayed(slot)) claimed[state.location(slot)] = slot;
+			else originOf[state.location(slot)] = slot;
+		}
+		assign(0, 0);
+		return count;
+	}
+
+	/**
+	 * @return the generated moves, valid up to the count returned by
+	 * {@link #generate(PackedState)} and until the next call
+	 */
+	@Nonnull public long[] moves() { return moves; }
+
+	/**
+	 * @param index the move index
+	 * @return the generated move at the given index
+	 */
+	public long move(int index) {
+		if (index >= count) throw new IndexOutOfBoundsException(index);
+		return moves[index];
+	}
+
+	private boolean capture() {
+		for (int i = 0; i < remainingCount; i++) {
+			int slot = remaining[i], from = state.location(slot);
+			for (int e = graph.firstEdge(from); e < graph.endEdge(from); e++) {
+				int usable = graph.target(e) == mrX ? state.usableTickets(slot, e) : 0;
+				if (usable == 0) continue;
+				add(PackedState.joint(slot, state.jointCode(slot, e,
+						Integer.numberOfTrailingZeros(usable))));
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private void assign(int i, long move) {
+		if (i == remainingCount) {
+			if (valid()) add(move | PackedState.JOINT_FLAG);
+			return;
+		}
+		int slot = remaining[i], from = state.location(slot);
+		if (claimed[from] == UNCLAIMED) {
+			// stays put, checked once every destination is known
+			claimed[from] = slot;
+			destination[i] = from;
+			assign(i + 1, move);
+			claimed[from] = UNCLAIMED;
+		}
+		for (int e = graph.firstEdge(from); e < graph.endEdge(from); e++) {
+			int to = graph.target(e);
+			if (claimed[to] != UNCLAIMED) continue;
+			int usable = state.usableTickets(slot, e);
+			if (usable == 0) continue;
+			claimed[to] = slot;
+			destination[i] = to;
+			for (int t = 0; usable != 0; t++, usable >>>= 1)
+				if ((usable & 1) != 0)
+					assign(i + 1, move | PackedState.joint(slot, state.jointCode(slot, e, t)));
+			claimed[to] = UNCLAIMED;
+		}
+	}
+
+	private boolean valid() {
+		for (int i = 0; i < remainingCount; i++) {
+			int slot = remaining[i], from = state.location(slot);
+			if (destination[i] == from) {
+				// a detective that could still move would have to
+				for (int e = graph.firstEdge(from); e < graph.endEdge(from); e++)
+					if (claimed[graph.target(e)] == UNCLAIMED && state.usableTickets(slot, e) != 0)
+						return false;
+			} else if (cycles(i)) return false;
+		}
+		return true;
+	}
+
+	// whether following the detectives that have to leave first leads back to the i-th one
+	private boolean cycles(int i) {
+		int start = remaining[i], at = destination[i];
+		for (int steps = 0; steps < remainingCount; steps++) {
+			int next = originOf[at];
+			if (next == UNCLAIMED) return false;
+			if (next == start) return true;
+			int j = indexOf(next);
+			if (destination[j] == at) return false;
+			at = destination[j];
+		}
+		return false;
+	}
+
+	private int indexOf(int slot) {
+		for (int i = 0; i < remainingCount; i++) if (remaining[i] == slot) return i;
+		throw new AssertionError(slot);
+	}
+
+	private void add(long move) {
+		if (count == moves.length) moves = Arrays.copyOf(moves, count * 2);
+		moves[count++] = move;
+	}
+}
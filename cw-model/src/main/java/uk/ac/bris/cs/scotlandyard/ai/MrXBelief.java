@@ -0,0 +1,162 @@
+package uk.ac.bris.cs.scotlandyard.ai;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.SplittableRandom;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.graph.CompactGraph;
+import uk.ac.bris.cs.scotlandyard.model.Board;
+import uk.ac.bris.cs.scotlandyard.model.LogEntry;
+import uk.ac.bris.cs.scotlandyard.model.Move;
+import uk.ac.bris.cs.scotlandyard.model.Piece;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard;
+
+/**
+ * A probability distribution over MrX's possible locations as seen by the detectives.
+ * <br>
+ * The distribution starts uniform over the possible start locations and is propagated through
+ * every entry of MrX's travel log: each step spreads the probability of a node evenly over the
+ * neighbours reachable with the logged ticket, reveal rounds collapse it to the revealed node.
+ * Nodes currently occupied by detectives are excluded. Instances are immutable.
+ */
+public final class MrXBelief {
+
+	private final CompactGraph graph;
+	private final double[] probabilities;
+	private final double[] cumulative;
+
+	private MrXBelief(CompactGraph graph, double[] probabilities) {
+		this.graph = graph;
+		this.probabilities = probabilities;
+		this.cumulative = new double[probabilities.length];
+		double sum = 0;
+		for (int i = 0; i < probabilities.length; i++) cumulative[i] = sum += probabilities[i];
+	}
+
+	/**
+	 * @param board the board
+	 * @return the belief of the given board assuming MrX started at one of
+	 * {@link ScotlandYard#MRX_LOCATIONS}
+	 */
+	@Nonnull public static MrXBelief of(@Nonnull Board board) {
+		return of(board, ScotlandYard.MRX_LOCATIONS);
+	}
+
+	/**
+	 * @param board the board
+	 * @param startLocations MrX's possible start locations; if none of them are on the graph all
+	 * nodes are considered
+	 * @return the belief of the given board, collapsed to MrX's actual location if it is MrX's
+	 * turn
+	 */
+	@Nonnull public static MrXBelief of(@Nonnull Board board,
+	                                    @Nonnull Iterable<Integer> startLocations) {
+		var graph = CompactGraph.of(board.getSetup());
+		double[] p = new double[graph.nodeCount()];
+		var source = board.getAvailableMoves().stream()
+				.filter(m -> m.commencedBy().isMrX())
+				.mapToInt(Move::source)
+				.findFirst();
+		if (source.isPresent()) {
+			p[graph.indexOf(source.getAsInt())] = 1;
+			return new MrXBelief(graph, p);
+		}
+		return propagate(board, graph, startLocations);
+	}
+
+	/**
+	 * @param board the board
+	 * @return the belief of the detectives, as if MrX's own moves were not visible, assuming he
+	 * started at one of {@link ScotlandYard#MRX_LOCATIONS}
+	 */
+	@Nonnull public static MrXBelief asSeenByDetectives(@Nonnull Board board) {
+		return propagate(board, CompactGraph.of(board.getSetup()), ScotlandYard.MRX_LOCATIONS);
+	}
+
+	private static MrXBelief propagate(Board board, CompactGraph graph,
+	                                   Iterable<Integer> startLocations) {
+		double[] p = new double[graph.nodeCount()];
+		for (int node : Objects.requireNonNull(startLocations)) {
+			int index = graph.indexOf(node);
+			if (index != -1) p[index] = 1;
+		}
+		if (Arrays.stream(p).sum() == 0) Arrays.fill(p, 1);
+		double[] next = new double[p.length];
+		for (LogEntry entry : board.getMrXTravelLog()) {
+			Arrays.fill(next, 0);
+			if (entry.location().isPresent()) {
+				next[graph.indexOf(entry.location().get())] = 1;
+			} else {
+				int mask = CompactGraph.ticketMask(entry.ticket());
+				for (int from = 0; from < p.length; from++) {
+					if (p[from] == 0) continue;
+					int degree = 0;
+					for (int e = graph.firstEdge(from); e < graph.endEdge(from); e++)
+						if ((graph.transports(e) & mask) != 0) degree++;
+					for (int e = graph.firstEdge(from); e < graph.endEdge(from); e++)
+						if ((graph.transports(e) & mask) != 0)
+							next[graph.target(e)] += p[from] / degree;
+				}
+			}
+			double[] swap = p;
+			p = next;
+			next = swap;
+		}
+		excludeDetectives(board, graph, p);
+		double sum = Arrays.stream(p).sum();
+		if (sum == 0) {
+			// the log is inconsistent with the assumed start, fall back to all free nodes
+			Arrays.fill(p, 1);
+			excludeDetectives(board, graph, p);
+			sum = Arrays.stream(p).sum();
+		}
+		for (int i = 0; i < p.length; i++) p[i] /= sum;
+		return new MrXBelief(graph, p);
+	}
+
+	private static void excludeDetectives(Board board, CompactGraph graph, double[] p) {
+		for (Piece piece : board.getPlayers()) {
+			if (piece.isDetective())
+				board.getDetectiveLocation((Piece.Detective) piece)
+						.ifPresent(node -> p[graph.indexOf(node)] = 0);
+		}
+	}
+
+	/**
+	 * @return the graph the belief is defined on
+	 */
+	@Nonnull public CompactGraph graph() { return graph; }
+
+	/**
+	 * @param index the node index
+	 * @return the probability of MrX being at the given node
+	 */
+	public double probability(int index) { return probabilities[index]; }
+
+	/**
+	 * @return number of nodes MrX could be at
+	 */
+	public int support() {
+		int count = 0;
+		for (double p : probabilities) if (p > 0) count++;
+		return count;
+	}
+
+	/**
+	 * @param random the random source
+	 * @return a node index drawn from this distribution
+	 */
+	public int sample(@Nonnull SplittableRandom random) {
+		double x = random.nextDouble() * cumulative[cumulative.length - 1];
+		// the first node whose cumulative probability exceeds x
+		int low = 0, high = cumulative.length - 1;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (cumulative[mid] > x) high = mid;
+			else low = mid + 1;
+		}
+		return low;
+	}
+}
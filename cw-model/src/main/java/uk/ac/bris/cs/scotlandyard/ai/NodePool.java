@@ -0,0 +1,161 @@
+package uk.ac.bris.cs.scotlandyard.ai;
+
+import java.util.Arrays;
+
+/**
+ * A fixed capacity pool of search tree nodes stored as parallel primitive arrays.
+ * <br>
+ * Node 0 is always the root. Children are kept in singly linked sibling lists. When the pool is
+ * full {@link #evict(double)} frees the least visited leaves so a search can keep running in
+ * bounded memory. Instances are not thread safe.
+ */
+final class NodePool {
+
+	static final int NIL = -1;
+	static final int ROOT = 0;
+
+	private final long[] action;
+	private final int[] firstChild;
+	private final int[] nextSibling;
+	private final int[] visits;
+	private final int[] availability;
+	private final double[] reward;
+	private int size;
+	private int free = NIL;
+	private int freeCount;
+
+	NodePool(int capacity) {
+		if (capacity < 1) throw new IllegalArgumentException("Capacity must be > 0");
+		action = new long[capacity];
+		firstChild = new int[capacity];
+		nextSibling = new int[capacity];
+		visits = new int[capacity];
+		availability = new int[capacity];
+		reward = new double[capacity];
+		clear();
+	}
+
+	/**
+	 * Discards all nodes except for a fresh root
+	 */
+	void clear() {
+		size = 0;
+		free = NIL;
+		freeCount = 0;
+		init(size++, 0L);
+	}
+
+	private void init(int node, long move) {
+		action[node] = move;
+		firstChild[node] = NIL;
+		nextSibling[node] = NIL;
+		visits[node] = 0;
+		availability[node] = 0;
+		reward[node] = 0;
+	}
+
+	int capacity() { return action.length; }
+	int used() { return size - freeCount; }
+	boolean isFull() { return freeCount == 0 && size == action.length; }
+
+	/**
+	 * @param parent the parent node
+	 * @param move the move leading to the new node
+	 * @return the new node; {@link #NIL} if the pool is full
+	 */
+	int addChild(int parent, long move) {
+		int node;
+		if (free != NIL) {
+			node = free;
+			free = nextSibling[node];
+			freeCount--;
+		} else if (size < action.length) {
+			node = size++;
+		} else return NIL;
+		init(node, move);
+		nextSibling[node] = firstChild[parent];
+		firstChild[parent] = node;
+		return node;
+	}
+
+	/**
+	 * @param parent the parent node
+	 * @param move the move
+	 * @return the child reached via the given move; {@link #NIL} if there is none
+	 */
+	int findChild(int parent, long move) {
+		for (int c = firstChild[parent]; c != NIL; c = nextSibling[c])
+			if (action[c] == move) return c;
+		return NIL;
+	}
+
+	long action(int node) { return action[node]; }
+	int firstChild(int node) { return firstChild[node]; }
+	int nextSibling(int node) { return nextSibling[node]; }
+	int visits(int node) { return visits[node]; }
+	int availability(int node) { return availability[node]; }
+	double reward(int node) { return reward[node]; }
+
+	void markAvailable(int node) { availability[node]++; }
+	void update(int node, double value) {
+		visits[node]++;
+		reward[node] += value;
+	}
+	void add(int node, int visits, int availability, double reward) {
+		this.visits[node] += visits;
+		this.availability[node] += availability;
+		this.reward[node] += reward;
+	}
+
+	/**
+	 * Frees up to the given fraction of the capacity by removing leaves with the fewest visits.
+	 * Children of the root are never evicted.
+	 *
+	 * @param fraction fraction of the capacity to free, between 0 and 1
+	 * @return number of freed nodes
+	 */
+	int evict(double fraction) {
+		int target = Math.max(1, (int) (action.length * fraction));
+		boolean[] evictable = evictableLeaves();
+		int[] leafVisits = new int[size];
+		int leaves = 0;
+		for (int node = 0; node < size; node++)
+			if (evictable[node]) leafVisits[leaves++] = visits[node];
+		if (leaves == 0) return 0;
+		Arrays.sort(leafVisits, 0, leaves);
+		int threshold = leafVisits[Math.min(target, leaves) - 1];
+		int freed = 0;
+		for (int parent = 0; parent < size && freed < target; parent++) {
+			int previous = NIL;
+			for (int c = firstChild[parent]; c != NIL; ) {
+				int next = nextSibling[c];
+				if (freed < target && evictable[c] && visits[c] <= threshold) {
+					if (previous == NIL) firstChild[parent] = next;
+					else nextSibling[previous] = next;
+					nextSibling[c] = free;
+					free = c;
+					freeCount++;
+					freed++;
+				} else previous = c;
+				c = next;
+			}
+		}
+		return freed;
+	}
+
+	// leaves reachable from the root, excluding the root's children
+	private boolean[] evictableLeaves() {
+		boolean[] evictable = new boolean[size];
+		int[] stack = new int[size];
+		int top = 0;
+		for (int c = firstChild[ROOT]; c != NIL; c = nextSibling[c]) stack[top++] = c;
+		while (top > 0) {
+			int node = stack[--top];
+			for (int c = firstChild[node]; c != NIL; c = nextSibling[c]) {
+				if (firstChild[c] == NIL) evictable[c] = true;
+				else stack[top++] = c;
+			}
+		}
+		return evictable;
+	}
+}
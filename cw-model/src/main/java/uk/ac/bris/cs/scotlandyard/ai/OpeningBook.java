@@ -0,0 +1,129 @@
+package uk.ac.bris.cs.scotlandyard.ai;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.OptionalLong;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.Board;
+import uk.ac.bris.cs.scotlandyard.model.Move;
+
+/**
+ * A read-only table of precomputed MrX moves keyed by {@link PackedState#key()}.
+ * <br>
+ * The file is a 16 byte header (magic, version, capacity, entry count) followed by an open
+ * addressing hash table of {@code capacity} slots, each holding a position key and an encoded
+ * move as little endian {@code long}s. Key 0 marks an empty slot. The file is memory mapped, so
+ * loading is constant time and lookups touch only the slots they probe. Books are created with
+ * {@link OpeningBookBuilder}. Instances are immutable and safe to share between threads.
+ */
+public final class OpeningBook {
+
+	static final int MAGIC = 0x53594F42; // "SYOB"
+	static final int VERSION = 1;
+	private static final int HEADER_BYTES = 16;
+	private static final int SLOT_BYTES = 16;
+
+	private final ByteBuffer buffer;
+	private final int mask;
+	private final int size;
+
+	private OpeningBook(ByteBuffer buffer) {
+		this.buffer = buffer.order(ByteOrder.LITTLE_ENDIAN);
+		if (buffer.capacity() < HEADER_BYTES || buffer.getInt(0) != MAGIC)
+			throw new IllegalArgumentException("Not an opening book");
+		if (buffer.getInt(4) != VERSION)
+			throw new IllegalArgumentException("Unsupported book version " + buffer.getInt(4));
+		int capacity = buffer.getInt(8);
+		if (Integer.bitCount(capacity) != 1
+				|| buffer.capacity() != HEADER_BYTES + (long) capacity * SLOT_BYTES)
+			throw new IllegalArgumentException("Truncated or corrupt opening book");
+		this.mask = capacity - 1;
+		this.size = buffer.getInt(12);
+	}
+
+	/**
+	 * @param file the book file
+	 * @return the memory mapped book
+	 * @throws IOException if the file cannot be read
+	 * @throws IllegalArgumentException if the file is not a valid book
+	 */
+	@Nonnull public static OpeningBook load(@Nonnull Path file) throws IOException {
+		try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			// the mapping stays valid after the channel is closed
+			return new OpeningBook(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+		}
+	}
+
+	/**
+	 * Writes a book, replacing the file if it exists.
+	 *
+	 * @param entries encoded moves keyed by {@link PackedState#key()}
+	 * @param file the book file
+	 * @throws IOException if the file cannot be written
+	 */
+	static void write(@Nonnull Map<Long, Long> entries, @Nonnull Path file) throws IOException {
+		// keep the load factor at or below one half
+		int capacity = Integer.highestOneBit(Math.max(1, entries.size()) * 2 - 1) << 1;
+		var buffer = ByteBuffer.allocate(HEADER_BYTES + capacity * SLOT_BYTES)
+				.order(ByteOrder.LITTLE_ENDIAN)
+				.putInt(MAGIC).putInt(VERSION).putInt(capacity).putInt(entries.size());
+		entries.forEach((key, move) -> {
+			long k = nonZero(key);
+			int slot = slot(k, capacity - 1);
+			while (buffer.getLong(offset(slot)) != 0) slot = (slot + 1) & (capacity - 1);
+			buffer.putLong(offset(slot), k).putLong(offset(slot) + 8, move);
+		});
+		buffer.rewind();
+		try (var channel = FileChannel.open(Objects.requireNonNull(file),
+				StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+				StandardOpenOption.WRITE)) {
+			while (buffer.hasRemaining()) channel.write(buffer);
+		}
+	}
+
+	private static long nonZero(long key) { return key == 0 ? 1 : key; }
+	private static int slot(long key, int mask) { return (int) (key ^ (key >>> 32)) & mask; }
+	private static int offset(int slot) { return HEADER_BYTES + slot * SLOT_BYTES; }
+
+	/**
+	 * @return number of positions in this book
+	 */
+	public int size() { return size; }
+
+	/**
+	 * @param key the position key, see {@link PackedState#key()}
+	 * @return the encoded book move of the position, if any
+	 */
+	@Nonnull public OptionalLong probe(long key) {
+		long k = nonZero(key);
+		for (int slot = slot(k, mask); ; slot = (slot + 1) & mask) {
+			long stored = buffer.getLong(offset(slot));
+			if (stored == k) return OptionalLong.of(buffer.getLong(offset(slot) + 8));
+			if (stored == 0) return OptionalLong.empty();
+		}
+	}
+
+	/**
+	 * @param board the board
+	 * @return the book move if MrX is to move and the position is in this book; book moves are
+	 * checked against the available moves so a hash collision can never produce an illegal move
+	 */
+	@Nonnull public Optional<Move> lookup(@Nonnull Board board) {
+		var available = board.getAvailableMoves();
+		if (available.isEmpty() || !available.iterator().next().commencedBy().isMrX())
+			return Optional.empty();
+		var state = PackedState.of(board);
+		var move = probe(state.key());
+		if (move.isEmpty() || PackedState.slot(move.getAsLong()) != 0) return Optional.empty();
+		return Optional.of(state.decode(move.getAsLong())).filter(available::contains);
+	}
+}
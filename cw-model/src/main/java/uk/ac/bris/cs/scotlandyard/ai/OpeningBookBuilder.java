@@ -0,0 +1,148 @@
+package uk.ac.bris.cs.scotlandyard.ai;
+
+import com.google.common.collect.ImmutableList;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+import uk.ac.bris.cs.scotlandyard.model.GameSetup;
+import uk.ac.bris.cs.scotlandyard.model.MyGameStateFactory;
+import uk.ac.bris.cs.scotlandyard.model.Player;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard;
+
+import static uk.ac.bris.cs.scotlandyard.model.Piece.MrX.MRX;
+
+/**
+ * Builds an {@link OpeningBook} offline by searching start positions with
+ * {@link InformationSetMcts}.
+ * <br>
+ * Every analysed start is played along its principal line: MrX's searched move is recorded and
+ * the detectives reply with their own searched moves, until MrX has had the given number of
+ * turns. Searches are bounded by iterations rather than time and seeded by the position key, so
+ * a book is reproducible for the same parameters and parallelism.
+ */
+public final class OpeningBookBuilder {
+
+	// a safety net only, searches are meant to be bounded by their iterations
+	private static final Duration POSITION_BUDGET = Duration.ofHours(1);
+
+	private final InformationSetMcts search;
+	private final long iterations;
+	private final int mrXTurns;
+	private final Map<Long, Long> entries = new HashMap<>();
+
+	/**
+	 * @param search the search engine
+	 * @param iterations search iterations per position
+	 * @param mrXTurns number of MrX turns to record from each start
+	 */
+	public OpeningBookBuilder(@Nonnull InformationSetMcts search, long iterations, int mrXTurns) {
+		if (iterations < 1) throw new IllegalArgumentException("Iterations must be > 0");
+		if (mrXTurns < 1) throw new IllegalArgumentException("MrX turns must be > 0");
+		this.search = Objects.requireNonNull(search);
+		this.iterations = iterations;
+		this.mrXTurns = mrXTurns;
+	}
+
+	/**
+	 * Analyses a single start position.
+	 *
+	 * @param start the start state, MrX must be to move
+	 * @return this builder
+	 */
+	@Nonnull public OpeningBookBuilder analyse(@Nonnull GameState start) {
+		var state = PackedState.of(start);
+		GameState current = start;
+		var terminate = new AtomicBoolean();
+		int turns = 0;
+		while (current.getWinner().isEmpty() && turns < mrXTurns) {
+			long key = state.key();
+			var move = search.search(current, iterations, POSITION_BUDGET, terminate, key).move;
+			if (move.commencedBy().isMrX()) {
+				entries.put(key, state.encode(move));
+				turns++;
+			}
+			state.apply(state.encode(move));
+			current = current.advance(move);
+		}
+		return this;
+	}
+
+	/**
+	 * Analyses every combination of MrX starting at one of {@link ScotlandYard#MRX_LOCATIONS}
+	 * and the given number of detectives starting at distinct
+	 * {@link ScotlandYard#DETECTIVE_LOCATIONS}, all with default tickets. Each combination is
+	 * analysed with one assignment of colours to locations; as {@link PackedState#key()} does not
+	 * depend on colours, the book covers every other assignment too.
+	 *
+	 * @param setup the game setup
+	 * @param detectives number of detectives, taken from {@link ScotlandYard#DETECTIVES} in order
+	 * @return this builder
+	 */
+	@Nonnull public OpeningBookBuilder analyseStandardStarts(@Nonnull GameSetup setup,
+	                                                         int detectives) {
+		var pieces = ScotlandYard.DETECTIVES.asList();
+		var locations = ScotlandYard.DETECTIVE_LOCATIONS;
+		if (detectives < 1 || detectives > Math.min(pieces.size(), locations.size()))
+			throw new IllegalArgumentException("Bad detective count " + detectives);
+		var factory = new MyGameStateFactory();
+		for (int mrX : ScotlandYard.MRX_LOCATIONS) {
+			for (int combination = 0; combination < 1 << locations.size(); combination++) {
+				if (Integer.bitCount(combination) != detectives) continue;
+				var players = ImmutableList.<Player>builder();
+				for (int i = 0, d = 0; i < locations.size(); i++) {
+					if ((combination & (1 << i)) == 0) continue;
+					players.add(new Player(pieces.get(d++),
+							ScotlandYard.defaultDetectiveTickets(), locations.get(i)));
+				}
+				analyse(factory.build(setup,
+						new Player(MRX, ScotlandYard.defaultMrXTickets(), mrX), players.build()));
+			}
+		}
+		return this;
+	}
+
+	/**
+	 * @return number of positions analysed so far
+	 */
+	public int size() { return entries.size(); }
+
+	/**
+	 * @param file the book file, replaced if it exists
+	 * @throws IOException if the file cannot be written
+	 */
+	public void write(@Nonnull Path file) throws IOException { OpeningBook.write(entries, file); }
+
+	/**
+	 * Builds a book for the standard map.
+	 *
+	 * @param args output file, then optionally the number of detectives (default 5), MrX turns
+	 * (default 2) and iterations per position (default 20000)
+	 * @throws IOException if the map cannot be read or the book cannot be written
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1) {
+			System.err.println("Usage: OpeningBookBuilder <file> [detectives] [turns] [iterations]");
+			System.exit(1);
+		}
+		int detectives = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+		int turns = args.length > 2 ? Integer.parseInt(args[2]) : 2;
+		long iterations = args.length > 3 ? Long.parseLong(args[3]) : 20000;
+		var setup = new GameSetup(ScotlandYard.standardGraph(), ScotlandYard.STANDARD24ROUNDS);
+		long start = System.nanoTime();
+		var builder = new OpeningBookBuilder(new InformationSetMcts(), iterations, turns)
+				.analyseStandardStarts(setup, detectives);
+		builder.write(Paths.get(args[0]));
+		System.out.printf("Wrote %d positions in %.1fs%n", builder.size(),
+				(System.nanoTime() - start) / 1e9);
+	}
+}
@@ -0,0 +1,660 @@
+package uk.ac.bris.cs.scotlandyard.ai;
+
+import com.google.common.collect.ImmutableSet;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.graph.CompactGraph;
+import uk.ac.bris.cs.scotlandyard.model.Board;
+import uk.ac.bris.cs.scotlandyard.model.Move;
+import uk.ac.bris.cs.scotlandyard.model.Move.DoubleMove;
+import uk.ac.bris.cs.scotlandyard.model.Move.SingleMove;
+import uk.ac.bris.cs.scotlandyard.model.Piece;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+
+import static uk.ac.bris.cs.scotlandyard.model.Hashing.mix;
+
+/**
+ * A mutable, array backed game state for search and simulation.
+ * <br>
+ * The rules mirror {@link Board.GameState} but moves are encoded as {@code long}s (see
+ * {@link #encode(Move)}), locations are {@link CompactGraph} node indices and MrX's travel log is
+ * reduced to its length. Generating and applying moves does not allocate, so a single instance
+ * can be reused for any number of play-outs via {@link #copyFrom(PackedState)}.
+ * <br>
+ * Player slot 0 is always MrX, detectives follow in {@link ScotlandYard#PIECE_VALUE_ORDER}.
+ * Instances are not thread safe.
+ */
+public final class PackedState {
+
+	/**
+	 * Result of {@link #winner()}: the game is still on-going
+	 */
+	public static final int NONE = 0;
+	/**
+	 * Result of {@link #winner()}: MrX has won
+	 */
+	public static final int MRX_WINS = 1;
+	/**
+	 * Result of {@link #winner()}: the detectives have won
+	 */
+	public static final int DETECTIVES_WIN = 2;
+
+	static final int TICKETS = Ticket.values().length;
+	private static final int TAXI = Ticket.TAXI.ordinal();
+	private static final int BUS = Ticket.BUS.ordinal();
+	private static final int UNDERGROUND = Ticket.UNDERGROUND.ordinal();
+	private static final int DOUBLE = Ticket.DOUBLE.ordinal();
+	private static final int SECRET = Ticket.SECRET.ordinal();
+	private static final Ticket[] TICKET_VALUES = Ticket.values();
+	// edge masks travelable with each ticket, indexed by ticket ordinal
+	private static final int[] TICKET_MASKS =
+			Arrays.stream(TICKET_VALUES).mapToInt(CompactGraph::ticketMask).toArray();
+
+	// move layout: dest1[0,24) ticket1[24,27) slot[27,30) double[30] dest2[32,56) ticket2[56,59)
+	private static final int NODE_BITS = 24;
+	private static final long NODE_MASK = (1L << NODE_BITS) - 1;
+	private static final long DOUBLE_FLAG = 1L << 30;
+	// joint layout: a byte per detective slot from slot 1 at bit 0, joint[62]
+	static final long JOINT_FLAG = 1L << 62;
+	private static final int JOINT_CODE_BITS = 8;
+	private static final int JOINT_CODE_MASK = (1 << JOINT_CODE_BITS) - 1;
+
+	private final CompactGraph graph;
+	private final boolean[] reveal;
+	private final Piece[] pieces;
+	private final int[] location;
+	private final int[] tickets;
+	private int logSize;
+	private int lastReveal = -1;
+	private boolean mrXTurn;
+	private int played;
+
+	private PackedState(CompactGraph graph, boolean[] reveal, Piece[] pieces) {
+		this.graph = graph;
+		this.reveal = reveal;
+		this.pieces = pieces;
+		this.location = new int[pieces.length];
+		this.tickets = new int[pieces.length * TICKETS];
+	}
+
+	/**
+	 * @param board the board to copy
+	 * @param mrXLocation MrX's actual location, this is not available through {@link Board}
+	 * @return a packed copy of the given board
+	 */
+	@Nonnull public static PackedState of(@Nonnull Board board, int mrXLocation) {
+		var setup = board.getSetup();
+		var graph = CompactGraph.of(setup);
+		var reveal = new boolean[setup.rounds.size()];
+		for (int i = 0; i < reveal.length; i++) reveal[i] = setup.rounds.get(i);
+		var pieces = board.getPlayers().stream()
+				.sorted(ScotlandYard.PIECE_VALUE_ORDER)
+				.toArray(Piece[]::new);
+		if (pieces.length == 0 || !pieces[0].isMrX())
+			throw new IllegalArgumentException("Board has no MrX");
+		if (pieces.length > 8) throw new IllegalArgumentException("Too many players");
+		var state = new PackedState(graph, reveal, pieces);
+		for (int slot = 0; slot < pieces.length; slot++) {
+			var ticketBoard = board.getPlayerTickets(pieces[slot]).orElseThrow();
+			for (Ticket t : TICKET_VALUES)
+				state.tickets[slot * TICKETS + t.ordinal()] = ticketBoard.getCount(t);
+			int node = slot == 0 ? mrXLocation : board
+					.getDetectiveLocation((Piece.Detective) pieces[slot]).orElseThrow();
+			state.location[slot] = graph.indexOf(node);
+			if (state.location[slot] == -1)
+				throw new IllegalArgumentException(pieces[slot] + " is not on the graph: " + node);
+		}
+		state.logSize = board.getMrXTravelLog().size();
+		for (var entry : board.getMrXTravelLog())
+			entry.location().ifPresent(node -> state.lastReveal = graph.indexOf(node));
+		var movers = board.getAvailableMoves().stream()
+				.map(Move::commencedBy)
+				.collect(ImmutableSet.toImmutableSet());
+		state.mrXTurn = movers.isEmpty() || movers.contains(pieces[0]);
+		if (!state.mrXTurn) {
+			// detectives that could move but are not offered a move must have played this round
+			for (int slot = 1; slot < pieces.length; slot++)
+				if (!movers.contains(pieces[slot]) && state.canMove(slot))
+					state.played |= 1 << slot;
+		}
+		return state;
+	}
+
+	/**
+	 * @param board a board where MrX is about to move, so that his location is known
+	 * @return a packed copy of the given board
+	 * @throws IllegalArgumentException if MrX's location is hidden on the given board
+	 */
+	@Nonnull public static PackedState of(@Nonnull Board board) {
+		return of(board, board.getAvailableMoves().stream()
+				.filter(m -> m.commencedBy().isMrX())
+				.mapToInt(Move::source)
+				.findFirst()
+				.orElseThrow(() -> new IllegalArgumentException(
+						"MrX's location is hidden on this board")));
+	}
+
+	/**
+	 * @return a deep copy of this state
+	 */
+	@Nonnull public PackedState copy() {
+		var state = new PackedState(graph, reveal, pieces);
+		state.copyFrom(this);
+		return state;
+	}
+
+	/**
+	 * Overwrites this state with another one of the same game without allocating.
+	 *
+	 * @param that the state to copy from
+	 * @return this instance
+	 */
+	@Nonnull public PackedState copyFrom(@Nonnull PackedState that) {
+		if (that.graph != graph || that.pieces.length != pieces.length)
+			throw new IllegalArgumentException("State of a different game");
+		System.arraycopy(that.location, 0, location, 0, location.length);
+		System.arraycopy(that.tickets, 0, tickets, 0, tickets.length);
+		logSize = that.logSize;
+		lastReveal = that.lastReveal;
+		mrXTurn = that.mrXTurn;
+		played = that.played;
+		return this;
+	}
+
+	/**
+	 * @return the graph this state is played on
+	 */
+	@Nonnull public CompactGraph graph() { return graph; }
+	/**
+	 * @return number of players including MrX
+	 */
+	public int players() { return pieces.length; }
+	/**
+	 * @param slot the player slot
+	 * @return the piece at the given slot
+	 */
+	@Nonnull public Piece piece(int slot) { return pieces[slot]; }
+	/**
+	 * @param slot the player slot
+	 * @return the node index of the player at the given slot
+	 */
+	public int location(int slot) { return location[slot]; }
+	/**
+	 * @param slot the player slot
+	 * @param ticket the ticket
+	 * @return ticket count of the player at the given slot
+	 */
+	public int tickets(int slot, @Nonnull Ticket ticket) {
+		return tickets[slot * TICKETS + ticket.ordinal()];
+	}
+	/**
+	 * @return whether MrX is the next to move
+	 */
+	public boolean isMrXTurn() { return mrXTurn; }
+	/**
+	 * @return size of MrX's travel log
+	 */
+	public int logSize() { return logSize; }
+	/**
+	 * Like MrX's travel log this is history rather than position, so it is not part of
+	 * {@link #pack(int[], int)}, {@link #key()} or {@link #equals(Object)}.
+	 *
+	 * @return the node index where MrX was last revealed, or -1 if he has not been revealed yet
+	 */
+	public int lastRevealedLocation() { return lastReveal; }
+	/**
+	 * @return the current round, counted the same way as {@link Board.GameState}
+	 */
+	public int round() { return mrXTurn ? logSize + 1 : logSize; }
+	/**
+	 * @return the total number of rounds of this game
+	 */
+	public int rounds() { return reveal.length; }
+	/**
+	 * @param round the round, starting from 1
+	 * @return whether MrX's location is revealed in the given round
+	 */
+	public boolean isRevealRound(int round) { return reveal[round - 1]; }
+
+	/**
+	 * Sets MrX's location, this is useful for sampling MrX's hidden location.
+	 *
+	 * @param node the node index
+	 */
+	public void setMrXLocation(int node) { location[0] = node; }
+
+	/**
+	 * @return an upper bound on the number of moves {@link #generate(long[])} can produce
+	 */
+	public int maxMoves() {
+		int singles = graph.maxDegree() * TICKETS;
+		return Math.max(singles + singles * singles, (pieces.length - 1) * singles);
+	}
+
+	/**
+	 * Checks whether the game is over, this does not cover the case where the player to move has
+	 * no moves at all, see {@link #winnerWhenStuck()}.
+	 *
+	 * @return one of {@link #NONE}, {@link #MRX_WINS} or {@link #DETECTIVES_WIN}
+	 */
+	public int winner() {
+		for (int slot = 1; slot < pieces.length; slot++)
+			if (location[slot] == location[0]) return DETECTIVES_WIN;
+		if (round() > reveal.length) return MRX_WINS;
+		for (int slot = 1; slot < pieces.length; slot++)
+			if (canMove(slot)) return NONE;
+		return MRX_WINS;
+	}
+
+	/**
+	 * @return the winner if {@link #generate(long[])} produces no moves
+	 */
+	public int winnerWhenStuck() { return mrXTurn ? DETECTIVES_WIN : MRX_WINS; }
+
+	/**
+	 * Writes all available moves into the given buffer. The buffer must hold at least
+	 * {@link #maxMoves()} elements.
+	 *
+	 * @param moves the move buffer
+	 * @return number of moves written
+	 */
+	public int generate(@Nonnull long[] moves) {
+		if (mrXTurn) return generateMrX(moves);
+		int count = 0;
+		for (int slot = 1; slot < pieces.length; slot++)
+			if ((played & (1 << slot)) == 0) count = generateDetective(slot, moves, count);
+		return count;
+	}
+
+	private boolean occupied(int node) {
+		for (int slot = 1; slot < pieces.length; slot++)
+			if (location[slot] == node) return true;
+		return false;
+	}
+
+	private boolean canMove(int slot) {
+		int base = slot * TICKETS, from = location[slot];
+		for (int e = graph.firstEdge(from); e < graph.endEdge(from); e++) {
+			if (!occupied(graph.target(e))
+					&& usableTickets(base, graph.transports(e), false) != 0) return true;
+		}
+		return false;
+	}
+
+	// bitmask of usable ticket ordinals for a player on an edge
+	private int usableTickets(int base, int mask, boolean mrX) {
+		int usable = 0;
+		if ((mask & TICKET_MASKS[TAXI]) != 0 && tickets[base + TAXI] > 0) usable |= 1 << TAXI;
+		if ((mask & TICKET_MASKS[BUS]) != 0 && tickets[base + BUS] > 0) usable |= 1 << BUS;
+		if ((mask & TICKET_MASKS[UNDERGROUND]) != 0 && tickets[base + UNDERGROUND] > 0)
+			usable |= 1 << UNDERGROUND;
+		// ferries require a secret ticket, MrX may also use one on any other route
+		if ((mrX || (mask & ~TICKET_MASKS[TAXI] & ~TICKET_MASKS[BUS]
+				& ~TICKET_MASKS[UNDERGROUND]) != 0) && tickets[base + SECRET] > 0)
+			usable |= 1 << SECRET;
+		return usable;
+	}
+
+	private int generateDetective(int slot, long[] moves, int count) {
+		int base = slot * TICKETS, from = location[slot];
+		for (int e = graph.firstEdge(from); e < graph.endEdge(from); e++) {
+			int to = graph.target(e);
+			if (occupied(to)) continue;
+			int usable = usableTickets(base, graph.transports(e), false);
+			for (int t = 0; usable != 0; t++, usable >>>= 1)
+				if ((usable & 1) != 0) moves[count++] = single(slot, t, to);
+		}
+		return count;
+	}
+
+	private int generateMrX(long[] moves) {
+		int count = 0, from = location[0];
+		boolean doubles = tickets[DOUBLE] > 0 && reveal.length > round();
+		for (int e = graph.firstEdge(from); e < graph.endEdge(from); e++) {
+			int to = graph.target(e);
+			if (occupied(to)) continue;
+			int usable = usableTickets(0, graph.transports(e), true);
+			for (int t = 0; usable != 0; t++, usable >>>= 1) {
+				if ((usable & 1) == 0) continue;
+				moves[count++] = single(0, t, to);
+				if (!doubles) continue;
+				for (int f = graph.firstEdge(to); f < graph.endEdge(to); f++) {
+					int to2 = graph.target(f);
+					if (occupied(to2)) continue;
+					int usable2 = usableTickets(0, graph.transports(f), true);
+					for (int t2 = 0; usable2 != 0; t2++, usable2 >>>= 1) {
+						if ((usable2 & 1) == 0 || (t2 == t && tickets[t] < 2)) continue;
+						moves[count++] = single(0, t, to) | DOUBLE_FLAG
+								| ((long) t2 << 56) | ((long) to2 << 32);
+					}
+				}
+			}
+		}
+		return count;
+	}
+
+	private static long single(int slot, int ticket, int to) {
+		return to | ((long) ticket << NODE_BITS) | ((long) slot << 27);
+	}
+
+	/**
+	 * @param move an encoded move
+	 * @return the slot of the player making the move
+	 */
+	public static int slot(long move) { return (int) (move >>> 27) & 7; }
+	/**
+	 * @param move an encoded move
+	 * @return whether the move is a joint detective move, see {@link JointMoveGenerator}
+	 */
+	public static boolean isJoint(long move) { return (move & JOINT_FLAG) != 0; }
+	/**
+	 * @param move an encoded move
+	 * @return whether the move is made by MrX
+	 */
+	public static boolean isMrXMove(long move) { return !isJoint(move) && slot(move) == 0; }
+	/**
+	 * @param move an encoded move
+	 * @return whether the move is a double move
+	 */
+	public static boolean isDouble(long move) { return (move & DOUBLE_FLAG) != 0; }
+	/**
+	 * @param move an encoded move
+	 * @return the first (or only) destination node index
+	 */
+	public static int destination1(long move) { return (int) (move & NODE_MASK); }
+	/**
+	 * @param move an encoded move
+	 * @return the first (or only) ticket ordinal
+	 */
+	public static int ticket1(long move) { return (int) (move >>> NODE_BITS) & 7; }
+	/**
+	 * @param move an encoded double move
+	 * @return the second destination node index
+	 */
+	public static int destination2(long move) { return (int) ((move >>> 32) & NODE_MASK); }
+	/**
+	 * @param move an encoded double move
+	 * @return the second ticket ordinal
+	 */
+	public static int ticket2(long move) { return (int) (move >>> 56) & 7; }
+	/**
+	 * @param move an encoded move
+	 * @return the final destination node index
+	 */
+	public static int destination(long move) {
+		return isDouble(move) ? destination2(move) : destination1(move);
+	}
+
+	/**
+	 * Applies a move generated by {@link #generate(long[])} or a {@link JointMoveGenerator},
+	 * moves are not validated.
+	 *
+	 * @param move the encoded move
+	 */
+	public void apply(long move) {
+		if (isJoint(move)) {
+			applyJoint(move);
+			return;
+		}
+		int slot = slot(move), base = slot * TICKETS, t1 = ticket1(move);
+		tickets[base + t1]--;
+		if (slot == 0) {
+			if (reveal[logSize++]) lastReveal = destination1(move);
+			if (isDouble(move)) {
+				tickets[ticket2(move)]--;
+				tickets[DOUBLE]--;
+				if (reveal[logSize++]) lastReveal = destination2(move);
+			}
+			location[0] = destination(move);
+			mrXTurn = false;
+			played = 0;
+			return;
+		}
+		location[slot] = destination1(move);
+		tickets[t1]++;
+		played |= 1 << slot;
+		endRoundIfStuck();
+	}
+
+	private void endRoundIfStuck() {
+		for (int s = 1; s < pieces.length; s++)
+			if ((played & (1 << s)) == 0 && canMove(s)) return;
+		mrXTurn = true;
+		played = 0;
+	}
+
+	/**
+	 * @return whether joint moves of every detective fit into a {@code long} on this graph
+	 */
+	public boolean supportsJointMoves() {
+		return graph.maxDegree() * TICKETS < JOINT_CODE_MASK;
+	}
+
+	/**
+	 * @param slot a detective slot
+	 * @param edge an edge leaving the slot's location
+	 * @param ticket the ticket ordinal
+	 * @return the code of the detective's part of a joint move, never 0
+	 */
+	int jointCode(int slot, int edge, int ticket) {
+		return 1 + (edge - graph.firstEdge(location[slot])) * TICKETS + ticket;
+	}
+
+	static long joint(int slot, int code) {
+		return JOINT_FLAG | (long) code << ((slot - 1) * JOINT_CODE_BITS);
+	}
+
+	private int jointCode(long move, int slot) {
+		return (int) (move >>> ((slot - 1) * JOINT_CODE_BITS)) & JOINT_CODE_MASK;
+	}
+
+	boolean hasPlayed(int slot) { return (played & (1 << slot)) != 0; }
+
+	/**
+	 * @param slot a detective slot
+	 * @param edge an edge leaving the slot's location
+	 * @return bitmask of ticket ordinals the detective could use on the edge
+	 */
+	int usableTickets(int slot, int edge) {
+		return usableTickets(slot * TICKETS, graph.transports(edge), false);
+	}
+
+	// every detective moves at once, the round ends afterwards unless MrX was captured
+	private void applyJoint(long move) {
+		boolean captured = false;
+		for (int slot = 1; slot < pieces.length; slot++) {
+			int code = jointCode(move, slot);
+			if (code == 0) continue;
+			int ticket = (code - 1) % TICKETS;
+			tickets[slot * TICKETS + ticket]--;
+			tickets[ticket]++;
+			location[slot] = graph.target(graph.firstEdge(location[slot]) + (code - 1) / TICKETS);
+			played |= 1 << slot;
+			captured |= location[slot] == location[0];
+		}
+		// a capture leaves the state as if the capturing move was made on its own
+		if (captured) endRoundIfStuck();
+		else {
+			mrXTurn = true;
+			played = 0;
+		}
+	}
+
+	/**
+	 * @param move a move of this game
+	 * @return the encoded move
+	 * @throws IllegalArgumentException if the move refers to a piece or node not in this game
+	 */
+	public long encode(@Nonnull Move move) {
+		int slot = Arrays.asList(pieces).indexOf(move.commencedBy());
+		if (slot == -1) throw new IllegalArgumentException("Unknown piece " + move);
+		return move.visit(new Move.FunctionalVisitor<>(
+				m -> single(slot, m.ticket.ordinal(), node(m.destination)),
+				m -> single(slot, m.ticket1.ordinal(), node(m.destination1)) | DOUBLE_FLAG
+						| ((long) m.ticket2.ordinal() << 56)
+						| ((long) node(m.destination2) << 32)));
+	}
+
+	private int node(int id) {
+		int index = graph.indexOf(id);
+		if (index == -1) throw new IllegalArgumentException("Unknown node " + id);
+		return index;
+	}
+
+	/**
+	 * @param move the encoded move, must be generated from this state
+	 * @return the decoded move; for a joint move the part of the first detective, in slot order,
+	 * that is not blocked by another detective
+	 */
+	@Nonnull public Move decode(long move) {
+		if (isJoint(move)) return decodeJoint(move);
+		int slot = slot(move);
+		Piece piece = pieces[slot];
+		int source = graph.nodeId(location[slot]);
+		if (!isDouble(move))
+			return new SingleMove(piece, source, TICKET_VALUES[ticket1(move)],
+					graph.nodeId(destination1(move)));
+		return new DoubleMove(piece, source,
+				TICKET_VALUES[ticket1(move)], graph.nodeId(destination1(move)),
+				TICKET_VALUES[ticket2(move)], graph.nodeId(destination2(move)));
+	}
+
+	// pack layout: a meta word, then a location and a ticket word per slot
+	private static final int TICKET_BITS = 6;
+	private static final int TICKET_LIMIT = (1 << TICKET_BITS) - 1;
+
+	/**
+	 * @return number of ints written by {@link #pack(int[], int)}
+	 */
+	public int packedLength() { return 1 + pieces.length * 2; }
+
+	/**
+	 * Writes the mutable part of this state into an int array, so that many positions of a game
+	 * can be stored back to back. The packed form is meant for batches within one process, it is
+	 * not a persistent format.
+	 *
+	 * @param out the destination array
+	 * @param offset the offset to write {@link #packedLength()} ints at
+	 * @throws IllegalStateException if a ticket count does not fit into six bits
+	 */
+	public void pack(@Nonnull int[] out, int offset) {
+		out[offset++] = logSize << 16 | played << 1 | (mrXTurn ? 1 : 0);
+		for (int slot = 0; slot < pieces.length; slot++) {
+			int word = 0;
+			for (int t = 0; t < TICKETS; t++) {
+				int count = tickets[slot * TICKETS + t];
+				if (count > TICKET_LIMIT)
+					throw new IllegalStateException("Too many tickets to pack: " + count);
+				word |= count << (t * TICKET_BITS);
+			}
+			out[offset++] = location[slot];
+			out[offset++] = word;
+		}
+	}
+
+	/**
+	 * Restores a state written by {@link #pack(int[], int)} of the same game.
+	 *
+	 * @param in the source array
+	 * @param offset the offset of the packed state
+	 */
+	public void unpack(@Nonnull int[] in, int offset) {
+		int meta = in[offset++];
+		logSize = meta >>> 16;
+		played = (meta >>> 1) & 0xFF;
+		mrXTurn = (meta & 1) != 0;
+		for (int slot = 0; slot < pieces.length; slot++) {
+			location[slot] = in[offset++];
+			int word = in[offset++];
+			for (int t = 0; t < TICKETS; t++)
+				tickets[slot * TICKETS + t] = (word >>> (t * TICKET_BITS)) & TICKET_LIMIT;
+		}
+	}
+
+	static int packedLogSize(int[] in, int offset) { return in[offset] >>> 16; }
+	static boolean packedMrXTurn(int[] in, int offset) { return (in[offset] & 1) != 0; }
+	static int packedLocation(int[] in, int offset, int slot) { return in[offset + 1 + slot * 2]; }
+	static int packedTickets(int[] in, int offset, int slot, int ticket) {
+		return (in[offset + 2 + slot * 2] >>> (ticket * TICKET_BITS)) & TICKET_LIMIT;
+	}
+
+	/**
+	 * @return a counter that every move strictly increases, so positions can be processed in
+	 * ply order
+	 */
+	int ply() {
+		return logSize * pieces.length + (mrXTurn ? pieces.length - 1 : Integer.bitCount(played));
+	}
+
+	/**
+	 * Unlike {@link #hashCode()} the key is stable across runs and mixes in the graph, the reveal
+	 * rounds and the number of players, so it can be used to look positions up in persisted
+	 * tables. Detectives are interchangeable: they are mixed in by location rather than colour,
+	 * so positions that only differ in which colour stands where share a key.
+	 *
+	 * @return a 64-bit hash of this position
+	 */
+	public long key() {
+		long h = mix(graph.fingerprint() + reveal.length);
+		for (int round = 0; round < reveal.length; round++) if (reveal[round]) h = mix(h + round);
+		h = mix(h + ((long) logSize << 32 | (long) pieces.length << 1 | (mrXTurn ? 1 : 0)));
+		h = mixSlot(h, 0);
+		// detectives never share a location, so this visits each of them once
+		for (int previous = -1, n = 1; n < pieces.length; n++) {
+			int next = -1;
+			for (int slot = 1; slot < pieces.length; slot++) {
+				if (location[slot] > previous && (next == -1 || location[slot] < location[next]))
+					next = slot;
+			}
+			h = mixSlot(h, next);
+			previous = location[next];
+		}
+		return h;
+	}
+
+	private long mixSlot(long h, int slot) {
+		h = mix(h + ((long) location[slot] << 1 | (played >>> slot & 1)));
+		for (int t = 0; t < TICKETS; t++) h = mix(h + tickets[slot * TICKETS + t]);
+		return h;
+	}
+
+	// the first detective in slot order whose part of the joint move is not blocked right now
+	private Move decodeJoint(long move) {
+		for (int slot = 1; slot < pieces.length; slot++) {
+			int code = jointCode(move, slot);
+			if (code == 0) continue;
+			int to = graph.target(graph.firstEdge(location[slot]) + (code - 1) / TICKETS);
+			if (occupied(to)) continue;
+			return new SingleMove(pieces[slot], graph.nodeId(location[slot]),
+					TICKET_VALUES[(code - 1) % TICKETS], graph.nodeId(to));
+		}
+		throw new IllegalArgumentException("Joint move cannot be made: " + move);
+	}
+
+	@Override public boolean equals(Object o) {
+		if (this == o) return true;
+		if (o == null || getClass() != o.getClass()) return false;
+		PackedState that = (PackedState) o;
+		return graph == that.graph && logSize == that.logSize && mrXTurn == that.mrXTurn &&
+				played == that.played && Arrays.equals(reveal, that.reveal) &&
+				Arrays.equals(pieces, that.pieces) && Arrays.equals(location, that.location) &&
+				Arrays.equals(tickets, that.tickets);
+	}
+	@Override public int hashCode() {
+		return Objects.hash(logSize, mrXTurn, played,
+				Arrays.hashCode(location), Arrays.hashCode(tickets));
+	}
+	@Override public String toString() {
+		var builder = new StringBuilder("PackedState{round=").append(round())
+				.append(mrXTurn ? ", MRX" : ", DETECTIVES");
+		for (int slot = 0; slot < pieces.length; slot++)
+			builder.append(", ").append(pieces[slot]).append('@')
+					.append(graph.nodeId(location[slot]));
+		return builder.append('}').toString();
+	}
+}
@@ -0,0 +1,98 @@
+package uk.ac.bris.cs.scotlandyard.ai;
+
+import java.util.Arrays;
+
+/**
+ * A perfect hash function for a fixed set of 64-bit keys, built with the hash and displace
+ * scheme.
+ * <br>
+ * Keys are first hashed into buckets of about four keys. Buckets are then placed largest first,
+ * each trying displacements until all of its keys land on free slots. Only one displacement per
+ * bucket is stored, so the function takes about one int per four keys. Keys outside the set map
+ * to arbitrary slots, callers have to verify membership themselves. Instances are immutable.
+ */
+final class PerfectHash {
+
+	private static final int KEYS_PER_BUCKET = 4;
+	private static final int MAX_DISPLACEMENT = 1 << 24;
+
+	private final int[] displacements;
+	private final int slots;
+
+	private PerfectHash(int[] displacements, int slots) {
+		this.displacements = displacements;
+		this.slots = slots;
+	}
+
+	/**
+	 * @param keys distinct keys
+	 * @return a perfect hash of the keys with slightly more slots than keys
+	 */
+	static PerfectHash build(long[] keys) {
+		int n = keys.length;
+		int slots = n + n / 64 + 1;
+		int buckets = n / KEYS_PER_BUCKET + 1;
+		// counting sort of the keys by bucket
+		int[] start = new int[buckets + 1];
+		for (long key : keys) start[bucket(key, buckets) + 1]++;
+		for (int b = 0; b < buckets; b++) start[b + 1] += start[b];
+		long[] sorted = new long[n];
+		int[] fill = Arrays.copyOf(start, buckets);
+		for (long key : keys) sorted[fill[bucket(key, buckets)]++] = key;
+
+		Integer[] order = new Integer[buckets];
+		for (int b = 0; b < buckets; b++) order[b] = b;
+		Arrays.sort(order, (a, b) -> (start[b + 1] - start[b]) - (start[a + 1] - start[a]));
+		int[] displacements = new int[buckets];
+		boolean[] taken = new boolean[slots];
+		int[] placed = new int[KEYS_PER_BUCKET * 16];
+		for (int b : order) {
+			int size = start[b + 1] - start[b];
+			if (size == 0) break;
+			if (placed.length < size) placed = new int[size];
+			for (int d = 0; ; d++) {
+				if (d == MAX_DISPLACEMENT)
+					throw new IllegalArgumentException("Keys are not distinct");
+				int count = 0;
+				for (int i = start[b]; i < start[b + 1]; i++) {
+					int slot = slot(sorted[i], d, slots);
+					if (taken[slot]) break;
+					taken[slot] = true;
+					placed[count++] = slot;
+				}
+				if (count == size) {
+					displacements[b] = d;
+					break;
+				}
+				for (int i = 0; i < count; i++) taken[placed[i]] = false;
+			}
+		}
+		return new PerfectHash(displacements, slots);
+	}
+
+	int[] displacements() { return displacements; }
+	int slots() { return slots; }
+
+	/**
+	 * @param key a key of the set
+	 * @return the unique slot of the key
+	 */
+	int slot(long key) {
+		return slot(key, displacements[bucket(key, displacements.length)], slots);
+	}
+
+	static int bucket(long key, int buckets) { return scale(mix(key), buckets); }
+
+	static int slot(long key, int displacement, int slots) {
+		return scale(mix(key ^ 0x5851F42D4C957F2DL ^ displacement * 0x9E3779B97F4A7C15L), slots);
+	}
+
+	// maps the high half of a hash onto [0, n) without a division
+	private static int scale(long hash, int n) { return (int) (((hash >>> 32) * n) >>> 32); }
+
+	private static long mix(long h) {
+		h = (h ^ (h >>> 33)) * 0xFF51AFD7ED558CCDL;
+		h = (h ^ (h >>> 33)) * 0xC4CEB9FE1A85EC53L;
+		return h ^ (h >>> 33);
+	}
+}
@@ -0,0 +1,169 @@
+package uk.ac.bris.cs.scotlandyard.ai;
+
+import java.util.Objects;
+import java.util.SplittableRandom;
+import java.util.stream.IntStream;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.Board;
+import uk.ac.bris.cs.scotlandyard.model.Piece;
+
+/**
+ * Plays complete games from a given position to the end using a {@link PlayoutPolicy}.
+ * <br>
+ * Play-outs run on {@link PackedState}s and preallocated move buffers, so the only allocations
+ * are per batch, not per game or per move. Batches are split across the common fork-join pool
+ * where each worker gets its own {@link SplittableRandom} split from the batch seed, results are
+ * therefore deterministic for a given seed and parallelism.
+ */
+public final class PlayoutEngine {
+
+	/**
+	 * Aggregated results of a batch of play-outs
+	 */
+	public static final class Result {
+		/**
+		 * Number of play-outs
+		 */
+		public final long rollouts;
+		/**
+		 * Number of play-outs won by MrX
+		 */
+		public final long mrXWins;
+		/**
+		 * Total number of moves made across all play-outs
+		 */
+		public final long plies;
+		/**
+		 * Wall time of the batch in nanoseconds
+		 */
+		public final long elapsedNanos;
+		Result(long rollouts, long mrXWins, long plies, long elapsedNanos) {
+			this.rollouts = rollouts;
+			this.mrXWins = mrXWins;
+			this.plies = plies;
+			this.elapsedNanos = elapsedNanos;
+		}
+		/**
+		 * @return Number of play-outs won by the detectives
+		 */
+		public long detectiveWins() { return rollouts - mrXWins; }
+		/**
+		 * @return fraction of play-outs won by MrX
+		 */
+		public double mrXWinRate() { return rollouts == 0 ? 0 : (double) mrXWins / rollouts; }
+		/**
+		 * @return play-out throughput of the batch
+		 */
+		public double rolloutsPerSecond() {
+			return elapsedNanos == 0 ? 0 : rollouts * 1e9 / elapsedNanos;
+		}
+		@Override public String toString() {
+			return String.format("%d rollouts, MrX won %.1f%%, %.1f plies/game, %.0f rollouts/s",
+					rollouts, mrXWinRate() * 100, rollouts == 0 ? 0d : (double) plies / rollouts,
+					rolloutsPerSecond());
+		}
+	}
+
+	private final PlayoutPolicy mrXPolicy;
+	private final PlayoutPolicy detectivePolicy;
+
+	/**
+	 * @param policy the policy used by all players
+	 */
+	public PlayoutEngine(@Nonnull PlayoutPolicy policy) { this(policy, policy); }
+
+	/**
+	 * @param mrXPolicy the policy used by MrX
+	 * @param detectivePolicy the policy used by the detectives
+	 */
+	public PlayoutEngine(@Nonnull PlayoutPolicy mrXPolicy,
+	                     @Nonnull PlayoutPolicy detectivePolicy) {
+		this.mrXPolicy = Objects.requireNonNull(mrXPolicy);
+		this.detectivePolicy = Objects.requireNonNull(detectivePolicy);
+	}
+
+	/**
+	 * Plays the given state to the end, the state is modified in place.
+	 *
+	 * @param state the state to play out
+	 * @param buffer move buffer of at least {@link PackedState#maxMoves()} elements
+	 * @param random the random source
+	 * @return the winner, either {@link PackedState#MRX_WINS} or
+	 * {@link PackedState#DETECTIVES_WIN}
+	 */
+	public int playout(@Nonnull PackedState state, @Nonnull long[] buffer,
+	                   @Nonnull SplittableRandom random) {
+		return playout(state, buffer, random, null);
+	}
+
+	private int playout(PackedState state, long[] buffer, SplittableRandom random, long[] plies) {
+		while (true) {
+			int winner = state.winner();
+			if (winner != PackedState.NONE) return winner;
+			int count = state.generate(buffer);
+			if (count == 0) return state.winnerWhenStuck();
+			var policy = state.isMrXTurn() ? mrXPolicy : detectivePolicy;
+			state.apply(buffer[policy.select(state, buffer, count, random)]);
+			if (plies != null) plies[0]++;
+		}
+	}
+
+	/**
+	 * Plays a batch of games from the given state in parallel.
+	 *
+	 * @param state the start state, not modified
+	 * @param rollouts number of play-outs
+	 * @param seed the random seed
+	 * @return the aggregated result
+	 */
+	@Nonnull public Result run(@Nonnull PackedState state, int rollouts, long seed) {
+		if (rollouts < 0) throw new IllegalArgumentException("Negative rollouts: " + rollouts);
+		int workers = Math.max(1, Math.min(rollouts,
+				Runtime.getRuntime().availableProcessors()));
+		var root = new SplittableRandom(seed);
+		var randoms = new SplittableRandom[workers];
+		for (int i = 0; i < workers; i++) randoms[i] = root.split();
+		long[][] counts = new long[workers][2];
+		long start = System.nanoTime();
+		IntStream.range(0, workers).parallel().forEach(worker -> {
+			var scratch = state.copy();
+			var buffer = new long[state.maxMoves()];
+			var random = randoms[worker];
+			long[] plies = new long[1];
+			int n = rollouts / workers + (worker < rollouts % workers ? 1 : 0);
+			long mrXWins = 0;
+			for (int i = 0; i < n; i++) {
+				scratch.copyFrom(state);
+				if (playout(scratch, buffer, random, plies) == PackedState.MRX_WINS) mrXWins++;
+			}
+			counts[worker][0] = mrXWins;
+			counts[worker][1] = plies[0];
+		});
+		long elapsed = System.nanoTime() - start;
+		long mrXWins = 0, plies = 0;
+		for (long[] c : counts) {
+			mrXWins += c[0];
+			plies += c[1];
+		}
+		return new Result(rollouts, mrXWins, plies, elapsed);
+	}
+
+	/**
+	 * Plays a batch of games from the given board in parallel.
+	 *
+	 * @param board the start board; if the game is already over every play-out ends immediately
+	 * @param mrXLocation MrX's actual location
+	 * @param rollouts number of play-outs
+	 * @param seed the random seed
+	 * @return the aggregated result
+	 */
+	@Nonnull public Result run(@Nonnull Board board, int mrXLocation, int rollouts, long seed) {
+		var winner = board.getWinner();
+		if (!winner.isEmpty())
+			return new Result(rollouts, winner.stream().anyMatch(Piece::isMrX) ? rollouts : 0,
+					0, 0);
+		return run(PackedState.of(board, mrXLocation), rollouts, seed);
+	}
+}
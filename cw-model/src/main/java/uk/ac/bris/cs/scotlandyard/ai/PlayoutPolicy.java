@@ -0,0 +1,70 @@
+package uk.ac.bris.cs.scotlandyard.ai;
+
+import java.util.SplittableRandom;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.graph.CompactGraph;
+
+/**
+ * Picks moves during a random play-out, see {@link PlayoutEngine}.
+ * Implementations must not allocate and must be safe to call from multiple threads.
+ */
+@FunctionalInterface
+public interface PlayoutPolicy {
+
+	/**
+	 * @param state the current state
+	 * @param moves the moves available in the current state, as generated by
+	 * {@link PackedState#generate(long[])}
+	 * @param count number of valid entries in {@code moves}, always &gt; 0
+	 * @param random the random source of the calling thread
+	 * @return the index of the chosen move
+	 */
+	int select(@Nonnull PackedState state, @Nonnull long[] moves, int count,
+	           @Nonnull SplittableRandom random);
+
+	/**
+	 * @return a policy that picks moves uniformly at random
+	 */
+	@Nonnull static PlayoutPolicy uniform() {
+		return (state, moves, count, random) -> random.nextInt(count);
+	}
+
+	/**
+	 * Returns a policy that picks a random move with probability {@code epsilon} and otherwise
+	 * the greedy move: detectives move towards where MrX was last revealed and MrX moves away
+	 * from the nearest detective. Detectives never steer by MrX's actual location, which is the
+	 * hidden truth in MrX's own searches, and move at random before his first reveal. Ties are
+	 * broken at random. Requires a distance table, see {@link CompactGraph#distance(int, int)}.
+	 *
+	 * @param epsilon probability of a random move, between 0 and 1
+	 * @return the epsilon-greedy policy
+	 */
+	@Nonnull static PlayoutPolicy epsilonGreedy(double epsilon) {
+		if (epsilon < 0 || epsilon > 1)
+			throw new IllegalArgumentException("epsilon must be within [0, 1]: " + epsilon);
+		return (state, moves, count, random) -> {
+			if (random.nextDouble() < epsilon) return random.nextInt(count);
+			int target = state.lastRevealedLocation();
+			if (!state.isMrXTurn() && target == -1) return random.nextInt(count);
+			CompactGraph graph = state.graph();
+			int best = 0, bestScore = Integer.MIN_VALUE, ties = 0;
+			for (int i = 0; i < count; i++) {
+				int to = PackedState.destination(moves[i]);
+				int score;
+				if (state.isMrXTurn()) {
+					score = Integer.MAX_VALUE;
+					for (int slot = 1; slot < state.players(); slot++)
+						score = Math.min(score, graph.distance(to, state.location(slot)));
+				} else score = -graph.distance(to, target);
+				if (score > bestScore) {
+					best = i;
+					bestScore = score;
+					ties = 1;
+				} else if (score == bestScore && random.nextInt(++ties) == 0) best = i;
+			}
+			return best;
+		};
+	}
+}
@@ -0,0 +1,366 @@
+package uk.ac.bris.cs.scotlandyard.graph;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.graph.ImmutableValueGraph;
+import com.google.common.graph.MutableValueGraph;
+import com.google.common.graph.ValueGraph;
+import com.google.common.graph.ValueGraphBuilder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.Objects;
+import java.util.stream.IntStream;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.GameSetup;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Transport;
+
+import static uk.ac.bris.cs.scotlandyard.model.Hashing.mix;
+
+/**
+ * An array backed, read-only copy of the ScotlandYard graph in compressed sparse row (CSR) form.
+ * <br>
+ * Nodes are renumbered into a dense index space of {@code 0..nodeCount()-1}, every undirected
+ * edge is stored once for each endpoint and carries a bitmask of {@link Transport} ordinals (see
+ * {@link #mask(Transport)}). Instances are immutable and safe to share between threads.
+ * <br>
+ * Graphs can be saved in a binary form with {@link #write(Path)}, see {@link GraphCompiler}: a
+ * 24 byte header (magic, version, node count, edge count, fingerprint) followed by the node ids,
+ * offsets and targets as little endian {@code int}s and one transport mask byte per edge.
+ * Loading maps the file and copies the arrays in bulk, no parsing involved.
+ */
+public final class CompactGraph {
+
+	static final int MAGIC = 0x53594347; // "SYCG"
+	static final int VERSION = 1;
+	private static final int HEADER_BYTES = 24;
+
+	/**
+	 * Graphs larger than this will not have an all-pairs distance table computed for them; the
+	 * table takes two bytes per pair of nodes, 32 MiB at this size
+	 */
+	public static final int MAX_DISTANCE_TABLE_NODES = 1 << 12;
+
+	private static final LoadingCache<GameSetup, CompactGraph> CACHE = CacheBuilder.newBuilder()
+			.weakKeys()
+			.build(CacheLoader.from(setup -> of(setup.graph)));
+
+	private final int[] nodes;
+	private final int[] offsets;
+	private final int[] targets;
+	private final byte[] transports;
+	private final int[] index;
+	private final long fingerprint;
+	private volatile short[] distances;
+
+	CompactGraph(@Nonnull int[] nodes, @Nonnull int[] offsets,
+	             @Nonnull int[] targets, @Nonnull byte[] transports) {
+		this.nodes = Objects.requireNonNull(nodes);
+		this.offsets = Objects.requireNonNull(offsets);
+		this.targets = Objects.requireNonNull(targets);
+		this.transports = Objects.requireNonNull(transports);
+		if (offsets.length != nodes.length + 1 || offsets[0] != 0
+				|| offsets[nodes.length] != targets.length
+				|| targets.length != transports.length)
+			throw new IllegalArgumentException("Inconsistent CSR arrays");
+		int max = -1;
+		for (int node : nodes) {
+			if (node < 0) throw new IllegalArgumentException("Negative node " + node);
+			max = Math.max(max, node);
+		}
+		this.index = new int[max + 1];
+		Arrays.fill(index, -1);
+		for (int i = 0; i < nodes.length; i++) {
+			if (index[nodes[i]] != -1)
+				throw new IllegalArgumentException("Duplicate node " + nodes[i]);
+			index[nodes[i]] = i;
+		}
+		for (int i = 0; i < nodes.length; i++) {
+			if (offsets[i] > offsets[i + 1])
+				throw new IllegalArgumentException("Offsets not ascending at " + i);
+		}
+		for (int target : targets) {
+			if (target < 0 || target >= nodes.length)
+				throw new IllegalArgumentException("Edge target out of range: " + target);
+		}
+		long h = nodes.length;
+		for (int node : nodes) h = mix(h + node);
+		for (int i = 0; i < targets.length; i++) h = mix(h + (targets[i] << 8 | transports[i]));
+		this.fingerprint = h;
+	}
+
+
+	/**
+	 * @param setup the game setup
+	 * @return the compact graph of the setup's graph; instances are cached per setup instance, see
+	 * {@link GameSetup#intern()}
+	 */
+	@Nonnull public static CompactGraph of(@Nonnull GameSetup setup) {
+		return CACHE.getUnchecked(Objects.requireNonNull(setup));
+	}
+
+	/**
+	 * @param graph the graph to copy; nodes must be non-negative
+	 * @return a compact copy of the given graph with nodes indexed in ascending order
+	 */
+	@Nonnull public static CompactGraph of(
+			@Nonnull ValueGraph<Integer, ImmutableSet<Transport>> graph) {
+		int[] nodes = graph.nodes().stream().mapToInt(Integer::intValue).sorted().toArray();
+		int[] lookup = new int[nodes.length == 0 ? 0 : nodes[nodes.length - 1] + 1];
+		for (int i = 0; i < nodes.length; i++) {
+			if (nodes[i] < 0) throw new IllegalArgumentException("Negative node " + nodes[i]);
+			lookup[nodes[i]] = i;
+		}
+		int[] offsets = new int[nodes.length + 1];
+		for (int i = 0; i < nodes.length; i++)
+			offsets[i + 1] = offsets[i] + graph.adjacentNodes(nodes[i]).size();
+		int[] targets = new int[offsets[nodes.length]];
+		byte[] transports = new byte[targets.length];
+		for (int i = 0; i < nodes.length; i++) {
+			int[] adjacent = graph.adjacentNodes(nodes[i]).stream()
+					.mapToInt(Integer::intValue).sorted().toArray();
+			for (int j = 0; j < adjacent.length; j++) {
+				targets[offsets[i] + j] = lookup[adjacent[j]];
+				transports[offsets[i] + j] = (byte) mask(graph
+						.edgeValueOrDefault(nodes[i], adjacent[j], ImmutableSet.of()));
+			}
+		}
+		return new CompactGraph(nodes, offsets, targets, transports);
+	}
+
+	/**
+	 * @param file a graph written by {@link #write(Path)}
+	 * @return the memory mapped graph
+	 * @throws IOException if the file cannot be read
+	 * @throws IllegalArgumentException if the file is not a valid graph
+	 */
+	@Nonnull public static CompactGraph load(@Nonnull Path file) throws IOException {
+		try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			return read(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+		}
+	}
+
+	/**
+	 * @param buffer the content of a file written by {@link #write(Path)}, from its position
+	 * @return the graph
+	 * @throws IllegalArgumentException if the buffer does not hold a valid graph
+	 */
+	@Nonnull public static CompactGraph read(@Nonnull ByteBuffer buffer) {
+		ByteBuffer in = buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+		if (in.remaining() < HEADER_BYTES || in.getInt() != MAGIC)
+			throw new IllegalArgumentException("Not a compact graph");
+		int version = in.getInt();
+		if (version != VERSION)
+			throw new IllegalArgumentException("Unsupported graph version " + version);
+		int nodeCount = in.getInt(), edgeCount = in.getInt();
+		long fingerprint = in.getLong();
+		if (nodeCount < 0 || edgeCount < 0 || in.remaining()
+				!= ((long) nodeCount * 2 + 1 + edgeCount) * Integer.BYTES + edgeCount)
+			throw new IllegalArgumentException("Truncated or corrupt compact graph");
+		int[] nodes = new int[nodeCount], offsets = new int[nodeCount + 1];
+		int[] targets = new int[edgeCount];
+		byte[] transports = new byte[edgeCount];
+		var ints = in.asIntBuffer();
+		ints.get(nodes).get(offsets).get(targets);
+		in.position(in.position() + ints.position() * Integer.BYTES).get(transports);
+		var graph = new CompactGraph(nodes, offsets, targets, transports);
+		if (graph.fingerprint != fingerprint)
+			throw new IllegalArgumentException("Fingerprint mismatch, corrupt compact graph");
+		return graph;
+	}
+
+	/**
+	 * Writes this graph in binary form, replacing the file if it exists.
+	 *
+	 * @param file the file
+	 * @throws IOException if the file cannot be written
+	 */
+	public void write(@Nonnull Path file) throws IOException {
+		var buffer = ByteBuffer.allocate(HEADER_BYTES
+				+ (nodes.length + offsets.length + targets.length) * Integer.BYTES
+				+ transports.length).order(ByteOrder.LITTLE_ENDIAN)
+				.putInt(MAGIC).putInt(VERSION).putInt(nodes.length).putInt(targets.length)
+				.putLong(fingerprint);
+		var ints = buffer.asIntBuffer();
+		ints.put(nodes).put(offsets).put(targets);
+		buffer.position(buffer.position() + ints.position() * Integer.BYTES).put(transports);
+		buffer.flip();
+		try (var channel = FileChannel.open(Objects.requireNonNull(file),
+				StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+				StandardOpenOption.WRITE)) {
+			while (buffer.hasRemaining()) channel.write(buffer);
+		}
+	}
+
+	/**
+	 * @param transport the transport
+	 * @return the bit representing the given transport in an edge mask
+	 */
+	public static int mask(@Nonnull Transport transport) { return 1 << transport.ordinal(); }
+
+	/**
+	 * @param transports the transports
+	 * @return the edge mask containing all the given transports
+	 */
+	public static int mask(@Nonnull Iterable<Transport> transports) {
+		int mask = 0;
+		for (Transport t : transports) mask |= mask(t);
+		return mask;
+	}
+
+	/**
+	 * @param mask an edge mask
+	 * @return the transports contained in the given mask
+	 */
+	@Nonnull public static ImmutableSet<Transport> transportsOf(int mask) {
+		var set = EnumSet.noneOf(Transport.class);
+		for (Transport t : Transport.values())
+			if ((mask & mask(t)) != 0) set.add(t);
+		return ImmutableSet.copyOf(set);
+	}
+
+	/**
+	 * @param ticket the ticket
+	 * @return the edge mask of all transports that can be travelled with the given ticket; secret
+	 * tickets can travel on any transport
+	 */
+	public static int ticketMask(@Nonnull Ticket ticket) {
+		if (ticket == Ticket.SECRET) return (1 << Transport.values().length) - 1;
+		int mask = 0;
+		for (Transport t : Transport.values())
+			if (t.requiredTicket() == ticket) mask |= mask(t);
+		return mask;
+	}
+
+	/**
+	 * @return number of nodes
+	 */
+	public int nodeCount() { return nodes.length; }
+	/**
+	 * @return number of directed adjacency entries, twice the number of undirected edges
+	 */
+	public int edgeCount() { return targets.length; }
+	/**
+	 * @return a 64-bit hash of the nodes and edges of this graph, equal graphs have equal
+	 * fingerprints across runs so it can identify the graph in persisted data
+	 */
+	public long fingerprint() { return fingerprint; }
+
+	/**
+	 * @param index the node index
+	 * @return the node id (i.e the station number) at the given index
+	 */
+	public int nodeId(int index) { return nodes[index]; }
+	/**
+	 * @param node the node id
+	 * @return the index of the given node; -1 if the node is not part of the graph
+	 */
+	public int indexOf(int node) { return node >= 0 && node < index.length ? index[node] : -1; }
+	/**
+	 * @param index the node index
+	 * @return the first edge of the given node
+	 */
+	public int firstEdge(int index) { return offsets[index]; }
+	/**
+	 * @param index the node index
+	 * @return one past the last edge of the given node
+	 */
+	public int endEdge(int index) { return offsets[index + 1]; }
+	/**
+	 * @param index the node index
+	 * @return number of adjacent nodes
+	 */
+	public int degree(int index) { return offsets[index + 1] - offsets[index]; }
+	/**
+	 * @return the largest degree of all nodes
+	 */
+	public int maxDegree() {
+		int max = 0;
+		for (int i = 0; i < nodes.length; i++) max = Math.max(max, degree(i));
+		return max;
+	}
+	/**
+	 * @param edge the edge
+	 * @return the node index the edge points to
+	 */
+	public int target(int edge) { return targets[edge]; }
+	/**
+	 * @param edge the edge
+	 * @return the transport mask of the edge
+	 */
+	public int transports(int edge) { return transports[edge]; }
+
+	/**
+	 * Returns the number of hops between two nodes ignoring transport types, the all-pairs table is
+	 * computed on first use.
+	 *
+	 * @param from the source node index
+	 * @param to the destination node index
+	 * @return the distance; {@link Short#MAX_VALUE} if unreachable
+	 * @throws IllegalStateException if the graph is larger than {@link #MAX_DISTANCE_TABLE_NODES}
+	 */
+	public int distance(int from, int to) { return distances()[from * nodes.length + to]; }
+
+	private short[] distances() {
+		short[] table = distances;
+		if (table == null) {
+			synchronized (this) {
+				table = distances;
+				if (table == null) distances = table = computeDistances();
+			}
+		}
+		return table;
+	}
+
+	private short[] computeDistances() {
+		int n = nodes.length;
+		if (n > MAX_DISTANCE_TABLE_NODES)
+			throw new IllegalStateException("Graph too large for a distance table: " + n);
+		short[] table = new short[n * n];
+		Arrays.fill(table, Short.MAX_VALUE);
+		IntStream.range(0, n).parallel().forEach(source -> {
+			int row = source * n;
+			table[row + source] = 0;
+			int[] queue = new int[n];
+			int head = 0, tail = 0;
+			queue[tail++] = source;
+			while (head < tail) {
+				int node = queue[head++];
+				for (int e = offsets[node]; e < offsets[node + 1]; e++) {
+					int next = targets[e];
+					if (table[row + next] != Short.MAX_VALUE) continue;
+					table[row + next] = (short) (table[row + node] + 1);
+					queue[tail++] = next;
+				}
+			}
+		});
+		return table;
+	}
+
+	/**
+	 * @return a Guava graph equal to the one this instance was created from
+	 */
+	@Nonnull public ImmutableValueGraph<Integer, ImmutableSet<Transport>> toValueGraph() {
+		MutableValueGraph<Integer, ImmutableSet<Transport>> graph =
+				ValueGraphBuilder.undirected().expectedNodeCount(nodes.length).build();
+		for (int node : nodes) graph.addNode(node);
+		for (int i = 0; i < nodes.length; i++) {
+			for (int e = offsets[i]; e < offsets[i + 1]; e++) {
+				if (targets[e] < i) continue;
+				graph.putEdgeValue(nodes[i], nodes[targets[e]], transportsOf(transports[e]));
+			}
+		}
+		return ImmutableValueGraph.copyOf(graph);
+	}
+}
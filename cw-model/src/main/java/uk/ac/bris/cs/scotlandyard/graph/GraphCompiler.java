@@ -0,0 +1,79 @@
+package uk.ac.bris.cs.scotlandyard.graph;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.Objects;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard;
+
+/**
+ * Compiles graphs from the text format read by {@link ScotlandYard#readGraph(String)} into the
+ * binary form loaded by {@link CompactGraph#load(Path)}, so the text only has to be parsed once.
+ */
+public final class GraphCompiler {
+
+	private static final long REPORT_INTERVAL = 1 << 26;
+
+	private GraphCompiler() {}
+
+	/**
+	 * @param content the graph in text format
+	 * @return the compact graph
+	 */
+	@Nonnull public static CompactGraph compile(@Nonnull String content) {
+		return CompactGraph.of(ScotlandYard.readGraph(Objects.requireNonNull(content)));
+	}
+
+	/**
+	 * @param text the graph file in text format
+	 * @param binary the file to write the compiled graph to
+	 * @return the compact graph
+	 * @throws IOException if either file cannot be accessed
+	 */
+	@Nonnull public static CompactGraph compile(@Nonnull Path text, @Nonnull Path binary)
+			throws IOException {
+		return compile(text, binary, null);
+	}
+
+	/**
+	 * Compiles a graph file with the {@link GraphParser}, which streams the text instead of
+	 * reading it whole.
+	 *
+	 * @param text the graph file in text format
+	 * @param binary the file to write the compiled graph to
+	 * @param listener receives progress reports about every 64 MiB, may be null
+	 * @return the compact graph
+	 * @throws IOException if either file cannot be accessed
+	 */
+	@Nonnull public static CompactGraph compile(@Nonnull Path text, @Nonnull Path binary,
+	                                            @Nullable GraphParser.Listener listener)
+			throws IOException {
+		CompactGraph graph;
+		try (var in = FileChannel.open(text)) {
+			graph = GraphParser.parse(in, listener, REPORT_INTERVAL);
+		}
+		graph.write(binary);
+		return graph;
+	}
+
+	/**
+	 * Compiles a graph file.
+	 *
+	 * @param args the text file and the binary file to write
+	 * @throws IOException if either file cannot be accessed
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length != 2) {
+			System.err.println("Usage: GraphCompiler <graph.txt> <graph.bin>");
+			System.exit(1);
+		}
+		CompactGraph graph = compile(Path.of(args[0]), Path.of(args[1]),
+				System.out::println);
+		System.out.printf("Compiled %d nodes and %d edges into %s%n",
+				graph.nodeCount(), graph.edgeCount() / 2, args[1]);
+	}
+}
@@ -0,0 +1,317 @@
+package uk.ac.bris.cs.scotlandyard.graph;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Objects;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Transport;
+
+/**
+ * Parses the text graph format of {@link ScotlandYard#readGraph(String)} straight into a
+ * {@link CompactGraph}, for maps too large to hold as a string or a Guava graph.
+ * <br>
+ * Input is read through a fixed 64 KiB buffer and tokenized byte by byte in a single pass; the
+ * only other memory used is proportional to the node and edge counts announced on the first
+ * line. Tokens may be separated by any whitespace. Unlike {@code readGraph}, edges must only
+ * connect declared nodes. The result is identical to compacting the graph returned by
+ * {@code readGraph}, including its fingerprint. Graphs are limited to 2^27 nodes.
+ */
+public final class GraphParser {
+
+	/**
+	 * Receives progress reports while parsing
+	 */
+	@FunctionalInterface
+	public interface Listener {
+		/**
+		 * @param progress the progress so far
+		 */
+		void onProgress(@Nonnull Progress progress);
+	}
+
+	/**
+	 * Progress of a parse
+	 */
+	public static final class Progress {
+		private final long bytes;
+		private final long edges;
+		private final long totalEdges;
+		private final long nanos;
+		private Progress(long bytes, long edges, long totalEdges, long nanos) {
+			this.bytes = bytes;
+			this.edges = edges;
+			this.totalEdges = totalEdges;
+			this.nanos = nanos;
+		}
+		/**
+		 * @return bytes read so far
+		 */
+		public long bytes() { return bytes; }
+		/**
+		 * @return edge lines read so far
+		 */
+		public long edges() { return edges; }
+		/**
+		 * @return edge lines announced by the header
+		 */
+		public long totalEdges() { return totalEdges; }
+		/**
+		 * @return time spent so far in nanoseconds
+		 */
+		public long nanos() { return nanos; }
+		/**
+		 * @return bytes read per second
+		 */
+		public double throughput() { return nanos == 0 ? 0 : bytes * 1e9 / nanos; }
+		@Override public String toString() {
+			return String.format(Locale.ENGLISH, "%d/%d edges, %.1f MB at %.1f MB/s",
+					edges, totalEdges, bytes / 1e6, throughput() / 1e6);
+		}
+	}
+
+	private static final int BUFFER_BYTES = 1 << 16;
+	private static final int MAX_NODES = 1 << 27;
+	private static final byte[][] TRANSPORTS = Arrays.stream(Transport.values())
+			.map(t -> t.name().getBytes(StandardCharsets.US_ASCII))
+			.toArray(byte[][]::new);
+
+	private final ReadableByteChannel in;
+	private final Listener listener;
+	private final long interval;
+	private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_BYTES);
+	private final byte[] word = new byte[16];
+	private final long start = System.nanoTime();
+	private long bytes;
+	private long nextReport;
+	private long edges;
+	private long totalEdges;
+	private boolean eof;
+
+	private GraphParser(ReadableByteChannel in, Listener listener, long interval) {
+		this.in = in;
+		this.listener = listener;
+		this.interval = interval;
+		this.nextReport = interval;
+		buffer.flip();
+	}
+
+	/**
+	 * @param in the channel to read from; not closed
+	 * @return the parsed graph
+	 * @throws IOException if reading fails
+	 * @throws IllegalArgumentException if the input is malformed
+	 */
+	@Nonnull public static CompactGraph parse(@Nonnull ReadableByteChannel in) throws IOException {
+		return parse(in, null, Long.MAX_VALUE);
+	}
+
+	/**
+	 * @param in the channel to read from; not closed
+	 * @param listener receives progress reports, the last one when parsing is complete
+	 * @param interval the number of bytes between progress reports
+	 * @return the parsed graph
+	 * @throws IOException if reading fails
+	 * @throws IllegalArgumentException if the input is malformed
+	 */
+	@Nonnull public static CompactGraph parse(@Nonnull ReadableByteChannel in,
+	                                          @Nullable Listener listener,
+	                                          long interval) throws IOException {
+		if (interval < 1) throw new IllegalArgumentException("Interval must be > 0");
+		return new GraphParser(Objects.requireNonNull(in), listener, interval).parse();
+	}
+
+	/**
+	 * @param in the stream to read from; not closed
+	 * @param listener receives progress reports, the last one when parsing is complete
+	 * @param interval the number of bytes between progress reports
+	 * @return the parsed graph
+	 * @throws IOException if reading fails
+	 * @throws IllegalArgumentException if the input is malformed
+	 */
+	@Nonnull public static CompactGraph parse(@Nonnull InputStream in,
+	                                          @Nullable Listener listener,
+	                                          long interval) throws IOException {
+		return parse(Channels.newChannel(in), listener, interval);
+	}
+
+	private CompactGraph parse() throws IOException {
+		int nodeCount = readInt();
+		int edgeCount = readInt();
+		if (nodeCount < 0 || nodeCount > MAX_NODES || edgeCount < 0)
+			throw new IllegalArgumentException("Bad header: " + nodeCount + " " + edgeCount);
+		totalEdges = edgeCount;
+		int[] nodes = new int[nodeCount];
+		for (int i = 0; i < nodeCount; i++) {
+			nodes[i] = readInt();
+			if (nodes[i] < 0) throw new IllegalArgumentException("Negative node " + nodes[i]);
+		}
+		Arrays.sort(nodes);
+		var lookup = new NodeLookup(nodes);
+
+		int[] from = new int[edgeCount], to = new int[edgeCount];
+		byte[] masks = new byte[edgeCount];
+		for (int i = 0; i < edgeCount; i++) {
+			int a = lookup.indexOf(readInt()), b = lookup.indexOf(readInt());
+			if (a == b) throw new IllegalArgumentException("Self loop at " + nodes[a]);
+			from[i] = a;
+			to[i] = b;
+			masks[i] = (byte) CompactGraph.mask(readTransport());
+			edges++;
+		}
+		skipWhitespace();
+		if (hasByte()) throw new IllegalArgumentException("Trailing content after edges");
+		report();
+		return compact(nodes, from, to, masks, edgeCount);
+	}
+
+	/**
+	 * Builds a compact graph from an edge list, merging repeated edges.
+	 *
+	 * @param nodes the node ids in ascending order
+	 * @param from the index of one end of every edge
+	 * @param to the index of the other end of every edge
+	 * @param masks the transport mask of every edge
+	 * @param count the number of edges in the arrays
+	 * @return the compact graph
+	 */
+	static CompactGraph compact(int[] nodes, int[] from, int[] to, byte[] masks, int count) {
+		int n = nodes.length;
+		int[] offsets = new int[n + 1];
+		for (int i = 0; i < count; i++) {
+			offsets[from[i] + 1]++;
+			offsets[to[i] + 1]++;
+		}
+		for (int i = 0; i < n; i++) offsets[i + 1] += offsets[i];
+		// adjacency entries pack the target index above the four transport bits
+		int[] adjacency = new int[offsets[n]];
+		int[] fill = Arrays.copyOf(offsets, n);
+		for (int i = 0; i < count; i++) {
+			adjacency[fill[from[i]]++] = to[i] << 4 | masks[i];
+			adjacency[fill[to[i]]++] = from[i] << 4 | masks[i];
+		}
+		// sort every adjacency list and merge repeated edges in place
+		int size = 0;
+		int[] merged = new int[n + 1];
+		for (int i = 0; i < n; i++) {
+			Arrays.sort(adjacency, offsets[i], offsets[i + 1]);
+			merged[i] = size;
+			for (int e = offsets[i]; e < offsets[i + 1]; e++) {
+				int entry = adjacency[e];
+				if (size > merged[i] && adjacency[size - 1] >>> 4 == entry >>> 4)
+					adjacency[size - 1] |= entry & 0xF;
+				else adjacency[size++] = entry;
+			}
+		}
+		merged[n] = size;
+		int[] targets = new int[size];
+		byte[] transports = new byte[size];
+		for (int e = 0; e < size; e++) {
+			targets[e] = adjacency[e] >>> 4;
+			transports[e] = (byte) (adjacency[e] & 0xF);
+		}
+		return new CompactGraph(nodes, merged, targets, transports);
+	}
+
+	private static final class NodeLookup {
+		final int[] nodes;
+		final int[] direct;
+		NodeLookup(int[] nodes) {
+			this.nodes = nodes;
+			for (int i = 1; i < nodes.length; i++)
+				if (nodes[i] == nodes[i - 1])
+					throw new IllegalArgumentException("Duplicate node " + nodes[i]);
+			int max = nodes.length == 0 ? -1 : nodes[nodes.length - 1];
+			// dense ids get a direct table, sparse ones are searched
+			if (max < 8L * nodes.length + 1024) {
+				direct = new int[max + 1];
+				Arrays.fill(direct, -1);
+				for (int i = 0; i < nodes.length; i++) direct[nodes[i]] = i;
+			} else direct = null;
+		}
+		int indexOf(int node) {
+			int index = direct != null
+					? (node >= 0 && node < direct.length ? direct[node] : -1)
+					: Math.max(-1, Arrays.binarySearch(nodes, node));
+			if (index < 0) throw new IllegalArgumentException("Unknown node " + node);
+			return index;
+		}
+	}
+
+	private boolean hasByte() throws IOException {
+		while (!buffer.hasRemaining() && !eof) {
+			buffer.clear();
+			int read = in.read(buffer);
+			buffer.flip();
+			if (read < 0) eof = true;
+			else {
+				bytes += read;
+				if (bytes >= nextReport) {
+					report();
+					nextReport = bytes + interval;
+				}
+			}
+		}
+		return buffer.hasRemaining();
+	}
+
+	private void report() {
+		if (listener != null)
+			listener.onProgress(new Progress(bytes, edges, totalEdges, System.nanoTime() - start));
+	}
+
+	private static boolean isWhitespace(byte b) {
+		return b == ' ' || b == '\n' || b == '\r' || b == '\t';
+	}
+
+	private void skipWhitespace() throws IOException {
+		while (hasByte() && isWhitespace(buffer.get(buffer.position())))
+			buffer.position(buffer.position() + 1);
+	}
+
+	private int readInt() throws IOException {
+		skipWhitespace();
+		if (!hasByte()) throw new IllegalArgumentException("Unexpected end of input");
+		boolean negative = buffer.get(buffer.position()) == '-';
+		if (negative) buffer.get();
+		long value = 0;
+		int digits = 0;
+		while (hasByte() && !isWhitespace(buffer.get(buffer.position()))) {
+			int digit = buffer.get() - '0';
+			if (digit < 0 || digit > 9 || ++digits > 10)
+				throw new IllegalArgumentException("Bad number after byte " + offset());
+			value = value * 10 + digit;
+		}
+		if (digits == 0) throw new IllegalArgumentException("Bad number after byte " + offset());
+		value = negative ? -value : value;
+		if (value != (int) value)
+			throw new IllegalArgumentException("Number out of range after byte " + offset());
+		return (int) value;
+	}
+
+	private Transport readTransport() throws IOException {
+		skipWhitespace();
+		int length = 0;
+		while (hasByte() && !isWhitespace(buffer.get(buffer.position()))) {
+			byte b = buffer.get();
+			if (length == word.length)
+				throw new IllegalArgumentException("Bad transport after byte " + offset());
+			word[length++] = (byte) (b >= 'a' && b <= 'z' ? b - ('a' - 'A') : b);
+		}
+		for (int t = 0; t < TRANSPORTS.length; t++)
+			if (Arrays.equals(word, 0, length, TRANSPORTS[t], 0, TRANSPORTS[t].length))
+				return Transport.values()[t];
+		throw new IllegalArgumentException("Bad transport after byte " + offset());
+	}
+
+	private long offset() { return bytes - buffer.remaining(); }
+}
@@ -0,0 +1,201 @@
+package uk.ac.bris.cs.scotlandyard.graph;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.stream.IntStream;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.GameSetup;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Transport;
+
+/**
+ * Structural properties of every node of a {@link CompactGraph}, indexed by node index.
+ * <br>
+ * Features are computed once in parallel and kept in primitive arrays, so reading one is a
+ * single array access. Betweenness centrality ignores transport types and is computed with
+ * Brandes' algorithm, one breadth first search per source node, and each worker reuses its
+ * scratch arrays across the sources it is given. Instances are immutable and safe
+ * to share between threads.
+ */
+public final class NodeFeatures {
+
+	private static final int TRANSPORTS = Transport.values().length;
+	private static final int CHUNKS = 4 * Runtime.getRuntime().availableProcessors();
+	private static final int HUB_MASK =
+			CompactGraph.mask(Transport.UNDERGROUND) | CompactGraph.mask(Transport.FERRY);
+
+	private static final LoadingCache<GameSetup, NodeFeatures> CACHE = CacheBuilder.newBuilder()
+			.weakKeys()
+			.build(CacheLoader.from(setup -> of(CompactGraph.of(setup))));
+
+	private final CompactGraph graph;
+	private final int[] transportDegrees;
+	private final int[] transportMasks;
+	private final int[] twoHopReach;
+	private final double[] betweenness;
+
+	private NodeFeatures(CompactGraph graph) {
+		this.graph = graph;
+		int n = graph.nodeCount();
+		this.transportDegrees = new int[n * TRANSPORTS];
+		this.transportMasks = new int[n];
+		this.twoHopReach = new int[n];
+		// one stamp array per chunk of nodes, a node marks what it has seen with its own index
+		int chunk = Math.max(1, (n + CHUNKS - 1) / CHUNKS);
+		IntStream.range(0, (n + chunk - 1) / chunk).parallel().forEach(c -> {
+			int[] seen = new int[n];
+			Arrays.fill(seen, -1);
+			for (int node = c * chunk; node < Math.min(n, (c + 1) * chunk); node++) {
+				seen[node] = node;
+				int reach = 0;
+				for (int e = graph.firstEdge(node); e < graph.endEdge(node); e++) {
+					int mask = graph.transports(e);
+					transportMasks[node] |= mask;
+					for (int t = 0; t < TRANSPORTS; t++)
+						if ((mask & (1 << t)) != 0) transportDegrees[node * TRANSPORTS + t]++;
+					int next = graph.target(e);
+					if (seen[next] != node) {
+						seen[next] = node;
+						reach++;
+					}
+					for (int f = graph.firstEdge(next); f < graph.endEdge(next); f++) {
+						if (seen[graph.target(f)] == node) continue;
+						seen[graph.target(f)] = node;
+						reach++;
+					}
+				}
+				twoHopReach[node] = reach;
+			}
+		});
+		this.betweenness = betweenness(graph);
+	}
+
+	/**
+	 * @param setup the game setup
+	 * @return the features of the setup's graph; instances are cached per setup instance
+	 */
+	@Nonnull public static NodeFeatures of(@Nonnull GameSetup setup) {
+		return CACHE.getUnchecked(Objects.requireNonNull(setup));
+	}
+
+	/**
+	 * @param graph the graph
+	 * @return the features of the given graph, computed anew
+	 */
+	@Nonnull public static NodeFeatures of(@Nonnull CompactGraph graph) {
+		return new NodeFeatures(Objects.requireNonNull(graph));
+	}
+
+	private static double[] betweenness(CompactGraph graph) {
+		int n = graph.nodeCount();
+		// each container is filled by one worker at a time, so its scratch arrays are reused for
+		// every source of the split without allocating
+		double[] total = IntStream.range(0, n).parallel().collect(
+				() -> new Brandes(n),
+				(brandes, source) -> brandes.accumulate(graph, source),
+				(a, b) -> {
+					for (int i = 0; i < n; i++) a.sum[i] += b.sum[i];
+				}).sum;
+		// every pair is counted from both ends, then normalise to [0, 1]
+		double pairs = n > 2 ? (double) (n - 1) * (n - 2) : 1;
+		for (int i = 0; i < n; i++) total[i] /= pairs;
+		return total;
+	}
+
+	// Brandes' dependency accumulation on an unweighted graph, with scratch arrays that are reset
+	// only where the last search touched them
+	private static final class Brandes {
+		final double[] sum;
+		final int[] distance;
+		final long[] paths;
+		final int[] order;
+		final double[] dependency;
+
+		Brandes(int n) {
+			this.sum = new double[n];
+			this.distance = new int[n];
+			this.paths = new long[n];
+			this.order = new int[n];
+			this.dependency = new double[n];
+			Arrays.fill(distance, -1);
+		}
+
+		void accumulate(CompactGraph graph, int source) {
+			distance[source] = 0;
+			paths[source] = 1;
+			int head = 0, tail = 0;
+			order[tail++] = source;
+			while (head < tail) {
+				int v = order[head++];
+				for (int e = graph.firstEdge(v); e < graph.endEdge(v); e++) {
+					int w = graph.target(e);
+					if (distance[w] < 0) {
+						distance[w] = distance[v] + 1;
+						order[tail++] = w;
+					}
+					if (distance[w] == distance[v] + 1) paths[w] += paths[v];
+				}
+			}
+			// nodes in order of non-increasing distance
+			for (int i = tail - 1; i > 0; i--) {
+				int w = order[i];
+				for (int e = graph.firstEdge(w); e < graph.endEdge(w); e++) {
+					int v = graph.target(e);
+					if (distance[v] == distance[w] - 1)
+						dependency[v] += (double) paths[v] / paths[w] * (1 + dependency[w]);
+				}
+				sum[w] += dependency[w];
+			}
+			for (int i = 0; i < tail; i++) {
+				int v = order[i];
+				distance[v] = -1;
+				paths[v] = 0;
+				dependency[v] = 0;
+			}
+		}
+	}
+
+	/**
+	 * @return the graph these features describe
+	 */
+	@Nonnull public CompactGraph graph() { return graph; }
+
+	/**
+	 * @param index the node index
+	 * @param transport the transport
+	 * @return number of neighbours reachable with the given transport
+	 */
+	public int transportDegree(int index, @Nonnull Transport transport) {
+		return transportDegrees[index * TRANSPORTS + transport.ordinal()];
+	}
+
+	/**
+	 * @param index the node index
+	 * @return mask of every transport serving the node, see {@link CompactGraph#mask(Transport)}
+	 */
+	public int transportMask(int index) { return transportMasks[index]; }
+
+	/**
+	 * @param index the node index
+	 * @return whether the node is served by the underground or a ferry
+	 */
+	public boolean isHub(int index) { return (transportMasks[index] & HUB_MASK) != 0; }
+
+	/**
+	 * @param index the node index
+	 * @return number of other nodes within two hops, regardless of transport
+	 */
+	public int twoHopReach(int index) { return twoHopReach[index]; }
+
+	/**
+	 * @param index the node index
+	 * @return the share of shortest paths between other nodes passing through the node, from 0
+	 * to 1
+	 */
+	public double betweenness(int index) { return betweenness[index]; }
+}
@@ -0,0 +1,313 @@
+package uk.ac.bris.cs.scotlandyard.graph;
+
+import com.google.common.collect.ImmutableList;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.GameSetup;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Transport;
+
+/**
+ * A generated Scotland Yard style map, for measuring how engines and AIs scale with the size of
+ * the board.
+ * <br>
+ * Nodes are numbered from 1 and laid out on a jittered grid. Taxis form a planar mesh over
+ * neighbouring nodes with the occasional diagonal and always connect the whole map; buses link
+ * every other node of every other row, the underground every fourth, and a line of ferries crosses
+ * the middle. The proportions follow the standard map. Generation is deterministic for a given
+ * size and seed and takes linear time, so maps of a million nodes take about a second.
+ */
+public final class SyntheticMap {
+
+	/**
+	 * The smallest map that can be generated
+	 */
+	public static final int MIN_NODES = 100;
+
+	private static final int SPACING = 40;
+	private static final int JITTER = 10;
+	private static final int DETECTIVE_STARTS = 14;
+	private static final int MRX_STARTS = 12;
+	private static final String[] TRANSPORT_NAMES = Arrays.stream(Transport.values())
+			.map(t -> t.name().charAt(0) + t.name().substring(1).toLowerCase(Locale.ENGLISH))
+			.toArray(String[]::new);
+
+	private final int nodes;
+	private final int[] xs;
+	private final int[] ys;
+	private final int[] from;
+	private final int[] to;
+	private final byte[] masks;
+	private final int edges;
+	private final CompactGraph graph;
+	private final ImmutableList<Integer> detectiveLocations;
+	private final ImmutableList<Integer> mrXLocations;
+
+	private SyntheticMap(Builder builder, ImmutableList<Integer> detectiveLocations,
+	                     ImmutableList<Integer> mrXLocations) {
+		this.nodes = builder.nodes;
+		this.xs = builder.xs;
+		this.ys = builder.ys;
+		this.from = builder.from;
+		this.to = builder.to;
+		this.masks = builder.masks;
+		this.edges = builder.edges;
+		int[] ids = new int[nodes];
+		Arrays.setAll(ids, i -> i + 1);
+		this.graph = GraphParser.compact(ids, from, to, masks, edges);
+		this.detectiveLocations = detectiveLocations;
+		this.mrXLocations = mrXLocations;
+	}
+
+	/**
+	 * @param nodes the number of nodes, at least {@link #MIN_NODES}
+	 * @param seed the random seed
+	 * @return the generated map
+	 */
+	@Nonnull public static SyntheticMap generate(int nodes, long seed) {
+		if (nodes < MIN_NODES)
+			throw new IllegalArgumentException("Maps need at least " + MIN_NODES + " nodes");
+		var random = new Random(seed);
+		int columns = (int) Math.ceil(Math.sqrt(nodes * 4 / 3.0));
+		int rows = (nodes + columns - 1) / columns;
+		var builder = new Builder(nodes);
+		for (int i = 0; i < nodes; i++) {
+			builder.xs[i] = SPACING / 2 + i % columns * SPACING
+					+ random.nextInt(2 * JITTER + 1) - JITTER;
+			builder.ys[i] = SPACING / 2 + i / columns * SPACING
+					+ random.nextInt(2 * JITTER + 1) - JITTER;
+		}
+
+		int[] parent = new int[nodes];
+		Arrays.setAll(parent, i -> i);
+		for (int i = 0; i < nodes; i++) {
+			int row = i / columns, column = i % columns;
+			if (column + 1 < columns && i + 1 < nodes && random.nextInt(4) != 0)
+				builder.taxi(i, i + 1, parent);
+			if (i + columns < nodes && random.nextInt(4) != 0)
+				builder.taxi(i, i + columns, parent);
+			// at most one diagonal per grid cell keeps the mesh planar
+			if (row + 1 < rows && column + 1 < columns && random.nextInt(8) == 0) {
+				if (random.nextBoolean()) {
+					if (i + columns + 1 < nodes) builder.taxi(i, i + columns + 1, parent);
+				} else if (i + columns < nodes) builder.taxi(i + 1, i + columns, parent);
+			}
+		}
+		// join what the random pass left apart
+		for (int i = 0; i < nodes; i++) {
+			if (i % columns + 1 < columns && i + 1 < nodes
+					&& find(parent, i) != find(parent, i + 1))
+				builder.taxi(i, i + 1, parent);
+			if (i + columns < nodes && find(parent, i) != find(parent, i + columns))
+				builder.taxi(i, i + columns, parent);
+		}
+
+		for (int i = 0; i < nodes; i++) {
+			int row = i / columns, column = i % columns;
+			if (row % 2 == 0 && column % 2 == 0) {
+				if (column + 2 < columns && i + 2 < nodes && random.nextInt(5) != 0)
+					builder.add(i, i + 2, Transport.BUS);
+				if (i + 2 * columns < nodes && random.nextInt(5) != 0)
+					builder.add(i, i + 2 * columns, Transport.BUS);
+			}
+			if (row % 4 == 0 && column % 4 == 0) {
+				if (column + 4 < columns && i + 4 < nodes && random.nextInt(5) < 3)
+					builder.add(i, i + 4, Transport.UNDERGROUND);
+				if (i + 4 * columns < nodes && random.nextInt(5) < 3)
+					builder.add(i, i + 4 * columns, Transport.UNDERGROUND);
+			}
+			if (row == rows / 2 && column % 8 == 0 && column + 8 < columns && i + 8 < nodes)
+				builder.add(i, i + 8, Transport.FERRY);
+		}
+
+		// distinct random nodes, the detectives' first
+		var taken = new BitSet(nodes + 1);
+		List<Integer> starts = new ArrayList<>();
+		while (starts.size() < DETECTIVE_STARTS + MRX_STARTS) {
+			int node = 1 + random.nextInt(nodes);
+			if (!taken.get(node)) {
+				taken.set(node);
+				starts.add(node);
+			}
+		}
+		return new SyntheticMap(builder,
+				ImmutableList.sortedCopyOf(starts.subList(0, DETECTIVE_STARTS)),
+				ImmutableList.sortedCopyOf(starts.subList(DETECTIVE_STARTS, starts.size())));
+	}
+
+	private static int find(int[] parent, int i) {
+		while (parent[i] != i) i = parent[i] = parent[parent[i]];
+		return i;
+	}
+
+	private static final class Builder {
+		final int nodes;
+		final int[] xs;
+		final int[] ys;
+		int[] from;
+		int[] to;
+		byte[] masks;
+		int edges;
+		Builder(int nodes) {
+			this.nodes = nodes;
+			this.xs = new int[nodes];
+			this.ys = new int[nodes];
+			this.from = new int[2 * nodes];
+			this.to = new int[2 * nodes];
+			this.masks = new byte[2 * nodes];
+		}
+		void taxi(int a, int b, int[] parent) {
+			add(a, b, Transport.TAXI);
+			parent[find(parent, a)] = find(parent, b);
+		}
+		void add(int a, int b, Transport transport) {
+			if (edges == from.length) {
+				from = Arrays.copyOf(from, edges + edges / 2);
+				to = Arrays.copyOf(to, from.length);
+				masks = Arrays.copyOf(masks, from.length);
+			}
+			from[edges] = a;
+			to[edges] = b;
+			masks[edges++] = (byte) CompactGraph.mask(transport);
+		}
+	}
+
+	/**
+	 * @return the number of nodes, numbered from 1
+	 */
+	public int nodeCount() { return nodes; }
+
+	/**
+	 * @return the graph of the map
+	 */
+	@Nonnull public CompactGraph graph() { return graph; }
+
+	/**
+	 * @param node the node
+	 * @return the x coordinate of the node, in the units of {@code pos.txt}
+	 */
+	public int x(int node) { return xs[node - 1]; }
+
+	/**
+	 * @param node the node
+	 * @return the y coordinate of the node, in the units of {@code pos.txt}
+	 */
+	public int y(int node) { return ys[node - 1]; }
+
+	/**
+	 * @return possible initial locations for detectives, like
+	 * {@link ScotlandYard#DETECTIVE_LOCATIONS}
+	 */
+	@Nonnull public ImmutableList<Integer> detectiveLocations() { return detectiveLocations; }
+
+	/**
+	 * @return possible initial locations for MrX, like {@link ScotlandYard#MRX_LOCATIONS}; none
+	 * of them is a detective location
+	 */
+	@Nonnull public ImmutableList<Integer> mrXLocations() { return mrXLocations; }
+
+	/**
+	 * @param rounds the reveal rounds
+	 * @return the interned setup with this map's graph
+	 */
+	@Nonnull public GameSetup setup(@Nonnull ImmutableList<Boolean> rounds) {
+		return new GameSetup(graph.toValueGraph(), rounds).intern();
+	}
+
+	/**
+	 * Writes the graph in the text format read by {@link ScotlandYard#readGraph(String)}.
+	 *
+	 * @param out the writer to write to
+	 * @throws IOException if writing fails
+	 */
+	public void writeGraph(@Nonnull Writer out) throws IOException {
+		int lines = 0;
+		for (int e = 0; e < edges; e++) lines += Integer.bitCount(masks[e]);
+		out.write(nodes + " " + lines + "\n");
+		for (int i = 1; i <= nodes; i++) out.write(i + "\n");
+		for (int e = 0; e < edges; e++)
+			for (int t = 0; t < TRANSPORT_NAMES.length; t++)
+				if ((masks[e] & 1 << t) != 0)
+					out.write((from[e] + 1) + " " + (to[e] + 1) + " " + TRANSPORT_NAMES[t] + "\n");
+	}
+
+	/**
+	 * Writes the node coordinates in the format of {@code pos.txt}.
+	 *
+	 * @param out the writer to write to
+	 * @throws IOException if writing fails
+	 */
+	public void writePositions(@Nonnull Writer out) throws IOException {
+		out.write(nodes + "\n");
+		for (int i = 0; i < nodes; i++) out.write((i + 1) + " " + xs[i] + " " + ys[i] + "\n");
+	}
+
+	/**
+	 * Writes the start locations, the detectives' on the first line and MrX's on the second.
+	 *
+	 * @param out the writer to write to
+	 * @throws IOException if writing fails
+	 */
+	public void writeLocations(@Nonnull Writer out) throws IOException {
+		for (List<Integer> locations : List.of(detectiveLocations, mrXLocations)) {
+			out.write(locations.stream().map(String::valueOf)
+					.collect(Collectors.joining(" ", "", "\n")));
+		}
+	}
+
+	/**
+	 * Writes {@code graph.txt}, {@code graph.bin} in the format of
+	 * {@link CompactGraph#load(Path)}, {@code pos.txt} and {@code locations.txt} to a directory.
+	 *
+	 * @param directory the directory, created if needed
+	 * @throws IOException if writing fails
+	 */
+	public void write(@Nonnull Path directory) throws IOException {
+		Files.createDirectories(directory);
+		try (BufferedWriter out = Files.newBufferedWriter(directory.resolve("graph.txt"),
+				StandardCharsets.UTF_8)) {
+			writeGraph(out);
+		}
+		try (BufferedWriter out = Files.newBufferedWriter(directory.resolve("pos.txt"),
+				StandardCharsets.UTF_8)) {
+			writePositions(out);
+		}
+		try (BufferedWriter out = Files.newBufferedWriter(directory.resolve("locations.txt"),
+				StandardCharsets.UTF_8)) {
+			writeLocations(out);
+		}
+		graph.write(directory.resolve("graph.bin"));
+	}
+
+	/**
+	 * Generates a map into a directory, see {@link #write(Path)}.
+	 *
+	 * @param args the number of nodes, the seed and the directory
+	 * @throws IOException if writing fails
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length != 3) {
+			System.err.println("Usage: SyntheticMap <nodes> <seed> <directory>");
+			System.exit(1);
+		}
+		var map = generate(Integer.parseInt(args[0]), Long.parseLong(args[1]));
+		map.write(Path.of(args[2]));
+		System.out.printf("Generated %d nodes and %d edges into %s%n",
+				map.nodeCount(), map.graph().edgeCount() / 2, args[2]);
+	}
+}
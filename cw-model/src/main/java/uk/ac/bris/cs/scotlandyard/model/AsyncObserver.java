@@ -0,0 +1,234 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import java.util.ArrayDeque;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.Model.DeltaObserver;
+import uk.ac.bris.cs.scotlandyard.model.Model.Observer;
+
+/**
+ * An {@link Observer} that hands events over to another observer on a separate executor, so the
+ * model does not wait for slow observers.
+ * <br>
+ * Events are queued and delivered one at a time in the order they were received. When the queue
+ * is full the {@link Backpressure} policy decides what happens to a {@link Event#MOVE_MADE}
+ * event; {@link Event#GAME_OVER} is never dropped and always waits for room. Events sent from the
+ * delivering thread itself, such as a move chosen by the wrapped observer, are queued beyond the
+ * capacity instead of blocking. Deltas are passed on if the wrapped observer is a
+ * {@link DeltaObserver}.
+ */
+public final class AsyncObserver implements DeltaObserver, AutoCloseable {
+
+	/**
+	 * What to do with an event when the queue is full
+	 */
+	public enum Backpressure {
+		/**
+		 * Waits for the observer to catch up
+		 */
+		BLOCK,
+		/**
+		 * Discards the new event
+		 */
+		DROP,
+		/**
+		 * Replaces the newest queued event, so the observer skips to the latest board
+		 */
+		COALESCE
+	}
+
+	private static final class Notification {
+		final Board board;
+		final Event event;
+		final BoardDelta delta;
+		Notification(Board board, Event event, BoardDelta delta) {
+			this.board = board;
+			this.event = event;
+			this.delta = delta;
+		}
+	}
+
+	private final Observer delegate;
+	private final int capacity;
+	private final Backpressure backpressure;
+	private final Executor executor;
+	private final ExecutorService owned;
+
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition notFull = lock.newCondition();
+	private final Condition idle = lock.newCondition();
+	private final ArrayDeque<Notification> queue = new ArrayDeque<>();
+	private Thread deliveringThread;
+	private boolean scheduled;
+	private boolean closed;
+	private long discarded;
+
+	private AsyncObserver(Observer delegate, int capacity, Backpressure backpressure,
+	                      Executor executor, ExecutorService owned) {
+		if (capacity < 1) throw new IllegalArgumentException("Capacity must be > 0");
+		this.delegate = Objects.requireNonNull(delegate);
+		this.capacity = capacity;
+		this.backpressure = Objects.requireNonNull(backpressure);
+		this.executor = Objects.requireNonNull(executor);
+		this.owned = owned;
+	}
+
+	/**
+	 * Creates an observer that delivers events on the given executor. At most one delivery is
+	 * submitted at a time, so the executor may be shared.
+	 *
+	 * @param delegate the observer to deliver events to
+	 * @param capacity maximum number of queued events
+	 * @param backpressure what to do when the queue is full
+	 * @param executor the executor to deliver events on
+	 * @return the observer
+	 */
+	@Nonnull public static AsyncObserver of(@Nonnull Observer delegate, int capacity,
+	                                        @Nonnull Backpressure backpressure,
+	                                        @Nonnull Executor executor) {
+		return new AsyncObserver(delegate, capacity, backpressure, executor, null);
+	}
+
+	/**
+	 * Creates an observer that delivers events on its own daemon thread, stopped by
+	 * {@link #close()}.
+	 *
+	 * @param delegate the observer to deliver events to
+	 * @param capacity maximum number of queued events
+	 * @param backpressure what to do when the queue is full
+	 * @return the observer
+	 */
+	@Nonnull public static AsyncObserver of(@Nonnull Observer delegate, int capacity,
+	                                        @Nonnull Backpressure backpressure) {
+		String name = "observer-" + Objects.requireNonNull(delegate);
+		ExecutorService service = Executors.newSingleThreadExecutor(r -> {
+			Thread thread = new Thread(r, name);
+			thread.setDaemon(true);
+			return thread;
+		});
+		return new AsyncObserver(delegate, capacity, backpressure, service, service);
+	}
+
+	/**
+	 * @return the observer events are delivered to
+	 */
+	@Nonnull public Observer delegate() { return delegate; }
+
+	/**
+	 * @return number of events dropped or replaced so far
+	 */
+	public long discarded() {
+		lock.lock();
+		try {
+			return discarded;
+		} finally { lock.unlock(); }
+	}
+
+	@Override public void onModelChanged(@Nonnull Board board, @Nonnull Event event) {
+		enqueue(new Notification(Objects.requireNonNull(board), Objects.requireNonNull(event),
+				null));
+	}
+
+	@Override public void onModelChanged(@Nonnull Board board, @Nonnull Event event,
+	                                     @Nonnull BoardDelta delta) {
+		enqueue(new Notification(Objects.requireNonNull(board), Objects.requireNonNull(event),
+				Objects.requireNonNull(delta)));
+	}
+
+	private void enqueue(Notification notification) {
+		Event event = notification.event;
+		lock.lock();
+		try {
+			if (closed) throw new IllegalStateException("Observer is closed");
+			boolean reentrant = Thread.currentThread() == deliveringThread;
+			while (queue.size() >= capacity && !reentrant) {
+				if (event == Event.MOVE_MADE && backpressure == Backpressure.DROP) {
+					discarded++;
+					return;
+				}
+				if (event == Event.MOVE_MADE && backpressure == Backpressure.COALESCE
+						&& queue.peekLast().event == Event.MOVE_MADE) {
+					queue.pollLast();
+					discarded++;
+					break;
+				}
+				notFull.awaitUninterruptibly();
+			}
+			queue.addLast(notification);
+			if (!scheduled) {
+				scheduled = true;
+				executor.execute(this::deliver);
+			}
+		} finally { lock.unlock(); }
+	}
+
+	private void deliver() {
+		while (true) {
+			Notification next;
+			lock.lock();
+			try {
+				next = queue.pollFirst();
+				if (next == null) {
+					scheduled = false;
+					deliveringThread = null;
+					idle.signalAll();
+					return;
+				}
+				deliveringThread = Thread.currentThread();
+				notFull.signalAll();
+			} finally { lock.unlock(); }
+			try {
+				if (next.delta != null && delegate instanceof DeltaObserver)
+					((DeltaObserver) delegate).onModelChanged(next.board, next.event, next.delta);
+				else delegate.onModelChanged(next.board, next.event);
+			} catch (RuntimeException e) {
+				Thread thread = Thread.currentThread();
+				thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+			}
+		}
+	}
+
+	/**
+	 * Waits until every queued event has been delivered.
+	 *
+	 * @param timeout the maximum time to wait
+	 * @param unit the unit of the timeout
+	 * @return whether the queue was drained in time
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	public boolean awaitIdle(long timeout, @Nonnull TimeUnit unit) throws InterruptedException {
+		long nanos = unit.toNanos(timeout);
+		lock.lock();
+		try {
+			while (scheduled) {
+				if (nanos <= 0) return false;
+				nanos = idle.awaitNanos(nanos);
+			}
+			return true;
+		} finally { lock.unlock(); }
+	}
+
+	/**
+	 * Stops accepting events. Queued events are still delivered, after which the observer's own
+	 * thread, if any, terminates.
+	 */
+	@Override public void close() {
+		lock.lock();
+		try {
+			closed = true;
+		} finally { lock.unlock(); }
+		if (owned != null) owned.shutdown();
+	}
+
+	@Override public String toString() {
+		return "AsyncObserver{" + delegate + ", " + backpressure + "}";
+	}
+}
@@ -0,0 +1,136 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
+import java.util.Objects;
+import java.util.Optional;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.Board.TicketBoard;
+import uk.ac.bris.cs.scotlandyard.model.Piece.MrX;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+
+/**
+ * What changed on the board with a single move.
+ * <br>
+ * Ticket changes are signed: tickets spent are negative, tickets received are positive; pieces
+ * and tickets that did not change are left out. Use {@link #between(Board, Move, Board)} to
+ * create new instances.
+ */
+public final class BoardDelta {
+	private final Move move;
+	private final ImmutableMap<Piece, ImmutableMap<Ticket, Integer>> tickets;
+	private final ImmutableList<LogEntry> newLogEntries;
+	private final ImmutableSet<Piece> winner;
+	private final boolean winnerChanged;
+
+	/**
+	 * @param move the move made
+	 * @param tickets the signed ticket changes per piece
+	 * @param newLogEntries entries added to MrX's travel log
+	 * @param winner the winner after the move
+	 * @param winnerChanged whether the winner changed with the move
+	 */
+	public BoardDelta(@Nonnull Move move,
+	                  @Nonnull ImmutableMap<Piece, ImmutableMap<Ticket, Integer>> tickets,
+	                  @Nonnull ImmutableList<LogEntry> newLogEntries,
+	                  @Nonnull ImmutableSet<Piece> winner,
+	                  boolean winnerChanged) {
+		this.move = Objects.requireNonNull(move);
+		this.tickets = Objects.requireNonNull(tickets);
+		this.newLogEntries = Objects.requireNonNull(newLogEntries);
+		this.winner = Objects.requireNonNull(winner);
+		this.winnerChanged = winnerChanged;
+	}
+
+	/**
+	 * Computes the delta of a move by comparing only the parts of the boards it can change: the
+	 * tickets of the mover and of MrX, the end of the travel log and the winner.
+	 *
+	 * @param before the board before the move
+	 * @param move the move made
+	 * @param after the board after the move
+	 * @return the delta
+	 */
+	@Nonnull public static BoardDelta between(@Nonnull Board before, @Nonnull Move move,
+	                                          @Nonnull Board after) {
+		Piece mover = move.commencedBy();
+		var tickets = ImmutableMap.<Piece, ImmutableMap<Ticket, Integer>>builder();
+		changes(before, after, mover).ifPresent(c -> tickets.put(mover, c));
+		if (mover.isDetective())
+			changes(before, after, MrX.MRX).ifPresent(c -> tickets.put(MrX.MRX, c));
+		ImmutableList<LogEntry> log = after.getMrXTravelLog();
+		int logged = before.getMrXTravelLog().size();
+		ImmutableSet<Piece> winner = after.getWinner();
+		return new BoardDelta(move, tickets.build(),
+				logged < log.size() ? log.subList(logged, log.size()) : ImmutableList.of(),
+				winner, !winner.equals(before.getWinner()));
+	}
+
+	private static Optional<ImmutableMap<Ticket, Integer>> changes(Board before, Board after,
+	                                                               Piece piece) {
+		Optional<TicketBoard> from = before.getPlayerTickets(piece);
+		Optional<TicketBoard> to = after.getPlayerTickets(piece);
+		if (from.isEmpty() || to.isEmpty()) return Optional.empty();
+		var changes = ImmutableMap.<Ticket, Integer>builder();
+		for (Ticket ticket : Ticket.values()) {
+			int change = to.get().getCount(ticket) - from.get().getCount(ticket);
+			if (change != 0) changes.put(ticket, change);
+		}
+		ImmutableMap<Ticket, Integer> built = changes.build();
+		return built.isEmpty() ? Optional.empty() : Optional.of(built);
+	}
+
+	/**
+	 * @return the piece that moved
+	 */
+	@Nonnull public Piece mover() { return move.commencedBy(); }
+	/**
+	 * @return the move made
+	 */
+	@Nonnull public Move move() { return move; }
+	/**
+	 * @return the signed ticket changes per piece
+	 */
+	@Nonnull public ImmutableMap<Piece, ImmutableMap<Ticket, Integer>> tickets() { return tickets; }
+	/**
+	 * @param piece the piece
+	 * @param ticket the ticket
+	 * @return the signed change of the piece's ticket count
+	 */
+	public int ticketChange(@Nonnull Piece piece, @Nonnull Ticket ticket) {
+		var changes = tickets.get(piece);
+		return changes == null ? 0 : changes.getOrDefault(ticket, 0);
+	}
+	/**
+	 * @return entries added to MrX's travel log, in order
+	 */
+	@Nonnull public ImmutableList<LogEntry> newLogEntries() { return newLogEntries; }
+	/**
+	 * @return the winner after the move, empty if the game is not over
+	 */
+	@Nonnull public ImmutableSet<Piece> winner() { return winner; }
+	/**
+	 * @return whether the winner changed with the move
+	 */
+	public boolean winnerChanged() { return winnerChanged; }
+
+	@Override public boolean equals(Object o) {
+		if (this == o) return true;
+		if (o == null || getClass() != o.getClass()) return false;
+		BoardDelta that = (BoardDelta) o;
+		return winnerChanged == that.winnerChanged && move.equals(that.move)
+				&& tickets.equals(that.tickets) && newLogEntries.equals(that.newLogEntries)
+				&& winner.equals(that.winner);
+	}
+	@Override public int hashCode() {
+		return Objects.hash(move, tickets, newLogEntries, winner, winnerChanged);
+	}
+	@Override public String toString() {
+		return "BoardDelta{" + move + ", tickets=" + tickets + ", log=" + newLogEntries
+				+ ", winner=" + winner + "}";
+	}
+}
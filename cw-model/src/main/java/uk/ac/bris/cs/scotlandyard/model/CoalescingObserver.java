@@ -0,0 +1,142 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.Model.Observer;
+
+/**
+ * An {@link Observer} that only passes on the latest event per frame or interval, so views can
+ * stay attached to games played faster than they can redraw.
+ * <br>
+ * Every event replaces the one pending, except that a pending {@link Event#GAME_OVER} is never
+ * replaced. The pending event is delivered when {@link #flush()} is called, typically once per
+ * frame on the UI thread, or periodically on a given executor. A game over is delivered as soon
+ * as possible in the periodic mode and on {@link #close()} at the latest.
+ */
+public final class CoalescingObserver implements Observer, AutoCloseable {
+
+	private static final ScheduledExecutorService TIMER =
+			Executors.newSingleThreadScheduledExecutor(r -> {
+				Thread thread = new Thread(r, "observer-coalescer");
+				thread.setDaemon(true);
+				return thread;
+			});
+
+	private static final class Notification {
+		final Board board;
+		final Event event;
+		Notification(Board board, Event event) {
+			this.board = board;
+			this.event = event;
+		}
+	}
+
+	private final Observer delegate;
+	private final Executor executor;
+	private final AtomicReference<Notification> pending = new AtomicReference<>();
+	private final AtomicBoolean scheduled = new AtomicBoolean();
+	private final AtomicLong coalesced = new AtomicLong();
+	private volatile ScheduledFuture<?> timer;
+	private volatile boolean closed;
+
+	private CoalescingObserver(Observer delegate, Executor executor) {
+		this.delegate = Objects.requireNonNull(delegate);
+		this.executor = Objects.requireNonNull(executor);
+	}
+
+	/**
+	 * Creates an observer whose pending event is delivered by calling {@link #flush()}, for
+	 * example from an animation timer.
+	 *
+	 * @param delegate the observer to deliver events to
+	 * @return the observer
+	 */
+	@Nonnull public static CoalescingObserver perFrame(@Nonnull Observer delegate) {
+		return new CoalescingObserver(delegate, Runnable::run);
+	}
+
+	/**
+	 * Creates an observer whose pending event is delivered on the given executor once per
+	 * interval.
+	 *
+	 * @param delegate the observer to deliver events to
+	 * @param interval the time between deliveries
+	 * @param executor the executor to deliver events on, such as the UI thread
+	 * @return the observer
+	 */
+	@Nonnull public static CoalescingObserver every(@Nonnull Observer delegate,
+	                                                @Nonnull Duration interval,
+	                                                @Nonnull Executor executor) {
+		if (interval.isNegative() || interval.isZero())
+			throw new IllegalArgumentException("Interval must be positive");
+		var observer = new CoalescingObserver(delegate, executor);
+		long nanos = interval.toNanos();
+		observer.timer = TIMER.scheduleAtFixedRate(observer::schedule, nanos, nanos,
+				TimeUnit.NANOSECONDS);
+		return observer;
+	}
+
+	/**
+	 * @return the observer events are delivered to
+	 */
+	@Nonnull public Observer delegate() { return delegate; }
+
+	/**
+	 * @return number of events replaced before they were delivered
+	 */
+	public long coalesced() { return coalesced.get(); }
+
+	@Override public void onModelChanged(@Nonnull Board board, @Nonnull Event event) {
+		var notification = new Notification(Objects.requireNonNull(board),
+				Objects.requireNonNull(event));
+		Notification previous = pending.getAndUpdate(p ->
+				p != null && p.event == Event.GAME_OVER ? p : notification);
+		if (previous != null) coalesced.incrementAndGet();
+		if (event == Event.GAME_OVER && timer != null) schedule();
+	}
+
+	/**
+	 * Delivers the pending event, if any, on the calling thread. Must not be called concurrently
+	 * with itself or with periodic deliveries.
+	 */
+	public void flush() {
+		Notification next = pending.getAndSet(null);
+		if (next != null) delegate.onModelChanged(next.board, next.event);
+	}
+
+	private void schedule() {
+		if (pending.get() == null || !scheduled.compareAndSet(false, true)) return;
+		executor.execute(() -> {
+			try {
+				flush();
+			} finally { scheduled.set(false); }
+			// events that must not wait for the next tick
+			Notification next = pending.get();
+			if (next != null && (closed || next.event == Event.GAME_OVER)) schedule();
+		});
+	}
+
+	/**
+	 * Stops periodic deliveries after delivering the pending event, if any.
+	 */
+	@Override public void close() {
+		ScheduledFuture<?> current = timer;
+		if (current == null) return;
+		closed = true;
+		current.cancel(false);
+		schedule();
+	}
+
+	@Override public String toString() { return "CoalescingObserver{" + delegate + "}"; }
+}
@@ -0,0 +1,152 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.ImmutableSet;
+
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+import uk.ac.bris.cs.scotlandyard.model.Model.Observer.Event;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Factory;
+
+/**
+ * A {@link Model} that can be used from many threads at once.
+ * <br>
+ * The current state is published through a volatile field, so any number of threads read it
+ * without locking. Observers are kept in a copy-on-write list. Moves are queued and applied one at
+ * a time by a single writer thread, which also notifies the observers; an observer may choose the
+ * next move from its callback, which is then queued behind the current one. Instances must be
+ * {@link #close() closed} to stop the writer thread.
+ */
+public final class ConcurrentModel implements Model, AutoCloseable {
+
+	private final CopyOnWriteArrayList<Observer> observers = new CopyOnWriteArrayList<>();
+	private final ExecutorService writer;
+	private volatile Thread writerThread;
+	private volatile GameState state;
+
+	/**
+	 * @param start the state to start from
+	 */
+	public ConcurrentModel(@Nonnull GameState start) {
+		this.state = Objects.requireNonNull(start);
+		this.writer = Executors.newSingleThreadExecutor(r -> {
+			Thread thread = new Thread(r, "model-writer");
+			thread.setDaemon(true);
+			writerThread = thread;
+			return thread;
+		});
+	}
+
+	/**
+	 * @param states the factory of the initial game state
+	 * @return a factory of concurrent models
+	 */
+	@Nonnull public static Factory<ConcurrentModel> factory(@Nonnull Factory<GameState> states) {
+		Objects.requireNonNull(states);
+		return (setup, mrX, detectives) ->
+				new ConcurrentModel(states.build(setup, mrX, detectives));
+	}
+
+	@Nonnull @Override public Board getCurrentBoard() { return state; }
+
+	@Override public void registerObserver(@Nonnull Observer observer) {
+		Objects.requireNonNull(observer, "Observer argument was null");
+		if (!observers.addIfAbsent(observer))
+			throw new IllegalArgumentException(observer + " already exists");
+	}
+
+	@Override public void unregisterObserver(@Nonnull Observer observer) {
+		Objects.requireNonNull(observer, "Observer argument was null");
+		if (!observers.remove(observer))
+			throw new IllegalArgumentException(observer + " doesn't exist");
+	}
+
+	@Nonnull @Override public ImmutableSet<Observer> getObservers() {
+		return ImmutableSet.copyOf(observers);
+	}
+
+	/**
+	 * Queues a move and waits until it is applied, unless called by the writer thread itself, in
+	 * which case the move is only queued and a move that turns out to be unavailable is reported
+	 * to the writer thread's uncaught exception handler, like a failing observer. Use
+	 * {@link #submit(Move)} to handle that failure instead.
+	 *
+	 * @param move the move to make
+	 * @throws IllegalArgumentException if the move is not available once its turn comes
+	 */
+	@Override public void chooseMove(@Nonnull Move move) {
+		CompletableFuture<Board> applied = submit(move);
+		if (Thread.currentThread() == writerThread) {
+			applied.whenComplete((board, e) -> {
+				if (e == null) return;
+				Thread thread = Thread.currentThread();
+				thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+			});
+			return;
+		}
+		try {
+			applied.join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+			throw e;
+		}
+	}
+
+	/**
+	 * Queues a move without waiting for it.
+	 *
+	 * @param move the move to make
+	 * @return a future of the board after the move, completed once observers have been notified;
+	 * completed exceptionally if the move is not available once its turn comes
+	 */
+	@Nonnull public CompletableFuture<Board> submit(@Nonnull Move move) {
+		Objects.requireNonNull(move);
+		var applied = new CompletableFuture<Board>();
+		try {
+			writer.execute(() -> {
+				try {
+					applied.complete(apply(move));
+				} catch (RuntimeException e) {
+					applied.completeExceptionally(e);
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			throw new IllegalStateException("Model is closed", e);
+		}
+		return applied;
+	}
+
+	private Board apply(Move move) {
+		GameState before = state;
+		GameState next = before.advance(move);
+		state = next;
+		Event event = next.getWinner().isEmpty() ? Event.MOVE_MADE : Event.GAME_OVER;
+		BoardDelta delta = null;
+		for (Observer o : observers) {
+			try {
+				if (o instanceof DeltaObserver) {
+					if (delta == null) delta = BoardDelta.between(before, move, next);
+					((DeltaObserver) o).onModelChanged(next, event, delta);
+				} else o.onModelChanged(next, event);
+			} catch (RuntimeException e) {
+				// the move stands, a failing observer must not hold up the others
+				Thread thread = Thread.currentThread();
+				thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+			}
+		}
+		return next;
+	}
+
+	/**
+	 * Stops accepting moves; queued moves are still applied.
+	 */
+	@Override public void close() { writer.shutdown(); }
+}
@@ -2,6 +2,8 @@ package uk.ac.bris.cs.scotlandyard.model;
 
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
 import com.google.common.graph.ImmutableValueGraph;
 
 import java.io.Serializable;
@@ -11,11 +13,21 @@ import javax.annotation.Nonnull;
 
 import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Transport;
 
+import static uk.ac.bris.cs.scotlandyard.model.Hashing.mix;
+
 /**
  * A POJO containing the ScotlandYard game graph and the MrX's reveal rounds
+ * <br>
+ * Setups are hashed by a content fingerprint that is computed once, so hashing a setup does not
+ * walk its graph and setups with different fingerprints are unequal at once. Equality is still
+ * O(graph) when the fingerprints match: distinct instances are then compared node by node, so a
+ * fingerprint collision cannot make different setups equal. Caches of data derived from a setup
+ * are keyed by instance; use {@link #intern()} so that equal setups loaded separately share one
+ * instance and its caches, and compare interned setups with {@code ==}.
  */
 public final class GameSetup implements Serializable {
 	private static final long serialVersionUID = -4214739769363149939L;
+	private static final Interner<GameSetup> INTERNER = Interners.newWeakInterner();
 
 	/**
 	 * The graph where nodes are stations in integers and edges as sets of transports
@@ -25,16 +37,53 @@ public final class GameSetup implements Serializable {
 	 * MrX reveal rounds; false is hidden, true is reveal
 	 */
 	public final ImmutableList<Boolean> rounds;
+	// 0 until computed
+	private transient volatile long fingerprint;
 	public GameSetup(@Nonnull ImmutableValueGraph<Integer, ImmutableSet<Transport>> graph,
 	                 @Nonnull ImmutableList<Boolean> rounds) {
 		this.graph = Objects.requireNonNull(graph);
 		this.rounds = Objects.requireNonNull(rounds);
 	}
+	/**
+	 * @return a 64-bit hash of the graph and the rounds that is the same in every run; equal
+	 * setups have equal fingerprints
+	 */
+	public long fingerprint() {
+		long h = fingerprint;
+		if (h == 0) fingerprint = h = computeFingerprint();
+		return h;
+	}
+	private long computeFingerprint() {
+		int[] nodes = graph.nodes().stream().mapToInt(Integer::intValue).sorted().toArray();
+		long h = mix(nodes.length);
+		for (int node : nodes) {
+			h = mix(h * 31 + node);
+			int[] adjacent = graph.adjacentNodes(node).stream()
+					.mapToInt(Integer::intValue).sorted().toArray();
+			for (int other : adjacent) {
+				int mask = 0;
+				for (Transport t : graph.edgeValue(node, other).orElseThrow())
+					mask |= 1 << t.ordinal();
+				h = mix(h * 31 + ((long) other << 8 | mask));
+			}
+		}
+		h = mix(h * 31 + rounds.size());
+		for (boolean reveal : rounds) h = mix(h * 31 + (reveal ? 2 : 1));
+		return h == 0 ? 1 : h;
+	}
+	/**
+	 * Finding an existing canonical instance compares the graphs once, which is O(graph).
+	 *
+	 * @return the canonical instance of all setups equal to this one
+	 */
+	@Nonnull public GameSetup intern() { return INTERNER.intern(this); }
 	@Override public boolean equals(Object o) {
 		if (this == o) return true;
 		if (o == null || getClass() != o.getClass()) return false;
-		return Objects.equals(graph, ((GameSetup) o).graph) &&
-				Objects.equals(rounds, ((GameSetup) o).rounds);
+		GameSetup that = (GameSetup) o;
+		return fingerprint() == that.fingerprint() &&
+				Objects.equals(graph, that.graph) &&
+				Objects.equals(rounds, that.rounds);
 	}
-	@Override public int hashCode() { return Objects.hash(graph, rounds); }
+	@Override public int hashCode() { return Long.hashCode(fingerprint()); }
 }
@@ -0,0 +1,284 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+import uk.ac.bris.cs.scotlandyard.model.Piece.Detective;
+import uk.ac.bris.cs.scotlandyard.model.Piece.MrX;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+
+/**
+ * Encodes game states from {@link MyGameStateFactory} into compact snapshots, for checkpointing
+ * and for shipping positions between processes.
+ * <br>
+ * A snapshot holds the version, the {@link GameSetup#fingerprint() fingerprint} of the setup,
+ * every player's piece, location and tickets, the players still to move and those who have moved
+ * this round as bit masks, and MrX's travel log with one byte per entry plus the location of
+ * revealed entries. Numbers are unsigned varints, so a snapshot of a game with five detectives on
+ * the standard map takes at most 95 bytes. The setup itself is not part of a snapshot, it must be
+ * supplied when decoding and is checked against the fingerprint.
+ */
+public final class GameStateCodec {
+
+	static final int VERSION = 1;
+
+	private static final Ticket[] TICKETS = Ticket.values();
+	private static final Detective[] DETECTIVES = Detective.values();
+	private static final int REVEALED = 0x80;
+	private static final int MAX_VARINT = 5;
+
+	/**
+	 * The parts of a state that {@link Board} does not expose
+	 */
+	interface Position {
+		Player mrX();
+		List<Player> detectives();
+		ImmutableSet<Piece> remaining();
+		ImmutableSet<Piece> played();
+	}
+
+	private GameStateCodec() {}
+
+	/**
+	 * @param state the state, created by {@link MyGameStateFactory}
+	 * @return the snapshot of the state
+	 * @throws IllegalArgumentException if the state was not created by {@link MyGameStateFactory}
+	 */
+	@Nonnull public static byte[] encode(@Nonnull GameState state) {
+		Position position = position(state);
+		int bound = 2 + Long.BYTES + (1 + position.detectives().size())
+				* (1 + (1 + TICKETS.length) * MAX_VARINT)
+				+ 2 + MAX_VARINT + state.getMrXTravelLog().size() * (1 + MAX_VARINT);
+		var buffer = ByteBuffer.allocate(bound);
+		encode(state, buffer);
+		return Arrays.copyOf(buffer.array(), buffer.position());
+	}
+
+	/**
+	 * Writes the snapshot of a state at the buffer's position.
+	 *
+	 * @param state the state, created by {@link MyGameStateFactory}
+	 * @param buffer the buffer to write to
+	 * @throws IllegalArgumentException if the state was not created by {@link MyGameStateFactory}
+	 * @throws java.nio.BufferOverflowException if the snapshot does not fit
+	 */
+	public static void encode(@Nonnull GameState state, @Nonnull ByteBuffer buffer) {
+		encode(state, buffer, false);
+	}
+
+	/**
+	 * Writes the snapshot of a state as detectives may see it, with MrX's location written as 0,
+	 * at the buffer's position. Such snapshots are for showing positions, not for decoding.
+	 *
+	 * @param state the state, created by {@link MyGameStateFactory}
+	 * @param buffer the buffer to write to
+	 * @throws IllegalArgumentException if the state was not created by {@link MyGameStateFactory}
+	 * @throws java.nio.BufferOverflowException if the snapshot does not fit
+	 */
+	public static void encodePublic(@Nonnull GameState state, @Nonnull ByteBuffer buffer) {
+		encode(state, buffer, true);
+	}
+
+	private static void encode(GameState state, ByteBuffer buffer, boolean hideMrX) {
+		Position position = position(state);
+		ByteOrder order = buffer.order();
+		buffer.order(ByteOrder.BIG_ENDIAN);
+		try {
+			buffer.put((byte) VERSION);
+			buffer.putLong(state.getSetup().fingerprint());
+			List<Player> detectives = position.detectives();
+			buffer.put((byte) (detectives.size() + 1));
+			int remaining = 0, played = 0;
+			for (int slot = 0; slot <= detectives.size(); slot++) {
+				Player player = slot == 0 ? position.mrX() : detectives.get(slot - 1);
+				buffer.put((byte) code(player.piece()));
+				writeVarint(buffer, slot == 0 && hideMrX ? 0 : player.location());
+				for (Ticket ticket : TICKETS)
+					writeVarint(buffer, player.tickets().getOrDefault(ticket, 0));
+				if (position.remaining().contains(player.piece())) remaining |= 1 << slot;
+				if (position.played().contains(player.piece())) played |= 1 << slot;
+			}
+			buffer.put((byte) remaining);
+			buffer.put((byte) played);
+			ImmutableList<LogEntry> log = state.getMrXTravelLog();
+			writeVarint(buffer, log.size());
+			for (LogEntry entry : log) {
+				if (entry.location().isPresent()) {
+					buffer.put((byte) (REVEALED | entry.ticket().ordinal()));
+					writeVarint(buffer, entry.location().get());
+				} else buffer.put((byte) entry.ticket().ordinal());
+			}
+		} finally { buffer.order(order); }
+	}
+
+	/**
+	 * @param buffer a buffer with a snapshot at its position, which is left unchanged
+	 * @return the fingerprint of the setup the snapshot was taken with
+	 * @throws IllegalArgumentException if the buffer does not hold a snapshot at its position
+	 */
+	public static long fingerprint(@Nonnull ByteBuffer buffer) {
+		int at = buffer.position();
+		if (buffer.remaining() < 1 + Long.BYTES)
+			throw new IllegalArgumentException("Truncated snapshot");
+		checkVersion(buffer.get(at));
+		ByteOrder order = buffer.order();
+		try {
+			return buffer.order(ByteOrder.BIG_ENDIAN).getLong(at + 1);
+		} finally { buffer.order(order); }
+	}
+
+	/**
+	 * @param snapshot the snapshot
+	 * @param setup the setup the snapshot was taken with
+	 * @return the state
+	 * @throws IllegalArgumentException if the snapshot is malformed, was taken with another
+	 * setup or puts a player off the graph or two detectives on the same node
+	 */
+	@Nonnull public static GameState decode(@Nonnull byte[] snapshot, @Nonnull GameSetup setup) {
+		var buffer = ByteBuffer.wrap(snapshot);
+		GameState state = decode(buffer, setup);
+		if (buffer.hasRemaining()) throw new IllegalArgumentException("Trailing bytes");
+		return state;
+	}
+
+	/**
+	 * Reads the snapshot at the buffer's position and moves the position past it.
+	 *
+	 * @param buffer the buffer to read from
+	 * @param setup the setup the snapshot was taken with
+	 * @return the state
+	 * @throws IllegalArgumentException if the snapshot is malformed, was taken with another
+	 * setup or puts a player off the graph or two detectives on the same node
+	 */
+	@Nonnull public static GameState decode(@Nonnull ByteBuffer buffer, @Nonnull GameSetup setup) {
+		if (fingerprint(buffer) != setup.fingerprint())
+			throw new IllegalArgumentException("Snapshot was taken with a different setup");
+		int start = buffer.position();
+		try {
+			buffer.position(start + 1 + Long.BYTES);
+			int players = buffer.get();
+			if (players < 1 || players > 1 + DETECTIVES.length)
+				throw new IllegalArgumentException("Bad player count " + players);
+			Player mrX = null;
+			Piece[] pieces = new Piece[players];
+			int[] locations = new int[players];
+			var detectives = ImmutableList.<Player>builderWithExpectedSize(players - 1);
+			for (int slot = 0; slot < players; slot++) {
+				Player player = readPlayer(buffer);
+				if ((slot == 0) != player.isMrX())
+					throw new IllegalArgumentException("MrX must be first and only once");
+				if (Arrays.asList(pieces).contains(player.piece()))
+					throw new IllegalArgumentException("Duplicate piece " + player.piece());
+				if (!setup.graph.nodes().contains(player.location()))
+					throw new IllegalArgumentException(
+							player.piece() + " is not on the graph: " + player.location());
+				for (int other = 1; other < slot; other++)
+					if (locations[other] == player.location())
+						throw new IllegalArgumentException(pieces[other] + " and "
+								+ player.piece() + " share location " + player.location());
+				pieces[slot] = player.piece();
+				locations[slot] = player.location();
+				if (slot == 0) mrX = player;
+				else detectives.add(player);
+			}
+			ImmutableSet<Piece> remaining = pieces(buffer.get(), pieces);
+			ImmutableSet<Piece> played = pieces(buffer.get(), pieces);
+			int size = readVarint(buffer);
+			if (size > setup.rounds.size())
+				throw new IllegalArgumentException("Log longer than the game");
+			var log = ImmutableList.<LogEntry>builderWithExpectedSize(size);
+			for (int i = 0; i < size; i++) {
+				int code = buffer.get() & 0xFF;
+				Ticket ticket = ticket(code & ~REVEALED);
+				if ((code & REVEALED) == 0) {
+					log.add(LogEntry.hidden(ticket));
+					continue;
+				}
+				int location = readVarint(buffer);
+				if (!setup.graph.nodes().contains(location))
+					throw new IllegalArgumentException("Revealed location is not on the graph: "
+							+ location);
+				log.add(LogEntry.reveal(ticket, location));
+			}
+			return MyGameStateFactory.restore(setup, mrX, detectives.build(), log.build(),
+					remaining, played);
+		} catch (BufferUnderflowException e) {
+			buffer.position(start);
+			throw new IllegalArgumentException("Truncated snapshot", e);
+		} catch (IllegalArgumentException e) {
+			buffer.position(start);
+			throw e;
+		}
+	}
+
+	private static Position position(GameState state) {
+		Objects.requireNonNull(state);
+		if (!(state instanceof Position))
+			throw new IllegalArgumentException("Only states of MyGameStateFactory are supported");
+		return (Position) state;
+	}
+
+	private static void checkVersion(int version) {
+		if (version != VERSION)
+			throw new IllegalArgumentException("Unsupported version " + version);
+	}
+
+	// the piece codes of game records
+	private static int code(Piece piece) {
+		return piece.isMrX() ? 0 : 1 + ((Detective) piece).ordinal();
+	}
+
+	private static Player readPlayer(ByteBuffer buffer) {
+		int code = buffer.get();
+		if (code < 0 || code > DETECTIVES.length)
+			throw new IllegalArgumentException("Unknown piece " + code);
+		Piece piece = code == 0 ? MrX.MRX : DETECTIVES[code - 1];
+		int location = readVarint(buffer);
+		var tickets = ImmutableMap.<Ticket, Integer>builder();
+		for (Ticket ticket : TICKETS) tickets.put(ticket, readVarint(buffer));
+		return new Player(piece, tickets.build(), location);
+	}
+
+	private static ImmutableSet<Piece> pieces(int mask, Piece[] pieces) {
+		if ((mask & 0xFF) >>> pieces.length != 0)
+			throw new IllegalArgumentException("Unknown player in mask " + mask);
+		var set = ImmutableSet.<Piece>builder();
+		for (int slot = 0; slot < pieces.length; slot++)
+			if ((mask & 1 << slot) != 0) set.add(pieces[slot]);
+		return set.build();
+	}
+
+	private static Ticket ticket(int ordinal) {
+		if (ordinal >= TICKETS.length) throw new IllegalArgumentException("Unknown ticket");
+		return TICKETS[ordinal];
+	}
+
+	private static void writeVarint(ByteBuffer buffer, int value) {
+		while ((value & ~0x7F) != 0) {
+			buffer.put((byte) (value & 0x7F | 0x80));
+			value >>>= 7;
+		}
+		buffer.put((byte) value);
+	}
+
+	private static int readVarint(ByteBuffer buffer) {
+		int value = 0;
+		for (int shift = 0; shift < 32; shift += 7) {
+			byte b = buffer.get();
+			value |= (b & 0x7F) << shift;
+			if (b >= 0) return value;
+		}
+		throw new IllegalArgumentException("Malformed varint");
+	}
+}
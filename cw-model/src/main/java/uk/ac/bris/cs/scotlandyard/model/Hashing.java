@@ -0,0 +1,24 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+/**
+ * The hash mixer behind fingerprints and position keys that are persisted, such as
+ * {@link GameSetup#fingerprint()}; its results are the same in every run.
+ */
+public final class Hashing {
+
+	private Hashing() {}
+
+	/**
+	 * One step of splitmix64: adds the golden ratio and applies the finalizer, so that even runs
+	 * of zeros mix into distinct values. Values are usually folded in as {@code mix(h + value)}.
+	 *
+	 * @param h the hash so far
+	 * @return the mixed hash
+	 */
+	public static long mix(long h) {
+		h += 0x9E3779B97F4A7C15L;
+		h = (h ^ (h >>> 30)) * 0xBF58476D1CE4E5B9L;
+		h = (h ^ (h >>> 27)) * 0x94D049BB133111EBL;
+		return h ^ (h >>> 31);
+	}
+}
@@ -0,0 +1,183 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+import uk.ac.bris.cs.scotlandyard.model.Model.Observer.Event;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Factory;
+
+/**
+ * A {@link Model} that remembers every move, so the game can be undone, redone and rewound to
+ * any ply.
+ * <br>
+ * Game states are immutable and share structure, so keeping one is cheap, but a long game of
+ * many states still adds up. The retention interval k bounds memory: the state of every k-th ply
+ * is kept and states in between are recomputed from the nearest kept state, at most k - 1
+ * {@link GameState#advance(Move) advances} away. With an interval of 1 every state is kept and
+ * moving through the timeline takes constant time.
+ * <br>
+ * Choosing a move after undoing discards the undone moves. Observers are notified after every
+ * change of the current board; the event is {@link Event#GAME_OVER} if the game is over at the
+ * new ply and {@link Event#MOVE_MADE} otherwise. Only moves that are chosen or redone one at a
+ * time come with a {@link BoardDelta} for {@link DeltaObserver}s. Instances are not thread safe.
+ */
+public final class HistoryModel implements Model {
+
+	private final int interval;
+	private final List<Move> moves = new ArrayList<>();
+	// the state of every interval-th ply, starting with ply 0
+	private final List<GameState> kept = new ArrayList<>();
+	private final Set<Observer> observers = new LinkedHashSet<>();
+	private GameState state;
+	private int ply;
+
+	/**
+	 * @param start the state to start from
+	 * @param interval keep the state of every interval-th ply, see class documentation
+	 */
+	public HistoryModel(@Nonnull GameState start, int interval) {
+		if (interval < 1) throw new IllegalArgumentException("Interval must be > 0");
+		this.interval = interval;
+		this.state = Objects.requireNonNull(start);
+		kept.add(start);
+	}
+
+	/**
+	 * @param states the factory of the initial game state
+	 * @param interval keep the state of every interval-th ply, see class documentation
+	 * @return a factory of history models
+	 */
+	@Nonnull public static Factory<HistoryModel> factory(@Nonnull Factory<GameState> states,
+	                                                     int interval) {
+		Objects.requireNonNull(states);
+		if (interval < 1) throw new IllegalArgumentException("Interval must be > 0");
+		return (setup, mrX, detectives) ->
+				new HistoryModel(states.build(setup, mrX, detectives), interval);
+	}
+
+	@Nonnull @Override public Board getCurrentBoard() { return state; }
+
+	@Override public void registerObserver(@Nonnull Observer observer) {
+		Objects.requireNonNull(observer, "Observer argument was null");
+		if (!observers.add(observer))
+			throw new IllegalArgumentException(observer + " already exists");
+	}
+
+	@Override public void unregisterObserver(@Nonnull Observer observer) {
+		Objects.requireNonNull(observer, "Observer argument was null");
+		if (!observers.remove(observer))
+			throw new IllegalArgumentException(observer + " doesn't exist");
+	}
+
+	@Nonnull @Override public ImmutableSet<Observer> getObservers() {
+		return ImmutableSet.copyOf(observers);
+	}
+
+	/**
+	 * Makes a move at the current ply, discarding any moves that were undone.
+	 *
+	 * @param move the move to make
+	 */
+	@Override public void chooseMove(@Nonnull Move move) {
+		GameState next = state.advance(move);
+		moves.subList(ply, moves.size()).clear();
+		kept.subList(ply / interval + 1, kept.size()).clear();
+		moves.add(move);
+		step(state, move, next);
+	}
+
+	/**
+	 * @return the current ply, i.e. the number of moves made to reach the current board
+	 */
+	public int ply() { return ply; }
+
+	/**
+	 * @return the number of moves that can be redone from the start of the game
+	 */
+	public int plies() { return moves.size(); }
+
+	/**
+	 * @return all moves of the timeline, including those that were undone
+	 */
+	@Nonnull public ImmutableList<Move> moves() { return ImmutableList.copyOf(moves); }
+
+	/**
+	 * @return whether there is a move to undo
+	 */
+	public boolean canUndo() { return ply > 0; }
+
+	/**
+	 * @return whether there is a move to redo
+	 */
+	public boolean canRedo() { return ply < moves.size(); }
+
+	/**
+	 * Takes back the last move.
+	 */
+	public void undo() {
+		if (!canUndo()) throw new IllegalStateException("Nothing to undo");
+		seek(ply - 1);
+	}
+
+	/**
+	 * Makes the last undone move again.
+	 */
+	public void redo() {
+		if (!canRedo()) throw new IllegalStateException("Nothing to redo");
+		Move move = moves.get(ply);
+		step(state, move, (ply + 1) % interval == 0
+				? kept.get((ply + 1) / interval)
+				: state.advance(move));
+	}
+
+	/**
+	 * Moves to the given ply of the timeline.
+	 *
+	 * @param target the ply, from 0 to {@link #plies()}
+	 */
+	public void seek(int target) {
+		if (target < 0 || target > moves.size())
+			throw new IndexOutOfBoundsException("No ply " + target);
+		if (target == ply) return;
+		// every ply of the timeline up to the last move has its kept state
+		int from = target / interval * interval;
+		GameState at = kept.get(target / interval);
+		// continue from the current state if it is closer
+		if (ply > from && ply < target) {
+			from = ply;
+			at = state;
+		}
+		for (int i = from; i < target; i++) at = at.advance(moves.get(i));
+		state = at;
+		ply = target;
+		notifyObservers(null, null);
+	}
+
+	private void step(GameState before, Move move, GameState next) {
+		state = next;
+		ply++;
+		if (ply % interval == 0 && ply / interval == kept.size()) kept.add(next);
+		notifyObservers(before, move);
+	}
+
+	// passes a delta if the current state is one move after the given state
+	private void notifyObservers(GameState before, Move move) {
+		Event event = state.getWinner().isEmpty() ? Event.MOVE_MADE : Event.GAME_OVER;
+		BoardDelta delta = null;
+		for (Observer o : ImmutableList.copyOf(observers)) {
+			if (move != null && o instanceof DeltaObserver) {
+				if (delta == null) delta = BoardDelta.between(before, move, state);
+				((DeltaObserver) o).onModelChanged(state, event, delta);
+			} else o.onModelChanged(state, event);
+		}
+	}
+}
@@ -27,6 +27,24 @@ public interface Model {
 		 */
 		default void onModelChanged(@Nonnull Board board, @Nonnull Event event) {}
 	}
+	/**
+	 * An observer that is also told what changed with each move, so it does not need to diff
+	 * boards itself. Models call {@link #onModelChanged(Board, Event, BoardDelta)} instead of
+	 * {@link Observer#onModelChanged(Board, Event)} for such observers.
+	 */
+	interface DeltaObserver extends Observer {
+		/**
+		 * Called once game state changes
+		 *
+		 * @param board the board at the time of change
+		 * @param event the event that triggered this call
+		 * @param delta what the move changed
+		 */
+		default void onModelChanged(@Nonnull Board board, @Nonnull Event event,
+		                            @Nonnull BoardDelta delta) {
+			onModelChanged(board, event);
+		}
+	}
 	/**
 	 * @return the current game board
 	 */
@@ -38,7 +38,7 @@ public final class MyGameStateFactory implements Factory<GameState> {
 	}
 
 
-	private static final class MyGameState implements GameState {
+	private static final class MyGameState implements GameState, GameStateCodec.Position {
 		private final GameSetup setup;
 		private final ImmutableSet<Piece> remaining;
 		private final ImmutableList<LogEntry> log;
@@ -73,6 +73,15 @@ public final class MyGameStateFactory implements Factory<GameState> {
 		}
 
 
+		@Override public Player mrX() { return mrX; }
+
+		@Override public List<Player> detectives() { return detectives; }
+
+		@Override public ImmutableSet<Piece> remaining() { return remaining; }
+
+		@Override public ImmutableSet<Piece> played() { return played; }
+
+
 		/**
 		 * @return the current game setup
 		 */
@@ -438,4 +447,17 @@ public final class MyGameStateFactory implements Factory<GameState> {
 		return new MyGameState(setup, ImmutableSet.of(mrX.piece()), ImmutableList.of(), mrX, detectives, "mrx", ImmutableSet.of());
 	}
 
+	/**
+	 * Recreates a state in the middle of a game, see {@link GameStateCodec}
+	 */
+	static GameState restore(GameSetup setup,
+							 Player mrX,
+							 ImmutableList<Player> detectives,
+							 ImmutableList<LogEntry> log,
+							 ImmutableSet<Piece> remaining,
+							 ImmutableSet<Piece> played) {
+		String currMover = remaining.contains(mrX.piece()) ? "mrx" : "detectives";
+		return new MyGameState(setup, remaining, log, mrX, detectives, currMover, played);
+	}
+
 }
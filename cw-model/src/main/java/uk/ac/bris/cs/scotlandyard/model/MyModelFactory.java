@@ -3,21 +3,56 @@ package uk.ac.bris.cs.scotlandyard.model;
 import com.google.common.collect.ImmutableList;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
 import com.google.common.collect.ImmutableSet;
 import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Factory;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
 
 /**
  * cw-model
  */
 public final class MyModelFactory implements Factory<Model> {
 
+	private final int capacity;
+	private final AsyncObserver.Backpressure backpressure;
+
+	/**
+	 * Creates a factory for models that notify observers synchronously
+	 */
+	public MyModelFactory() {
+		this.capacity = 0;
+		this.backpressure = null;
+	}
+
+	private MyModelFactory(int capacity, AsyncObserver.Backpressure backpressure) {
+		if (capacity < 1) throw new IllegalArgumentException("Capacity must be > 0");
+		this.capacity = capacity;
+		this.backpressure = Objects.requireNonNull(backpressure);
+	}
+
+	/**
+	 * Creates a factory for models that notify every observer on its own thread through an
+	 * {@link AsyncObserver}, so moves are not held up by slow observers.
+	 *
+	 * @param capacity maximum number of events queued per observer
+	 * @param backpressure what to do when an observer's queue is full
+	 * @return the factory
+	 */
+	@Nonnull public static MyModelFactory asynchronous(
+			int capacity, @Nonnull AsyncObserver.Backpressure backpressure) {
+		return new MyModelFactory(capacity, backpressure);
+	}
+
 	private static final class MyModel implements Model {
 
-		private final List<Observer> observers;
+		// registered observers and the observers that deliver to them
+		private final Map<Observer, Observer> observers;
+		private final int capacity;
+		private final AsyncObserver.Backpressure backpressure;
 		private Board.GameState modelState;
 
 
@@ -39,8 +74,10 @@ public final class MyModelFactory implements Factory<Model> {
 		@Override
 		public void registerObserver(@Nonnull Observer observer) {
 			if(observer == null) throw new NullPointerException("Observer argument was null");
-			if(observers.contains(observer)) throw new IllegalArgumentException(observer + "already exists");
-			observers.add(observer);
+			if(observers.containsKey(observer)) throw new IllegalArgumentException(observer + "already exists");
+			observers.put(observer, backpressure == null
+					? observer
+					: AsyncObserver.of(observer, capacity, backpressure));
 		}
 
 		/**
@@ -50,8 +87,9 @@ public final class MyModelFactory implements Factory<Model> {
 		@Override
 		public void unregisterObserver(@Nonnull Observer observer) {
 			if(observer == null) throw new NullPointerException("Observer argument was null");
-			if(!observers.contains(observer)) throw new IllegalArgumentException(observer + "doesn't exist");
-			observers.remove(observer);
+			if(!observers.containsKey(observer)) throw new IllegalArgumentException(observer + "doesn't exist");
+			Observer dispatcher = observers.remove(observer);
+			if(dispatcher instanceof AsyncObserver) ((AsyncObserver) dispatcher).close();
 		}
 
 		/**
@@ -59,7 +97,7 @@ public final class MyModelFactory implements Factory<Model> {
 		 */
 		@Nonnull
 		public ImmutableSet<Observer> getObservers(){
-			return ImmutableSet.copyOf(observers);
+			return ImmutableSet.copyOf(observers.keySet());
 		}
 
 
@@ -69,12 +107,19 @@ public final class MyModelFactory implements Factory<Model> {
 		 */
 		@Override
 		public void chooseMove(@Nonnull Move move) {
+			Board.GameState previous = modelState;
 			modelState = modelState.advance(move);
 			Observer.Event event;
 			if(modelState.getWinner().isEmpty()){
 				event = Observer.Event.MOVE_MADE;
 			} else event = Observer.Event.GAME_OVER;
-			for (Observer o : observers) o.onModelChanged(modelState, event);
+			BoardDelta delta = null;
+			for (Map.Entry<Observer, Observer> e : observers.entrySet()) {
+				if (e.getKey() instanceof DeltaObserver) {
+					if (delta == null) delta = BoardDelta.between(previous, move, modelState);
+					((DeltaObserver) e.getValue()).onModelChanged(modelState, event, delta);
+				} else e.getValue().onModelChanged(modelState, event);
+			}
 		}
 
 		/**
@@ -82,11 +127,17 @@ public final class MyModelFactory implements Factory<Model> {
 		 * @param setup the game setup
 		 * @param mrX mrX
 		 * @param detectives the detectives
+		 * @param capacity maximum number of events queued per observer
+		 * @param backpressure policy of asynchronous dispatch, null to notify synchronously
 		 */
 		public MyModel(final GameSetup setup,
 					   final Player mrX,
-					   final ImmutableList<Player> detectives){
-			this.observers = new ArrayList<>();
+					   final ImmutableList<Player> detectives,
+					   final int capacity,
+					   @Nullable final AsyncObserver.Backpressure backpressure){
+			this.observers = new LinkedHashMap<>();
+			this.capacity = capacity;
+			this.backpressure = backpressure;
 			Factory<Board.GameState> gameStateFactory = new MyGameStateFactory();
 			this.modelState = gameStateFactory.build(setup, mrX, detectives);
 		}
@@ -105,6 +156,6 @@ public final class MyModelFactory implements Factory<Model> {
 	@Nonnull @Override public Model build(GameSetup setup,
 										  Player mrX,
 										  ImmutableList<Player> detectives) {
-		return new MyModel(setup, mrX, detectives);
+		return new MyModel(setup, mrX, detectives, capacity, backpressure);
 	}
 }
@@ -0,0 +1,93 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.ImmutableList;
+
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+
+/**
+ * A sized {@link Spliterator} over the successors of a game state: every available move paired
+ * with the state it {@link GameState#advance(Move) advances} to.
+ * <br>
+ * The available moves are copied into a list once and the spliterator covers a range of its
+ * indices; splitting halves the range, so parallel streams divide the work evenly, unlike
+ * streams over the {@link com.google.common.collect.ImmutableSet} itself. Successors are only
+ * computed as they are traversed.
+ */
+public final class SuccessorSpliterator implements Spliterator<Map.Entry<Move, GameState>> {
+
+	private static final int CHARACTERISTICS =
+			SIZED | SUBSIZED | ORDERED | IMMUTABLE | NONNULL | DISTINCT;
+
+	private final GameState state;
+	private final ImmutableList<Move> moves;
+	private int origin;
+	private final int fence;
+
+	private SuccessorSpliterator(GameState state, ImmutableList<Move> moves, int origin,
+	                             int fence) {
+		this.state = state;
+		this.moves = moves;
+		this.origin = origin;
+		this.fence = fence;
+	}
+
+	/**
+	 * @param state the game state
+	 * @return a spliterator over all successors of the given state
+	 */
+	@Nonnull public static SuccessorSpliterator of(@Nonnull GameState state) {
+		ImmutableList<Move> moves = state.getAvailableMoves().asList();
+		return new SuccessorSpliterator(state, moves, 0, moves.size());
+	}
+
+	/**
+	 * @param state the game state
+	 * @param parallel whether the stream should be parallel
+	 * @return a stream of all successors of the given state, in move order
+	 */
+	@Nonnull public static Stream<Map.Entry<Move, GameState>> stream(@Nonnull GameState state,
+	                                                                 boolean parallel) {
+		return StreamSupport.stream(of(state), parallel);
+	}
+
+	@Override public boolean tryAdvance(Consumer<? super Map.Entry<Move, GameState>> action) {
+		Objects.requireNonNull(action);
+		if (origin >= fence) return false;
+		action.accept(successor(origin++));
+		return true;
+	}
+
+	@Override public void forEachRemaining(Consumer<? super Map.Entry<Move, GameState>> action) {
+		Objects.requireNonNull(action);
+		int i = origin;
+		origin = fence;
+		for (; i < fence; i++) action.accept(successor(i));
+	}
+
+	@Override public SuccessorSpliterator trySplit() {
+		int mid = (origin + fence) >>> 1;
+		if (mid <= origin) return null;
+		var prefix = new SuccessorSpliterator(state, moves, origin, mid);
+		origin = mid;
+		return prefix;
+	}
+
+	@Override public long estimateSize() { return fence - origin; }
+
+	@Override public int characteristics() { return CHARACTERISTICS; }
+
+	private Map.Entry<Move, GameState> successor(int index) {
+		Move move = moves.get(index);
+		return new SimpleImmutableEntry<>(move, state.advance(move));
+	}
+}
@@ -0,0 +1,311 @@
+package uk.ac.bris.cs.scotlandyard.record;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+import javax.annotation.Nonnull;
+
+/**
+ * An append-only file of {@link GameRecord}s with an index for random access.
+ * <br>
+ * Records are stored back to back in the data file; a second file, named after the data file
+ * with an {@code .idx} suffix, holds the end offset of every record. Both files are memory
+ * mapped, the data file in segments of 1 GiB that overlap by the maximum record size so every
+ * record lies within one mapping, so reading game N takes two index lookups and no copying,
+ * however many games the archive holds. The index is mapped as a whole, which limits an archive
+ * to about 268 million games.
+ * <br>
+ * An append writes and forces the records before their index entries. A crash can therefore
+ * only leave records without index entries or a partial index entry behind. When the archive is
+ * opened again, entries past the end of the data are dropped and the data after the last entry
+ * is scanned: whole records are indexed again and only a torn record at the end is cut off. The
+ * same scan rebuilds the index of an archive whose index file was lost. Appends are serialised;
+ * reads may happen from any number of threads, also while appending.
+ */
+public final class GameArchive implements AutoCloseable {
+
+	static final int MAGIC = 0x53594741;
+	static final int VERSION = 1;
+	static final int HEADER = 8;
+
+	private static final int SEGMENT = 1 << 30;
+	private static final int MAX_RECORD = 1 << 20;
+
+	private final FileChannel data;
+	private final FileChannel index;
+	private final int segment;
+	private final int maxRecord;
+	private final Object appendLock = new Object();
+
+	private volatile long count;
+	private long dataEnd;
+	private volatile MappedByteBuffer[] segments = new MappedByteBuffer[0];
+	private volatile MappedByteBuffer ends;
+
+	private GameArchive(FileChannel data, FileChannel index, int segment, int maxRecord)
+			throws IOException {
+		this.data = data;
+		this.index = index;
+		this.segment = segment;
+		this.maxRecord = maxRecord;
+		if (data.size() == 0) writeHeader(data);
+		if (index.size() == 0) writeHeader(index);
+		checkHeader(data);
+		checkHeader(index);
+		recover();
+	}
+
+	/**
+	 * Opens an archive, creating it if it does not exist.
+	 *
+	 * @param file the data file; the index is kept next to it
+	 * @return the archive
+	 * @throws IOException if the files cannot be opened or are not an archive
+	 */
+	@Nonnull public static GameArchive open(@Nonnull Path file) throws IOException {
+		return open(file, SEGMENT, MAX_RECORD);
+	}
+
+	static GameArchive open(Path file, int segment, int maxRecord) throws IOException {
+		Objects.requireNonNull(file);
+		var data = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE);
+		try {
+			var index = FileChannel.open(indexOf(file), StandardOpenOption.CREATE,
+					StandardOpenOption.READ, StandardOpenOption.WRITE);
+			try {
+				return new GameArchive(data, index, segment, maxRecord);
+			} catch (IOException | RuntimeException e) {
+				index.close();
+				throw e;
+			}
+		} catch (IOException | RuntimeException e) {
+			data.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * @param file the data file of an archive
+	 * @return the index file of the archive
+	 */
+	@Nonnull public static Path indexOf(@Nonnull Path file) {
+		return file.resolveSibling(file.getFileName() + ".idx");
+	}
+
+	private static void writeHeader(FileChannel channel) throws IOException {
+		channel.write(ByteBuffer.allocate(HEADER).putInt(MAGIC).putInt(VERSION).flip(), 0);
+		channel.force(true);
+	}
+
+	private static void checkHeader(FileChannel channel) throws IOException {
+		var header = ByteBuffer.allocate(HEADER);
+		channel.read(header, 0);
+		header.flip();
+		if (header.remaining() < HEADER || header.getInt() != MAGIC)
+			throw new IOException("Not a game archive");
+		int version = header.getInt();
+		if (version != VERSION) throw new IOException("Unsupported archive version " + version);
+	}
+
+	// drops index entries without records, indexes whole records without entries and cuts off
+	// what is left
+	private void recover() throws IOException {
+		long entries = (index.size() - HEADER) / Long.BYTES;
+		long size = data.size();
+		var entry = ByteBuffer.allocate(Long.BYTES);
+		long end = HEADER;
+		while (entries > 0) {
+			entry.clear();
+			index.read(entry, HEADER + (entries - 1) * Long.BYTES);
+			end = entry.flip().getLong();
+			if (end <= size) break;
+			entries--;
+			end = HEADER;
+		}
+		index.truncate(HEADER + entries * Long.BYTES);
+		var offsets = ByteBuffer.allocate(1024 * Long.BYTES);
+		long at = HEADER + entries * Long.BYTES;
+		while (end < size) {
+			// every record fits into a window, so a window that yields none ends the scan
+			ByteBuffer window = map(data, end, Math.min((long) segment + maxRecord, size - end));
+			int scanned = 0;
+			while (window.hasRemaining()) {
+				if (!isWholeRecord(window)) break;
+				scanned = window.position();
+				offsets.putLong(end + scanned);
+				entries++;
+				if (!offsets.hasRemaining()) at = writeAll(index, offsets.flip(), at);
+			}
+			if (scanned == 0) break;
+			end += scanned;
+		}
+		writeAll(index, offsets.flip(), at);
+		data.truncate(end);
+		index.force(true);
+		data.force(true);
+		count = entries;
+		dataEnd = end;
+	}
+
+	// reads the record at the buffer's position, moving past it only if it is whole
+	private static boolean isWholeRecord(ByteBuffer buffer) {
+		int start = buffer.position();
+		try {
+			if (GameRecord.read(buffer).isComplete()) return true;
+		} catch (IllegalArgumentException e) {
+			// not a record, such as the start of a torn one
+		}
+		buffer.position(start);
+		return false;
+	}
+
+	private static long writeAll(FileChannel channel, ByteBuffer buffer, long position)
+			throws IOException {
+		while (buffer.hasRemaining()) position += channel.write(buffer, position);
+		buffer.clear();
+		return position;
+	}
+
+	/**
+	 * @return the number of games in the archive
+	 */
+	public long size() { return count; }
+
+	/**
+	 * Appends a finished record.
+	 *
+	 * @param record the record, as written by {@link GameRecordWriter}
+	 * @return the number of the appended game
+	 */
+	public long append(@Nonnull byte[] record) {
+		return append(List.of(record));
+	}
+
+	/**
+	 * Appends finished records, forcing them to storage together.
+	 *
+	 * @param records the records, as written by {@link GameRecordWriter}
+	 * @return the number of the first appended game
+	 */
+	public long append(@Nonnull List<byte[]> records) {
+		for (byte[] record : records) validate(record);
+		synchronized (appendLock) {
+			if (HEADER + (count + records.size()) * Long.BYTES > Integer.MAX_VALUE)
+				throw new IllegalStateException("Archive is full");
+			try {
+				long first = count, position = dataEnd;
+				var offsets = ByteBuffer.allocate(records.size() * Long.BYTES);
+				for (byte[] record : records) {
+					var buffer = ByteBuffer.wrap(record);
+					while (buffer.hasRemaining())
+						position += data.write(buffer, position);
+					offsets.putLong(position);
+				}
+				data.force(false);
+				offsets.flip();
+				long at = HEADER + first * Long.BYTES;
+				while (offsets.hasRemaining()) at += index.write(offsets, at);
+				index.force(false);
+				dataEnd = position;
+				count = first + records.size();
+				return first;
+			} catch (IOException e) { throw new UncheckedIOException(e); }
+		}
+	}
+
+	private void validate(byte[] record) {
+		if (record.length > maxRecord)
+			throw new IllegalArgumentException("Record exceeds " + maxRecord + " bytes");
+		var buffer = ByteBuffer.wrap(record);
+		if (!GameRecord.read(buffer).isComplete() || buffer.hasRemaining())
+			throw new IllegalArgumentException("Not a single finished record");
+	}
+
+	/**
+	 * @param game the number of the game, from 0
+	 * @return the record of the game, reading from the mapped file
+	 */
+	@Nonnull public GameRecord get(long game) {
+		if (game < 0 || game >= count) throw new IndexOutOfBoundsException("No game " + game);
+		long start = game == 0 ? HEADER : end(game - 1), end = end(game);
+		int k = (int) (start / segment);
+		MappedByteBuffer mapped = segment(k, end);
+		long base = (long) k * segment;
+		ByteBuffer buffer = mapped.duplicate();
+		buffer.limit((int) (end - base)).position((int) (start - base));
+		return GameRecord.read(buffer);
+	}
+
+	/**
+	 * @param parallel whether the stream should be parallel
+	 * @return a stream of every game in order; parallel streams split the games evenly
+	 */
+	@Nonnull public Stream<GameRecord> records(boolean parallel) {
+		LongStream games = LongStream.range(0, count);
+		return (parallel ? games.parallel() : games).mapToObj(this::get);
+	}
+
+	private long end(long game) {
+		MappedByteBuffer current = ends;
+		long offset = HEADER + game * Long.BYTES;
+		if (current == null || offset + Long.BYTES > current.capacity()) {
+			synchronized (this) {
+				current = ends;
+				if (current == null || offset + Long.BYTES > current.capacity())
+					ends = current = map(index, 0, HEADER + count * Long.BYTES);
+			}
+		}
+		return current.getLong((int) offset);
+	}
+
+	private MappedByteBuffer segment(int k, long end) {
+		MappedByteBuffer[] current = segments;
+		long base = (long) k * segment;
+		if (k >= current.length || current[k] == null || end - base > current[k].capacity()) {
+			synchronized (this) {
+				current = segments;
+				if (k >= current.length || current[k] == null
+						|| end - base > current[k].capacity()) {
+					var grown = Arrays.copyOf(current, Math.max(current.length, k + 1));
+					long size = Math.min((long) segment + maxRecord, dataEnd() - base);
+					grown[k] = map(data, base, size);
+					segments = current = grown;
+				}
+			}
+		}
+		return current[k];
+	}
+
+	private long dataEnd() {
+		synchronized (appendLock) {
+			return dataEnd;
+		}
+	}
+
+	private static MappedByteBuffer map(FileChannel channel, long position, long size) {
+		try {
+			var mapped = channel.map(MapMode.READ_ONLY, position, size);
+			mapped.order(ByteOrder.BIG_ENDIAN);
+			return mapped;
+		} catch (IOException e) { throw new UncheckedIOException(e); }
+	}
+
+	@Override public void close() throws IOException {
+		try {
+			data.close();
+		} finally { index.close(); }
+	}
+}
@@ -0,0 +1,264 @@
+package uk.ac.bris.cs.scotlandyard.record;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Objects;
+import java.util.function.Consumer;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+import uk.ac.bris.cs.scotlandyard.model.GameSetup;
+import uk.ac.bris.cs.scotlandyard.model.Move;
+import uk.ac.bris.cs.scotlandyard.model.Move.DoubleMove;
+import uk.ac.bris.cs.scotlandyard.model.Move.SingleMove;
+import uk.ac.bris.cs.scotlandyard.model.Piece;
+import uk.ac.bris.cs.scotlandyard.model.Piece.Detective;
+import uk.ac.bris.cs.scotlandyard.model.Piece.MrX;
+import uk.ac.bris.cs.scotlandyard.model.Player;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Factory;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+
+/**
+ * A recorded game, read in place from a buffer.
+ * <br>
+ * A record starts with a header: the magic number and version, the fingerprint of the game setup
+ * and every player's piece, location and tickets, MrX first. It is followed by one entry per move
+ * and a terminating zero. An entry is an unsigned varint naming the player slot, the tickets and
+ * whether it is a double move, followed by one varint per destination; sources are implied by
+ * the previous destinations. A typical move takes two or three bytes.
+ * <br>
+ * Reading a record only parses the header and skips over the moves; moves are decoded from the
+ * buffer on demand, nothing is copied. See {@link GameRecordWriter} for writing records.
+ */
+public final class GameRecord {
+
+	static final int MAGIC = 0x53594752;
+	static final int VERSION = 1;
+	static final int END = 0;
+
+	private static final Ticket[] TICKETS = Ticket.values();
+	private static final Detective[] DETECTIVES = Detective.values();
+
+	private final ByteBuffer moves;
+	private final long fingerprint;
+	private final Player mrX;
+	private final ImmutableList<Player> detectives;
+	private final int plies;
+	private final boolean complete;
+
+	private GameRecord(ByteBuffer moves, long fingerprint, Player mrX,
+	                   ImmutableList<Player> detectives, int plies, boolean complete) {
+		this.moves = moves;
+		this.fingerprint = fingerprint;
+		this.mrX = mrX;
+		this.detectives = detectives;
+		this.plies = plies;
+		this.complete = complete;
+	}
+
+	/**
+	 * Reads the record at the buffer's position and moves the position past it. A record
+	 * without its terminating zero, for example after a crash, ends at the last complete move
+	 * and consumes the rest of the buffer.
+	 *
+	 * @param buffer the buffer to read from
+	 * @return the record, which reads its moves from the buffer's content
+	 * @throws IllegalArgumentException if the buffer does not hold a record at its position
+	 */
+	@Nonnull public static GameRecord read(@Nonnull ByteBuffer buffer) {
+		ByteOrder order = buffer.order();
+		buffer.order(ByteOrder.BIG_ENDIAN);
+		try {
+			if (buffer.getInt() != MAGIC) throw new IllegalArgumentException("Not a game record");
+			int version = buffer.get();
+			if (version != VERSION)
+				throw new IllegalArgumentException("Unsupported version " + version);
+			long fingerprint = buffer.getLong();
+			int players = buffer.get();
+			if (players < 1) throw new IllegalArgumentException("No players");
+			Player mrX = null;
+			var detectives = ImmutableList.<Player>builder();
+			for (int i = 0; i < players; i++) {
+				Player player = readPlayer(buffer);
+				if (i == 0) {
+					if (!player.isMrX()) throw new IllegalArgumentException("MrX must be first");
+					mrX = player;
+				} else detectives.add(player);
+			}
+			ByteBuffer moves = buffer.slice();
+			int plies = 0;
+			boolean complete = false;
+			while (buffer.hasRemaining()) {
+				int start = buffer.position();
+				int head = readVarint(buffer);
+				if (head < 0) {
+					buffer.position(start);
+					break;
+				}
+				if (head == END) {
+					complete = true;
+					break;
+				}
+				int destinations = (head - 1 & 1) == 0 ? 1 : 2;
+				boolean whole = true;
+				for (int d = 0; d < destinations && whole; d++) whole = readVarint(buffer) >= 0;
+				if (!whole) {
+					buffer.position(start);
+					break;
+				}
+				plies++;
+			}
+			if (!complete) buffer.position(buffer.limit());
+			return new GameRecord(moves, fingerprint, mrX, detectives.build(), plies, complete);
+		} catch (BufferUnderflowException e) {
+			throw new IllegalArgumentException("Truncated record header", e);
+		} finally { buffer.order(order); }
+	}
+
+	private static Player readPlayer(ByteBuffer buffer) {
+		int code = buffer.get();
+		if (code < 0 || code > DETECTIVES.length)
+			throw new IllegalArgumentException("Unknown piece " + code);
+		Piece piece = code == 0 ? MrX.MRX : DETECTIVES[code - 1];
+		int location = requireVarint(buffer);
+		var tickets = ImmutableMap.<Ticket, Integer>builder();
+		for (Ticket ticket : TICKETS) tickets.put(ticket, requireVarint(buffer));
+		return new Player(piece, tickets.build(), location);
+	}
+
+	/**
+	 * @return the fingerprint of the setup the game was played with, see
+	 * {@link GameSetup#fingerprint()}
+	 */
+	public long fingerprint() { return fingerprint; }
+
+	/**
+	 * @return MrX at the start of the game
+	 */
+	@Nonnull public Player mrX() { return mrX; }
+
+	/**
+	 * @return the detectives at the start of the game
+	 */
+	@Nonnull public ImmutableList<Player> detectives() { return detectives; }
+
+	/**
+	 * @return the number of recorded moves
+	 */
+	public int plies() { return plies; }
+
+	/**
+	 * @return whether the record was finished, i.e. was not cut off
+	 */
+	public boolean isComplete() { return complete; }
+
+	/**
+	 * @return the recorded moves in order
+	 */
+	@Nonnull public ImmutableList<Move> moves() {
+		var moves = ImmutableList.<Move>builderWithExpectedSize(plies);
+		forEachMove(moves::add);
+		return moves.build();
+	}
+
+	/**
+	 * Decodes the recorded moves in order.
+	 *
+	 * @param action receives every move
+	 */
+	public void forEachMove(@Nonnull Consumer<Move> action) {
+		Objects.requireNonNull(action);
+		int[] locations = new int[detectives.size() + 1];
+		locations[0] = mrX.location();
+		for (int i = 0; i < detectives.size(); i++) locations[i + 1] = detectives.get(i).location();
+		ByteBuffer buffer = moves.duplicate();
+		for (int i = 0; i < plies; i++) {
+			int head = requireVarint(buffer) - 1;
+			boolean isDouble = (head & 1) != 0;
+			int code = head >>> 1;
+			int slot, first, second = 0;
+			if (isDouble) {
+				second = code % TICKETS.length;
+				code /= TICKETS.length;
+			}
+			first = code % TICKETS.length;
+			slot = code / TICKETS.length;
+			if (slot >= locations.length)
+				throw new IllegalArgumentException("Unknown slot " + slot);
+			Piece piece = slot == 0 ? mrX.piece() : detectives.get(slot - 1).piece();
+			int source = locations[slot];
+			int destination = requireVarint(buffer);
+			if (isDouble) {
+				int last = requireVarint(buffer);
+				action.accept(new DoubleMove(piece, source, TICKETS[first], destination,
+						TICKETS[second], last));
+				destination = last;
+			} else action.accept(new SingleMove(piece, source, TICKETS[first], destination));
+			locations[slot] = destination;
+		}
+	}
+
+	/**
+	 * Replays the game.
+	 *
+	 * @param factory the factory to create the initial state with
+	 * @param setup the setup the game was played with
+	 * @param action receives every state after the initial one
+	 * @return the state after the last recorded move
+	 * @throws IllegalArgumentException if the setup's fingerprint does not match the record's
+	 */
+	@Nonnull public GameState replay(@Nonnull Factory<GameState> factory,
+	                                 @Nonnull GameSetup setup,
+	                                 @Nonnull Consumer<GameState> action) {
+		if (setup.fingerprint() != fingerprint)
+			throw new IllegalArgumentException("Record was played with a different setup");
+		Objects.requireNonNull(action);
+		GameState[] state = {factory.build(setup, mrX, detectives)};
+		forEachMove(move -> {
+			state[0] = state[0].advance(move);
+			action.accept(state[0]);
+		});
+		return state[0];
+	}
+
+	/**
+	 * @param factory the factory to create the initial state with
+	 * @param setup the setup the game was played with
+	 * @return the state after the last recorded move
+	 * @throws IllegalArgumentException if the setup's fingerprint does not match the record's
+	 */
+	@Nonnull public GameState replay(@Nonnull Factory<GameState> factory,
+	                                 @Nonnull GameSetup setup) {
+		return replay(factory, setup, state -> {});
+	}
+
+	static int head(int slot, Move move) {
+		return move.visit(new Move.FunctionalVisitor<>(
+				m -> ((slot * TICKETS.length + m.ticket.ordinal()) << 1) + 1,
+				m -> ((((slot * TICKETS.length + m.ticket1.ordinal()) * TICKETS.length)
+						+ m.ticket2.ordinal()) << 1 | 1) + 1));
+	}
+
+	private static int requireVarint(ByteBuffer buffer) {
+		int value = readVarint(buffer);
+		if (value < 0) throw new BufferUnderflowException();
+		return value;
+	}
+
+	// returns -1 if the buffer ends within the varint
+	static int readVarint(ByteBuffer buffer) {
+		int value = 0;
+		for (int shift = 0; shift < 32; shift += 7) {
+			if (!buffer.hasRemaining()) return -1;
+			byte b = buffer.get();
+			value |= (b & 0x7F) << shift;
+			if (b >= 0) return value;
+		}
+		throw new IllegalArgumentException("Malformed varint");
+	}
+}
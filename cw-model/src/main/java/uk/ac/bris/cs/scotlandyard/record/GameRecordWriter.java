@@ -0,0 +1,181 @@
+package uk.ac.bris.cs.scotlandyard.record;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.Board;
+import uk.ac.bris.cs.scotlandyard.model.BoardDelta;
+import uk.ac.bris.cs.scotlandyard.model.GameSetup;
+import uk.ac.bris.cs.scotlandyard.model.Model.DeltaObserver;
+import uk.ac.bris.cs.scotlandyard.model.Move;
+import uk.ac.bris.cs.scotlandyard.model.Move.DoubleMove;
+import uk.ac.bris.cs.scotlandyard.model.Move.SingleMove;
+import uk.ac.bris.cs.scotlandyard.model.Piece;
+import uk.ac.bris.cs.scotlandyard.model.Player;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+
+/**
+ * Writes a game in the format described in {@link GameRecord}, one move at a time.
+ * <br>
+ * The header is written on creation. Registered with a model, the writer records every move and
+ * finishes the record once the game is over. It needs the move of each change, which the models
+ * of {@code MyModelFactory} and {@code ConcurrentModel} pass as {@link BoardDelta}s, also through
+ * an {@code AsyncObserver}. A change without a delta, such as a {@code HistoryModel} undoing a
+ * move or a {@code CoalescingObserver} skipping some, cannot be recorded: the writer then flushes
+ * and stops, leaving a record that is cut off after the last move it saw. Output is buffered,
+ * call {@link #flush()} to push recorded moves to the stream. Instances are not thread safe.
+ */
+public final class GameRecordWriter implements DeltaObserver, AutoCloseable {
+
+	private final OutputStream out;
+	private final Piece[] pieces;
+	private byte[] buffer = new byte[256];
+	private int size;
+	private boolean finished;
+
+	/**
+	 * Writes the header of a new record.
+	 *
+	 * @param out the stream to write to
+	 * @param setup the game setup
+	 * @param mrX MrX at the start of the game
+	 * @param detectives the detectives at the start of the game
+	 */
+	public GameRecordWriter(@Nonnull OutputStream out, @Nonnull GameSetup setup,
+	                        @Nonnull Player mrX, @Nonnull List<Player> detectives) {
+		this.out = Objects.requireNonNull(out);
+		if (!mrX.isMrX()) throw new IllegalArgumentException("MrX must be first");
+		if (detectives.size() > Piece.Detective.values().length)
+			throw new IllegalArgumentException("Too many detectives");
+		this.pieces = new Piece[detectives.size() + 1];
+		pieces[0] = mrX.piece();
+		writeInt(GameRecord.MAGIC);
+		writeByte(GameRecord.VERSION);
+		writeLong(setup.fingerprint());
+		writeByte(pieces.length);
+		writePlayer(mrX);
+		for (int i = 0; i < detectives.size(); i++) {
+			Player detective = detectives.get(i);
+			if (!detective.isDetective()) throw new IllegalArgumentException("Not a detective");
+			pieces[i + 1] = detective.piece();
+			writePlayer(detective);
+		}
+	}
+
+	private void writePlayer(Player player) {
+		writeByte(player.isMrX() ? 0 : ((Piece.Detective) player.piece()).ordinal() + 1);
+		writeVarint(player.location());
+		for (Ticket ticket : Ticket.values())
+			writeVarint(player.tickets().getOrDefault(ticket, 0));
+	}
+
+	/**
+	 * @param move the next move of the game
+	 */
+	public void record(@Nonnull Move move) {
+		if (finished) throw new IllegalStateException("Record is finished");
+		int slot = slotOf(move.commencedBy());
+		writeVarint(GameRecord.head(slot, move));
+		move.visit(new Move.Visitor<Void>() {
+			@Override public Void visit(SingleMove m) {
+				writeVarint(m.destination);
+				return null;
+			}
+			@Override public Void visit(DoubleMove m) {
+				writeVarint(m.destination1);
+				writeVarint(m.destination2);
+				return null;
+			}
+		});
+	}
+
+	private int slotOf(Piece piece) {
+		for (int slot = 0; slot < pieces.length; slot++) if (pieces[slot] == piece) return slot;
+		throw new IllegalArgumentException(piece + " is not in the game");
+	}
+
+	/**
+	 * Terminates the record and flushes it; further moves are rejected. Does nothing if the
+	 * record is already finished or was stopped by a change without a delta.
+	 */
+	public void finish() {
+		if (finished) return;
+		writeVarint(GameRecord.END);
+		finished = true;
+		flush();
+	}
+
+	/**
+	 * Drops buffered output; continues a record whose start was written before.
+	 */
+	void discard() { size = 0; }
+
+	/**
+	 * Writes buffered moves to the stream and flushes it.
+	 */
+	public void flush() {
+		try {
+			out.write(buffer, 0, size);
+			out.flush();
+			size = 0;
+		} catch (IOException e) { throw new UncheckedIOException(e); }
+	}
+
+	// the moves that led to the board are unknown, so the record ends here unfinished
+	@Override public void onModelChanged(@Nonnull Board board, @Nonnull Event event) {
+		if (finished) return;
+		finished = true;
+		flush();
+	}
+
+	@Override public void onModelChanged(@Nonnull Board board, @Nonnull Event event,
+	                                     @Nonnull BoardDelta delta) {
+		if (finished) return;
+		record(delta.move());
+		if (event == Event.GAME_OVER) finish();
+	}
+
+	/**
+	 * Flushes any recorded moves and closes the stream, leaving an unfinished record unfinished.
+	 */
+	@Override public void close() {
+		flush();
+		try {
+			out.close();
+		} catch (IOException e) { throw new UncheckedIOException(e); }
+	}
+
+	private void ensure(int bytes) {
+		if (size + bytes > buffer.length) buffer = Arrays.copyOf(buffer, buffer.length * 2);
+	}
+
+	private void writeByte(int value) {
+		ensure(1);
+		buffer[size++] = (byte) value;
+	}
+
+	private void writeInt(int value) {
+		for (int shift = 24; shift >= 0; shift -= 8) writeByte(value >>> shift);
+	}
+
+	private void writeLong(long value) {
+		writeInt((int) (value >>> 32));
+		writeInt((int) value);
+	}
+
+	private void writeVarint(int value) {
+		if (value < 0) throw new IllegalArgumentException("Negative value " + value);
+		ensure(5);
+		while ((value & ~0x7F) != 0) {
+			buffer[size++] = (byte) (value & 0x7F | 0x80);
+			value >>>= 7;
+		}
+		buffer[size++] = (byte) value;
+	}
+}
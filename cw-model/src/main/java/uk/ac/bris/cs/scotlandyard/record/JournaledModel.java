@@ -0,0 +1,142 @@
+package uk.ac.bris.cs.scotlandyard.record;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Objects;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.Board;
+import uk.ac.bris.cs.scotlandyard.model.BoardDelta;
+import uk.ac.bris.cs.scotlandyard.model.GameSetup;
+import uk.ac.bris.cs.scotlandyard.model.HistoryModel;
+import uk.ac.bris.cs.scotlandyard.model.Model;
+import uk.ac.bris.cs.scotlandyard.model.Move;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Factory;
+
+/**
+ * A {@link Model} that writes every move to a {@link MoveJournal}, so the game survives a crash.
+ * <br>
+ * The journal is notified before any other observer, so moves are journaled in the order they
+ * are made even when observers choose the next move. Journaling a move costs a few microseconds
+ * as it only appends to the journal's buffer; moves reach storage with the journal's next
+ * group commit. The wrapped model must pass a {@link BoardDelta} with every change, as the models
+ * of {@code MyModelFactory} and {@code ConcurrentModel} do; a {@link HistoryModel} is rejected as
+ * undoing moves cannot be journaled. Should another model report a change without a delta,
+ * journaling of the game stops and it recovers to the last move journaled.
+ */
+public final class JournaledModel implements Model {
+
+	private final Model delegate;
+	private final MoveJournal journal;
+	private final long game;
+	private final GameRecordWriter writer;
+	private final Observer recorder = new DeltaObserver() {
+		private boolean stopped;
+		@Override public void onModelChanged(@Nonnull Board board, @Nonnull Event event) {
+			stopped = true;
+			writer.onModelChanged(board, event);
+		}
+		@Override public void onModelChanged(@Nonnull Board board, @Nonnull Event event,
+		                                     @Nonnull BoardDelta delta) {
+			if (stopped) return;
+			writer.record(delta.move());
+			if (event == Event.GAME_OVER) {
+				writer.finish();
+				journal.finish(game);
+			} else writer.flush();
+		}
+	};
+
+	private JournaledModel(Model delegate, MoveJournal journal, long game,
+	                       GameRecordWriter writer) {
+		this.delegate = delegate;
+		this.journal = journal;
+		this.game = game;
+		this.writer = writer;
+		delegate.registerObserver(recorder);
+	}
+
+	/**
+	 * @param journal the journal to write to
+	 * @param models the factory of the models to journal
+	 * @return a factory of journaled models, each a new game in the journal; building one throws
+	 * {@link IllegalArgumentException} if the model is a {@link HistoryModel}
+	 */
+	@Nonnull public static Factory<JournaledModel> factory(@Nonnull MoveJournal journal,
+	                                                      @Nonnull Factory<Model> models) {
+		Objects.requireNonNull(journal);
+		Objects.requireNonNull(models);
+		return (setup, mrX, detectives) -> {
+			Model model = checkJournalable(models.build(setup, mrX, detectives));
+			long game = journal.newGame();
+			var writer = new GameRecordWriter(journal.stream(game), setup, mrX, detectives);
+			writer.flush();
+			return new JournaledModel(model, journal, game, writer);
+		};
+	}
+
+	/**
+	 * Rebuilds the games that were not finished when the journal was opened by replaying their
+	 * moves into new models, which continue to write to the journal.
+	 *
+	 * @param journal the journal to recover from
+	 * @param models the factory of the models to replay the games into
+	 * @param setups the setups the games may have been played with
+	 * @return the recovered models by game number
+	 * @throws IllegalArgumentException if a game's setup is not among the given ones or the
+	 * models are {@link HistoryModel}s
+	 */
+	@Nonnull public static ImmutableMap<Long, JournaledModel> recover(
+			@Nonnull MoveJournal journal,
+			@Nonnull Factory<Model> models,
+			@Nonnull Collection<GameSetup> setups) {
+		Map<Long, GameSetup> byFingerprint = MoveJournal.setups(setups);
+		var recovered = ImmutableMap.<Long, JournaledModel>builder();
+		journal.unfinished().forEach((game, record) -> {
+			GameSetup setup = MoveJournal.setupOf(record, byFingerprint);
+			Model model = checkJournalable(
+					models.build(setup, record.mrX(), record.detectives()));
+			record.forEachMove(model::chooseMove);
+			var writer = new GameRecordWriter(journal.stream(game), setup, record.mrX(),
+					record.detectives());
+			writer.discard();
+			recovered.put(game, new JournaledModel(model, journal, game, writer));
+		});
+		return recovered.build();
+	}
+
+	// checked before the game is started in the journal
+	private static Model checkJournalable(Model model) {
+		if (model instanceof HistoryModel)
+			throw new IllegalArgumentException("Cannot journal a model that can undo moves");
+		return model;
+	}
+
+	/**
+	 * @return the number of the game in the journal
+	 */
+	public long game() { return game; }
+
+	@Nonnull @Override public Board getCurrentBoard() { return delegate.getCurrentBoard(); }
+
+	@Override public void registerObserver(@Nonnull Observer observer) {
+		delegate.registerObserver(observer);
+	}
+
+	@Override public void unregisterObserver(@Nonnull Observer observer) {
+		if (observer == recorder) throw new IllegalArgumentException(observer + " doesn't exist");
+		delegate.unregisterObserver(observer);
+	}
+
+	@Nonnull @Override public ImmutableSet<Observer> getObservers() {
+		return delegate.getObservers().stream()
+				.filter(o -> o != recorder)
+				.collect(ImmutableSet.toImmutableSet());
+	}
+
+	@Override public void chooseMove(@Nonnull Move move) { delegate.chooseMove(move); }
+}
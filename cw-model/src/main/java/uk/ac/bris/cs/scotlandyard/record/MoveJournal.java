@@ -0,0 +1,369 @@
+package uk.ac.bris.cs.scotlandyard.record;
+
+import com.google.common.collect.ImmutableMap;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.zip.CRC32;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+import uk.ac.bris.cs.scotlandyard.model.GameSetup;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Factory;
+
+/**
+ * A write-ahead log of the games being played, from which unfinished games can be recovered
+ * after a crash.
+ * <br>
+ * Every game is identified by a number and written as a {@link GameRecord} in chunks, usually one
+ * chunk per move. A chunk is framed with its length, a CRC32 checksum and the game's number;
+ * an empty chunk marks the game as finished. Appending a chunk only copies it into a buffer. A
+ * writer thread writes the buffer and forces it to storage, meanwhile collecting the next
+ * batch, so one fsync commits the chunks of many moves and games; an optional commit window
+ * delays writes to collect larger batches. Use {@link #sync()} to wait for durability.
+ * <br>
+ * Opening a journal reads it from the start, cuts off a frame torn by a crash and keeps the
+ * records of unfinished games for {@link #recover(Factory, Collection)}. Finished games remain
+ * in the file; start a new journal from the recovered games to reclaim the space. Instances are
+ * thread safe.
+ */
+public final class MoveJournal implements AutoCloseable {
+
+	static final int MAGIC = 0x5359574A;
+	static final int VERSION = 1;
+	static final int HEADER = 8;
+	// length, checksum and game
+	static final int FRAME_HEADER = 16;
+
+	private static final int BUFFER_BYTES = 1 << 16;
+	private static final int MAX_CHUNK = 1 << 20;
+
+	private final FileChannel channel;
+	private final long window;
+	private final ImmutableMap<Long, GameRecord> unfinished;
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition pendingChanged = lock.newCondition();
+	private final Condition durableChanged = lock.newCondition();
+	private final CRC32 crc = new CRC32();
+	private final Thread writer;
+	private ByteBuffer pending = ByteBuffer.allocate(BUFFER_BYTES);
+	private ByteBuffer writing = ByteBuffer.allocate(BUFFER_BYTES);
+	private long position;
+	private long nextGame;
+	private long appended;
+	private long durable;
+	private IOException failure;
+	private boolean closed;
+
+	private MoveJournal(FileChannel channel, Duration window) throws IOException {
+		this.channel = channel;
+		this.window = window.toNanos();
+		if (channel.size() == 0) {
+			channel.write(ByteBuffer.allocate(HEADER).putInt(MAGIC).putInt(VERSION).flip(), 0);
+			channel.force(true);
+		}
+		this.unfinished = scan();
+		this.writer = new Thread(this::writeLoop, "journal-writer");
+		writer.setDaemon(true);
+		writer.start();
+	}
+
+	/**
+	 * Opens a journal that writes batches as soon as the previous one is on storage.
+	 *
+	 * @param file the journal file, created if it does not exist
+	 * @return the journal
+	 * @throws IOException if the file cannot be opened or is not a journal
+	 */
+	@Nonnull public static MoveJournal open(@Nonnull Path file) throws IOException {
+		return open(file, Duration.ZERO);
+	}
+
+	/**
+	 * Opens a journal that waits up to the given window before writing a batch, trading
+	 * latency for fewer fsyncs under light load.
+	 *
+	 * @param file the journal file, created if it does not exist
+	 * @param window how long to collect chunks before writing them
+	 * @return the journal
+	 * @throws IOException if the file cannot be opened or is not a journal
+	 */
+	@Nonnull public static MoveJournal open(@Nonnull Path file, @Nonnull Duration window)
+			throws IOException {
+		if (window.isNegative()) throw new IllegalArgumentException("Negative window");
+		var channel = FileChannel.open(Objects.requireNonNull(file), StandardOpenOption.CREATE,
+				StandardOpenOption.READ, StandardOpenOption.WRITE);
+		try {
+			return new MoveJournal(channel, window);
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	// reads every valid frame and truncates the file after the last one
+	private ImmutableMap<Long, GameRecord> scan() throws IOException {
+		var header = ByteBuffer.allocate(HEADER);
+		channel.read(header, 0);
+		header.flip();
+		if (header.remaining() < HEADER || header.getInt() != MAGIC)
+			throw new IOException("Not a move journal");
+		int version = header.getInt();
+		if (version != VERSION) throw new IOException("Unsupported journal version " + version);
+
+		Map<Long, ByteBuffer> games = new LinkedHashMap<>();
+		long at = HEADER, size = channel.size();
+		var frame = ByteBuffer.allocate(FRAME_HEADER);
+		while (at + FRAME_HEADER <= size) {
+			frame.clear();
+			readFully(frame, at);
+			int length = frame.getInt(0);
+			if (length < 0 || length > MAX_CHUNK || at + FRAME_HEADER + length > size) break;
+			long game = frame.getLong(8);
+			var chunk = ByteBuffer.allocate(length);
+			readFully(chunk, at + FRAME_HEADER);
+			if (checksum(game, chunk.array(), 0, length) != frame.getInt(4)) break;
+			nextGame = Math.max(nextGame, game + 1);
+			if (length == 0) games.remove(game);
+			else {
+				ByteBuffer record = games.getOrDefault(game, ByteBuffer.allocate(0));
+				if (record.remaining() < length) {
+					var grown = ByteBuffer.allocate(Math.max(record.capacity() * 2,
+							record.position() + length));
+					record = grown.put(record.flip());
+				}
+				games.put(game, record.put(chunk.array()));
+			}
+			at += FRAME_HEADER + length;
+		}
+		channel.truncate(at);
+		channel.force(true);
+		position = at;
+		// a record may be complete if the journal ends between its last move and the mark
+		return games.entrySet().stream()
+				.map(e -> Map.entry(e.getKey(), GameRecord.read(e.getValue().flip())))
+				.filter(e -> !e.getValue().isComplete())
+				.collect(ImmutableMap.toImmutableMap(Map.Entry::getKey, Map.Entry::getValue));
+	}
+
+	private void readFully(ByteBuffer buffer, long at) throws IOException {
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, at + buffer.position()) < 0) break;
+		}
+		buffer.flip();
+	}
+
+	private int checksum(long game, byte[] bytes, int offset, int length) {
+		crc.reset();
+		for (int shift = 56; shift >= 0; shift -= 8) crc.update((int) (game >>> shift));
+		crc.update(bytes, offset, length);
+		return (int) crc.getValue();
+	}
+
+	/**
+	 * @return the records of the games that were not finished when the journal was opened, by
+	 * game number
+	 */
+	@Nonnull public ImmutableMap<Long, GameRecord> unfinished() { return unfinished; }
+
+	/**
+	 * Replays the games that were not finished when the journal was opened.
+	 *
+	 * @param factory the factory to create the initial states with
+	 * @param setups the setups the games may have been played with
+	 * @return the current state of every unfinished game, by game number
+	 * @throws IllegalArgumentException if a game's setup is not among the given ones
+	 */
+	@Nonnull public ImmutableMap<Long, GameState> recover(@Nonnull Factory<GameState> factory,
+	                                                      @Nonnull Collection<GameSetup> setups) {
+		Map<Long, GameSetup> byFingerprint = setups(setups);
+		return unfinished.entrySet().stream().collect(ImmutableMap.toImmutableMap(
+				Map.Entry::getKey,
+				e -> e.getValue().replay(factory, setupOf(e.getValue(), byFingerprint))));
+	}
+
+	static Map<Long, GameSetup> setups(Collection<GameSetup> setups) {
+		return setups.stream().collect(Collectors.toMap(GameSetup::fingerprint,
+				Function.identity(), (a, b) -> a));
+	}
+
+	static GameSetup setupOf(GameRecord record, Map<Long, GameSetup> byFingerprint) {
+		GameSetup setup = byFingerprint.get(record.fingerprint());
+		if (setup == null) throw new IllegalArgumentException("No setup for a journaled game");
+		return setup;
+	}
+
+	/**
+	 * @return the number for a new game
+	 */
+	public long newGame() {
+		lock.lock();
+		try {
+			return nextGame++;
+		} finally { lock.unlock(); }
+	}
+
+	/**
+	 * @param game the game's number
+	 * @return a stream that appends every write as a chunk of the game's record
+	 */
+	@Nonnull public OutputStream stream(long game) {
+		return new OutputStream() {
+			@Override public void write(int b) { write(new byte[]{(byte) b}, 0, 1); }
+			@Override public void write(@Nonnull byte[] b, int off, int len) {
+				Objects.checkFromIndexSize(off, len, b.length);
+				if (len > 0) append(game, b, off, len);
+			}
+		};
+	}
+
+	/**
+	 * Appends a chunk of a game's record.
+	 *
+	 * @param game the game's number
+	 * @param bytes the chunk
+	 * @param offset the offset of the chunk
+	 * @param length the length of the chunk; 0 marks the game as finished
+	 * @return the sequence number of the chunk, see {@link #sync(long)}
+	 */
+	public long append(long game, @Nonnull byte[] bytes, int offset, int length) {
+		if (length > MAX_CHUNK)
+			throw new IllegalArgumentException("Chunk exceeds " + MAX_CHUNK + " bytes");
+		lock.lock();
+		try {
+			checkOpen();
+			if (pending.remaining() < FRAME_HEADER + length) {
+				var grown = ByteBuffer.allocate(Math.max(pending.capacity() * 2,
+						pending.position() + FRAME_HEADER + length));
+				pending = grown.put(pending.flip());
+			}
+			boolean wasEmpty = pending.position() == 0;
+			pending.putInt(length).putInt(checksum(game, bytes, offset, length)).putLong(game)
+					.put(bytes, offset, length);
+			if (wasEmpty) pendingChanged.signal();
+			return ++appended;
+		} finally { lock.unlock(); }
+	}
+
+	/**
+	 * Marks a game as finished, so it is not recovered.
+	 *
+	 * @param game the game's number
+	 * @return the sequence number of the mark, see {@link #sync(long)}
+	 */
+	public long finish(long game) { return append(game, new byte[0], 0, 0); }
+
+	/**
+	 * Waits until everything appended so far is on storage.
+	 *
+	 * @throws UncheckedIOException if writing the journal failed
+	 */
+	public void sync() {
+		lock.lock();
+		try {
+			sync(appended);
+		} finally { lock.unlock(); }
+	}
+
+	/**
+	 * Waits until the chunk with the given sequence number and all before it are on storage.
+	 *
+	 * @param sequence the sequence number returned when appending
+	 * @throws UncheckedIOException if writing the journal failed
+	 */
+	public void sync(long sequence) {
+		lock.lock();
+		try {
+			while (durable < sequence) {
+				if (failure != null) throw new UncheckedIOException(failure);
+				if (closed && !writer.isAlive())
+					throw new IllegalStateException("Journal is closed");
+				durableChanged.awaitUninterruptibly();
+			}
+		} finally { lock.unlock(); }
+	}
+
+	private void checkOpen() {
+		if (failure != null) throw new UncheckedIOException(failure);
+		if (closed) throw new IllegalStateException("Journal is closed");
+	}
+
+	private void writeLoop() {
+		while (true) {
+			long batch;
+			lock.lock();
+			try {
+				while (pending.position() == 0 && !closed) pendingChanged.awaitUninterruptibly();
+				if (pending.position() == 0) return;
+				if (window > 0 && !closed) {
+					long deadline = System.nanoTime() + window;
+					for (long left = window; left > 0 && !closed;
+					     left = deadline - System.nanoTime()) {
+						try {
+							pendingChanged.awaitNanos(left);
+						} catch (InterruptedException e) { break; }
+					}
+				}
+				var full = pending;
+				pending = writing;
+				writing = full;
+				batch = appended;
+			} finally { lock.unlock(); }
+
+			IOException error = null;
+			try {
+				writing.flip();
+				while (writing.hasRemaining()) position += channel.write(writing, position);
+				channel.force(false);
+			} catch (IOException e) {
+				error = e;
+			} finally { writing.clear(); }
+
+			lock.lock();
+			try {
+				if (error != null) {
+					failure = error;
+					durableChanged.signalAll();
+					return;
+				}
+				durable = batch;
+				durableChanged.signalAll();
+			} finally { lock.unlock(); }
+		}
+	}
+
+	/**
+	 * Writes everything appended so far and closes the file.
+	 *
+	 * @throws IOException if writing or closing fails
+	 */
+	@Override public void close() throws IOException {
+		lock.lock();
+		try {
+			closed = true;
+			pendingChanged.signalAll();
+		} finally { lock.unlock(); }
+		try {
+			writer.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		channel.close();
+		if (failure != null) throw failure;
+	}
+}
@@ -0,0 +1,301 @@
+package uk.ac.bris.cs.scotlandyard.server;
+
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ThreadLocalRandom;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.Board;
+import uk.ac.bris.cs.scotlandyard.model.BoardDelta;
+import uk.ac.bris.cs.scotlandyard.model.GameSetup;
+import uk.ac.bris.cs.scotlandyard.model.GameStateCodec;
+import uk.ac.bris.cs.scotlandyard.model.Move;
+import uk.ac.bris.cs.scotlandyard.model.Piece;
+import uk.ac.bris.cs.scotlandyard.model.Piece.MrX;
+
+/**
+ * A length prefixed binary protocol for driving hosted games from programs.
+ * <br>
+ * Every frame starts with its length as an int, not counting the length itself, then a type
+ * byte, a request id chosen by the client and a long game id, followed by the payload. Numbers
+ * are big endian, varints are unsigned. Requests and their replies:
+ * <pre>
+ * HOST    mrX seat, detectives seat (0 remote, 1 ai)   GAME with the new game's id
+ * MOVES   -                                            MOVE_LIST: varint count, varint move ids
+ * MOVE    varint move id                               OK
+ * WATCH   -                                            OK, then SNAPSHOT and DELTA pushes
+ * UNWATCH -                                            OK
+ * </pre>
+ * Replies echo the request and game id; a failed request is answered with ERROR, holding a
+ * short length and a UTF-8 message. Clients may pipeline any number of requests for any number
+ * of games without waiting; replies about one game come in order, replies about different games
+ * may not. Remote seats belong to the connection that hosted the game and the game is aborted
+ * when it closes, as in the {@link TextProtocol}.
+ * <br>
+ * Watchers are served by one {@link Broadcaster} per game, so pushes carry request id 0. A
+ * SNAPSHOT holds the state in the format of {@link GameStateCodec}; a DELTA holds the event byte
+ * (0 for a move, 1 when the game is over), the varint move id and the winners as a mask with bit
+ * 0 for MrX and bit 1 plus the ordinal for detectives. Only the connection playing a remote MrX
+ * sees MrX's location; everyone else gets {@link GameStateCodec#encodePublic public snapshots}
+ * and {@link MoveIds#hidden(BoardDelta) hidden move ids}. Watchers that fall behind skip ahead
+ * to the latest snapshot.
+ * <br>
+ * Frames are encoded into direct buffers from a pool, and copied into the connection's pooled
+ * chunks, so replies and deltas of running games allocate no buffers.
+ */
+public final class BinaryProtocol implements Protocol {
+
+	static final byte HOST = 1;
+	static final byte MOVES = 2;
+	static final byte MOVE = 3;
+	static final byte WATCH = 4;
+	static final byte UNWATCH = 5;
+	static final byte OK = (byte) 0x80;
+	static final byte GAME = (byte) 0x81;
+	static final byte MOVE_LIST = (byte) 0x82;
+	static final byte DELTA = (byte) 0x83;
+	static final byte SNAPSHOT = (byte) 0x84;
+	static final byte ERROR = (byte) 0xFF;
+	static final int HEADER_BYTES = Integer.BYTES + 1 + Integer.BYTES + Long.BYTES;
+	static final int FRAME_BYTES = 1 << 14;
+
+	private static final int MAX_MESSAGE = 256;
+	private static final int MAX_PENDING = 1 << 16;
+
+	private final GameServer server;
+	private final GameSetup setup;
+	private final Seat ai;
+	private final BufferPool frames = new BufferPool(FRAME_BYTES, 256);
+	private final Map<Long, Broadcaster> broadcasters = new ConcurrentHashMap<>();
+
+	/**
+	 * @param server the server hosting the games
+	 * @param setup the setup of hosted games
+	 * @param ai the seat used for AI players
+	 */
+	public BinaryProtocol(@Nonnull GameServer server, @Nonnull GameSetup setup,
+	                      @Nonnull Seat ai) {
+		this.server = Objects.requireNonNull(server);
+		this.setup = Objects.requireNonNull(setup);
+		if (ai.isRemote()) throw new IllegalArgumentException("AI seat is remote");
+		this.ai = ai;
+	}
+
+	@Nonnull @Override public Session open(@Nonnull Connection connection) {
+		return new BinarySession(connection);
+	}
+
+	private final class BinarySession implements Session {
+
+		private final Connection connection;
+		// games hosted by this connection, and broadcasters of watched games
+		private final Map<Long, HostedGame> hosted = new HashMap<>();
+		private final Map<Long, Broadcaster> watched = new HashMap<>();
+
+		BinarySession(Connection connection) { this.connection = connection; }
+
+		@Override public void onData(@Nonnull ByteBuffer in) {
+			int limit = in.limit();
+			while (in.remaining() >= Integer.BYTES) {
+				int length = in.getInt(in.position());
+				if (length < HEADER_BYTES - Integer.BYTES
+						|| length > NetworkServer.BUFFER_BYTES - Integer.BYTES) {
+					in.position(limit);
+					connection.close();
+					return;
+				}
+				if (in.remaining() < Integer.BYTES + length) return;
+				int end = in.position() + Integer.BYTES + length;
+				in.position(in.position() + Integer.BYTES).limit(end);
+				byte type = in.get();
+				int request = in.getInt();
+				long game = in.getLong();
+				try {
+					execute(type, request, game, in);
+				} catch (IllegalArgumentException e) {
+					error(request, game, e.getMessage());
+				} catch (BufferUnderflowException e) {
+					error(request, game, "Truncated frame");
+				}
+				in.limit(limit).position(end);
+			}
+		}
+
+		private void execute(byte type, int request, long id, ByteBuffer in) {
+			switch (type) {
+				case HOST: host(request, in.get(), in.get()); break;
+				case MOVES: moves(request, owned(id)); break;
+				case MOVE: move(request, owned(id), readVarLong(in)); break;
+				case WATCH: watch(request, game(id)); break;
+				case UNWATCH: unwatch(request, id); break;
+				default: throw new IllegalArgumentException("Unknown frame type " + type);
+			}
+		}
+
+		private void host(int request, byte mrXSeat, byte detectivesSeat) {
+			Seat mrX = seat(mrXSeat), detectives = seat(detectivesSeat);
+			HostedGame game;
+			try {
+				game = server.host(setup, ThreadLocalRandom.current().nextInt(), mrX, detectives);
+			} catch (IllegalStateException e) {
+				throw new IllegalArgumentException(e.getMessage(), e);
+			}
+			hosted.values().removeIf(hostedGame -> hostedGame.completion().isDone());
+			if (mrX.isRemote() || detectives.isRemote()) hosted.put(game.id(), game);
+			send(begin(GAME, request, game.id()));
+		}
+
+		private Seat seat(byte code) {
+			switch (code) {
+				case 0: return Seat.remote();
+				case 1: return ai;
+				default: throw new IllegalArgumentException("Unknown seat " + code);
+			}
+		}
+
+		private void moves(int request, HostedGame game) {
+			game.query(board -> {
+				ByteBuffer frame = begin(MOVE_LIST, request, game.id());
+				try {
+					int count = 0;
+					for (Move move : board.getAvailableMoves())
+						if (game.seat(move.commencedBy()).isRemote()) count++;
+					writeVarLong(frame, count);
+					for (Move move : board.getAvailableMoves())
+						if (game.seat(move.commencedBy()).isRemote())
+							writeVarLong(frame, MoveIds.of(move));
+				} catch (BufferOverflowException e) {
+					frames.release(frame);
+					throw new IllegalStateException("Too many moves for a frame", e);
+				}
+				send(frame);
+				return null;
+			}).whenComplete((nothing, e) -> {
+				if (e != null) error(request, game.id(), cause(e).getMessage());
+			});
+		}
+
+		private void move(int request, HostedGame game, long id) {
+			game.query(board -> MoveIds.find(board.getAvailableMoves(), id))
+					.thenCompose(move -> game.submit(move.orElseThrow(
+							() -> new IllegalArgumentException("Unavailable move " + id))))
+					.whenComplete((board, e) -> {
+						if (e != null) error(request, game.id(), cause(e).getMessage());
+						else send(begin(OK, request, game.id()));
+					});
+		}
+
+		private void watch(int request, HostedGame game) {
+			watched.keySet().removeIf(id -> server.game(id).isEmpty());
+			if (watched.containsKey(game.id()))
+				throw new IllegalArgumentException("Already watching " + game.id());
+			Broadcaster broadcaster = broadcaster(game);
+			watched.put(game.id(), broadcaster);
+			// the owner of a remote MrX knows where MrX is anyway
+			broadcaster.subscribe(connection,
+					hosted.get(game.id()) == game && game.seat(MrX.MRX).isRemote());
+			send(begin(OK, request, game.id()));
+		}
+
+		private void unwatch(int request, long id) {
+			Broadcaster broadcaster = watched.remove(id);
+			if (broadcaster == null) throw new IllegalArgumentException("Not watching " + id);
+			broadcaster.unsubscribe(connection);
+			send(begin(OK, request, id));
+		}
+
+		private HostedGame game(long id) {
+			return server.game(id)
+					.orElseThrow(() -> new IllegalArgumentException("No game " + id));
+		}
+
+		private HostedGame owned(long id) {
+			HostedGame game = game(id);
+			if (hosted.get(id) != game)
+				throw new IllegalArgumentException("Game " + id + " has no seat of yours");
+			return game;
+		}
+
+		private void error(int request, long game, String message) {
+			ByteBuffer frame = begin(ERROR, request, game);
+			byte[] bytes = String.valueOf(message).getBytes(StandardCharsets.UTF_8);
+			int length = Math.min(bytes.length, MAX_MESSAGE);
+			frame.putShort((short) length).put(bytes, 0, length);
+			send(frame);
+		}
+
+		private ByteBuffer begin(byte type, int request, long game) {
+			return header(frames.acquire(), type, request, game);
+		}
+
+		// sends a frame from begin and returns its buffer to the pool
+		private void send(ByteBuffer frame) {
+			length(frame);
+			connection.send(frame.flip());
+			frames.release(frame);
+		}
+
+		// nobody is left to play the remote seats of hosted games
+		@Override public void onClose() {
+			watched.values().forEach(broadcaster -> broadcaster.unsubscribe(connection));
+			var reason = new IllegalStateException("Connection closed");
+			hosted.values().forEach(game -> game.abort(reason));
+		}
+	}
+
+	// one broadcaster per game, shared by all connections watching it
+	private Broadcaster broadcaster(HostedGame game) {
+		return broadcasters.computeIfAbsent(game.id(), id -> {
+			var broadcaster = new Broadcaster(game, MAX_PENDING, Broadcaster.Lag.SKIP_AHEAD);
+			game.completion().whenComplete((board, e) -> broadcasters.remove(id));
+			return broadcaster;
+		});
+	}
+
+	static ByteBuffer header(ByteBuffer frame, byte type, int request, long game) {
+		return frame.putInt(0).put(type).putInt(request).putLong(game);
+	}
+
+	// fills in the length of a frame written from its header to the position
+	static void length(ByteBuffer frame) {
+		frame.putInt(0, frame.position() - Integer.BYTES);
+	}
+
+	static int winners(Board board) {
+		int mask = 0;
+		for (Piece piece : board.getWinner()) {
+			mask |= piece.isMrX() ? 1 : 2 << ((Piece.Detective) piece).ordinal();
+		}
+		return mask;
+	}
+
+	private static Throwable cause(Throwable e) {
+		return e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+	}
+
+	static void writeVarLong(ByteBuffer buffer, long value) {
+		while ((value & ~0x7FL) != 0) {
+			buffer.put((byte) (value & 0x7F | 0x80));
+			value >>>= 7;
+		}
+		buffer.put((byte) value);
+	}
+
+	static long readVarLong(ByteBuffer buffer) {
+		long value = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			byte b = buffer.get();
+			value |= (long) (b & 0x7F) << shift;
+			if (b >= 0) return value;
+		}
+		throw new IllegalArgumentException("Malformed varint");
+	}
+}
@@ -0,0 +1,210 @@
+package uk.ac.bris.cs.scotlandyard.server;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.Board;
+import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+import uk.ac.bris.cs.scotlandyard.model.BoardDelta;
+import uk.ac.bris.cs.scotlandyard.model.GameStateCodec;
+import uk.ac.bris.cs.scotlandyard.model.Model.DeltaObserver;
+
+/**
+ * Fans the updates of one hosted game out to any number of spectator connections, in the frames
+ * of the {@link BinaryProtocol}.
+ * <br>
+ * The broadcaster observes the game once. Each move is encoded once into a DELTA frame for
+ * privileged viewers and once into one with MrX's unrevealed destinations hidden, and the same
+ * read-only frame is sent to every viewer of its kind; snapshots of the state are encoded the
+ * same way, at most once per move and only when needed. New viewers first get a SNAPSHOT frame.
+ * A viewer with more than the allowed bytes not yet written is lagging: depending on the
+ * {@link Lag} policy it is dropped, or it stops getting deltas and is sent the latest snapshot
+ * with the first update after it has caught up. The update of a game over is sent to every
+ * viewer, lagging or not, as no update follows it: a delta to viewers that are up to date and the
+ * final snapshot to those that skipped ahead. All work happens on the game's executor, so the
+ * list of viewers needs no locking.
+ */
+public final class Broadcaster {
+
+	/**
+	 * What happens to viewers that fall behind
+	 */
+	public enum Lag {
+		/**
+		 * Close their connection
+		 */
+		DROP,
+		/**
+		 * Skip their deltas and send the latest snapshot once they caught up
+		 */
+		SKIP_AHEAD
+	}
+
+	private static final class Viewer {
+		final Connection connection;
+		final boolean privileged;
+		boolean lagging;
+		Viewer(Connection connection, boolean privileged) {
+			this.connection = connection;
+			this.privileged = privileged;
+		}
+	}
+
+	private final HostedGame game;
+	private final int maxPending;
+	private final Lag lag;
+	private final DeltaObserver observer = new DeltaObserver() {
+		@Override public void onModelChanged(@Nonnull Board board, @Nonnull Event event,
+		                                     @Nonnull BoardDelta delta) {
+			broadcast(board, event, delta);
+		}
+	};
+	private final AtomicLong dropped = new AtomicLong();
+	private final AtomicLong skipped = new AtomicLong();
+	// only used by tasks on the game's executor
+	private final List<Viewer> viewers = new ArrayList<>();
+	private final Frame publicDelta = new Frame();
+	private final Frame privilegedDelta = new Frame();
+	private final Frame publicSnapshot = new Frame();
+	private final Frame privilegedSnapshot = new Frame();
+	private Board board;
+
+	// a frame buffer encoded at most once per move, with a read-only view that is sent
+	private static final class Frame {
+		final ByteBuffer buffer = ByteBuffer.allocateDirect(BinaryProtocol.FRAME_BYTES);
+		final ByteBuffer view = buffer.asReadOnlyBuffer();
+		boolean current;
+		ByteBuffer begin(byte type, long game) {
+			current = true;
+			buffer.clear();
+			return BinaryProtocol.header(buffer, type, 0, game);
+		}
+		void end() {
+			BinaryProtocol.length(buffer);
+			view.limit(buffer.position());
+		}
+		ByteBuffer send() { return view.rewind(); }
+	}
+
+	/**
+	 * Starts observing a game.
+	 *
+	 * @param game the game
+	 * @param maxPending the number of bytes a viewer may have queued before it is lagging
+	 * @param lag what happens to viewers that are lagging
+	 */
+	public Broadcaster(@Nonnull HostedGame game, int maxPending, @Nonnull Lag lag) {
+		if (maxPending < 0) throw new IllegalArgumentException("Max pending must be >= 0");
+		this.game = Objects.requireNonNull(game);
+		this.maxPending = maxPending;
+		this.lag = Objects.requireNonNull(lag);
+		game.query(board -> this.board = board);
+		game.observe(observer);
+	}
+
+	/**
+	 * @return the game being broadcast
+	 */
+	@Nonnull public HostedGame game() { return game; }
+
+	/**
+	 * Adds a viewer, which is sent a snapshot of the current state first.
+	 *
+	 * @param connection the connection of the viewer
+	 * @param privileged whether the viewer may see where MrX is
+	 */
+	public void subscribe(@Nonnull Connection connection, boolean privileged) {
+		Objects.requireNonNull(connection);
+		game.query(board -> {
+			var viewer = new Viewer(connection, privileged);
+			viewers.add(viewer);
+			connection.send(snapshot(viewer).send());
+			return null;
+		});
+	}
+
+	/**
+	 * @param connection the connection of a viewer; nothing happens if it is not subscribed
+	 */
+	public void unsubscribe(@Nonnull Connection connection) {
+		Objects.requireNonNull(connection);
+		game.query(board -> viewers.removeIf(viewer -> viewer.connection == connection));
+	}
+
+	/**
+	 * @return the number of viewers dropped because they were lagging
+	 */
+	public long dropped() { return dropped.get(); }
+
+	/**
+	 * @return the number of deltas not sent to lagging viewers
+	 */
+	public long skipped() { return skipped.get(); }
+
+	/**
+	 * Stops observing the game; viewers get no further frames.
+	 */
+	public void close() {
+		game.unobserve(observer);
+		game.query(board -> {
+			viewers.clear();
+			return null;
+		});
+	}
+
+	private void broadcast(Board board, DeltaObserver.Event event, BoardDelta delta) {
+		this.board = board;
+		publicDelta.current = privilegedDelta.current = false;
+		publicSnapshot.current = privilegedSnapshot.current = false;
+		for (int i = 0; i < viewers.size(); i++) {
+			Viewer viewer = viewers.get(i);
+			Connection connection = viewer.connection;
+			if (!connection.isOpen()) {
+				viewers.remove(i--);
+				continue;
+			}
+			if (connection.pending() > maxPending && event != DeltaObserver.Event.GAME_OVER) {
+				if (lag == Lag.DROP) {
+					connection.close();
+					viewers.remove(i--);
+					dropped.incrementAndGet();
+				} else {
+					viewer.lagging = true;
+					skipped.incrementAndGet();
+				}
+				continue;
+			}
+			if (viewer.lagging) {
+				viewer.lagging = false;
+				connection.send(snapshot(viewer).send());
+			} else connection.send(delta(viewer, event, delta).send());
+		}
+	}
+
+	private Frame delta(Viewer viewer, DeltaObserver.Event event, BoardDelta delta) {
+		Frame frame = viewer.privileged ? privilegedDelta : publicDelta;
+		if (frame.current) return frame;
+		ByteBuffer buffer = frame.begin(BinaryProtocol.DELTA, game.id());
+		buffer.put((byte) event.ordinal());
+		BinaryProtocol.writeVarLong(buffer,
+				viewer.privileged ? MoveIds.of(delta.move()) : MoveIds.hidden(delta));
+		buffer.put((byte) BinaryProtocol.winners(board));
+		frame.end();
+		return frame;
+	}
+
+	private Frame snapshot(Viewer viewer) {
+		Frame frame = viewer.privileged ? privilegedSnapshot : publicSnapshot;
+		if (frame.current) return frame;
+		ByteBuffer buffer = frame.begin(BinaryProtocol.SNAPSHOT, game.id());
+		if (viewer.privileged) GameStateCodec.encode((GameState) board, buffer);
+		else GameStateCodec.encodePublic((GameState) board, buffer);
+		frame.end();
+		return frame;
+	}
+}
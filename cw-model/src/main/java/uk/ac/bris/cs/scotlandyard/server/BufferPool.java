@@ -0,0 +1,59 @@
+package uk.ac.bris.cs.scotlandyard.server;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.ArrayBlockingQueue;
+
+import javax.annotation.Nonnull;
+
+/**
+ * A pool of direct buffers of one size, safe to use from any thread.
+ * <br>
+ * Buffers are allocated when the pool is empty and kept for reuse when released, up to the
+ * pool's capacity; releasing more drops them. The free list is an array, so acquiring and
+ * releasing buffers creates no garbage.
+ */
+public final class BufferPool {
+
+	private final int bufferBytes;
+	private final ArrayBlockingQueue<ByteBuffer> free;
+
+	/**
+	 * @param bufferBytes the capacity of every buffer
+	 * @param capacity the number of released buffers kept for reuse
+	 */
+	public BufferPool(int bufferBytes, int capacity) {
+		if (bufferBytes < 1) throw new IllegalArgumentException("Buffer size must be > 0");
+		if (capacity < 1) throw new IllegalArgumentException("Capacity must be > 0");
+		this.bufferBytes = bufferBytes;
+		this.free = new ArrayBlockingQueue<>(capacity);
+	}
+
+	/**
+	 * @return the capacity of every buffer
+	 */
+	public int bufferBytes() { return bufferBytes; }
+
+	/**
+	 * @return a cleared buffer in big endian order
+	 */
+	@Nonnull public ByteBuffer acquire() {
+		ByteBuffer buffer = free.poll();
+		return buffer != null ? buffer : ByteBuffer.allocateDirect(bufferBytes);
+	}
+
+	/**
+	 * @param buffer a buffer acquired from this pool, which must not be used afterwards
+	 */
+	public void release(@Nonnull ByteBuffer buffer) {
+		if (buffer.capacity() != bufferBytes || !buffer.isDirect())
+			throw new IllegalArgumentException("Not a buffer of this pool");
+		buffer.clear().order(ByteOrder.BIG_ENDIAN);
+		free.offer(buffer);
+	}
+
+	/**
+	 * @return the number of buffers ready for reuse
+	 */
+	public int available() { return free.size(); }
+}
@@ -0,0 +1,150 @@
+package uk.ac.bris.cs.scotlandyard.server;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Objects;
+
+import javax.annotation.Nonnull;
+
+/**
+ * A client connected to a {@link NetworkServer}.
+ * <br>
+ * Messages may be sent from any thread. They are copied into pooled direct chunks, so the caller
+ * can reuse its buffer at once, and written by the network thread in the order they were sent;
+ * messages sent in quick succession go out in one write.
+ */
+public final class Connection {
+
+	private final NetworkServer server;
+	private final SocketChannel channel;
+	private final BufferPool chunks;
+	private final SocketAddress remote;
+	// chunks being written at the head and filled at the tail; guards the fields below
+	private final ArrayDeque<ByteBuffer> outgoing = new ArrayDeque<>();
+	private int written;
+	private int pending;
+	private boolean flushing;
+	private SelectionKey key;
+	private volatile boolean open = true;
+
+	Connection(NetworkServer server, SocketChannel channel, BufferPool chunks) throws IOException {
+		this.server = server;
+		this.channel = channel;
+		this.chunks = chunks;
+		this.remote = channel.getRemoteAddress();
+	}
+
+	void register(SelectionKey key) { this.key = key; }
+
+	SocketChannel channel() { return channel; }
+
+	/**
+	 * @return the address of the client
+	 */
+	@Nonnull public SocketAddress remoteAddress() { return remote; }
+
+	/**
+	 * @return whether the connection is open
+	 */
+	public boolean isOpen() { return open; }
+
+	/**
+	 * @return the number of bytes sent but not yet written to the socket
+	 */
+	public int pending() {
+		synchronized (outgoing) {
+			return pending;
+		}
+	}
+
+	/**
+	 * Queues a message; messages sent after the connection closed are dropped.
+	 *
+	 * @param message the message, from its position to its limit; the position is advanced to
+	 * the limit
+	 */
+	public void send(@Nonnull ByteBuffer message) {
+		Objects.requireNonNull(message);
+		boolean schedule;
+		synchronized (outgoing) {
+			if (!open) {
+				message.position(message.limit());
+				return;
+			}
+			pending += message.remaining();
+			int limit = message.limit();
+			while (message.hasRemaining()) {
+				ByteBuffer tail = outgoing.peekLast();
+				if (tail == null || !tail.hasRemaining()) outgoing.addLast(tail = chunks.acquire());
+				message.limit(message.position() + Math.min(tail.remaining(), limit
+						- message.position()));
+				tail.put(message);
+				message.limit(limit);
+			}
+			schedule = !flushing;
+			flushing = true;
+		}
+		if (schedule) server.execute(this::flush);
+	}
+
+	/**
+	 * Closes the connection, dropping messages not yet written.
+	 */
+	public void close() { server.execute(this::closeNow); }
+
+	// on the network thread
+	void flush() {
+		synchronized (outgoing) {
+			if (!open) return;
+			try {
+				ByteBuffer head;
+				while ((head = outgoing.peekFirst()) != null) {
+					// chunks are kept ready for filling, flip the head for writing
+					int filled = head.position();
+					head.limit(filled).position(written);
+					int count = channel.write(head);
+					written += count;
+					pending -= count;
+					head.limit(head.capacity()).position(filled);
+					if (written < filled) {
+						key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+						return;
+					}
+					written = 0;
+					if (head.hasRemaining() && outgoing.size() == 1) {
+						head.clear();
+						break;
+					}
+					chunks.release(outgoing.pollFirst());
+				}
+				key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+				flushing = false;
+			} catch (IOException e) {
+				server.execute(this::closeNow);
+			}
+		}
+	}
+
+	// on the network thread
+	void closeNow() {
+		synchronized (outgoing) {
+			if (!open) return;
+			open = false;
+			ByteBuffer chunk;
+			while ((chunk = outgoing.pollFirst()) != null) chunks.release(chunk);
+			pending = 0;
+		}
+		server.closed(this, key);
+		try {
+			channel.close();
+		} catch (IOException ignored) {
+			// nothing left to release
+		}
+	}
+
+	@Override public String toString() { return "Connection{" + remote + "}"; }
+}
@@ -0,0 +1,31 @@
+package uk.ac.bris.cs.scotlandyard.server;
+
+import java.util.concurrent.Executor;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Decides where the work of hosted games runs.
+ * <br>
+ * Every game gets an executor that runs its tasks one at a time and in submission order, so a
+ * game's model is only ever used by one thread at a time and needs no locking.
+ */
+public interface GameScheduler extends AutoCloseable {
+	/**
+	 * Called once for every game before its first task.
+	 *
+	 * @param game the id of the game
+	 * @return the executor of the game
+	 */
+	@Nonnull Executor executor(long game);
+	/**
+	 * Called once a game is over; its executor is not used afterwards.
+	 *
+	 * @param game the id of the game
+	 */
+	default void release(long game) {}
+	/**
+	 * Stops the threads of the scheduler once queued tasks have run.
+	 */
+	@Override void close();
+}
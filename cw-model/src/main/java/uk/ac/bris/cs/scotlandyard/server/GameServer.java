@@ -0,0 +1,270 @@
+package uk.ac.bris.cs.scotlandyard.server;
+
+import com.google.common.collect.ImmutableList;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.ai.IsmctsAi;
+import uk.ac.bris.cs.scotlandyard.model.Ai;
+import uk.ac.bris.cs.scotlandyard.model.Board;
+import uk.ac.bris.cs.scotlandyard.model.GameSetup;
+import uk.ac.bris.cs.scotlandyard.model.Model;
+import uk.ac.bris.cs.scotlandyard.model.Move;
+import uk.ac.bris.cs.scotlandyard.model.MyModelFactory;
+import uk.ac.bris.cs.scotlandyard.model.Piece.Detective;
+import uk.ac.bris.cs.scotlandyard.model.Piece.MrX;
+import uk.ac.bris.cs.scotlandyard.model.Player;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Factory;
+
+/**
+ * Hosts many concurrent games without a UI.
+ * <br>
+ * Games hold no thread of their own: their tasks run on executors of a {@link GameScheduler},
+ * and AI seats think on a separate pool so long searches do not hold up moves of other games. An
+ * AI is asked to terminate once its time limit, counted from when it starts to pick rather than
+ * from when it was queued, is up; one that has not returned after twice its limit forfeits and
+ * the game is aborted. The thread of a forfeited AI is replaced until the AI
+ * returns, so AIs that never do cannot exhaust the pool, and the AI is only told to terminate
+ * once it has returned. Finished games are removed from the server.
+ * Clients connect through a {@link NetworkServer}; {@link #main(String[])} serves the
+ * {@link TextProtocol} and the {@link BinaryProtocol} on local ports.
+ */
+public final class GameServer implements AutoCloseable {
+
+	private static final ImmutableList<Detective> DETECTIVES = ImmutableList.copyOf(
+			Detective.values());
+
+	private final Factory<Model> models;
+	private final GameScheduler scheduler;
+	private final ThreadPoolExecutor ais;
+	private final ScheduledExecutorService timer;
+	private final Map<Long, HostedGame> games = new ConcurrentHashMap<>();
+	private final AtomicLong ids = new AtomicLong();
+	private volatile boolean closed;
+
+	/**
+	 * @param models the factory of the models of hosted games
+	 * @param scheduler runs the tasks of hosted games; closed with the server
+	 * @param aiThreads the number of threads AI seats think on, not counting threads of AIs that
+	 * forfeited and have not returned yet
+	 */
+	public GameServer(@Nonnull Factory<Model> models, @Nonnull GameScheduler scheduler,
+	                  int aiThreads) {
+		if (aiThreads < 1) throw new IllegalArgumentException("AI threads must be > 0");
+		this.models = Objects.requireNonNull(models);
+		this.scheduler = Objects.requireNonNull(scheduler);
+		var count = new AtomicInteger();
+		this.ais = new ThreadPoolExecutor(aiThreads, aiThreads, 60, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<>(), r -> {
+					Thread thread = new Thread(r, "game-ai-" + count.getAndIncrement());
+					thread.setDaemon(true);
+					return thread;
+				});
+		this.timer = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "game-timer");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * @return a server of {@link MyModelFactory} models with a {@link PooledScheduler} and an AI
+	 * thread per core
+	 */
+	@Nonnull public static GameServer create() {
+		int cores = Runtime.getRuntime().availableProcessors();
+		return new GameServer(new MyModelFactory(), new PooledScheduler(cores), cores);
+	}
+
+	/**
+	 * Hosts a new game and starts it; AI seats move as soon as it is their turn.
+	 *
+	 * @param setup the game setup
+	 * @param mrX MrX
+	 * @param detectives the detectives
+	 * @param mrXSeat who plays MrX
+	 * @param detectivesSeat who plays the detectives
+	 * @return the game
+	 * @throws IllegalStateException if the server is closed
+	 */
+	@Nonnull public HostedGame host(@Nonnull GameSetup setup, @Nonnull Player mrX,
+	                                @Nonnull ImmutableList<Player> detectives,
+	                                @Nonnull Seat mrXSeat, @Nonnull Seat detectivesSeat) {
+		if (closed) throw new IllegalStateException("Server is closed");
+		Model model = models.build(setup, mrX, detectives);
+		long id = ids.getAndIncrement();
+		var game = new HostedGame(this, id, setup, scheduler.executor(id), model,
+				mrXSeat, detectivesSeat);
+		games.put(id, game);
+		game.start();
+		return game;
+	}
+
+	/**
+	 * Hosts a new game with five detectives at random locations of
+	 * {@link ScotlandYard#DETECTIVE_LOCATIONS}, MrX at one of {@link ScotlandYard#MRX_LOCATIONS}
+	 * and the default tickets.
+	 *
+	 * @param setup the game setup
+	 * @param seed the seed of the start locations
+	 * @param mrXSeat who plays MrX
+	 * @param detectivesSeat who plays the detectives
+	 * @return the game
+	 * @throws IllegalStateException if the server is closed
+	 */
+	@Nonnull public HostedGame host(@Nonnull GameSetup setup, int seed, @Nonnull Seat mrXSeat,
+	                                @Nonnull Seat detectivesSeat) {
+		var locations = ScotlandYard.generateDetectiveLocations(seed, DETECTIVES.size());
+		var detectives = ImmutableList.<Player>builder();
+		for (int i = 0; i < DETECTIVES.size(); i++) {
+			detectives.add(new Player(DETECTIVES.get(i), ScotlandYard.defaultDetectiveTickets(),
+					locations.get(i)));
+		}
+		var mrX = new Player(MrX.MRX, ScotlandYard.defaultMrXTickets(),
+				ScotlandYard.generateMrXLocation(seed));
+		return host(setup, mrX, detectives.build(), mrXSeat, detectivesSeat);
+	}
+
+	/**
+	 * @param id the id of a game
+	 * @return the game, if it is still running
+	 */
+	@Nonnull public Optional<HostedGame> game(long id) {
+		return Optional.ofNullable(games.get(id));
+	}
+
+	/**
+	 * @return the running games
+	 */
+	@Nonnull public Collection<HostedGame> games() {
+		return Collections.unmodifiableCollection(games.values());
+	}
+
+	// an AI picking a move; both timers start once pickMove is called, not while it is queued
+	static final class Thought {
+		// the move, or a TimeoutException once the AI forfeits
+		final CompletableFuture<Move> move = new CompletableFuture<>();
+		// completes once pickMove returns, however long after its forfeit that is
+		final CompletableFuture<Void> returned = new CompletableFuture<>();
+	}
+
+	Thought think(Ai ai, Board board, Duration limit) {
+		var thought = new Thought();
+		long nanos = limit.toNanos();
+		try {
+			ais.execute(() -> pick(thought, ai, board, nanos));
+		} catch (RejectedExecutionException e) {
+			thought.move.completeExceptionally(new IllegalStateException("Server is closed", e));
+			thought.returned.complete(null);
+		}
+		return thought;
+	}
+
+	private void pick(Thought thought, Ai ai, Board board, long nanos) {
+		var terminate = new AtomicBoolean();
+		ScheduledFuture<?> timeout = null, forfeit = null;
+		try {
+			// the game ended while the pick was queued
+			if (thought.move.isDone()) return;
+			timeout = timer.schedule(() -> terminate.set(true), nanos, TimeUnit.NANOSECONDS);
+			forfeit = timer.schedule(() -> {
+				thought.move.completeExceptionally(new TimeoutException(
+						ai.name() + " did not return within twice its limit"));
+				replaceThread(thought.returned);
+			}, 2 * nanos, TimeUnit.NANOSECONDS);
+			thought.move.complete(ai.pickMove(board, terminate));
+		} catch (RuntimeException e) {
+			thought.move.completeExceptionally(e);
+		} finally {
+			if (timeout != null) timeout.cancel(false);
+			if (forfeit != null) forfeit.cancel(false);
+			thought.returned.complete(null);
+		}
+	}
+
+	// grows the pool by a thread until the forfeited AI returns
+	private void replaceThread(CompletableFuture<Void> returned) {
+		resizeAis(1);
+		returned.whenComplete((v, e) -> resizeAis(-1));
+	}
+
+	// the maximum size must not drop below the core size at any time
+	private synchronized void resizeAis(int delta) {
+		if (delta > 0) {
+			ais.setMaximumPoolSize(ais.getMaximumPoolSize() + delta);
+			ais.setCorePoolSize(ais.getCorePoolSize() + delta);
+		} else {
+			ais.setCorePoolSize(ais.getCorePoolSize() + delta);
+			ais.setMaximumPoolSize(ais.getMaximumPoolSize() + delta);
+		}
+	}
+
+	void retire(HostedGame game) {
+		games.remove(game.id());
+		scheduler.release(game.id());
+	}
+
+	/**
+	 * Aborts all running games and stops the server's threads.
+	 */
+	@Override public void close() {
+		closed = true;
+		var reason = new IllegalStateException("Server is closed");
+		for (HostedGame game : games.values()) game.abort(reason);
+		scheduler.close();
+		ais.shutdownNow();
+		timer.shutdownNow();
+	}
+
+	/**
+	 * Serves the {@link TextProtocol} and the {@link BinaryProtocol} on the loopback interface,
+	 * on the standard map with {@link IsmctsAi} seats.
+	 *
+	 * @param args the port of the text protocol and the port of the binary protocol
+	 * @throws IOException if the map cannot be read or a port cannot be bound
+	 * @throws InterruptedException if interrupted while serving
+	 */
+	public static void main(String[] args) throws IOException, InterruptedException {
+		if (args.length != 2) {
+			System.err.println("Usage: GameServer <text port> <binary port>");
+			System.exit(1);
+		}
+		var setup = new GameSetup(ScotlandYard.standardGraph(), ScotlandYard.STANDARD24ROUNDS)
+				.intern();
+		var ai = Seat.ai(IsmctsAi::new, Duration.ofSeconds(5));
+		var loopback = InetAddress.getLoopbackAddress();
+		try (var server = create();
+		     var text = NetworkServer.start(new InetSocketAddress(loopback,
+				     Integer.parseInt(args[0])), new TextProtocol(server, setup, ai));
+		     var binary = NetworkServer.start(new InetSocketAddress(loopback,
+				     Integer.parseInt(args[1])), new BinaryProtocol(server, setup, ai))) {
+			System.out.println("Serving text on " + text.address()
+					+ " and binary on " + binary.address());
+			text.join();
+		}
+	}
+}
@@ -0,0 +1,235 @@
+package uk.ac.bris.cs.scotlandyard.server;
+
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.Ai;
+import uk.ac.bris.cs.scotlandyard.model.Board;
+import uk.ac.bris.cs.scotlandyard.model.GameSetup;
+import uk.ac.bris.cs.scotlandyard.model.Model;
+import uk.ac.bris.cs.scotlandyard.model.Model.Observer;
+import uk.ac.bris.cs.scotlandyard.model.Move;
+import uk.ac.bris.cs.scotlandyard.model.Piece;
+
+/**
+ * A game hosted by a {@link GameServer}.
+ * <br>
+ * The model of the game is only used by tasks on the game's executor, one at a time, so moves,
+ * AI results and observer callbacks of a game never race. Remote moves are submitted as tasks;
+ * when it is an AI seat's turn, the server's AI pool thinks about the move and the result is
+ * applied by another task. An AI that forfeits is told to terminate on its own thread once its
+ * pick returns, as the game no longer uses it. The latest board is published through a volatile
+ * field and can be read from any thread.
+ */
+public final class HostedGame {
+
+	private final GameServer server;
+	private final long id;
+	private final GameSetup setup;
+	private final Executor executor;
+	private final Model model;
+	private final Seat mrXSeat;
+	private final Seat detectivesSeat;
+	private final CompletableFuture<Board> completion = new CompletableFuture<>();
+	private final Observer turns = new Observer() {
+		@Override public void onModelChanged(@Nonnull Board board, @Nonnull Event event) {
+			HostedGame.this.board = board;
+			ply++;
+			next(board);
+		}
+	};
+	private volatile Board board;
+	// only used by tasks on the executor
+	private Ai mrXAi;
+	private Ai detectivesAi;
+	private Ai thinkingAi;
+	private GameServer.Thought thinking;
+	private int ply;
+
+	HostedGame(GameServer server, long id, GameSetup setup, Executor executor, Model model,
+	           Seat mrXSeat, Seat detectivesSeat) {
+		this.server = server;
+		this.id = id;
+		this.setup = setup;
+		this.executor = executor;
+		this.model = model;
+		this.mrXSeat = Objects.requireNonNull(mrXSeat);
+		this.detectivesSeat = Objects.requireNonNull(detectivesSeat);
+		this.board = model.getCurrentBoard();
+	}
+
+	void start() {
+		executor.execute(() -> {
+			try {
+				model.registerObserver(turns);
+				if (!mrXSeat.isRemote()) (mrXAi = mrXSeat.newAi()).onStart();
+				if (!detectivesSeat.isRemote()) (detectivesAi = detectivesSeat.newAi()).onStart();
+				next(board);
+			} catch (RuntimeException e) { abort(e); }
+		});
+	}
+
+	/**
+	 * @return the id of the game, unique within its server
+	 */
+	public long id() { return id; }
+
+	/**
+	 * @return the setup of the game
+	 */
+	@Nonnull public GameSetup setup() { return setup; }
+
+	/**
+	 * @return the board after the latest move
+	 */
+	@Nonnull public Board board() { return board; }
+
+	/**
+	 * @param piece a piece of the game
+	 * @return the seat playing the piece
+	 */
+	@Nonnull public Seat seat(@Nonnull Piece piece) {
+		return piece.isMrX() ? mrXSeat : detectivesSeat;
+	}
+
+	/**
+	 * @return a future of the final board, completed exceptionally if the game was aborted
+	 */
+	@Nonnull public CompletableFuture<Board> completion() { return completion; }
+
+	/**
+	 * Submits the move of a remote seat.
+	 *
+	 * @param move the move
+	 * @return a future of the board after the move, completed once observers have been notified;
+	 * completed exceptionally with an {@link IllegalArgumentException} if the move is not
+	 * available or not for a remote seat once its turn comes
+	 */
+	@Nonnull public CompletableFuture<Board> submit(@Nonnull Move move) {
+		Objects.requireNonNull(move);
+		var applied = new CompletableFuture<Board>();
+		executor.execute(() -> {
+			try {
+				if (completion.isDone()) throw new IllegalStateException("Game is over");
+				if (!seat(move.commencedBy()).isRemote())
+					throw new IllegalArgumentException(move.commencedBy() + " is not remote");
+				choose(move);
+				applied.complete(board);
+			} catch (RuntimeException e) { applied.completeExceptionally(e); }
+		});
+		return applied;
+	}
+
+	/**
+	 * Runs a function on the game's executor, for work that should not hold up the caller, such
+	 * as computing available moves.
+	 *
+	 * @param query the function, applied to the current board
+	 * @param <T> the result type
+	 * @return a future of the result
+	 */
+	@Nonnull public <T> CompletableFuture<T> query(@Nonnull Function<? super Board, T> query) {
+		Objects.requireNonNull(query);
+		var result = new CompletableFuture<T>();
+		executor.execute(() -> {
+			try {
+				result.complete(query.apply(board));
+			} catch (RuntimeException e) { result.completeExceptionally(e); }
+		});
+		return result;
+	}
+
+	/**
+	 * Registers an observer of the game's model. Observers are called on the game's executor and
+	 * must not block.
+	 *
+	 * @param observer the observer
+	 */
+	public void observe(@Nonnull Observer observer) {
+		Objects.requireNonNull(observer);
+		executor.execute(() -> model.registerObserver(observer));
+	}
+
+	/**
+	 * @param observer an observer registered with {@link #observe(Observer)}
+	 */
+	public void unobserve(@Nonnull Observer observer) {
+		Objects.requireNonNull(observer);
+		executor.execute(() -> {
+			if (model.getObservers().contains(observer)) model.unregisterObserver(observer);
+		});
+	}
+
+	// a failing observer must not undo or fail a move that was made
+	private void choose(Move move) {
+		int before = ply;
+		try {
+			model.chooseMove(move);
+		} catch (RuntimeException e) {
+			if (ply == before) throw e;
+			Thread thread = Thread.currentThread();
+			thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+		}
+	}
+
+	private void next(Board board) {
+		if (!board.getWinner().isEmpty()) {
+			finish(board, null);
+			return;
+		}
+		Piece mover = board.getAvailableMoves().iterator().next().commencedBy();
+		Seat seat = seat(mover);
+		if (seat.isRemote()) return;
+		Ai ai = mover.isMrX() ? mrXAi : detectivesAi;
+		int expected = ply;
+		thinkingAi = ai;
+		thinking = server.think(ai, board, seat.limit());
+		thinking.move.whenComplete((move, failure) ->
+				executor.execute(() -> picked(expected, ai, move, failure)));
+	}
+
+	// applies the move an AI picked, unless the game went on without it
+	private void picked(int expected, Ai ai, Move move, Throwable failure) {
+		if (ply != expected || completion.isDone()) return;
+		if (failure != null) abort(failure);
+		else if (!board.getAvailableMoves().contains(move))
+			abort(new IllegalStateException(ai.name() + " picked unavailable move " + move));
+		else choose(move);
+	}
+
+	void abort(@Nonnull Throwable reason) {
+		executor.execute(() -> finish(null, reason));
+	}
+
+	private void finish(Board board, Throwable reason) {
+		if (completion.isDone()) return;
+		for (Ai ai : new Ai[]{mrXAi, detectivesAi}) {
+			if (ai == null) continue;
+			// an AI still picking is told to terminate once it returns, a queued pick is dropped
+			if (ai == thinkingAi && !thinking.returned.isDone()) {
+				thinking.move.cancel(false);
+				thinking.returned.whenComplete((v, failure) -> terminate(ai));
+			} else terminate(ai);
+		}
+		server.retire(this);
+		if (reason == null) completion.complete(board);
+		else completion.completeExceptionally(reason);
+	}
+
+	private static void terminate(Ai ai) {
+		try {
+			ai.onTerminate();
+		} catch (RuntimeException e) {
+			Thread thread = Thread.currentThread();
+			thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+		}
+	}
+
+	@Override public String toString() {
+		return "HostedGame{id=" + id + ", mrX=" + mrXSeat + ", detectives=" + detectivesSeat + "}";
+	}
+}
@@ -0,0 +1,140 @@
+package uk.ac.bris.cs.scotlandyard.server;
+
+import java.util.Optional;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.BoardDelta;
+import uk.ac.bris.cs.scotlandyard.model.LogEntry;
+import uk.ac.bris.cs.scotlandyard.model.Move;
+import uk.ac.bris.cs.scotlandyard.model.Move.DoubleMove;
+import uk.ac.bris.cs.scotlandyard.model.Move.SingleMove;
+import uk.ac.bris.cs.scotlandyard.model.Piece;
+import uk.ac.bris.cs.scotlandyard.model.Piece.Detective;
+import uk.ac.bris.cs.scotlandyard.model.Piece.MrX;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+
+/**
+ * Compact ids of moves, for sending moves over the wire.
+ * <br>
+ * An id packs a move into a long: bits 0-2 hold the piece (0 for MrX, 1 plus the ordinal for
+ * detectives), bits 3-5 the first ticket, bit 6 is set for double moves, bits 7-9 hold the
+ * second ticket and the destinations take 27 bits each from bit 10 and bit 37. The source is
+ * left out as it is the piece's location, so a move is only identified among the moves of one
+ * board. A destination of 0 stands for one that is hidden. Ids of single moves on the standard
+ * map fit in three varint bytes.
+ */
+public final class MoveIds {
+
+	private static final int PIECE_BITS = 3;
+	private static final int TICKET_BITS = 3;
+	private static final int DOUBLE = 1 << PIECE_BITS + TICKET_BITS;
+	private static final int DESTINATION_BITS = 27;
+	private static final int FIRST = PIECE_BITS + 2 * TICKET_BITS + 1;
+	private static final int SECOND = FIRST + DESTINATION_BITS;
+	private static final Ticket[] TICKETS = Ticket.values();
+	private static final Detective[] DETECTIVES = Detective.values();
+
+	private MoveIds() {}
+
+	/**
+	 * @param move a move to a node below 2^27
+	 * @return the id of the move
+	 */
+	public static long of(@Nonnull Move move) {
+		return move.visit(new Move.Visitor<Long>() {
+			@Override public Long visit(SingleMove m) {
+				return pack(m.commencedBy(), m.ticket, m.destination, null, 0);
+			}
+			@Override public Long visit(DoubleMove m) {
+				return pack(m.commencedBy(), m.ticket1, m.destination1, m.ticket2, m.destination2);
+			}
+		});
+	}
+
+	/**
+	 * @param delta the change of a move
+	 * @return the id of the move with the destinations MrX did not reveal set to 0
+	 */
+	public static long hidden(@Nonnull BoardDelta delta) {
+		if (delta.mover().isDetective()) return of(delta.move());
+		var log = delta.newLogEntries();
+		LogEntry first = log.get(0);
+		LogEntry second = log.size() > 1 ? log.get(1) : null;
+		return pack(delta.mover(), first.ticket(), first.location().orElse(0),
+				second == null ? null : second.ticket(),
+				second == null ? 0 : second.location().orElse(0));
+	}
+
+	private static long pack(Piece piece, Ticket ticket1, int destination1,
+	                         Ticket ticket2, int destination2) {
+		if (destination1 >>> DESTINATION_BITS != 0 || destination2 >>> DESTINATION_BITS != 0)
+			throw new IllegalArgumentException("Destination out of range");
+		long id = code(piece) | ticket1.ordinal() << PIECE_BITS
+				| (long) destination1 << FIRST;
+		if (ticket2 != null) {
+			id |= DOUBLE | ticket2.ordinal() << PIECE_BITS + TICKET_BITS + 1
+					| (long) destination2 << SECOND;
+		}
+		return id;
+	}
+
+	// the piece codes of game records
+	private static int code(Piece piece) {
+		return piece.isMrX() ? 0 : 1 + ((Detective) piece).ordinal();
+	}
+
+	/**
+	 * @param moves the moves of a board
+	 * @param id the id of a move
+	 * @return the move with the id, if there is one
+	 */
+	@Nonnull public static Optional<Move> find(@Nonnull Iterable<Move> moves, long id) {
+		for (Move move : moves) if (of(move) == id) return Optional.of(move);
+		return Optional.empty();
+	}
+
+	/**
+	 * @param id the id of a move
+	 * @return the piece making the move
+	 * @throws IllegalArgumentException if the id holds no piece
+	 */
+	@Nonnull public static Piece piece(long id) {
+		int code = (int) id & (1 << PIECE_BITS) - 1;
+		if (code > DETECTIVES.length) throw new IllegalArgumentException("Unknown piece " + code);
+		return code == 0 ? MrX.MRX : DETECTIVES[code - 1];
+	}
+
+	/**
+	 * @param id the id of a move
+	 * @return whether the move is a double move
+	 */
+	public static boolean isDouble(long id) { return (id & DOUBLE) != 0; }
+
+	/**
+	 * @param id the id of a move
+	 * @param leg 0 for the first move, 1 for the second of a double move
+	 * @return the ticket used
+	 */
+	@Nonnull public static Ticket ticket(long id, int leg) {
+		int ordinal = (int) (id >>> PIECE_BITS + leg(id, leg) * (TICKET_BITS + 1))
+				& (1 << TICKET_BITS) - 1;
+		if (ordinal >= TICKETS.length) throw new IllegalArgumentException("Unknown ticket");
+		return TICKETS[ordinal];
+	}
+
+	/**
+	 * @param id the id of a move
+	 * @param leg 0 for the first move, 1 for the second of a double move
+	 * @return the destination, 0 if hidden
+	 */
+	public static int destination(long id, int leg) {
+		return (int) (id >>> (leg(id, leg) == 0 ? FIRST : SECOND)) & (1 << DESTINATION_BITS) - 1;
+	}
+
+	private static int leg(long id, int leg) {
+		if (leg < 0 || leg > (isDouble(id) ? 1 : 0))
+			throw new IllegalArgumentException("No leg " + leg);
+		return leg;
+	}
+}
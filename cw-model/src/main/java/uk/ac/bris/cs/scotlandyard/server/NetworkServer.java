@@ -0,0 +1,203 @@
+package uk.ac.bris.cs.scotlandyard.server;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Serves a {@link Protocol} over TCP with a single network thread.
+ * <br>
+ * The thread accepts connections, reads whatever arrives into a pooled direct buffer per
+ * connection and hands it to the connection's session, and writes queued messages as the sockets
+ * accept them. Work that takes longer than parsing a message belongs on the games' executors,
+ * never on this thread. A message must fit the {@value #BUFFER_BYTES} byte receive buffer,
+ * connections sending larger ones are closed.
+ */
+public final class NetworkServer implements AutoCloseable {
+
+	static final int BUFFER_BYTES = 1 << 16;
+	private static final int CHUNK_BYTES = 1 << 14;
+	private static final int POOLED = 1024;
+
+	private final Selector selector;
+	private final ServerSocketChannel acceptor;
+	private final Protocol protocol;
+	private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+	private final BufferPool inputs = new BufferPool(BUFFER_BYTES, POOLED);
+	private final BufferPool chunks = new BufferPool(CHUNK_BYTES, POOLED);
+	private final Thread thread;
+	private volatile boolean running = true;
+
+	private static final class Peer {
+		final Connection connection;
+		final Protocol.Session session;
+		final ByteBuffer in;
+		Peer(Connection connection, Protocol.Session session, ByteBuffer in) {
+			this.connection = connection;
+			this.session = session;
+			this.in = in;
+		}
+	}
+
+	private NetworkServer(InetSocketAddress address, Protocol protocol) throws IOException {
+		this.protocol = protocol;
+		this.selector = Selector.open();
+		this.acceptor = ServerSocketChannel.open();
+		try {
+			acceptor.bind(address);
+			acceptor.configureBlocking(false);
+			acceptor.register(selector, SelectionKey.OP_ACCEPT);
+		} catch (IOException e) {
+			acceptor.close();
+			selector.close();
+			throw e;
+		}
+		this.thread = new Thread(this::loop, "network-loop");
+		thread.setDaemon(true);
+	}
+
+	/**
+	 * @param address the address to listen on; port 0 picks a free port
+	 * @param protocol the protocol to serve
+	 * @return the running server
+	 * @throws IOException if the address cannot be bound
+	 */
+	@Nonnull public static NetworkServer start(@Nonnull InetSocketAddress address,
+	                                           @Nonnull Protocol protocol) throws IOException {
+		var server = new NetworkServer(Objects.requireNonNull(address),
+				Objects.requireNonNull(protocol));
+		server.thread.start();
+		return server;
+	}
+
+	/**
+	 * @return the address the server listens on
+	 */
+	@Nonnull public InetSocketAddress address() {
+		try {
+			return (InetSocketAddress) acceptor.getLocalAddress();
+		} catch (IOException e) { throw new UncheckedIOException(e); }
+	}
+
+	/**
+	 * Waits until the server is closed.
+	 *
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	public void join() throws InterruptedException { thread.join(); }
+
+	/**
+	 * Runs a task on the network thread.
+	 *
+	 * @param task the task
+	 */
+	void execute(Runnable task) {
+		tasks.add(task);
+		selector.wakeup();
+	}
+
+	private void loop() {
+		try {
+			while (running) {
+				selector.select();
+				Runnable task;
+				while ((task = tasks.poll()) != null) task.run();
+				for (var keys = selector.selectedKeys().iterator(); keys.hasNext(); ) {
+					SelectionKey key = keys.next();
+					keys.remove();
+					if (!key.isValid()) continue;
+					if (key.isAcceptable()) accept();
+					else {
+						var peer = (Peer) key.attachment();
+						if (key.isWritable()) peer.connection.flush();
+						if (key.isValid() && key.isReadable()) read(peer);
+					}
+				}
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		} finally {
+			for (SelectionKey key : selector.keys()) {
+				if (key.attachment() instanceof Peer)
+					((Peer) key.attachment()).connection.closeNow();
+			}
+			try {
+				acceptor.close();
+				selector.close();
+			} catch (IOException ignored) {
+				// shutting down anyway
+			}
+		}
+	}
+
+	private void accept() throws IOException {
+		SocketChannel channel;
+		while ((channel = acceptor.accept()) != null) {
+			channel.configureBlocking(false);
+			channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+			var connection = new Connection(this, channel, chunks);
+			SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+			connection.register(key);
+			key.attach(new Peer(connection, protocol.open(connection), inputs.acquire()));
+		}
+	}
+
+	private void read(Peer peer) {
+		try {
+			int read = peer.connection.channel().read(peer.in);
+			if (read < 0) {
+				peer.connection.closeNow();
+				return;
+			}
+			peer.in.flip();
+			peer.session.onData(peer.in);
+			if (!peer.connection.isOpen()) return;
+			if (peer.in.position() == 0 && peer.in.limit() == peer.in.capacity()) {
+				peer.connection.closeNow();
+				return;
+			}
+			peer.in.compact();
+		} catch (IOException | RuntimeException e) {
+			if (e instanceof RuntimeException) {
+				// a broken session only loses its own connection
+				thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+			}
+			peer.connection.closeNow();
+		}
+	}
+
+	// called by a connection as it closes
+	void closed(Connection connection, SelectionKey key) {
+		if (key == null) return;
+		key.cancel();
+		var peer = (Peer) key.attachment();
+		if (peer == null) return;
+		peer.session.onClose();
+		inputs.release(peer.in);
+	}
+
+	/**
+	 * Stops listening and closes all connections.
+	 */
+	@Override public void close() {
+		running = false;
+		selector.wakeup();
+		if (Thread.currentThread() == thread) return;
+		try {
+			thread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -0,0 +1,40 @@
+package uk.ac.bris.cs.scotlandyard.server;
+
+import com.google.common.util.concurrent.MoreExecutors;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Nonnull;
+
+/**
+ * A {@link GameScheduler} that runs all games on one pool of threads.
+ * <br>
+ * Each game's executor is a sequential view of the shared pool, so a game holds no thread while
+ * it waits for a move and any idle thread picks up the next game with work queued.
+ */
+public final class PooledScheduler implements GameScheduler {
+
+	private final ExecutorService pool;
+
+	/**
+	 * @param threads the number of threads, usually the number of cores
+	 */
+	public PooledScheduler(int threads) {
+		if (threads < 1) throw new IllegalArgumentException("Threads must be > 0");
+		var count = new AtomicInteger();
+		this.pool = Executors.newFixedThreadPool(threads, r -> {
+			Thread thread = new Thread(r, "game-worker-" + count.getAndIncrement());
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	@Nonnull @Override public Executor executor(long game) {
+		return MoreExecutors.newSequentialExecutor(pool);
+	}
+
+	@Override public void close() { pool.shutdown(); }
+}
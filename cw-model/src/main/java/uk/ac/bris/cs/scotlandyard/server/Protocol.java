@@ -0,0 +1,35 @@
+package uk.ac.bris.cs.scotlandyard.server;
+
+import java.nio.ByteBuffer;
+
+import javax.annotation.Nonnull;
+
+/**
+ * A wire protocol served by a {@link NetworkServer}.
+ */
+@FunctionalInterface
+public interface Protocol {
+	/**
+	 * The state of the protocol for one connection. Sessions are called on the network thread
+	 * only and must not block it.
+	 */
+	interface Session {
+		/**
+		 * Called whenever bytes arrive. The session consumes every complete message and leaves
+		 * the buffer's position at the first byte of an incomplete one, which is passed again
+		 * together with the following bytes.
+		 *
+		 * @param in the received bytes, from its position to its limit
+		 */
+		void onData(@Nonnull ByteBuffer in);
+		/**
+		 * Called once the connection is closed
+		 */
+		default void onClose() {}
+	}
+	/**
+	 * @param connection a newly accepted connection
+	 * @return the session of the connection
+	 */
+	@Nonnull Session open(@Nonnull Connection connection);
+}
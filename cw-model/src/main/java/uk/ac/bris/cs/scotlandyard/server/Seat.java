@@ -0,0 +1,54 @@
+package uk.ac.bris.cs.scotlandyard.server;
+
+import java.time.Duration;
+import java.util.Objects;
+import java.util.function.Supplier;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.Ai;
+
+/**
+ * Who plays a side of a hosted game: a remote client submitting moves, or an {@link Ai} run by
+ * the server.
+ */
+public final class Seat {
+
+	private static final Seat REMOTE = new Seat(null, Duration.ZERO);
+
+	private final Supplier<? extends Ai> ais;
+	private final Duration limit;
+
+	private Seat(Supplier<? extends Ai> ais, Duration limit) {
+		this.ais = ais;
+		this.limit = limit;
+	}
+
+	/**
+	 * @return a seat whose moves are submitted through {@link HostedGame#submit}
+	 */
+	@Nonnull public static Seat remote() { return REMOTE; }
+
+	/**
+	 * @param ais creates the AI of every game the seat is used in
+	 * @param limit time the AI may think about a move before it is asked to terminate
+	 * @return a seat played by the server
+	 */
+	@Nonnull public static Seat ai(@Nonnull Supplier<? extends Ai> ais, @Nonnull Duration limit) {
+		Objects.requireNonNull(ais);
+		if (limit.isNegative() || limit.isZero())
+			throw new IllegalArgumentException("Limit must be positive");
+		return new Seat(ais, limit);
+	}
+
+	/**
+	 * @return whether moves for this seat come from a client
+	 */
+	public boolean isRemote() { return ais == null; }
+
+	Ai newAi() { return Objects.requireNonNull(ais.get(), "No AI supplied"); }
+
+	Duration limit() { return limit; }
+
+	@Override public String toString() { return isRemote() ? "remote" : "ai(" + limit + ")"; }
+}
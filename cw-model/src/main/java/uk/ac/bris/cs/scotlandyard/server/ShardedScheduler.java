@@ -0,0 +1,171 @@
+package uk.ac.bris.cs.scotlandyard.server;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nonnull;
+
+/**
+ * A {@link GameScheduler} that pins every game to one of a number of single threaded shards.
+ * <br>
+ * A game starts on the shard its id hashes to, so all its moves, AI results and observer
+ * callbacks run on the same thread and games on different shards share no queue. Games queue
+ * for their shard with their own lane of tasks and run a batch of tasks at a time, so a busy
+ * game does not starve the others on its shard. When a lane is queued on a shard with more than
+ * the allowed number of lanes waiting, and another shard has less than half as many, the game
+ * migrates to that shard; it keeps running there, one task at a time and in order, as the lane
+ * is only ever queued on one shard.
+ */
+public final class ShardedScheduler implements GameScheduler {
+
+	private static final int BATCH = 16;
+
+	private final Shard[] shards;
+	private final int migrateAbove;
+	private final Map<Long, Lane> lanes = new ConcurrentHashMap<>();
+	private final AtomicLong migrations = new AtomicLong();
+
+	private static final class Shard {
+		final ThreadPoolExecutor worker;
+		final AtomicInteger games = new AtomicInteger();
+		Shard(int index) {
+			this.worker = new ThreadPoolExecutor(1, 1, 0, TimeUnit.SECONDS,
+					new LinkedBlockingQueue<>(), r -> {
+						Thread thread = new Thread(r, "game-shard-" + index);
+						thread.setDaemon(true);
+						return thread;
+					});
+		}
+		int depth() { return worker.getQueue().size(); }
+	}
+
+	// the tasks of one game, queued on its shard whenever there are any
+	private final class Lane implements Executor, Runnable {
+		final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+		final AtomicBoolean queued = new AtomicBoolean();
+		volatile Shard shard;
+		volatile boolean released;
+		Lane(Shard shard) { this.shard = shard; }
+
+		@Override public void execute(@Nonnull Runnable task) {
+			tasks.add(task);
+			if (queued.compareAndSet(false, true)) dispatch(this);
+		}
+
+		@Override public void run() {
+			// once closed, the lane cannot be queued again so it runs until it is empty
+			for (int i = 0; i < BATCH || shard.worker.isShutdown(); i++) {
+				Runnable task = tasks.poll();
+				if (task == null) {
+					queued.set(false);
+					// a task added after the poll may have found the lane still queued
+					if (tasks.isEmpty() || !queued.compareAndSet(false, true)) return;
+					continue;
+				}
+				try {
+					task.run();
+				} catch (RuntimeException e) {
+					Thread thread = Thread.currentThread();
+					thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+				}
+			}
+			dispatch(this);
+		}
+	}
+
+	/**
+	 * @param shards the number of shards, usually the number of cores
+	 * @param migrateAbove the number of games waiting on a shard above which games move to less
+	 * busy shards
+	 */
+	public ShardedScheduler(int shards, int migrateAbove) {
+		if (shards < 1) throw new IllegalArgumentException("Shards must be > 0");
+		if (migrateAbove < 0) throw new IllegalArgumentException("Migrate above must be >= 0");
+		this.shards = new Shard[shards];
+		for (int i = 0; i < shards; i++) this.shards[i] = new Shard(i);
+		this.migrateAbove = migrateAbove;
+	}
+
+	@Nonnull @Override public Executor executor(long game) {
+		Shard shard = shards[shard(game)];
+		var lane = new Lane(shard);
+		if (lanes.putIfAbsent(game, lane) != null)
+			throw new IllegalArgumentException("Game " + game + " already has an executor");
+		shard.games.incrementAndGet();
+		return lane;
+	}
+
+	// late tasks, such as results of AIs that were too slow, still run on the lane
+	@Override public void release(long game) {
+		Lane lane = lanes.remove(game);
+		if (lane == null) return;
+		lane.released = true;
+		lane.shard.games.decrementAndGet();
+	}
+
+	/**
+	 * @param game the id of a game
+	 * @return the shard the game starts on
+	 */
+	public int shard(long game) { return Math.floorMod(Long.hashCode(game), shards.length); }
+
+	/**
+	 * @return the number of shards
+	 */
+	public int shards() { return shards.length; }
+
+	/**
+	 * @param shard the index of a shard
+	 * @return the number of games with tasks waiting for the shard
+	 */
+	public int depth(int shard) { return shards[shard].depth(); }
+
+	/**
+	 * @param shard the index of a shard
+	 * @return the number of running games on the shard
+	 */
+	public int games(int shard) { return shards[shard].games.get(); }
+
+	/**
+	 * @return the number of times a game moved to another shard
+	 */
+	public long migrations() { return migrations.get(); }
+
+	// only called by whoever queued the lane, so the lane's shard does not change meanwhile
+	private void dispatch(Lane lane) {
+		Shard shard = lane.shard;
+		int depth = shard.depth();
+		if (depth > migrateAbove) {
+			Shard least = shard;
+			for (Shard other : shards) if (other.depth() < least.depth()) least = other;
+			if (least.depth() * 2 < depth) {
+				if (!lane.released) {
+					shard.games.decrementAndGet();
+					least.games.incrementAndGet();
+				}
+				lane.shard = shard = least;
+				migrations.incrementAndGet();
+			}
+		}
+		try {
+			shard.worker.execute(lane);
+		} catch (RejectedExecutionException e) {
+			// the scheduler is closed, the game's remaining tasks are dropped
+			lane.tasks.clear();
+		}
+	}
+
+	@Override public void close() {
+		for (Shard shard : shards) shard.worker.shutdown();
+	}
+}
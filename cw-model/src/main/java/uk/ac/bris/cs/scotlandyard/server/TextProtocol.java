@@ -0,0 +1,253 @@
+package uk.ac.bris.cs.scotlandyard.server;
+
+import com.google.common.collect.ImmutableList;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Collectors;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.Board;
+import uk.ac.bris.cs.scotlandyard.model.BoardDelta;
+import uk.ac.bris.cs.scotlandyard.model.GameSetup;
+import uk.ac.bris.cs.scotlandyard.model.LogEntry;
+import uk.ac.bris.cs.scotlandyard.model.Model.DeltaObserver;
+import uk.ac.bris.cs.scotlandyard.model.Model.Observer;
+import uk.ac.bris.cs.scotlandyard.model.Move;
+import uk.ac.bris.cs.scotlandyard.model.Piece;
+
+/**
+ * A line based text protocol for driving hosted games, simple enough to play with telnet.
+ * <br>
+ * Commands and replies are single lines of space separated words:
+ * <pre>
+ * HOST mrx detectives   GAME id          hosts a game, seats are "ai" or "remote"
+ * HOST mrx detectives seed                 hosts a game at the start locations of the seed
+ * MOVES id              MOVES id moves   lists the moves of remote seats, comma separated
+ * MOVE id move          OK id            submits a move
+ * WATCH id              WATCHING id      follows the game
+ * </pre>
+ * Failed commands are answered with {@code ERR <message>}. Replies to commands about different
+ * games may arrive out of order. Moves are written as the piece, the ticket, the source and the
+ * destination, and for double moves the second ticket and destination, like
+ * {@code MRX TAXI 45 46 BUS 58}. Remote seats of a game belong to the connection that hosted it,
+ * only that connection may list and submit their moves, and its games are aborted when it
+ * closes. Watchers receive
+ * {@code EVENT <id> MOVE_MADE <move>} after every move and {@code EVENT <id> GAME_OVER <move>
+ * <winners>} after the last; MrX's destinations are shown as {@code ?} unless revealed. Games
+ * start at random locations unless a seed is given, see
+ * {@link GameServer#host(GameSetup, int, Seat, Seat)}.
+ */
+public final class TextProtocol implements Protocol {
+
+	private static final int MAX_LINE = 1024;
+
+	private final GameServer server;
+	private final GameSetup setup;
+	private final Seat ai;
+
+	/**
+	 * @param server the server hosting the games
+	 * @param setup the setup of hosted games
+	 * @param ai the seat used for "ai"
+	 */
+	public TextProtocol(@Nonnull GameServer server, @Nonnull GameSetup setup, @Nonnull Seat ai) {
+		this.server = Objects.requireNonNull(server);
+		this.setup = Objects.requireNonNull(setup);
+		if (ai.isRemote()) throw new IllegalArgumentException("AI seat is remote");
+		this.ai = ai;
+	}
+
+	@Nonnull @Override public Session open(@Nonnull Connection connection) {
+		return new TextSession(connection);
+	}
+
+	/**
+	 * @param move a move
+	 * @return the move in the notation of the protocol
+	 */
+	@Nonnull public static String format(@Nonnull Move move) {
+		return move.visit(new Move.FunctionalVisitor<>(
+				m -> m.commencedBy() + " " + m.ticket + " " + m.source() + " " + m.destination,
+				m -> m.commencedBy() + " " + m.ticket1 + " " + m.source() + " " + m.destination1
+						+ " " + m.ticket2 + " " + m.destination2));
+	}
+
+	// the move as watchers may see it
+	private static String reveal(BoardDelta delta) {
+		if (delta.mover().isDetective()) return format(delta.move());
+		var words = new StringBuilder(delta.mover().toString());
+		for (LogEntry entry : delta.newLogEntries())
+			words.append(' ').append(entry.ticket()).append(' ')
+					.append(entry.location().map(String::valueOf).orElse("?"));
+		return words.toString();
+	}
+
+	private final class TextSession implements Session {
+
+		private final Connection connection;
+		// games hosted by this connection, and observers of watched games
+		private final Map<Long, HostedGame> hosted = new HashMap<>();
+		private final Map<Long, Observer> watched = new HashMap<>();
+
+		TextSession(Connection connection) { this.connection = connection; }
+
+		@Override public void onData(@Nonnull ByteBuffer in) {
+			int start = in.position();
+			for (int i = start; i < in.limit(); i++) {
+				if (in.get(i) != '\n') continue;
+				byte[] line = new byte[i - start];
+				in.get(line);
+				in.get();
+				start = i + 1;
+				String command = new String(line, StandardCharsets.US_ASCII).strip();
+				if (command.isEmpty()) continue;
+				try {
+					execute(command.split("\\s+"));
+				} catch (IllegalArgumentException e) {
+					reply("ERR " + e.getMessage());
+				}
+			}
+			if (in.limit() - start > MAX_LINE) {
+				reply("ERR Line too long");
+				connection.close();
+			}
+		}
+
+		private void execute(String[] words) {
+			switch (words[0].toUpperCase()) {
+				case "HOST": host(words); break;
+				case "MOVES": moves(words); break;
+				case "MOVE": move(words); break;
+				case "WATCH": watch(words); break;
+				default: throw new IllegalArgumentException("Unknown command " + words[0]);
+			}
+		}
+
+		private void host(String[] words) {
+			if (words.length != 4) arguments(words, 3);
+			Seat mrX = seat(words[1]), detectives = seat(words[2]);
+			int seed = words.length == 4 ? seed(words[3]) : ThreadLocalRandom.current().nextInt();
+			HostedGame game;
+			try {
+				game = server.host(setup, seed, mrX, detectives);
+			} catch (IllegalStateException e) {
+				throw new IllegalArgumentException(e.getMessage(), e);
+			}
+			hosted.values().removeIf(hostedGame -> hostedGame.completion().isDone());
+			if (mrX.isRemote() || detectives.isRemote()) hosted.put(game.id(), game);
+			reply("GAME " + game.id());
+		}
+
+		private Seat seat(String word) {
+			switch (word.toLowerCase()) {
+				case "ai": return ai;
+				case "remote": return Seat.remote();
+				default: throw new IllegalArgumentException("Unknown seat " + word);
+			}
+		}
+
+		private void moves(String[] words) {
+			arguments(words, 2);
+			HostedGame game = owned(words[1]);
+			game.query(board -> board.getAvailableMoves().stream()
+					.filter(move -> game.seat(move.commencedBy()).isRemote())
+					.map(TextProtocol::format)
+					.sorted()
+					.collect(Collectors.joining(",")))
+					.whenComplete((moves, e) -> reply(e != null
+							? "ERR " + cause(e).getMessage()
+							: "MOVES " + game.id() + " " + moves));
+		}
+
+		private void move(String[] words) {
+			if (words.length != 6 && words.length != 8)
+				throw new IllegalArgumentException("Bad move");
+			HostedGame game = owned(words[1]);
+			String text = String.join(" ", ImmutableList.copyOf(words).subList(2, words.length));
+			game.query(board -> board.getAvailableMoves().stream()
+					.filter(move -> format(move).equalsIgnoreCase(text))
+					.findFirst())
+					.thenCompose(move -> game.submit(move.orElseThrow(
+							() -> new IllegalArgumentException("Unavailable move " + text))))
+					.whenComplete((board, e) -> reply(e != null
+							? "ERR " + cause(e).getMessage()
+							: "OK " + game.id()));
+		}
+
+		private void watch(String[] words) {
+			arguments(words, 2);
+			HostedGame game = game(words[1]);
+			watched.keySet().removeIf(id -> server.game(id).isEmpty());
+			if (watched.containsKey(game.id()))
+				throw new IllegalArgumentException("Already watching " + game.id());
+			DeltaObserver observer = new DeltaObserver() {
+				@Override public void onModelChanged(@Nonnull Board board, @Nonnull Event event,
+				                                     @Nonnull BoardDelta delta) {
+					String line = "EVENT " + game.id() + " " + event + " " + reveal(delta);
+					if (event == Event.GAME_OVER) {
+						line += " " + board.getWinner().stream().map(Piece::toString).sorted()
+								.collect(Collectors.joining(","));
+					}
+					reply(line);
+				}
+			};
+			watched.put(game.id(), observer);
+			game.observe(observer);
+			reply("WATCHING " + game.id());
+		}
+
+		private int seed(String word) {
+			try {
+				return Integer.parseInt(word);
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException("Bad seed " + word, e);
+			}
+		}
+
+		private HostedGame game(String id) {
+			try {
+				Optional<HostedGame> game = server.game(Long.parseLong(id));
+				return game.orElseThrow(() -> new IllegalArgumentException("No game " + id));
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException("Bad game id " + id, e);
+			}
+		}
+
+		private HostedGame owned(String id) {
+			HostedGame game = game(id);
+			if (hosted.get(game.id()) != game)
+				throw new IllegalArgumentException("Game " + id + " has no seat of yours");
+			return game;
+		}
+
+		private void arguments(String[] words, int count) {
+			if (words.length != count)
+				throw new IllegalArgumentException(words[0] + " takes " + (count - 1)
+						+ " arguments");
+		}
+
+		private Throwable cause(Throwable e) {
+			return e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+		}
+
+		private void reply(String line) {
+			connection.send(ByteBuffer.wrap((line + "\n").getBytes(StandardCharsets.US_ASCII)));
+		}
+
+		// nobody is left to play the remote seats of hosted games
+		@Override public void onClose() {
+			watched.forEach((id, observer) -> server.game(id)
+					.ifPresent(game -> game.unobserve(observer)));
+			var reason = new IllegalStateException("Connection closed");
+			hosted.values().forEach(game -> game.abort(reason));
+		}
+	}
+}
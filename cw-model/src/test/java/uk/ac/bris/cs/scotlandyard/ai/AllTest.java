@@ -0,0 +1,18 @@
+package uk.ac.bris.cs.scotlandyard.ai;
+
+import org.junit.runner.RunWith;
+import org.junit.runners.Suite;
+
+/**
+ * Includes all tests for the search and simulation support
+ */
+@RunWith(Suite.class)
+@Suite.SuiteClasses({
+		PlayoutEngineTest.class,
+		InformationSetMctsTest.class,
+		OpeningBookTest.class,
+		EndgameSolverTest.class,
+		JointMoveGeneratorTest.class,
+		BatchEvaluatorTest.class
+})
+public class AllTest {}
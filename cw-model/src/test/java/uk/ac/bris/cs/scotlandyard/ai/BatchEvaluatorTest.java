@@ -0,0 +1,108 @@
+package uk.ac.bris.cs.scotlandyard.ai;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+import uk.ac.bris.cs.scotlandyard.model.Move;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+import static uk.ac.bris.cs.scotlandyard.ai.PlayoutEngineTest.standardGame;
+
+/**
+ * Tests the default {@link BatchEvaluator}s and batched evaluation in {@link InformationSetMcts}
+ */
+public class BatchEvaluatorTest {
+
+	@BeforeClass public static void setUp() throws IOException { PlayoutEngineTest.setUp(); }
+
+	// positions of a random game, MrX's location is tracked
+	private static List<PackedState> positions() {
+		var random = new SplittableRandom(3);
+		GameState state = standardGame();
+		var packed = PackedState.of(state);
+		var positions = new ArrayList<PackedState>();
+		while (state.getWinner().isEmpty()) {
+			positions.add(packed.copy());
+			var moves = state.getAvailableMoves().asList();
+			Move move = moves.get(random.nextInt(moves.size()));
+			packed.apply(packed.encode(move));
+			state = state.advance(move);
+		}
+		return positions;
+	}
+
+	private static double[] evaluate(BatchEvaluator evaluator, List<PackedState> positions) {
+		var prototype = positions.get(0);
+		int stride = prototype.packedLength();
+		int[] packed = new int[positions.size() * stride];
+		for (int i = 0; i < positions.size(); i++) positions.get(i).pack(packed, i * stride);
+		double[] scores = new double[positions.size()];
+		evaluator.evaluate(prototype, packed, positions.size(), scores);
+		return scores;
+	}
+
+	@Test public void testBatchesMatchSinglePositions() {
+		var positions = positions();
+		var root = positions.get(0);
+		var evaluators = List.of(BatchEvaluator.mrXDistance(6), BatchEvaluator.escapeRoutes(),
+				BatchEvaluator.beliefEntropy(root, MrXBelief.asSeenByDetectives(standardGame())));
+		for (BatchEvaluator evaluator : evaluators) {
+			double[] batch = evaluate(evaluator, positions);
+			for (int i = 0; i < positions.size(); i++) {
+				assertThat(evaluate(evaluator, List.of(positions.get(i)))[0])
+						.isEqualTo(batch[i]);
+				assertThat(batch[i]).isBetween(0d, 1d);
+			}
+		}
+	}
+
+	@Test public void testMrXDistance() {
+		var root = PackedState.of(standardGame());
+		var graph = root.graph();
+		int nearest = Integer.MAX_VALUE;
+		for (int slot = 1; slot < root.players(); slot++)
+			nearest = Math.min(nearest, graph.distance(root.location(0), root.location(slot)));
+		assertThat(evaluate(BatchEvaluator.mrXDistance(100), List.of(root))[0])
+				.isCloseTo(nearest / 100d, within(1e-9));
+		assertThat(evaluate(BatchEvaluator.mrXDistance(1), List.of(root))[0]).isEqualTo(1d);
+	}
+
+	@Test public void testEntropyDropsToZeroAfterReveal() {
+		var positions = positions();
+		var root = positions.get(0);
+		double[] scores = evaluate(BatchEvaluator.beliefEntropy(root,
+				MrXBelief.asSeenByDetectives(standardGame())), positions);
+		assertThat(scores[0]).isGreaterThan(0d);
+		for (int i = 0; i < positions.size(); i++)
+			if (positions.get(i).logSize() >= 3) assertThat(scores[i]).isEqualTo(0d);
+	}
+
+	@Test public void testWeightedSum() {
+		var positions = positions();
+		double[] distance = evaluate(BatchEvaluator.mrXDistance(6), positions);
+		double[] routes = evaluate(BatchEvaluator.escapeRoutes(), positions);
+		double[] weighted = evaluate(BatchEvaluator.weighted(new double[]{0.25, 0.75},
+				BatchEvaluator.mrXDistance(6), BatchEvaluator.escapeRoutes()), positions);
+		for (int i = 0; i < positions.size(); i++)
+			assertThat(weighted[i]).isCloseTo(0.25 * distance[i] + 0.75 * routes[i],
+					within(1e-9));
+	}
+
+	@Test public void testSearchWithBatchedEvaluation() {
+		var state = standardGame();
+		var search = new InformationSetMcts(PlayoutPolicy.uniform(), 2, 1 << 12, 0.7);
+		search.setEvaluator(BatchEvaluator.mrXDistance(6), 16);
+		var result = search.search(state, 3000, Duration.ofSeconds(10), new AtomicBoolean(), 1);
+		assertThat(result.iterations).isEqualTo(3000L);
+		assertThat(state.getAvailableMoves()).contains(result.move);
+	}
+}
@@ -0,0 +1,140 @@
+package uk.ac.bris.cs.scotlandyard.ai;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.LongStream;
+
+import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+import uk.ac.bris.cs.scotlandyard.model.GameSetup;
+import uk.ac.bris.cs.scotlandyard.model.Move;
+import uk.ac.bris.cs.scotlandyard.model.MyGameStateFactory;
+import uk.ac.bris.cs.scotlandyard.model.Piece;
+import uk.ac.bris.cs.scotlandyard.model.Player;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.GREEN;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.RED;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.MrX.MRX;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket.BUS;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket.DOUBLE;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket.SECRET;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket.TAXI;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket.UNDERGROUND;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.defaultDetectiveTickets;
+
+/**
+ * Tests the {@link EndgameSolver}, {@link EndgameTablebase} and {@link PerfectHash}
+ */
+public class EndgameSolverTest {
+
+	private static GameSetup setup;
+
+	@BeforeClass public static void setUp() throws IOException {
+		PlayoutEngineTest.setUp();
+		setup = new GameSetup(ScotlandYard.standardGraph(), ImmutableList.of(false, true));
+	}
+
+	private static GameState endgame() {
+		return new MyGameStateFactory().build(setup,
+				new Player(MRX, ImmutableMap.of(TAXI, 3, BUS, 1, UNDERGROUND, 0,
+						DOUBLE, 1, SECRET, 1), 106),
+				ImmutableList.of(
+						new Player(RED, defaultDetectiveTickets(), 91),
+						new Player(GREEN, defaultDetectiveTickets(), 94)));
+	}
+
+	// plain minimax over the reference game state
+	private static boolean mrXWins(GameState state) {
+		if (!state.getWinner().isEmpty()) return state.getWinner().contains(MRX);
+		boolean mrXTurn = state.getAvailableMoves().iterator().next().commencedBy().isMrX();
+		for (Move move : state.getAvailableMoves())
+			if (mrXWins(state.advance(move)) == mrXTurn) return mrXTurn;
+		return !mrXTurn;
+	}
+
+	@Test public void testResultsMatchMinimax() {
+		var state = endgame();
+		var root = PackedState.of(state);
+		var tablebase = new EndgameSolver(2, 1 << 20).solve(root).orElseThrow();
+		assertThat(tablebase.size()).isGreaterThan(1000);
+		int mrXWins = 0, detectiveWins = 0;
+		for (Move move : state.getAvailableMoves()) {
+			var next = root.copy();
+			next.apply(root.encode(move));
+			int expected = mrXWins(state.advance(move))
+					? PackedState.MRX_WINS : PackedState.DETECTIVES_WIN;
+			assertThat(tablebase.probe(next)).isEqualTo(expected);
+			if (expected == PackedState.MRX_WINS) mrXWins++;
+			else detectiveWins++;
+		}
+		assertThat(mrXWins).isGreaterThan(0);
+		assertThat(detectiveWins).isGreaterThan(0);
+		assertThat(tablebase.probe(root)).isEqualTo(mrXWins(state)
+				? PackedState.MRX_WINS : PackedState.DETECTIVES_WIN);
+	}
+
+	@Test public void testHorizon() {
+		var root = PackedState.of(endgame());
+		assertThat(new EndgameSolver(1, 1 << 20).solve(root)).isEmpty();
+		assertThat(new EndgameSolver(2, 100).solve(root)).isEmpty();
+	}
+
+	@Test public void testStoppedSolveIsEmpty() {
+		var roots = List.of(PackedState.of(endgame()));
+		var solver = new EndgameSolver(2, 1 << 20);
+		assertThat(solver.solve(roots, Duration.ofSeconds(10), new AtomicBoolean(true))).isEmpty();
+		assertThat(solver.solve(roots, Duration.ZERO, new AtomicBoolean())).isEmpty();
+		assertThat(solver.solve(roots, Duration.ofSeconds(10), new AtomicBoolean())).isPresent();
+	}
+
+	@Test public void testUnsolvedPositionsProbeNone() {
+		var tablebase = new EndgameSolver(2, 1 << 20).solve(PackedState.of(endgame()))
+				.orElseThrow();
+		assertThat(tablebase.probe(PackedState.of(PlayoutEngineTest.standardGame())))
+				.isEqualTo(PackedState.NONE);
+	}
+
+	@Test public void testWrittenTablebaseLoadsMapped() throws IOException {
+		var root = PackedState.of(endgame());
+		var tablebase = new EndgameSolver(2, 1 << 20).solve(root).orElseThrow();
+		var file = Files.createTempFile("tablebase", ".bin");
+		file.toFile().deleteOnExit();
+		tablebase.write(file);
+		var loaded = EndgameTablebase.load(file);
+		assertThat(loaded.size()).isEqualTo(tablebase.size());
+		assertThat(loaded.probe(root)).isEqualTo(tablebase.probe(root));
+	}
+
+	@Test public void testPerfectHashHasNoCollisions() {
+		long[] keys = LongStream.generate(new SplittableRandom(1)::nextLong)
+				.distinct().limit(100_000).toArray();
+		var hash = PerfectHash.build(keys);
+		var taken = new boolean[hash.slots()];
+		for (long key : keys) {
+			int slot = hash.slot(key);
+			assertThat(taken[slot]).isFalse();
+			taken[slot] = true;
+		}
+	}
+
+	@Test public void testSolvedRootGuidesSearchToWin() {
+		var state = endgame();
+		var search = new InformationSetMcts(PlayoutPolicy.uniform(), 1, 1 << 12, 0.7);
+		search.setTablebase(new EndgameSolver(2, 1 << 20).solve(PackedState.of(state))
+				.orElseThrow());
+		var result = search.search(state, 2000, Duration.ofSeconds(10), new AtomicBoolean(), 1);
+		assertThat(mrXWins(state)).isTrue();
+		assertThat(mrXWins(state.advance(result.move))).isTrue();
+	}
+}
@@ -0,0 +1,105 @@
+package uk.ac.bris.cs.scotlandyard.ai;
+
+import com.google.common.collect.ImmutableList;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import uk.ac.bris.cs.scotlandyard.model.GameSetup;
+import uk.ac.bris.cs.scotlandyard.model.Move.SingleMove;
+import uk.ac.bris.cs.scotlandyard.model.MyGameStateFactory;
+import uk.ac.bris.cs.scotlandyard.model.Player;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static uk.ac.bris.cs.scotlandyard.ai.PlayoutEngineTest.standardGame;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.GREEN;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.RED;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.MrX.MRX;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket.TAXI;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.defaultDetectiveTickets;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.defaultMrXTickets;
+
+/**
+ * Tests the {@link InformationSetMcts} and {@link MrXBelief}
+ */
+public class InformationSetMctsTest {
+
+	private static final Duration BUDGET = Duration.ofSeconds(10);
+
+	@BeforeClass public static void setUp() throws IOException { PlayoutEngineTest.setUp(); }
+
+	@Test public void testMrXPicksAvailableMove() {
+		var state = standardGame();
+		var result = new InformationSetMcts().search(state, 2000, BUDGET,
+				new AtomicBoolean(), 1);
+		assertThat(state.getAvailableMoves()).contains(result.move);
+		assertThat(result.iterations).isEqualTo(2000L);
+		assertThat(result.visits.keySet()).allMatch(m -> m.commencedBy() == MRX);
+	}
+
+	@Test public void testDetectivesPickAvailableMoveWithHiddenMrX() {
+		var state = standardGame();
+		state = state.advance(new SingleMove(MRX, 106, TAXI, 105));
+		var result = new InformationSetMcts().search(state, 2000, BUDGET,
+				new AtomicBoolean(), 1);
+		assertThat(state.getAvailableMoves()).contains(result.move);
+		assertThat(result.move.commencedBy().isDetective()).isTrue();
+	}
+
+	@Test public void testDetectiveCapturesRevealedMrX() throws IOException {
+		var setup = new GameSetup(ScotlandYard.standardGraph(), ImmutableList.of(true));
+		var state = new MyGameStateFactory().build(setup,
+				new Player(MRX, defaultMrXTickets(), 106),
+				ImmutableList.of(
+						new Player(RED, defaultDetectiveTickets(), 91),
+						new Player(GREEN, defaultDetectiveTickets(), 29)))
+				.advance(new SingleMove(MRX, 106, TAXI, 105));
+		for (boolean joint : new boolean[]{false, true}) {
+			var search = new InformationSetMcts(PlayoutPolicy.epsilonGreedy(0.2), 2, 1 << 16,
+					0.7, joint);
+			var result = search.search(state, 5000, BUDGET, new AtomicBoolean(), 1);
+			assertThat(result.move).isEqualTo(new SingleMove(RED, 91, TAXI, 105));
+		}
+	}
+
+	@Test public void testSearchStaysWithinNodeCapacity() {
+		var search = new InformationSetMcts(PlayoutPolicy.uniform(), 1, 64, 0.7);
+		var state = standardGame();
+		for (int i = 0; i < 3; i++) {
+			var result = search.search(state, 5000, BUDGET, new AtomicBoolean(), i);
+			assertThat(result.iterations).isEqualTo(5000L);
+			assertThat(result.nodes).isLessThanOrEqualTo(64);
+			state = state.advance(result.move);
+		}
+	}
+
+	@Test public void testTerminateStopsSearch() {
+		var result = new InformationSetMcts().search(standardGame(), Long.MAX_VALUE, BUDGET,
+				new AtomicBoolean(true), 1);
+		assertThat(result.iterations).isEqualTo(0L);
+		assertThat(standardGame().getAvailableMoves()).contains(result.move);
+	}
+
+	@Test public void testBeliefFollowsTravelLog() {
+		var state = standardGame().advance(new SingleMove(MRX, 106, TAXI, 105));
+		var belief = MrXBelief.of(state, ImmutableList.of(106));
+		var graph = belief.graph();
+		for (int i = 0; i < graph.nodeCount(); i++) {
+			boolean taxiNeighbour = state.getSetup().graph.adjacentNodes(106)
+					.contains(graph.nodeId(i)) && state.getSetup().graph
+					.edgeValue(106, graph.nodeId(i)).orElseThrow()
+					.contains(ScotlandYard.Transport.TAXI);
+			assertThat(belief.probability(i) > 0).isEqualTo(taxiNeighbour);
+		}
+		var random = new SplittableRandom(1);
+		for (int i = 0; i < 100; i++)
+			assertThat(belief.probability(belief.sample(random))).isGreaterThan(0);
+	}
+
+}
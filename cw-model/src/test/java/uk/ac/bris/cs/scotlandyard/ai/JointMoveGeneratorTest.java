@@ -0,0 +1,97 @@
+package uk.ac.bris.cs.scotlandyard.ai;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.stream.Collectors;
+
+import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+import uk.ac.bris.cs.scotlandyard.model.Move;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static uk.ac.bris.cs.scotlandyard.ai.PlayoutEngineTest.standardGame;
+
+/**
+ * Tests the {@link JointMoveGenerator} against every ordering of single detective moves
+ */
+public class JointMoveGeneratorTest {
+
+	@BeforeClass public static void setUp() throws IOException { PlayoutEngineTest.setUp(); }
+
+	// the whole state, as keys do not tell detectives with the same tickets apart
+	private static List<Integer> outcome(PackedState state) {
+		int[] packed = new int[state.packedLength()];
+		state.pack(packed, 0);
+		return Arrays.stream(packed).boxed().collect(Collectors.toList());
+	}
+
+	// every end of round state reachable by moving the detectives one at a time
+	private static void outcomes(PackedState state, Set<List<Integer>> visited,
+	                             Set<List<Integer>> outcomes) {
+		if (!visited.add(outcome(state))) return;
+		if (state.isMrXTurn() || state.winner() != PackedState.NONE) {
+			outcomes.add(outcome(state));
+			return;
+		}
+		long[] moves = new long[state.maxMoves()];
+		int count = state.generate(moves);
+		for (int i = 0; i < count; i++) {
+			var next = state.copy();
+			next.apply(moves[i]);
+			outcomes(next, visited, outcomes);
+		}
+	}
+
+	@Test public void testJointMovesReachEveryOutcomeOnce() {
+		var random = new SplittableRandom(11);
+		var generator = new JointMoveGenerator();
+		int rounds = 0, captures = 0;
+		for (int game = 0; game < 10; game++) {
+			GameState state = standardGame();
+			var packed = PackedState.of(state);
+			while (state.getWinner().isEmpty()) {
+				if (!packed.isMrXTurn()) {
+					var expected = new HashSet<List<Integer>>();
+					outcomes(packed, new HashSet<>(), expected);
+					int count = generator.generate(packed);
+					var actual = new HashSet<List<Integer>>();
+					boolean capture = false;
+					for (int i = 0; i < count; i++) {
+						var next = packed.copy();
+						next.apply(generator.move(i));
+						actual.add(outcome(next));
+						capture |= next.winner() == PackedState.DETECTIVES_WIN;
+						assertThat(state.getAvailableMoves())
+								.contains(packed.decode(generator.move(i)));
+					}
+					if (capture) {
+						captures++;
+						assertThat(count).isEqualTo(1);
+						assertThat(expected).contains(actual.iterator().next());
+					} else {
+						rounds++;
+						assertThat(actual).isEqualTo(expected);
+						assertThat(actual).hasSize(count);
+					}
+				}
+				var moves = state.getAvailableMoves().asList();
+				Move move = moves.get(random.nextInt(moves.size()));
+				packed.apply(packed.encode(move));
+				state = state.advance(move);
+			}
+		}
+		assertThat(rounds).isGreaterThan(10);
+		assertThat(captures).isGreaterThan(0);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testMrXTurnShouldThrow() {
+		new JointMoveGenerator().generate(PackedState.of(standardGame()));
+	}
+}
@@ -0,0 +1,99 @@
+package uk.ac.bris.cs.scotlandyard.ai;
+
+import com.google.common.collect.ImmutableList;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+import uk.ac.bris.cs.scotlandyard.model.Move.SingleMove;
+import uk.ac.bris.cs.scotlandyard.model.MyGameStateFactory;
+import uk.ac.bris.cs.scotlandyard.model.Player;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static uk.ac.bris.cs.scotlandyard.ai.PlayoutEngineTest.standardGame;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.BLUE;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.GREEN;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.RED;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.WHITE;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.YELLOW;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.MrX.MRX;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket.TAXI;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.defaultDetectiveTickets;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.defaultMrXTickets;
+
+/**
+ * Tests the {@link OpeningBook} and {@link OpeningBookBuilder}
+ */
+public class OpeningBookTest {
+
+	@BeforeClass public static void setUp() throws IOException { PlayoutEngineTest.setUp(); }
+
+	private static InformationSetMcts search() {
+		return new InformationSetMcts(PlayoutPolicy.uniform(), 1, 1 << 12, 0.7);
+	}
+
+	// mapped files cannot be deleted on every platform while the mapping is alive
+	private static Path tempFile() throws IOException {
+		var file = Files.createTempFile("book", ".bin");
+		file.toFile().deleteOnExit();
+		return file;
+	}
+
+	@Test public void testBuiltBookReturnsSearchedMoves() throws IOException {
+		var file = tempFile();
+		var builder = new OpeningBookBuilder(search(), 200, 2).analyse(standardGame());
+		assertThat(builder.size()).isEqualTo(2);
+		builder.write(file);
+		var book = OpeningBook.load(file);
+		assertThat(book.size()).isEqualTo(2);
+		var state = standardGame();
+		var move = book.lookup(state);
+		assertThat(move).isPresent();
+		assertThat(state.getAvailableMoves()).contains(move.get());
+	}
+
+	@Test public void testShuffledColoursHitTheBook() throws IOException {
+		var file = tempFile();
+		new OpeningBookBuilder(search(), 200, 1).analyse(standardGame()).write(file);
+		var book = OpeningBook.load(file);
+		// the locations of the standard game, with the colours handed out differently
+		GameState shuffled = new MyGameStateFactory().build(standardGame().getSetup(),
+				new Player(MRX, defaultMrXTickets(), 106),
+				ImmutableList.of(
+						new Player(RED, defaultDetectiveTickets(), 138),
+						new Player(GREEN, defaultDetectiveTickets(), 94),
+						new Player(BLUE, defaultDetectiveTickets(), 29),
+						new Player(WHITE, defaultDetectiveTickets(), 91),
+						new Player(YELLOW, defaultDetectiveTickets(), 50)));
+		assertThat(PackedState.of(shuffled).key()).isEqualTo(PackedState.of(standardGame()).key());
+		assertThat(book.lookup(shuffled)).isPresent();
+		assertThat(book.lookup(shuffled)).isEqualTo(book.lookup(standardGame()));
+	}
+
+	@Test public void testUnknownPositionsAndDetectiveTurnsMiss() throws IOException {
+		var file = tempFile();
+		var state = standardGame();
+		long key = PackedState.of(state).key();
+		OpeningBook.write(Map.of(key, PackedState.of(state)
+				.encode(new SingleMove(MRX, 106, TAXI, 105))), file);
+		var book = OpeningBook.load(file);
+		assertThat(book.probe(key).isPresent()).isTrue();
+		assertThat(book.probe(key + 1).isPresent()).isFalse();
+		assertThat(book.lookup(state)).contains(new SingleMove(MRX, 106, TAXI, 105));
+		assertThat(book.lookup(state.advance(new SingleMove(MRX, 106, TAXI, 105))))
+				.isEmpty();
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testCorruptBookShouldThrow() throws IOException {
+		var file = tempFile();
+		Files.write(file, new byte[]{1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16});
+		OpeningBook.load(file);
+	}
+}
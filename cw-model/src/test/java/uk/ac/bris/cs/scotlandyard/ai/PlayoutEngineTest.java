@@ -0,0 +1,144 @@
+package uk.ac.bris.cs.scotlandyard.ai;
+
+import com.google.common.collect.ImmutableList;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.stream.Collectors;
+
+import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+import uk.ac.bris.cs.scotlandyard.model.GameSetup;
+import uk.ac.bris.cs.scotlandyard.model.Move;
+import uk.ac.bris.cs.scotlandyard.model.MyGameStateFactory;
+import uk.ac.bris.cs.scotlandyard.model.Player;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.BLUE;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.GREEN;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.RED;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.WHITE;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.YELLOW;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.MrX.MRX;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.STANDARD24ROUNDS;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.defaultDetectiveTickets;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.defaultMrXTickets;
+
+/**
+ * Tests {@link PackedState} against the reference game state and the {@link PlayoutEngine}
+ */
+public class PlayoutEngineTest {
+
+	private static GameSetup setup;
+
+	@BeforeClass public static void setUp() throws IOException {
+		setup = new GameSetup(ScotlandYard.standardGraph(), STANDARD24ROUNDS);
+	}
+
+	static GameState standardGame() {
+		return new MyGameStateFactory().build(setup,
+				new Player(MRX, defaultMrXTickets(), 106),
+				ImmutableList.of(
+						new Player(RED, defaultDetectiveTickets(), 91),
+						new Player(GREEN, defaultDetectiveTickets(), 29),
+						new Player(BLUE, defaultDetectiveTickets(), 94),
+						new Player(WHITE, defaultDetectiveTickets(), 50),
+						new Player(YELLOW, defaultDetectiveTickets(), 138)));
+	}
+
+	@Test public void testPackedMovesMatchGameState() {
+		var random = new SplittableRandom(42);
+		for (int game = 0; game < 20; game++) {
+			GameState state = standardGame();
+			var packed = PackedState.of(state);
+			var buffer = new long[packed.maxMoves()];
+			while (state.getWinner().isEmpty()) {
+				assertThat(packed.winner()).isEqualTo(PackedState.NONE);
+				int count = packed.generate(buffer);
+				assertThat(Arrays.stream(buffer, 0, count)
+						.mapToObj(packed::decode)
+						.collect(Collectors.toSet()))
+						.isEqualTo(state.getAvailableMoves());
+
+				var moves = state.getAvailableMoves().asList();
+				Move move = moves.get(random.nextInt(moves.size()));
+				long encoded = packed.encode(move);
+				assertThat(packed.decode(encoded)).isEqualTo(move);
+				packed.apply(encoded);
+				state = state.advance(move);
+				assertThat(packed.lastRevealedLocation()).isEqualTo(state.getMrXTravelLog()
+						.stream()
+						.filter(entry -> entry.location().isPresent())
+						.mapToInt(entry -> packed.graph().indexOf(entry.location().get()))
+						.reduce(-1, (previous, node) -> node));
+			}
+			int winner = packed.winner();
+			if (winner == PackedState.NONE) {
+				assertThat(packed.generate(buffer)).isEqualTo(0);
+				winner = packed.winnerWhenStuck();
+			}
+			assertThat(winner == PackedState.MRX_WINS)
+					.isEqualTo(state.getWinner().contains(MRX));
+		}
+	}
+
+	@Test public void testBatchPlaysEveryGameToTheEnd() {
+		var engine = new PlayoutEngine(PlayoutPolicy.uniform());
+		var result = engine.run(standardGame(), 106, 2000, 1);
+		assertThat(result.rollouts).isEqualTo(2000L);
+		assertThat(result.mrXWins + result.detectiveWins()).isEqualTo(2000L);
+		assertThat(result.plies).isGreaterThan(2000L);
+		assertThat(result.rolloutsPerSecond()).isGreaterThan(0);
+	}
+
+	@Test public void testBatchIsDeterministicForSeed() {
+		var engine = new PlayoutEngine(PlayoutPolicy.epsilonGreedy(0.2));
+		var state = PackedState.of(standardGame());
+		var a = engine.run(state, 500, 7);
+		var b = engine.run(state, 500, 7);
+		assertThat(a.mrXWins).isEqualTo(b.mrXWins);
+		assertThat(a.plies).isEqualTo(b.plies);
+	}
+
+	@Test public void testGreedyDetectivesBeatRandomDetectives() {
+		var state = PackedState.of(standardGame());
+		var random = new PlayoutEngine(PlayoutPolicy.uniform()).run(state, 2000, 3);
+		var greedy = new PlayoutEngine(PlayoutPolicy.uniform(), PlayoutPolicy.epsilonGreedy(0.1))
+				.run(state, 2000, 3);
+		assertThat(greedy.mrXWinRate()).isLessThan(random.mrXWinRate());
+	}
+
+	@Test public void testGreedyDetectivesIgnoreMrXsHiddenLocation() {
+		var state = PackedState.of(standardGame());
+		var buffer = new long[state.maxMoves()];
+		var random = new SplittableRandom(5);
+		var policy = PlayoutPolicy.epsilonGreedy(0);
+		while (state.winner() == PackedState.NONE && state.round() <= 8) {
+			int count = state.generate(buffer);
+			if (!state.isMrXTurn()) {
+				var moved = state.copy();
+				moved.setMrXLocation((state.location(0) + 1) % state.graph().nodeCount());
+				assertThat(policy.select(moved, buffer, count, new SplittableRandom(1)))
+						.isEqualTo(policy.select(state, buffer, count, new SplittableRandom(1)));
+			}
+			state.apply(buffer[random.nextInt(count)]);
+		}
+		assertThat(state.lastRevealedLocation()).isNotEqualTo(-1);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testHiddenMrXLocationShouldThrow() {
+		var state = standardGame();
+		PackedState.of(state.advance(state.getAvailableMoves().asList().get(0)));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testBadEpsilonShouldThrow() {
+		PlayoutPolicy.epsilonGreedy(1.5);
+	}
+
+}
@@ -0,0 +1,17 @@
+package uk.ac.bris.cs.scotlandyard.graph;
+
+import org.junit.runner.RunWith;
+import org.junit.runners.Suite;
+
+/**
+ * Includes all tests for the graph support
+ */
+@RunWith(Suite.class)
+@Suite.SuiteClasses({
+		CompactGraphTest.class,
+		NodeFeaturesTest.class,
+		GraphCompilerTest.class,
+		GraphParserTest.class,
+		SyntheticMapTest.class
+})
+public class AllTest {}
@@ -0,0 +1,110 @@
+package uk.ac.bris.cs.scotlandyard.graph;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.graph.ImmutableValueGraph;
+import com.google.common.graph.MutableValueGraph;
+import com.google.common.graph.ValueGraphBuilder;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+
+import uk.ac.bris.cs.scotlandyard.model.GameSetup;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Transport;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests {@link CompactGraph}
+ */
+public class CompactGraphTest {
+
+	// 3 - 7 by taxi, 7 - 10 by bus and underground, 20 on its own
+	private static MutableValueGraph<Integer, ImmutableSet<Transport>> sparse() {
+		MutableValueGraph<Integer, ImmutableSet<Transport>> graph =
+				ValueGraphBuilder.undirected().build();
+		graph.putEdgeValue(7, 10, ImmutableSet.of(Transport.BUS, Transport.UNDERGROUND));
+		graph.putEdgeValue(3, 7, ImmutableSet.of(Transport.TAXI));
+		graph.addNode(20);
+		return graph;
+	}
+
+	@Test public void testNodesAreIndexedInAscendingOrder() {
+		var graph = CompactGraph.of(sparse());
+		assertThat(graph.nodeCount()).isEqualTo(4);
+		assertThat(graph.indexOf(3)).isEqualTo(0);
+		assertThat(graph.indexOf(7)).isEqualTo(1);
+		assertThat(graph.indexOf(10)).isEqualTo(2);
+		assertThat(graph.indexOf(20)).isEqualTo(3);
+		for (int i = 0; i < graph.nodeCount(); i++)
+			assertThat(graph.indexOf(graph.nodeId(i))).isEqualTo(i);
+		assertThat(graph.indexOf(5)).isEqualTo(-1);
+		assertThat(graph.indexOf(-1)).isEqualTo(-1);
+		assertThat(graph.indexOf(21)).isEqualTo(-1);
+	}
+
+	@Test public void testEdgesAreStoredOncePerEndpoint() {
+		var graph = CompactGraph.of(sparse());
+		assertThat(graph.edgeCount()).isEqualTo(4);
+		int seven = graph.indexOf(7);
+		assertThat(graph.degree(seven)).isEqualTo(2);
+		assertThat(graph.degree(graph.indexOf(20))).isEqualTo(0);
+		assertThat(graph.maxDegree()).isEqualTo(2);
+		// targets of a node are sorted by index
+		int first = graph.firstEdge(seven);
+		assertThat(graph.endEdge(seven)).isEqualTo(first + 2);
+		assertThat(graph.target(first)).isEqualTo(graph.indexOf(3));
+		assertThat(graph.transports(first)).isEqualTo(CompactGraph.mask(Transport.TAXI));
+		assertThat(graph.target(first + 1)).isEqualTo(graph.indexOf(10));
+		assertThat(CompactGraph.transportsOf(graph.transports(first + 1)))
+				.isEqualTo(ImmutableSet.of(Transport.BUS, Transport.UNDERGROUND));
+		assertThat(graph.toValueGraph()).isEqualTo(ImmutableValueGraph.copyOf(sparse()));
+	}
+
+	@Test public void testTicketMasks() {
+		assertThat(CompactGraph.ticketMask(Ticket.TAXI))
+				.isEqualTo(CompactGraph.mask(Transport.TAXI));
+		assertThat(CompactGraph.ticketMask(Ticket.UNDERGROUND))
+				.isEqualTo(CompactGraph.mask(Transport.UNDERGROUND));
+		assertThat(CompactGraph.ticketMask(Ticket.SECRET))
+				.isEqualTo(CompactGraph.mask(ImmutableSet.copyOf(Transport.values())));
+		assertThat(CompactGraph.ticketMask(Ticket.DOUBLE)).isEqualTo(0);
+	}
+
+	@Test public void testDistancesOfSparseGraph() {
+		var graph = CompactGraph.of(sparse());
+		int three = graph.indexOf(3), ten = graph.indexOf(10), twenty = graph.indexOf(20);
+		assertThat(graph.distance(three, three)).isEqualTo(0);
+		assertThat(graph.distance(three, ten)).isEqualTo(2);
+		assertThat(graph.distance(ten, three)).isEqualTo(2);
+		assertThat(graph.distance(three, twenty)).isEqualTo((int) Short.MAX_VALUE);
+	}
+
+	@Test public void testDistancesMatchBreadthFirstSearch() throws IOException {
+		var setup = new GameSetup(ScotlandYard.standardGraph(), ScotlandYard.STANDARD24ROUNDS);
+		var graph = CompactGraph.of(setup);
+		assertThat(CompactGraph.of(setup)).isSameAs(graph);
+		assertThat(graph.nodeCount()).isEqualTo(setup.graph.nodes().size());
+		assertThat(graph.edgeCount()).isEqualTo(2 * setup.graph.edges().size());
+		for (int source : setup.graph.nodes()) {
+			var hops = new HashMap<Integer, Integer>();
+			var queue = new ArrayDeque<Integer>();
+			hops.put(source, 0);
+			queue.add(source);
+			while (!queue.isEmpty()) {
+				int node = queue.poll();
+				for (int next : setup.graph.adjacentNodes(node)) {
+					if (hops.putIfAbsent(next, hops.get(node) + 1) == null) queue.add(next);
+				}
+			}
+			for (int target : setup.graph.nodes()) {
+				assertThat(graph.distance(graph.indexOf(source), graph.indexOf(target)))
+						.isEqualTo(hops.getOrDefault(target, (int) Short.MAX_VALUE));
+			}
+		}
+	}
+}
@@ -0,0 +1,58 @@
+package uk.ac.bris.cs.scotlandyard.graph;
+
+import com.google.common.io.Resources;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Tests {@link GraphCompiler} and the binary form of {@link CompactGraph}
+ */
+public class GraphCompilerTest {
+
+	// mapped files cannot be deleted on every platform while the mapping is alive
+	private static Path tempFile() throws IOException {
+		var file = Files.createTempFile("graph", ".bin");
+		file.toFile().deleteOnExit();
+		return file;
+	}
+
+	@Test public void testCompiledGraphLoadsUnchanged() throws IOException {
+		var text = tempFile();
+		Files.writeString(text, Resources.toString(Resources.getResource("graph.txt"),
+				StandardCharsets.UTF_8));
+		var binary = tempFile();
+		var compiled = GraphCompiler.compile(text, binary);
+		var loaded = CompactGraph.load(binary);
+		assertThat(loaded.fingerprint()).isEqualTo(compiled.fingerprint());
+		assertThat(loaded.nodeCount()).isEqualTo(199);
+		assertThat(loaded.edgeCount()).isEqualTo(compiled.edgeCount());
+		assertThat(loaded.toValueGraph()).isEqualTo(ScotlandYard.standardGraph());
+	}
+
+	@Test public void testCorruptFilesAreRejected() throws IOException {
+		var binary = tempFile();
+		GraphCompiler.compile("3 2\n1\n2\n3\n1 2 Taxi\n2 3 Bus\n").write(binary);
+		byte[] bytes = Files.readAllBytes(binary);
+		assertThat(CompactGraph.read(ByteBuffer.wrap(bytes)).edgeCount()).isEqualTo(4);
+
+		byte[] flipped = bytes.clone();
+		flipped[flipped.length - 1] ^= 2;
+		assertThatThrownBy(() -> CompactGraph.read(ByteBuffer.wrap(flipped)))
+				.isInstanceOf(IllegalArgumentException.class);
+		assertThatThrownBy(() -> CompactGraph.read(ByteBuffer.wrap(bytes, 0, bytes.length - 1)))
+				.isInstanceOf(IllegalArgumentException.class);
+		assertThatThrownBy(() -> CompactGraph.read(ByteBuffer.wrap(new byte[24])))
+				.isInstanceOf(IllegalArgumentException.class);
+	}
+}
@@ -0,0 +1,71 @@
+package uk.ac.bris.cs.scotlandyard.graph;
+
+import com.google.common.io.Resources;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Tests {@link GraphParser}
+ */
+public class GraphParserTest {
+
+	private static CompactGraph parse(String content) throws IOException {
+		return GraphParser.parse(new ByteArrayInputStream(
+				content.getBytes(StandardCharsets.UTF_8)), null, 1);
+	}
+
+	@Test public void testStandardGraphMatchesReadGraph() throws IOException {
+		var progress = new ArrayList<GraphParser.Progress>();
+		CompactGraph parsed;
+		try (var in = Resources.getResource("graph.txt").openStream()) {
+			parsed = GraphParser.parse(in, progress::add, 1024);
+		}
+		var expected = CompactGraph.of(ScotlandYard.standardGraph());
+		assertThat(parsed.fingerprint()).isEqualTo(expected.fingerprint());
+		assertThat(parsed.toValueGraph()).isEqualTo(ScotlandYard.standardGraph());
+
+		assertThat(progress).isNotEmpty();
+		GraphParser.Progress last = progress.get(progress.size() - 1);
+		assertThat(last.edges()).isEqualTo(last.totalEdges());
+		for (int i = 1; i < progress.size(); i++)
+			assertThat(progress.get(i).bytes()).isGreaterThan(progress.get(i - 1).bytes() - 1);
+	}
+
+	@Test public void testRepeatedEdgesAreMergedAndWhitespaceIsFree() throws IOException {
+		var graph = parse("3 3\r\n3 1\t2\n\n1 2 taxi\n2 1 BUS\n2 3 Ferry");
+		assertThat(graph.nodeCount()).isEqualTo(3);
+		assertThat(graph.edgeCount()).isEqualTo(4);
+		assertThat(graph.toValueGraph()).isEqualTo(
+				ScotlandYard.readGraph("3 3\n1\n2\n3\n1 2 Taxi\n1 2 Bus\n2 3 Ferry\n"));
+	}
+
+	@Test public void testMalformedInputIsRejected() {
+		List<String> malformed = List.of(
+				"2 1\n1\n2\n1 2 Rocket\n",
+				"2 1\n1\n2\n1 3 Taxi\n",
+				"2 1\n1\n2\n1 1 Taxi\n",
+				"2 1\n1\n1\n1 2 Taxi\n",
+				"2 1\n1\n2\n1 2\n",
+				"2 1\n1\n2x\n1 2 Taxi\n",
+				"2 1\n1\n2\n1 2 Taxi\n9\n");
+		for (String content : malformed)
+			assertThatThrownBy(() -> parse(content)).isInstanceOf(IllegalArgumentException.class);
+	}
+
+	@Test public void testSparseNodeIds() throws IOException {
+		var graph = parse("3 2\n5\n900000\n70000\n5 70000 Underground\n70000 900000 Bus");
+		assertThat(graph.nodeCount()).isEqualTo(3);
+		assertThat(graph.toValueGraph().hasEdgeConnecting(70000, 900000)).isTrue();
+	}
+}
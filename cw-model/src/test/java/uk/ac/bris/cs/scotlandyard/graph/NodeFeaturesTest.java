@@ -0,0 +1,72 @@
+package uk.ac.bris.cs.scotlandyard.graph;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.graph.MutableValueGraph;
+import com.google.common.graph.ValueGraphBuilder;
+
+import org.junit.Test;
+
+import java.io.IOException;
+
+import uk.ac.bris.cs.scotlandyard.model.GameSetup;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Transport;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+/**
+ * Tests {@link NodeFeatures}
+ */
+public class NodeFeaturesTest {
+
+	// a path 1 - 2 - 3 - 4 with a ferry from 4 to 5
+	private static CompactGraph path() {
+		MutableValueGraph<Integer, ImmutableSet<Transport>> graph =
+				ValueGraphBuilder.undirected().build();
+		graph.putEdgeValue(1, 2, ImmutableSet.of(Transport.TAXI));
+		graph.putEdgeValue(2, 3, ImmutableSet.of(Transport.TAXI, Transport.BUS));
+		graph.putEdgeValue(3, 4, ImmutableSet.of(Transport.UNDERGROUND));
+		graph.putEdgeValue(4, 5, ImmutableSet.of(Transport.FERRY));
+		return CompactGraph.of(graph);
+	}
+
+	@Test public void testBetweennessOfPath() {
+		var graph = path();
+		var features = NodeFeatures.of(graph);
+		// pairs of the other 4 nodes whose shortest path runs through the node, out of 6
+		assertThat(features.betweenness(graph.indexOf(1))).isEqualTo(0d);
+		assertThat(features.betweenness(graph.indexOf(2))).isCloseTo(3 / 6d, within(1e-9));
+		assertThat(features.betweenness(graph.indexOf(3))).isCloseTo(4 / 6d, within(1e-9));
+		assertThat(features.betweenness(graph.indexOf(4))).isCloseTo(3 / 6d, within(1e-9));
+	}
+
+	@Test public void testTransportFeatures() {
+		var graph = path();
+		var features = NodeFeatures.of(graph);
+		int three = graph.indexOf(3);
+		assertThat(features.transportDegree(three, Transport.TAXI)).isEqualTo(1);
+		assertThat(features.transportDegree(three, Transport.BUS)).isEqualTo(1);
+		assertThat(features.transportDegree(three, Transport.UNDERGROUND)).isEqualTo(1);
+		assertThat(features.transportMask(three)).isEqualTo(CompactGraph.mask(ImmutableSet.of(
+				Transport.TAXI, Transport.BUS, Transport.UNDERGROUND)));
+		assertThat(features.isHub(three)).isTrue();
+		assertThat(features.isHub(graph.indexOf(5))).isTrue();
+		assertThat(features.isHub(graph.indexOf(1))).isFalse();
+		assertThat(features.twoHopReach(graph.indexOf(1))).isEqualTo(2);
+		assertThat(features.twoHopReach(three)).isEqualTo(4);
+	}
+
+	@Test public void testFeaturesAreCachedPerSetup() throws IOException {
+		var setup = new GameSetup(ScotlandYard.standardGraph(), ScotlandYard.STANDARD24ROUNDS);
+		var features = NodeFeatures.of(setup);
+		assertThat(NodeFeatures.of(setup)).isSameAs(features);
+		assertThat(features.graph()).isSameAs(CompactGraph.of(setup));
+		double sum = 0;
+		for (int i = 0; i < features.graph().nodeCount(); i++) {
+			assertThat(features.betweenness(i)).isBetween(0d, 1d);
+			sum += features.betweenness(i);
+		}
+		assertThat(sum).isGreaterThan(0d);
+	}
+}
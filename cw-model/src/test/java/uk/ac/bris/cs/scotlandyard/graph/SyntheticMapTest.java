@@ -0,0 +1,104 @@
+package uk.ac.bris.cs.scotlandyard.graph;
+
+import com.google.common.collect.ImmutableList;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+
+import uk.ac.bris.cs.scotlandyard.model.GameSetup;
+import uk.ac.bris.cs.scotlandyard.model.MyGameStateFactory;
+import uk.ac.bris.cs.scotlandyard.model.Piece.Detective;
+import uk.ac.bris.cs.scotlandyard.model.Piece.MrX;
+import uk.ac.bris.cs.scotlandyard.model.Player;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Transport;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.STANDARD24ROUNDS;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.defaultDetectiveTickets;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.defaultMrXTickets;
+
+/**
+ * Tests {@link SyntheticMap}
+ */
+public class SyntheticMapTest {
+
+	@Test public void testGenerationIsDeterministic() {
+		var map = SyntheticMap.generate(500, 42);
+		assertThat(SyntheticMap.generate(500, 42).graph().fingerprint())
+				.isEqualTo(map.graph().fingerprint());
+		assertThat(SyntheticMap.generate(500, 42).mrXLocations()).isEqualTo(map.mrXLocations());
+		assertThat(SyntheticMap.generate(500, 43).graph().fingerprint())
+				.isNotEqualTo(map.graph().fingerprint());
+		assertThatThrownBy(() -> SyntheticMap.generate(99, 42))
+				.isInstanceOf(IllegalArgumentException.class);
+	}
+
+	@Test public void testMapIsConnectedByTaxiAndUsesEveryTransport() {
+		for (int nodes : new int[]{200, 1000, 20000}) {
+			var graph = SyntheticMap.generate(nodes, nodes).graph();
+			assertThat(graph.nodeCount()).isEqualTo(nodes);
+			int taxi = CompactGraph.mask(Transport.TAXI);
+			Set<Transport> used = EnumSet.noneOf(Transport.class);
+			var visited = new BitSet(nodes);
+			var queue = new ArrayDeque<Integer>();
+			visited.set(0);
+			queue.add(0);
+			while (!queue.isEmpty()) {
+				int index = queue.poll();
+				for (int e = graph.firstEdge(index); e < graph.endEdge(index); e++) {
+					used.addAll(CompactGraph.transportsOf(graph.transports(e)));
+					if ((graph.transports(e) & taxi) != 0 && !visited.get(graph.target(e))) {
+						visited.set(graph.target(e));
+						queue.add(graph.target(e));
+					}
+				}
+			}
+			assertThat(visited.cardinality()).isEqualTo(nodes);
+			assertThat(used).isEqualTo(EnumSet.allOf(Transport.class));
+		}
+	}
+
+	@Test public void testTextFormatsRoundTrip() throws IOException {
+		var map = SyntheticMap.generate(300, 7);
+		var graph = new StringWriter();
+		map.writeGraph(graph);
+		assertThat(GraphParser.parse(new ByteArrayInputStream(
+				graph.toString().getBytes(StandardCharsets.UTF_8)), null, 1).fingerprint())
+				.isEqualTo(map.graph().fingerprint());
+		assertThat(ScotlandYard.readGraph(graph.toString()))
+				.isEqualTo(map.graph().toValueGraph());
+
+		var positions = new StringWriter();
+		map.writePositions(positions);
+		String[] lines = positions.toString().split("\n");
+		assertThat(lines).hasSize(301);
+		assertThat(lines[300]).isEqualTo("300 " + map.x(300) + " " + map.y(300));
+	}
+
+	@Test public void testStartLocationsAreValid() {
+		var map = SyntheticMap.generate(400, 3);
+		assertThat(map.detectiveLocations()).hasSize(14);
+		assertThat(map.mrXLocations()).hasSize(12);
+		assertThat(Collections.disjoint(map.mrXLocations(), map.detectiveLocations())).isTrue();
+
+		GameSetup setup = map.setup(STANDARD24ROUNDS);
+		var detectives = ImmutableList.<Player>builder();
+		for (Detective detective : Detective.values())
+			detectives.add(new Player(detective, defaultDetectiveTickets(),
+					map.detectiveLocations().get(detective.ordinal())));
+		var state = new MyGameStateFactory().build(setup,
+				new Player(MrX.MRX, defaultMrXTickets(), map.mrXLocations().get(0)), detectives.build());
+		assertThat(state.getAvailableMoves()).isNotEmpty();
+	}
+}
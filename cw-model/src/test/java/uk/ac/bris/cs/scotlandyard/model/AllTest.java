@@ -15,6 +15,14 @@ import org.junit.runners.Suite;
 		GameStateDetectivesAvailableMovesTest.class,
 		GameStateMrXAvailableMovesTest.class,
 		GameStatePlayoutTest.class,
+		SuccessorSpliteratorTest.class,
+		AsyncObserverTest.class,
+		CoalescingObserverTest.class,
+		BoardDeltaTest.class,
+		HistoryModelTest.class,
+		ConcurrentModelTest.class,
+		GameStateCodecTest.class,
+		GameSetupTest.class,
 		ModelObserverTest.class
 })
 public class AllTest {}
@@ -0,0 +1,147 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import uk.ac.bris.cs.scotlandyard.model.AsyncObserver.Backpressure;
+import uk.ac.bris.cs.scotlandyard.model.Model.Observer;
+import uk.ac.bris.cs.scotlandyard.model.Model.Observer.Event;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.BLUE;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.GREEN;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.RED;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.WHITE;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.YELLOW;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.MrX.MRX;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket.BUS;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket.TAXI;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket.UNDERGROUND;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.defaultDetectiveTickets;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.defaultMrXTickets;
+
+/**
+ * Tests asynchronous observer dispatch
+ */
+public class AsyncObserverTest extends ParameterisedModelTestBase {
+
+	// records events, holding up every delivery after the first until released
+	private static final class SlowObserver implements Observer {
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		final List<Board> boards = Collections.synchronizedList(new ArrayList<>());
+		final List<Event> events = Collections.synchronizedList(new ArrayList<>());
+		@Override public void onModelChanged(Board board, Event event) {
+			started.countDown();
+			try {
+				release.await();
+			} catch (InterruptedException e) { throw new AssertionError(e); }
+			boards.add(board);
+			events.add(event);
+		}
+	}
+
+	private Board board() {
+		return gameStateFactory.build(standard24RoundSetup(), blackPlayer(), redPlayer());
+	}
+
+	private static final Move[] GAME = {
+			x2(MRX, 106, TAXI, 105, BUS, 87),
+			taxi(YELLOW, 138, 152), taxi(WHITE, 50, 49), bus(BLUE, 94, 77),
+			taxi(GREEN, 29, 41), taxi(RED, 91, 105),
+			taxi(MRX, 87, 88),
+			bus(RED, 105, 87), taxi(WHITE, 49, 66), taxi(BLUE, 77, 96),
+			taxi(YELLOW, 152, 138), taxi(GREEN, 41, 54),
+			x2(MRX, 88, TAXI, 89, UNDERGROUND, 67),
+			taxi(WHITE, 66, 67)};
+
+	@Test public void testAsynchronousModelDeliversEveryEventInOrder() throws Exception {
+		Model model = MyModelFactory.asynchronous(2, Backpressure.BLOCK).build(
+				standard24RoundSetup(),
+				new Player(MRX, defaultMrXTickets(), 106),
+				new Player(RED, defaultDetectiveTickets(), 91),
+				new Player(GREEN, defaultDetectiveTickets(), 29),
+				new Player(BLUE, defaultDetectiveTickets(), 94),
+				new Player(WHITE, defaultDetectiveTickets(), 50),
+				new Player(YELLOW, defaultDetectiveTickets(), 138));
+		var observer = new SlowObserver();
+		var over = new CountDownLatch(1);
+		model.registerObserver(observer);
+		model.registerObserver(new Observer() {
+			@Override public void onModelChanged(Board board, Event event) {
+				if (event == Event.GAME_OVER) over.countDown();
+			}
+		});
+		observer.release.countDown();
+		var boards = new ArrayList<Board>();
+		for (Move move : GAME) {
+			model.chooseMove(move);
+			boards.add(model.getCurrentBoard());
+		}
+		assertThat(over.await(10, TimeUnit.SECONDS)).isTrue();
+		for (int i = 0; i < 100 && observer.events.size() < GAME.length; i++) Thread.sleep(10);
+		assertThat(observer.events).hasSize(GAME.length);
+		for (int i = 0; i < GAME.length; i++) {
+			assertThat(observer.boards.get(i)).isSameAs(boards.get(i));
+			assertThat(observer.events.get(i))
+					.isEqualTo(i == GAME.length - 1 ? Event.GAME_OVER : Event.MOVE_MADE);
+		}
+	}
+
+	private List<Board> fillWhileBusy(AsyncObserver async, SlowObserver slow, int count)
+			throws InterruptedException {
+		var sent = new ArrayList<Board>();
+		for (int i = 0; i < count; i++) {
+			Board board = board();
+			sent.add(board);
+			async.onModelChanged(board, Event.MOVE_MADE);
+			if (i == 0) assertThat(slow.started.await(10, TimeUnit.SECONDS)).isTrue();
+		}
+		return sent;
+	}
+
+	@Test public void testDropDiscardsNewestEvents() throws Exception {
+		var slow = new SlowObserver();
+		try (var async = AsyncObserver.of(slow, 1, Backpressure.DROP)) {
+			List<Board> sent = fillWhileBusy(async, slow, 4);
+			assertThat(async.discarded()).isEqualTo(2L);
+			slow.release.countDown();
+			assertThat(async.awaitIdle(10, TimeUnit.SECONDS)).isTrue();
+			assertThat(slow.boards).containsExactly(sent.get(0), sent.get(1));
+		}
+	}
+
+	@Test public void testCoalesceKeepsLatestEvent() throws Exception {
+		var slow = new SlowObserver();
+		try (var async = AsyncObserver.of(slow, 1, Backpressure.COALESCE)) {
+			List<Board> sent = fillWhileBusy(async, slow, 4);
+			assertThat(async.discarded()).isEqualTo(2L);
+			slow.release.countDown();
+			assertThat(async.awaitIdle(10, TimeUnit.SECONDS)).isTrue();
+			assertThat(slow.boards).containsExactly(sent.get(0), sent.get(3));
+		}
+	}
+
+	@Test public void testGameOverIsNeverDropped() throws Exception {
+		var slow = new SlowObserver();
+		try (var async = AsyncObserver.of(slow, 1, Backpressure.DROP)) {
+			fillWhileBusy(async, slow, 2);
+			Board last = board();
+			var sender = new Thread(() -> async.onModelChanged(last, Event.GAME_OVER));
+			sender.start();
+			sender.join(100);
+			assertThat(sender.isAlive()).isTrue();
+			slow.release.countDown();
+			sender.join(10_000);
+			assertThat(async.awaitIdle(10, TimeUnit.SECONDS)).isTrue();
+			assertThat(slow.events).hasSize(3);
+			assertThat(slow.boards.get(2)).isSameAs(last);
+			assertThat(slow.events.get(2)).isEqualTo(Event.GAME_OVER);
+		}
+	}
+}
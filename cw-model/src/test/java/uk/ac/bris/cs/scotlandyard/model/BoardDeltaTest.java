@@ -0,0 +1,91 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+import uk.ac.bris.cs.scotlandyard.model.Model.DeltaObserver;
+import uk.ac.bris.cs.scotlandyard.model.Model.Observer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.BLUE;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.GREEN;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.RED;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.WHITE;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.YELLOW;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.MrX.MRX;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket.BUS;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket.DOUBLE;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket.TAXI;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.defaultDetectiveTickets;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.defaultMrXTickets;
+
+/**
+ * Tests board deltas and their delivery to observers
+ */
+public class BoardDeltaTest extends ParameterisedModelTestBase {
+
+	private static final Player[] PLAYERS = {
+			new Player(MRX, defaultMrXTickets(), 106),
+			new Player(RED, defaultDetectiveTickets(), 91),
+			new Player(GREEN, defaultDetectiveTickets(), 29),
+			new Player(BLUE, defaultDetectiveTickets(), 94),
+			new Player(WHITE, defaultDetectiveTickets(), 50),
+			new Player(YELLOW, defaultDetectiveTickets(), 138)};
+
+	private GameState standardGame() {
+		return gameStateFactory.build(standard24RoundSetup(), PLAYERS[0], PLAYERS[1], PLAYERS[2],
+				PLAYERS[3], PLAYERS[4], PLAYERS[5]);
+	}
+
+	@Test public void testMrXDoubleMove() {
+		GameState before = standardGame();
+		Move move = x2(MRX, 106, TAXI, 105, BUS, 87);
+		GameState after = before.advance(move);
+		BoardDelta delta = BoardDelta.between(before, move, after);
+		assertThat(delta.mover()).isEqualTo(MRX);
+		assertThat(delta.tickets()).isEqualTo(ImmutableMap.of(MRX,
+				ImmutableMap.of(TAXI, -1, BUS, -1, DOUBLE, -1)));
+		assertThat(delta.newLogEntries())
+				.containsExactly(LogEntry.hidden(TAXI), LogEntry.hidden(BUS));
+		assertThat(delta.winnerChanged()).isFalse();
+	}
+
+	@Test public void testDetectiveTicketGoesToMrX() {
+		GameState before = standardGame().advance(x2(MRX, 106, TAXI, 105, BUS, 87));
+		Move move = taxi(YELLOW, 138, 152);
+		BoardDelta delta = BoardDelta.between(before, move, before.advance(move));
+		assertThat(delta.ticketChange(YELLOW, TAXI)).isEqualTo(-1);
+		assertThat(delta.ticketChange(MRX, TAXI)).isEqualTo(1);
+		assertThat(delta.ticketChange(RED, TAXI)).isEqualTo(0);
+		assertThat(delta.newLogEntries()).isEmpty();
+	}
+
+	@Test public void testModelPassesDeltasToDeltaObservers() {
+		Model model = modelFactory.build(standard24RoundSetup(), PLAYERS[0],
+				ImmutableList.copyOf(PLAYERS).subList(1, 6));
+		List<BoardDelta> deltas = new ArrayList<>();
+		List<Board> boards = new ArrayList<>();
+		model.registerObserver(new DeltaObserver() {
+			@Override public void onModelChanged(Board board, Event event, BoardDelta delta) {
+				deltas.add(delta);
+			}
+		});
+		model.registerObserver(new Observer() {
+			@Override public void onModelChanged(Board board, Event event) {
+				boards.add(board);
+			}
+		});
+		Board before = model.getCurrentBoard();
+		Move move = x2(MRX, 106, TAXI, 105, BUS, 87);
+		model.chooseMove(move);
+		assertThat(deltas).containsExactly(
+				BoardDelta.between(before, move, model.getCurrentBoard()));
+		assertThat(boards).hasSize(1);
+	}
+}
@@ -0,0 +1,85 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import uk.ac.bris.cs.scotlandyard.model.Model.Observer;
+import uk.ac.bris.cs.scotlandyard.model.Model.Observer.Event;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests coalescing of observer events
+ */
+public class CoalescingObserverTest extends ParameterisedModelTestBase {
+
+	private static final class Recorder implements Observer {
+		final List<Board> boards = Collections.synchronizedList(new ArrayList<>());
+		final List<Event> events = Collections.synchronizedList(new ArrayList<>());
+		final CountDownLatch delivered = new CountDownLatch(1);
+		final CountDownLatch over = new CountDownLatch(1);
+		@Override public void onModelChanged(Board board, Event event) {
+			boards.add(board);
+			events.add(event);
+			delivered.countDown();
+			if (event == Event.GAME_OVER) over.countDown();
+		}
+	}
+
+	private Board board() {
+		return gameStateFactory.build(standard24RoundSetup(), blackPlayer(), redPlayer());
+	}
+
+	@Test public void testFlushDeliversLatestBoardOnly() {
+		var recorder = new Recorder();
+		var observer = CoalescingObserver.perFrame(recorder);
+		Board last = null;
+		for (int i = 0; i < 5; i++) observer.onModelChanged(last = board(), Event.MOVE_MADE);
+		observer.flush();
+		observer.flush();
+		assertThat(recorder.boards).hasSize(1);
+		assertThat(recorder.boards.get(0)).isSameAs(last);
+		assertThat(observer.coalesced()).isEqualTo(4L);
+	}
+
+	@Test public void testGameOverIsNeverReplaced() {
+		var recorder = new Recorder();
+		var observer = CoalescingObserver.perFrame(recorder);
+		Board over = board();
+		observer.onModelChanged(board(), Event.MOVE_MADE);
+		observer.onModelChanged(over, Event.GAME_OVER);
+		observer.onModelChanged(board(), Event.MOVE_MADE);
+		observer.flush();
+		assertThat(recorder.events).containsExactly(Event.GAME_OVER);
+		assertThat(recorder.boards.get(0)).isSameAs(over);
+	}
+
+	@Test public void testPeriodicDeliveryEndsWithGameOver() throws InterruptedException {
+		var recorder = new Recorder();
+		try (var observer = CoalescingObserver.every(recorder, Duration.ofMillis(20),
+				Runnable::run)) {
+			for (int i = 0; i < 1000; i++) observer.onModelChanged(board(), Event.MOVE_MADE);
+			Board last = board();
+			observer.onModelChanged(last, Event.GAME_OVER);
+			assertThat(recorder.over.await(10, TimeUnit.SECONDS)).isTrue();
+			assertThat(recorder.events.size()).isLessThan(1001);
+			assertThat(recorder.boards.get(recorder.boards.size() - 1)).isSameAs(last);
+		}
+	}
+
+	@Test public void testCloseDeliversPendingEvent() throws InterruptedException {
+		var recorder = new Recorder();
+		var observer = CoalescingObserver.every(recorder, Duration.ofHours(1), Runnable::run);
+		Board last = board();
+		observer.onModelChanged(last, Event.MOVE_MADE);
+		observer.close();
+		assertThat(recorder.delivered.await(10, TimeUnit.SECONDS)).isTrue();
+		assertThat(recorder.boards).containsExactly(last);
+	}
+}
@@ -0,0 +1,143 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.ImmutableList;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import uk.ac.bris.cs.scotlandyard.model.Model.Observer;
+import uk.ac.bris.cs.scotlandyard.model.Model.Observer.Event;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.BLUE;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.GREEN;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.RED;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.WHITE;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.YELLOW;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.MrX.MRX;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket.BUS;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket.TAXI;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket.UNDERGROUND;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.defaultDetectiveTickets;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.defaultMrXTickets;
+
+/**
+ * Tests the concurrent model
+ */
+public class ConcurrentModelTest extends ParameterisedModelTestBase {
+
+	private static final Move[] GAME = {
+			x2(MRX, 106, TAXI, 105, BUS, 87),
+			taxi(YELLOW, 138, 152), taxi(WHITE, 50, 49), bus(BLUE, 94, 77),
+			taxi(GREEN, 29, 41), taxi(RED, 91, 105),
+			taxi(MRX, 87, 88),
+			bus(RED, 105, 87), taxi(WHITE, 49, 66), taxi(BLUE, 77, 96),
+			taxi(YELLOW, 152, 138), taxi(GREEN, 41, 54),
+			x2(MRX, 88, TAXI, 89, UNDERGROUND, 67),
+			taxi(WHITE, 66, 67)};
+
+	private ConcurrentModel model() {
+		return ConcurrentModel.factory(gameStateFactory).build(standard24RoundSetup(),
+				new Player(MRX, defaultMrXTickets(), 106),
+				ImmutableList.of(
+						new Player(RED, defaultDetectiveTickets(), 91),
+						new Player(GREEN, defaultDetectiveTickets(), 29),
+						new Player(BLUE, defaultDetectiveTickets(), 94),
+						new Player(WHITE, defaultDetectiveTickets(), 50),
+						new Player(YELLOW, defaultDetectiveTickets(), 138)));
+	}
+
+	@Test public void testReadersSeeEveryStateInOrder() throws InterruptedException {
+		try (var model = model()) {
+			var done = new AtomicBoolean();
+			var failed = new AtomicBoolean();
+			var readers = new ArrayList<Thread>();
+			for (int i = 0; i < 4; i++) {
+				var reader = new Thread(() -> {
+					int last = 0;
+					while (!done.get()) {
+						int size = model.getCurrentBoard().getMrXTravelLog().size();
+						if (size < last) failed.set(true);
+						last = size;
+					}
+				});
+				reader.start();
+				readers.add(reader);
+			}
+			for (Move move : GAME) model.chooseMove(move);
+			done.set(true);
+			for (Thread reader : readers) reader.join();
+			assertThat(failed.get()).isFalse();
+			assertThat(model.getCurrentBoard().getWinner()).isNotEmpty();
+		}
+	}
+
+	@Test public void testIllegalMoveFailsFuture() throws InterruptedException {
+		try (var model = model()) {
+			CompletableFuture<Board> future = model.submit(taxi(RED, 91, 105));
+			assertThatThrownBy(future::get).isInstanceOf(ExecutionException.class);
+			assertThatThrownBy(() -> model.chooseMove(taxi(RED, 91, 105)))
+					.isInstanceOf(IllegalArgumentException.class);
+			assertThat(model.submit(GAME[0]).join().getMrXTravelLog()).hasSize(2);
+		}
+	}
+
+	@Test public void testObserverMayChooseNextMove() throws InterruptedException {
+		try (var model = model()) {
+			var next = new AtomicInteger(1);
+			var over = new CountDownLatch(1);
+			List<Event> events = new ArrayList<>();
+			model.registerObserver(new Observer() {
+				@Override public void onModelChanged(Board board, Event event) {
+					events.add(event);
+					if (event == Event.GAME_OVER) over.countDown();
+					else model.chooseMove(GAME[next.getAndIncrement()]);
+				}
+			});
+			model.chooseMove(GAME[0]);
+			assertThat(over.await(10, TimeUnit.SECONDS)).isTrue();
+			assertThat(events).hasSize(GAME.length);
+		}
+	}
+
+	@Test public void testIllegalMoveFromObserverIsReported() throws Exception {
+		try (var model = model()) {
+			var reported = new CompletableFuture<Throwable>();
+			model.registerObserver(new Observer() {
+				@Override public void onModelChanged(Board board, Event event) {
+					if (reported.isDone()) return;
+					Thread.currentThread()
+							.setUncaughtExceptionHandler((thread, e) -> reported.complete(e));
+					model.chooseMove(taxi(RED, 91, 105));
+				}
+			});
+			model.chooseMove(GAME[0]);
+			assertThat(reported.get(10, TimeUnit.SECONDS))
+					.isInstanceOf(IllegalArgumentException.class);
+		}
+	}
+
+	@Test public void testConcurrentRegistration() throws InterruptedException {
+		try (var model = model()) {
+			var threads = new ArrayList<Thread>();
+			for (int i = 0; i < 8; i++) {
+				var thread = new Thread(() -> {
+					for (int j = 0; j < 100; j++) model.registerObserver(new Observer() {});
+				});
+				thread.start();
+				threads.add(thread);
+			}
+			for (Thread thread : threads) thread.join();
+			assertThat(model.getObservers()).hasSize(800);
+		}
+	}
+}
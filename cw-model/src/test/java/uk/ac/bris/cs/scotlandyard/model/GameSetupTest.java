@@ -0,0 +1,58 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.graph.ImmutableValueGraph;
+import com.google.common.graph.ValueGraphBuilder;
+
+import org.junit.Test;
+
+import java.io.IOException;
+
+import uk.ac.bris.cs.scotlandyard.graph.CompactGraph;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Transport;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.STANDARD24ROUNDS;
+
+/**
+ * Tests {@link GameSetup} fingerprints and interning
+ */
+public class GameSetupTest {
+
+	@Test public void testFingerprintIsStable() throws IOException {
+		var setup = new GameSetup(ScotlandYard.standardGraph(), STANDARD24ROUNDS);
+		// records and snapshots refer to setups by fingerprint, so it must never change
+		assertThat(setup.fingerprint()).isEqualTo(1146539963612923460L);
+	}
+
+	@Test public void testFingerprintFollowsContent() throws IOException {
+		var setup = new GameSetup(ScotlandYard.standardGraph(), STANDARD24ROUNDS);
+		var same = new GameSetup(ScotlandYard.standardGraph(), STANDARD24ROUNDS);
+		assertThat(same.fingerprint()).isEqualTo(setup.fingerprint());
+		assertThat(same.hashCode()).isEqualTo(setup.hashCode());
+		assertThat(same).isEqualTo(setup);
+
+		var fewerRounds = new GameSetup(setup.graph, STANDARD24ROUNDS.subList(0, 23));
+		assertThat(fewerRounds.fingerprint()).isNotEqualTo(setup.fingerprint());
+		assertThat(fewerRounds).isNotEqualTo(setup);
+
+		var graph = ValueGraphBuilder.from(setup.graph).<Integer, ImmutableSet<Transport>>build();
+		setup.graph.edges().forEach(e -> graph.putEdgeValue(e.nodeU(), e.nodeV(),
+				setup.graph.edgeValue(e.nodeU(), e.nodeV()).orElseThrow()));
+		setup.graph.nodes().forEach(graph::addNode);
+		graph.putEdgeValue(1, 8, ImmutableSet.of(Transport.TAXI, Transport.BUS));
+		var changed = new GameSetup(ImmutableValueGraph.copyOf(graph), STANDARD24ROUNDS);
+		assertThat(changed.fingerprint()).isNotEqualTo(setup.fingerprint());
+		assertThat(changed).isNotEqualTo(setup);
+	}
+
+	@Test public void testEqualSetupsInternToOneInstance() throws IOException {
+		var setup = new GameSetup(ScotlandYard.standardGraph(), STANDARD24ROUNDS).intern();
+		var loadedAgain = new GameSetup(ScotlandYard.standardGraph(), STANDARD24ROUNDS);
+		assertThat(loadedAgain.intern()).isSameAs(setup);
+		assertThat(setup.intern()).isSameAs(setup);
+		assertThat(CompactGraph.of(loadedAgain.intern())).isSameAs(CompactGraph.of(setup));
+		var other = new GameSetup(setup.graph, STANDARD24ROUNDS.subList(0, 22));
+		assertThat(other.intern()).isNotEqualTo(setup);
+	}
+}
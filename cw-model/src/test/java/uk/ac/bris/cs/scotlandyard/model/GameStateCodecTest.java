@@ -0,0 +1,137 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.ImmutableList;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.BLUE;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.GREEN;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.RED;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.WHITE;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.YELLOW;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.MrX.MRX;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.STANDARD24ROUNDS;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.defaultDetectiveTickets;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.defaultMrXTickets;
+
+/**
+ * Tests {@link GameStateCodec}
+ */
+public class GameStateCodecTest {
+
+	private static GameSetup setup;
+
+	@BeforeClass public static void setUp() throws IOException {
+		setup = new GameSetup(ScotlandYard.standardGraph(), STANDARD24ROUNDS);
+	}
+
+	private static GameState start() {
+		return new MyGameStateFactory().build(setup,
+				new Player(MRX, defaultMrXTickets(), 106),
+				ImmutableList.of(
+						new Player(RED, defaultDetectiveTickets(), 91),
+						new Player(GREEN, defaultDetectiveTickets(), 29),
+						new Player(BLUE, defaultDetectiveTickets(), 94),
+						new Player(WHITE, defaultDetectiveTickets(), 50),
+						new Player(YELLOW, defaultDetectiveTickets(), 138)));
+	}
+
+	private static void assertSameBoard(Board actual, Board expected) {
+		assertThat(actual.getPlayers()).isEqualTo(expected.getPlayers());
+		for (Piece piece : expected.getPlayers()) {
+			for (Ticket ticket : Ticket.values())
+				assertThat(actual.getPlayerTickets(piece).orElseThrow().getCount(ticket))
+						.isEqualTo(expected.getPlayerTickets(piece).orElseThrow().getCount(ticket));
+			if (piece.isDetective())
+				assertThat(actual.getDetectiveLocation((Piece.Detective) piece))
+						.isEqualTo(expected.getDetectiveLocation((Piece.Detective) piece));
+		}
+		assertThat(actual.getMrXTravelLog()).isEqualTo(expected.getMrXTravelLog());
+		assertThat(actual.getAvailableMoves()).isEqualTo(expected.getAvailableMoves());
+		assertThat(actual.getWinner()).isEqualTo(expected.getWinner());
+	}
+
+	@Test public void testEveryStateOfRandomGamesRoundTrips() {
+		for (long seed = 0; seed < 3; seed++) {
+			var random = new Random(seed);
+			GameState state = start();
+			while (true) {
+				byte[] snapshot = GameStateCodec.encode(state);
+				// the longest log with all reveals at two byte locations
+				assertThat(snapshot.length).isLessThanOrEqualTo(95);
+				GameState decoded = GameStateCodec.decode(snapshot, setup);
+				assertSameBoard(decoded, state);
+				assertThat(GameStateCodec.encode(decoded)).isEqualTo(snapshot);
+				if (!state.getWinner().isEmpty()) break;
+				// sorted, since the order of the move set differs between runs
+				var moves = state.getAvailableMoves().stream()
+						.sorted(Comparator.comparing(Move::toString))
+						.collect(Collectors.toList());
+				Move move = moves.get(random.nextInt(moves.size()));
+				// the decoded state must carry on exactly like the original
+				assertThat(GameStateCodec.encode(decoded.advance(move)))
+						.isEqualTo(GameStateCodec.encode(state = state.advance(move)));
+			}
+		}
+	}
+
+	@Test public void testSnapshotsCanBePackedBackToBack() {
+		GameState first = start();
+		GameState second = first.advance(first.getAvailableMoves().asList().get(0));
+		var buffer = ByteBuffer.allocate(256);
+		GameStateCodec.encode(first, buffer);
+		GameStateCodec.encode(second, buffer);
+		buffer.flip();
+		byte[] alone = GameStateCodec.encode(second);
+		assertThat(GameStateCodec.fingerprint(buffer))
+				.isEqualTo(GameStateCodec.fingerprint(ByteBuffer.wrap(alone)));
+		assertSameBoard(GameStateCodec.decode(buffer, setup), first);
+		assertSameBoard(GameStateCodec.decode(buffer, setup), second);
+		assertThat(buffer.hasRemaining()).isFalse();
+	}
+
+	@Test public void testMalformedSnapshotsAreRejected() {
+		byte[] snapshot = GameStateCodec.encode(start());
+		var other = new GameSetup(setup.graph, STANDARD24ROUNDS.subList(0, 20));
+		assertThatThrownBy(() -> GameStateCodec.decode(snapshot, other))
+				.isInstanceOf(IllegalArgumentException.class);
+		for (int length = 0; length < snapshot.length; length++) {
+			byte[] truncated = Arrays.copyOf(snapshot, length);
+			assertThatThrownBy(() -> GameStateCodec.decode(truncated, setup))
+					.isInstanceOf(IllegalArgumentException.class);
+		}
+		byte[] version = snapshot.clone();
+		version[0] = 9;
+		assertThatThrownBy(() -> GameStateCodec.decode(version, setup))
+				.isInstanceOf(IllegalArgumentException.class);
+	}
+
+	@Test public void testImpossiblePositionsAreRejected() {
+		byte[] snapshot = GameStateCodec.encode(start());
+		// version, fingerprint and player count, then each player's code, location and tickets
+		int mrX = 1 + Long.BYTES + 1 + 1, red = mrX + 1 + 5 + 1, green = red + 1 + 5 + 1;
+		assertThat(new int[]{snapshot[mrX], snapshot[red], snapshot[green]})
+				.containsExactly(106, 91, 29);
+		byte[] offGraph = snapshot.clone();
+		offGraph[mrX] = 0;
+		assertThatThrownBy(() -> GameStateCodec.decode(offGraph, setup))
+				.isInstanceOf(IllegalArgumentException.class);
+		byte[] shared = snapshot.clone();
+		shared[green] = 91;
+		assertThatThrownBy(() -> GameStateCodec.decode(shared, setup))
+				.isInstanceOf(IllegalArgumentException.class);
+	}
+}
@@ -0,0 +1,128 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+import uk.ac.bris.cs.scotlandyard.model.Model.Observer;
+import uk.ac.bris.cs.scotlandyard.model.Model.Observer.Event;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.BLUE;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.GREEN;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.RED;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.WHITE;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.YELLOW;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.MrX.MRX;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket.BUS;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket.TAXI;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket.UNDERGROUND;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.defaultDetectiveTickets;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.defaultMrXTickets;
+
+/**
+ * Tests undo, redo and seeking in the history model
+ */
+public class HistoryModelTest extends ParameterisedModelTestBase {
+
+	private static final Move[] GAME = {
+			x2(MRX, 106, TAXI, 105, BUS, 87),
+			taxi(YELLOW, 138, 152), taxi(WHITE, 50, 49), bus(BLUE, 94, 77),
+			taxi(GREEN, 29, 41), taxi(RED, 91, 105),
+			taxi(MRX, 87, 88),
+			bus(RED, 105, 87), taxi(WHITE, 49, 66), taxi(BLUE, 77, 96),
+			taxi(YELLOW, 152, 138), taxi(GREEN, 41, 54),
+			x2(MRX, 88, TAXI, 89, UNDERGROUND, 67),
+			taxi(WHITE, 66, 67)};
+
+	private GameState start() {
+		return gameStateFactory.build(standard24RoundSetup(),
+				new Player(MRX, defaultMrXTickets(), 106),
+				new Player(RED, defaultDetectiveTickets(), 91),
+				new Player(GREEN, defaultDetectiveTickets(), 29),
+				new Player(BLUE, defaultDetectiveTickets(), 94),
+				new Player(WHITE, defaultDetectiveTickets(), 50),
+				new Player(YELLOW, defaultDetectiveTickets(), 138));
+	}
+
+	private List<GameState> replay() {
+		var states = new ArrayList<GameState>();
+		states.add(start());
+		for (Move move : GAME) states.add(states.get(states.size() - 1).advance(move));
+		return states;
+	}
+
+	private static void assertSameBoard(Board actual, Board expected) {
+		assertThat(actual.getMrXTravelLog()).isEqualTo(expected.getMrXTravelLog());
+		assertThat(actual.getAvailableMoves()).isEqualTo(expected.getAvailableMoves());
+		assertThat(actual.getWinner()).isEqualTo(expected.getWinner());
+		for (Piece piece : expected.getPlayers()) {
+			if (piece.isDetective())
+				assertThat(actual.getDetectiveLocation((Piece.Detective) piece))
+						.isEqualTo(expected.getDetectiveLocation((Piece.Detective) piece));
+		}
+	}
+
+	@Test public void testSeekMatchesReplayForEveryInterval() {
+		List<GameState> expected = replay();
+		for (int interval = 1; interval <= 5; interval++) {
+			var model = new HistoryModel(start(), interval);
+			for (Move move : GAME) model.chooseMove(move);
+			for (int ply : new int[]{3, 0, 14, 7, 8, 13, 1, 12, 5}) {
+				model.seek(ply);
+				assertThat(model.ply()).isEqualTo(ply);
+				assertSameBoard(model.getCurrentBoard(), expected.get(ply));
+			}
+		}
+	}
+
+	@Test public void testUndoRedo() {
+		List<GameState> expected = replay();
+		var model = new HistoryModel(start(), 3);
+		for (Move move : GAME) model.chooseMove(move);
+		for (int ply = GAME.length - 1; ply >= 0; ply--) {
+			model.undo();
+			assertSameBoard(model.getCurrentBoard(), expected.get(ply));
+		}
+		assertThat(model.canUndo()).isFalse();
+		assertThatThrownBy(model::undo).isInstanceOf(IllegalStateException.class);
+		for (int ply = 1; ply <= GAME.length; ply++) {
+			model.redo();
+			assertSameBoard(model.getCurrentBoard(), expected.get(ply));
+		}
+		assertThat(model.canRedo()).isFalse();
+	}
+
+	@Test public void testMoveAfterUndoDiscardsRedo() {
+		var model = new HistoryModel(start(), 2);
+		for (int i = 0; i < 4; i++) model.chooseMove(GAME[i]);
+		model.seek(1);
+		Move other = taxi(YELLOW, 138, 150);
+		model.chooseMove(other);
+		assertThat(model.plies()).isEqualTo(2);
+		assertThat(model.canRedo()).isFalse();
+		assertThat(model.moves()).containsExactly(GAME[0], other);
+		model.seek(0);
+		model.seek(2);
+		assertSameBoard(model.getCurrentBoard(), start().advance(GAME[0]).advance(other));
+	}
+
+	@Test public void testObserversNotifiedOnEveryChange() {
+		var model = new HistoryModel(start(), 1);
+		var events = new ArrayList<Event>();
+		model.registerObserver(new Observer() {
+			@Override public void onModelChanged(Board board, Event event) { events.add(event); }
+		});
+		for (Move move : GAME) model.chooseMove(move);
+		model.undo();
+		model.redo();
+		model.seek(0);
+		assertThat(events).hasSize(GAME.length + 3);
+		assertThat(events.get(GAME.length - 1)).isEqualTo(Event.GAME_OVER);
+		assertThat(events.get(GAME.length)).isEqualTo(Event.MOVE_MADE);
+		assertThat(events.get(GAME.length + 1)).isEqualTo(Event.GAME_OVER);
+	}
+}
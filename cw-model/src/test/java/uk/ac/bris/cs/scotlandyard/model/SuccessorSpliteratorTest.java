@@ -0,0 +1,74 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.stream.Collectors;
+
+import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.BLUE;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.GREEN;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.RED;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.WHITE;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.YELLOW;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.MrX.MRX;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.defaultDetectiveTickets;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.defaultMrXTickets;
+
+/**
+ * Tests the successor spliterator against {@link GameState#advance(Move)}
+ */
+public class SuccessorSpliteratorTest extends ParameterisedModelTestBase {
+
+	private GameState standardGame() {
+		return gameStateFactory.build(standard24RoundSetup(),
+				new Player(MRX, defaultMrXTickets(), 106),
+				new Player(RED, defaultDetectiveTickets(), 91),
+				new Player(GREEN, defaultDetectiveTickets(), 29),
+				new Player(BLUE, defaultDetectiveTickets(), 94),
+				new Player(WHITE, defaultDetectiveTickets(), 50),
+				new Player(YELLOW, defaultDetectiveTickets(), 138));
+	}
+
+	@Test public void testCoversEveryMoveInOrder() {
+		GameState state = standardGame();
+		List<Move> moves = SuccessorSpliterator.stream(state, false)
+				.map(Map.Entry::getKey)
+				.collect(Collectors.toList());
+		assertThat(moves).isEqualTo(state.getAvailableMoves().asList());
+	}
+
+	@Test public void testSuccessorsMatchAdvance() {
+		GameState state = standardGame();
+		SuccessorSpliterator.stream(state, true).forEach(e -> assertThat(
+				e.getValue().getMrXTravelLog())
+				.isEqualTo(state.advance(e.getKey()).getMrXTravelLog()));
+	}
+
+	@Test public void testSplitsEvenly() {
+		GameState state = standardGame();
+		int size = state.getAvailableMoves().size();
+		var suffix = SuccessorSpliterator.of(state);
+		assertThat(suffix.hasCharacteristics(Spliterator.SIZED | Spliterator.SUBSIZED)).isTrue();
+		assertThat(suffix.getExactSizeIfKnown()).isEqualTo((long) size);
+		Spliterator<Map.Entry<Move, GameState>> prefix = suffix.trySplit();
+		assertThat(prefix.estimateSize()).isEqualTo((long) size / 2);
+		assertThat(suffix.estimateSize()).isEqualTo((long) size - size / 2);
+		var seen = new ArrayList<Move>();
+		prefix.forEachRemaining(e -> seen.add(e.getKey()));
+		while (suffix.tryAdvance(e -> seen.add(e.getKey()))) {}
+		assertThat(seen).isEqualTo(state.getAvailableMoves().asList());
+		assertThat(suffix.trySplit()).isNull();
+	}
+
+	@Test public void testParallelStreamCountsAllSuccessors() {
+		GameState state = standardGame();
+		assertThat(SuccessorSpliterator.stream(state, true).count())
+				.isEqualTo((long) state.getAvailableMoves().size());
+	}
+}
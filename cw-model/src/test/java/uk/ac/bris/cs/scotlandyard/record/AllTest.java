@@ -0,0 +1,15 @@
+package uk.ac.bris.cs.scotlandyard.record;
+
+import org.junit.runner.RunWith;
+import org.junit.runners.Suite;
+
+/**
+ * Includes all tests for game recording
+ */
+@RunWith(Suite.class)
+@Suite.SuiteClasses({
+		GameRecordTest.class,
+		GameArchiveTest.class,
+		MoveJournalTest.class
+})
+public class AllTest {}
@@ -0,0 +1,139 @@
+package uk.ac.bris.cs.scotlandyard.record;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import uk.ac.bris.cs.scotlandyard.model.Move;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static uk.ac.bris.cs.scotlandyard.record.GameRecordTest.recordRandomGame;
+
+/**
+ * Tests the {@link GameArchive}
+ */
+public class GameArchiveTest {
+
+	private static final List<List<Move>> GAMES = new ArrayList<>();
+	private static final List<byte[]> RECORDS = new ArrayList<>();
+
+	@BeforeClass public static void setUp() throws IOException {
+		GameRecordTest.setUp();
+		for (long seed = 0; seed < 40; seed++) {
+			var moves = new ArrayList<Move>();
+			RECORDS.add(recordRandomGame(seed, moves));
+			GAMES.add(moves);
+		}
+	}
+
+	// mapped files cannot be deleted on every platform while the mapping is alive
+	private static Path tempFile() throws IOException {
+		var file = Files.createTempFile("archive", ".bin");
+		file.toFile().deleteOnExit();
+		GameArchive.indexOf(file).toFile().deleteOnExit();
+		Files.delete(file);
+		return file;
+	}
+
+	@Test public void testRandomAccessAfterReopen() throws IOException {
+		var file = tempFile();
+		try (var archive = GameArchive.open(file)) {
+			assertThat(archive.append(RECORDS.get(0))).isEqualTo(0L);
+			assertThat(archive.append(RECORDS.subList(1, RECORDS.size()))).isEqualTo(1L);
+			assertThat(archive.get(7).moves()).isEqualTo(GAMES.get(7));
+		}
+		try (var archive = GameArchive.open(file)) {
+			assertThat(archive.size()).isEqualTo((long) RECORDS.size());
+			for (int game : new int[]{39, 0, 17, 3})
+				assertThat(archive.get(game).moves()).isEqualTo(GAMES.get(game));
+			assertThatThrownBy(() -> archive.get(40))
+					.isInstanceOf(IndexOutOfBoundsException.class);
+		}
+	}
+
+	@Test public void testRecordsAcrossSmallSegments() throws IOException {
+		try (var archive = GameArchive.open(tempFile(), 512, 512)) {
+			for (byte[] record : RECORDS) {
+				long game = archive.append(record);
+				// reading right after appending remaps as needed
+				assertThat(archive.get(game).moves()).isEqualTo(GAMES.get((int) game));
+			}
+			for (int game = 0; game < RECORDS.size(); game++)
+				assertThat(archive.get(game).moves()).isEqualTo(GAMES.get(game));
+		}
+	}
+
+	@Test public void testParallelScan() throws IOException {
+		try (var archive = GameArchive.open(tempFile())) {
+			archive.append(RECORDS);
+			long plies = GAMES.stream().mapToLong(List::size).sum();
+			assertThat(archive.records(true).mapToLong(GameRecord::plies).sum()).isEqualTo(plies);
+			assertThat(archive.records(false).allMatch(GameRecord::isComplete)).isTrue();
+		}
+	}
+
+	@Test public void testRecoversFromTornAppend() throws IOException {
+		var file = tempFile();
+		try (var archive = GameArchive.open(file)) {
+			archive.append(RECORDS.subList(0, 5));
+		}
+		// a record written without its index entry and half an index entry
+		try (var data = FileChannel.open(file, StandardOpenOption.APPEND);
+		     var index = FileChannel.open(GameArchive.indexOf(file), StandardOpenOption.APPEND)) {
+			data.write(ByteBuffer.wrap(RECORDS.get(5), 0, 20));
+			index.write(ByteBuffer.wrap(new byte[]{0, 0, 1}));
+		}
+		try (var archive = GameArchive.open(file)) {
+			assertThat(archive.size()).isEqualTo(5L);
+			archive.append(RECORDS.get(5));
+			assertThat(archive.get(5).moves()).isEqualTo(GAMES.get(5));
+		}
+		// an index entry whose record never reached the file
+		try (var index = FileChannel.open(GameArchive.indexOf(file), StandardOpenOption.APPEND)) {
+			index.write(ByteBuffer.allocate(Long.BYTES).putLong(Long.MAX_VALUE).flip());
+		}
+		try (var archive = GameArchive.open(file)) {
+			assertThat(archive.size()).isEqualTo(6L);
+		}
+	}
+
+	@Test public void testRebuildsLostIndex() throws IOException {
+		var file = tempFile();
+		try (var archive = GameArchive.open(file, 512, 512)) {
+			archive.append(RECORDS);
+		}
+		Files.delete(GameArchive.indexOf(file));
+		try (var archive = GameArchive.open(file, 512, 512)) {
+			assertThat(archive.size()).isEqualTo((long) RECORDS.size());
+			for (int game = 0; game < GAMES.size(); game++)
+				assertThat(archive.get(game).moves()).isEqualTo(GAMES.get(game));
+		}
+		// a whole record that lost its index entry is kept
+		try (var data = FileChannel.open(file, StandardOpenOption.APPEND)) {
+			data.write(ByteBuffer.wrap(RECORDS.get(0)));
+		}
+		try (var archive = GameArchive.open(file)) {
+			assertThat(archive.size()).isEqualTo(RECORDS.size() + 1L);
+			assertThat(archive.get(RECORDS.size()).moves()).isEqualTo(GAMES.get(0));
+		}
+	}
+
+	@Test public void testRejectsUnfinishedRecords() throws IOException {
+		try (var archive = GameArchive.open(tempFile())) {
+			byte[] record = RECORDS.get(0);
+			assertThatThrownBy(() -> archive.append(Arrays.copyOf(record,
+					record.length - 1))).isInstanceOf(IllegalArgumentException.class);
+			assertThat(archive.size()).isEqualTo(0L);
+		}
+	}
+}
@@ -0,0 +1,138 @@
+package uk.ac.bris.cs.scotlandyard.record;
+
+import com.google.common.collect.ImmutableList;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+import uk.ac.bris.cs.scotlandyard.model.GameSetup;
+import uk.ac.bris.cs.scotlandyard.model.HistoryModel;
+import uk.ac.bris.cs.scotlandyard.model.Model;
+import uk.ac.bris.cs.scotlandyard.model.Move;
+import uk.ac.bris.cs.scotlandyard.model.MyGameStateFactory;
+import uk.ac.bris.cs.scotlandyard.model.MyModelFactory;
+import uk.ac.bris.cs.scotlandyard.model.Player;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.BLUE;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.GREEN;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.RED;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.WHITE;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.YELLOW;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.MrX.MRX;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.STANDARD24ROUNDS;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.defaultDetectiveTickets;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.defaultMrXTickets;
+
+/**
+ * Tests writing and reading {@link GameRecord}s
+ */
+public class GameRecordTest {
+
+	static GameSetup setup;
+	static final Player MR_X = new Player(MRX, defaultMrXTickets(), 106);
+	static final ImmutableList<Player> DETECTIVES = ImmutableList.of(
+			new Player(RED, defaultDetectiveTickets(), 91),
+			new Player(GREEN, defaultDetectiveTickets(), 29),
+			new Player(BLUE, defaultDetectiveTickets(), 94),
+			new Player(WHITE, defaultDetectiveTickets(), 50),
+			new Player(YELLOW, defaultDetectiveTickets(), 138));
+
+	@BeforeClass public static void setUp() throws IOException {
+		setup = new GameSetup(ScotlandYard.standardGraph(), STANDARD24ROUNDS);
+	}
+
+	/**
+	 * Plays a random game on a model with a writer attached.
+	 *
+	 * @return the record's bytes; the moves made are added to the given list
+	 */
+	static byte[] recordRandomGame(long seed, List<Move> played) {
+		var random = new SplittableRandom(seed);
+		var out = new ByteArrayOutputStream();
+		Model model = new MyModelFactory().build(setup, MR_X, DETECTIVES);
+		model.registerObserver(new GameRecordWriter(out, setup, MR_X, DETECTIVES));
+		while (model.getCurrentBoard().getWinner().isEmpty()) {
+			var moves = model.getCurrentBoard().getAvailableMoves().asList();
+			Move move = moves.get(random.nextInt(moves.size()));
+			played.add(move);
+			model.chooseMove(move);
+		}
+		return out.toByteArray();
+	}
+
+	@Test public void testRecordReplaysToSameGame() {
+		for (long seed = 0; seed < 10; seed++) {
+			var played = new ArrayList<Move>();
+			byte[] bytes = recordRandomGame(seed, played);
+			var record = GameRecord.read(ByteBuffer.wrap(bytes));
+			assertThat(record.isComplete()).isTrue();
+			assertThat(record.plies()).isEqualTo(played.size());
+			assertThat(record.moves()).isEqualTo(played);
+			assertThat(record.mrX().location()).isEqualTo(106);
+			assertThat(record.detectives()).hasSize(5);
+			GameState end = record.replay(new MyGameStateFactory(), setup);
+			assertThat(end.getWinner()).isNotEmpty();
+			// the header takes 8 bytes per player, moves take about 3 bytes
+			assertThat(bytes.length).isLessThan(14 + 6 * 8 + played.size() * 4);
+		}
+	}
+
+	@Test public void testRecordsBackToBack() {
+		var first = new ArrayList<Move>();
+		var second = new ArrayList<Move>();
+		byte[] a = recordRandomGame(1, first), b = recordRandomGame(2, second);
+		var buffer = ByteBuffer.allocate(a.length + b.length).put(a).put(b).flip();
+		assertThat(GameRecord.read(buffer).moves()).isEqualTo(first);
+		assertThat(GameRecord.read(buffer).moves()).isEqualTo(second);
+		assertThat(buffer.hasRemaining()).isFalse();
+	}
+
+	@Test public void testTruncatedRecordEndsAtLastWholeMove() {
+		var played = new ArrayList<Move>();
+		byte[] bytes = recordRandomGame(3, played);
+		var record = GameRecord.read(ByteBuffer.wrap(Arrays.copyOf(bytes, bytes.length - 3)));
+		assertThat(record.isComplete()).isFalse();
+		assertThat(record.moves()).isEqualTo(played.subList(0, record.plies()));
+		assertThat(record.plies()).isGreaterThan(played.size() - 3);
+	}
+
+	@Test public void testUndoStopsRecording() {
+		var out = new ByteArrayOutputStream();
+		var model = HistoryModel.factory(new MyGameStateFactory(), 1)
+				.build(setup, MR_X, DETECTIVES);
+		model.registerObserver(new GameRecordWriter(out, setup, MR_X, DETECTIVES));
+		var played = new ArrayList<Move>();
+		for (int i = 0; i < 3; i++) {
+			Move move = model.getCurrentBoard().getAvailableMoves().asList().get(0);
+			played.add(move);
+			model.chooseMove(move);
+		}
+		model.undo();
+		model.chooseMove(model.getCurrentBoard().getAvailableMoves().asList().get(0));
+		var record = GameRecord.read(ByteBuffer.wrap(out.toByteArray()));
+		assertThat(record.isComplete()).isFalse();
+		assertThat(record.moves()).isEqualTo(played);
+	}
+
+	@Test public void testReplayRejectsOtherSetup() {
+		byte[] bytes = recordRandomGame(4, new ArrayList<>());
+		var other = new GameSetup(setup.graph, ImmutableList.of(false, true));
+		assertThatThrownBy(() -> GameRecord.read(ByteBuffer.wrap(bytes))
+				.replay(new MyGameStateFactory(), other))
+				.isInstanceOf(IllegalArgumentException.class);
+		assertThatThrownBy(() -> GameRecord.read(ByteBuffer.wrap(new byte[]{1, 2, 3, 4})))
+				.isInstanceOf(IllegalArgumentException.class);
+	}
+}
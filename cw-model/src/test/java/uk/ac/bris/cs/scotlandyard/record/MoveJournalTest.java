@@ -0,0 +1,150 @@
+package uk.ac.bris.cs.scotlandyard.record;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.stream.Collectors;
+
+import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+import uk.ac.bris.cs.scotlandyard.model.GameStateCodec;
+import uk.ac.bris.cs.scotlandyard.model.HistoryModel;
+import uk.ac.bris.cs.scotlandyard.model.Model;
+import uk.ac.bris.cs.scotlandyard.model.Move;
+import uk.ac.bris.cs.scotlandyard.model.MyGameStateFactory;
+import uk.ac.bris.cs.scotlandyard.model.MyModelFactory;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static uk.ac.bris.cs.scotlandyard.record.GameRecordTest.DETECTIVES;
+import static uk.ac.bris.cs.scotlandyard.record.GameRecordTest.MR_X;
+
+/**
+ * Tests {@link MoveJournal} and {@link JournaledModel}
+ */
+public class MoveJournalTest {
+
+	@BeforeClass public static void setUp() throws IOException {
+		GameRecordTest.setUp();
+	}
+
+	private static Path tempFile() throws IOException {
+		var file = Files.createTempFile("journal", ".wal");
+		Files.delete(file);
+		file.toFile().deleteOnExit();
+		return file;
+	}
+
+	// plays up to the given number of plies, or to the end if negative
+	private static void play(Model model, SplittableRandom random, int plies) {
+		for (int i = 0; i != plies && model.getCurrentBoard().getWinner().isEmpty(); i++) {
+			// sorted, since the order of the move set differs between runs
+			var moves = model.getCurrentBoard().getAvailableMoves().stream()
+					.sorted(Comparator.comparing(Move::toString))
+					.collect(Collectors.toList());
+			model.chooseMove(moves.get(random.nextInt(moves.size())));
+		}
+	}
+
+	private static byte[] snapshot(Model model) {
+		return GameStateCodec.encode((GameState) model.getCurrentBoard());
+	}
+
+	@Test public void testUnfinishedGamesAreRecovered() throws IOException {
+		var file = tempFile();
+		var random = new SplittableRandom(1);
+		byte[] second, third;
+		try (var journal = MoveJournal.open(file)) {
+			var factory = JournaledModel.factory(journal, new MyModelFactory());
+			JournaledModel finished = factory.build(GameRecordTest.setup, MR_X, DETECTIVES);
+			JournaledModel started = factory.build(GameRecordTest.setup, MR_X, DETECTIVES);
+			JournaledModel fresh = factory.build(GameRecordTest.setup, MR_X, DETECTIVES);
+			play(finished, random, -1);
+			play(started, random, 7);
+			assertThat(started.getObservers()).isEmpty();
+			second = snapshot(started);
+			third = snapshot(fresh);
+			journal.sync();
+		}
+		try (var journal = MoveJournal.open(file)) {
+			assertThat(journal.unfinished().keySet()).containsExactly(1L, 2L);
+			assertThat(journal.unfinished().get(1L).plies()).isEqualTo(7);
+			var states = journal.recover(new MyGameStateFactory(), List.of(GameRecordTest.setup));
+			assertThat(GameStateCodec.encode(states.get(1L))).isEqualTo(second);
+			assertThat(GameStateCodec.encode(states.get(2L))).isEqualTo(third);
+			assertThat(journal.newGame()).isEqualTo(3L);
+			assertThatThrownBy(() -> journal.recover(new MyGameStateFactory(), List.of()))
+					.isInstanceOf(IllegalArgumentException.class);
+		}
+	}
+
+	@Test public void testRecoveredModelsKeepJournaling() throws IOException {
+		var file = tempFile();
+		var random = new SplittableRandom(2);
+		byte[] expected;
+		try (var journal = MoveJournal.open(file)) {
+			var model = JournaledModel.factory(journal, new MyModelFactory())
+					.build(GameRecordTest.setup, MR_X, DETECTIVES);
+			play(model, random, 4);
+		}
+		try (var journal = MoveJournal.open(file)) {
+			var models = JournaledModel.recover(journal, new MyModelFactory(),
+					List.of(GameRecordTest.setup));
+			JournaledModel model = models.get(0L);
+			assertThat(model.game()).isEqualTo(0L);
+			play(model, random, 5);
+			expected = snapshot(model);
+		}
+		try (var journal = MoveJournal.open(file)) {
+			assertThat(journal.unfinished().get(0L).plies()).isEqualTo(9);
+			var state = journal.recover(new MyGameStateFactory(), List.of(GameRecordTest.setup));
+			assertThat(GameStateCodec.encode(state.get(0L))).isEqualTo(expected);
+		}
+	}
+
+	@Test public void testTornFrameIsCutOff() throws IOException {
+		var file = tempFile();
+		try (var journal = MoveJournal.open(file)) {
+			var model = JournaledModel.factory(journal, new MyModelFactory())
+					.build(GameRecordTest.setup, MR_X, DETECTIVES);
+			play(model, new SplittableRandom(3), 6);
+		}
+		long size = Files.size(file);
+		try (var channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+			channel.truncate(size - 1);
+		}
+		try (var journal = MoveJournal.open(file)) {
+			assertThat(journal.unfinished().get(0L).plies()).isEqualTo(5);
+			journal.append(0, new byte[0], 0, 0);
+		}
+		try (var journal = MoveJournal.open(file)) {
+			assertThat(journal.unfinished()).isEmpty();
+			assertThat(journal.newGame()).isEqualTo(1L);
+		}
+	}
+
+	@Test public void testHistoryModelIsRejected() throws IOException {
+		try (var journal = MoveJournal.open(tempFile())) {
+			var histories = HistoryModel.factory(new MyGameStateFactory(), 1);
+			assertThatThrownBy(() -> JournaledModel.factory(journal, histories::build)
+					.build(GameRecordTest.setup, MR_X, DETECTIVES))
+					.isInstanceOf(IllegalArgumentException.class);
+			assertThat(journal.newGame()).isEqualTo(0L);
+		}
+	}
+
+	@Test public void testClosedJournalRejectsAppends() throws IOException {
+		var journal = MoveJournal.open(tempFile());
+		long sequence = journal.append(0, new byte[]{1, 2, 3}, 0, 3);
+		journal.sync(sequence);
+		journal.close();
+		assertThatThrownBy(() -> journal.finish(0)).isInstanceOf(IllegalStateException.class);
+	}
+}
@@ -0,0 +1,17 @@
+package uk.ac.bris.cs.scotlandyard.server;
+
+import org.junit.runner.RunWith;
+import org.junit.runners.Suite;
+
+/**
+ * Includes all tests for the game server
+ */
+@RunWith(Suite.class)
+@Suite.SuiteClasses({
+		GameServerTest.class,
+		TextProtocolTest.class,
+		BinaryProtocolTest.class,
+		BroadcasterTest.class,
+		ShardedSchedulerTest.class
+})
+public class AllTest {}
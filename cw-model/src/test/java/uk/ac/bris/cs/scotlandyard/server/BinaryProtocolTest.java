@@ -0,0 +1,212 @@
+package uk.ac.bris.cs.scotlandyard.server;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+import uk.ac.bris.cs.scotlandyard.model.Move;
+import uk.ac.bris.cs.scotlandyard.model.MyGameStateFactory;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.RED;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.MrX.MRX;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket.BUS;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket.SECRET;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket.TAXI;
+import static uk.ac.bris.cs.scotlandyard.server.BinaryProtocol.readVarLong;
+import static uk.ac.bris.cs.scotlandyard.server.BinaryProtocol.writeVarLong;
+
+/**
+ * Tests {@link MoveIds} and playing hosted games through the {@link BinaryProtocol}
+ */
+public class BinaryProtocolTest {
+
+	@BeforeClass public static void setUp() throws IOException {
+		GameServerTest.setUp();
+	}
+
+	static final class Frame {
+		final byte type;
+		final int request;
+		final long game;
+		final ByteBuffer payload;
+		Frame(byte type, int request, long game, ByteBuffer payload) {
+			this.type = type;
+			this.request = request;
+			this.game = game;
+			this.payload = payload;
+		}
+	}
+
+	static final class Client implements AutoCloseable {
+		final Socket socket;
+		final DataInputStream in;
+		final ByteBuffer out = ByteBuffer.allocate(1 << 12);
+		Client(NetworkServer network) throws IOException {
+			socket = new Socket(network.address().getAddress(), network.address().getPort());
+			socket.setSoTimeout(10_000);
+			in = new DataInputStream(socket.getInputStream());
+		}
+		// queues a request, sent together with the others on flush
+		ByteBuffer request(byte type, int request, long game) {
+			out.putInt(0).put(type).putInt(request).putLong(game);
+			return out;
+		}
+		void end(int start) { out.putInt(start, out.position() - start - Integer.BYTES); }
+		void flush() throws IOException {
+			socket.getOutputStream().write(out.array(), 0, out.position());
+			out.clear();
+		}
+		Frame read() throws IOException {
+			byte[] frame = new byte[in.readInt()];
+			in.readFully(frame);
+			var buffer = ByteBuffer.wrap(frame);
+			return new Frame(buffer.get(), buffer.getInt(), buffer.getLong(), buffer.slice());
+		}
+		@Override public void close() throws IOException { socket.close(); }
+	}
+
+	static NetworkServer start(GameServer server) throws IOException {
+		return NetworkServer.start(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0),
+				new BinaryProtocol(server, GameServerTest.setup, GameServerTest.randomAi()));
+	}
+
+	@Test public void testMoveIdsIdentifyMovesOfABoard() {
+		GameState state = new MyGameStateFactory().build(GameServerTest.setup,
+				GameServerTest.MR_X, GameServerTest.DETECTIVES);
+		var ids = new HashSet<Long>();
+		for (Move move : state.getAvailableMoves()) {
+			long id = MoveIds.of(move);
+			assertThat(ids.add(id)).isTrue();
+			assertThat(MoveIds.find(state.getAvailableMoves(), id)).contains(move);
+			assertThat(MoveIds.piece(id)).isEqualTo(MRX);
+		}
+		long id = MoveIds.of(new Move.DoubleMove(MRX, 106, SECRET, 105, BUS, 199));
+		assertThat(MoveIds.isDouble(id)).isTrue();
+		assertThat(MoveIds.ticket(id, 0)).isEqualTo(SECRET);
+		assertThat(MoveIds.ticket(id, 1)).isEqualTo(BUS);
+		assertThat(MoveIds.destination(id, 0)).isEqualTo(105);
+		assertThat(MoveIds.destination(id, 1)).isEqualTo(199);
+		id = MoveIds.of(new Move.SingleMove(RED, 91, TAXI, 105));
+		assertThat(MoveIds.isDouble(id)).isFalse();
+		assertThat(MoveIds.piece(id)).isEqualTo(RED);
+		assertThat(MoveIds.destination(id, 0)).isEqualTo(105);
+		// single moves on the standard map fit three varint bytes
+		var buffer = ByteBuffer.allocate(10);
+		writeVarLong(buffer, id);
+		assertThat(buffer.position()).isLessThanOrEqualTo(3);
+		buffer.flip();
+		assertThat(readVarLong(buffer)).isEqualTo(id);
+	}
+
+	@Test public void testPipelinedRequestsForSeveralGames() throws IOException {
+		try (var server = GameServerTest.server();
+		     var network = start(server);
+		     var client = new Client(network)) {
+			for (int request = 1; request <= 3; request++) {
+				int start = client.out.position();
+				client.request(BinaryProtocol.HOST, request, 0).put((byte) 0).put((byte) 1);
+				client.end(start);
+			}
+			client.flush();
+			var games = new ArrayList<Long>();
+			for (int request = 1; request <= 3; request++) {
+				Frame reply = client.read();
+				assertThat(reply.type).isEqualTo(BinaryProtocol.GAME);
+				assertThat(reply.request).isEqualTo(request);
+				games.add(reply.game);
+			}
+			assertThat(new HashSet<>(games)).hasSize(3);
+
+			// list the moves of every game in one batch
+			for (int i = 0; i < games.size(); i++) {
+				int start = client.out.position();
+				client.request(BinaryProtocol.MOVES, 10 + i, games.get(i));
+				client.end(start);
+			}
+			client.flush();
+			List<Long> firstMoves = new ArrayList<>(List.of(0L, 0L, 0L));
+			for (int i = 0; i < games.size(); i++) {
+				Frame reply = client.read();
+				assertThat(reply.type).isEqualTo(BinaryProtocol.MOVE_LIST);
+				int game = games.indexOf(reply.game);
+				assertThat(reply.request).isEqualTo(10 + game);
+				long count = readVarLong(reply.payload);
+				assertThat(count).isGreaterThan(0L);
+				firstMoves.set(game, readVarLong(reply.payload));
+			}
+
+			int start = client.out.position();
+			client.request(BinaryProtocol.WATCH, 20, games.get(0));
+			client.end(start);
+			start = client.out.position();
+			writeVarLong(client.request(BinaryProtocol.MOVE, 21, games.get(0)), firstMoves.get(0));
+			client.end(start);
+			start = client.out.position();
+			writeVarLong(client.request(BinaryProtocol.MOVE, 22, games.get(1)), 1L << 40);
+			client.end(start);
+			client.flush();
+
+			boolean ok = false, error = false;
+			int deltas = 0;
+			while (!ok || !error || deltas < 1 + GameServerTest.DETECTIVES.size()) {
+				Frame reply = client.read();
+				if (reply.type == BinaryProtocol.OK && reply.request == 21) ok = true;
+				else if (reply.type == BinaryProtocol.ERROR) {
+					assertThat(reply.request).isEqualTo(22);
+					error = true;
+				} else if (reply.type == BinaryProtocol.DELTA) {
+					assertThat(reply.request).isEqualTo(0);
+					assertThat(reply.payload.get()).isEqualTo((byte) 0);
+					long id = readVarLong(reply.payload);
+					// the player of MrX sees MrX's moves in full
+					if (deltas++ == 0) assertThat(id).isEqualTo(firstMoves.get(0));
+					else assertThat(MoveIds.destination(id, 0)).isGreaterThan(0);
+				} else if (reply.type == BinaryProtocol.SNAPSHOT) {
+					assertThat(reply.request).isEqualTo(0);
+				} else assertThat(reply.request).isEqualTo(20);
+			}
+		}
+	}
+
+	@Test public void testClosingConnectionAbortsItsGames() throws IOException {
+		try (var server = GameServerTest.server();
+		     var network = start(server)) {
+			HostedGame game;
+			try (var client = new Client(network)) {
+				int start = client.out.position();
+				client.request(BinaryProtocol.HOST, 1, 0).put((byte) 0).put((byte) 0);
+				client.end(start);
+				client.flush();
+				game = server.game(client.read().game).orElseThrow();
+			}
+			assertThatThrownBy(() -> game.completion().get(10, TimeUnit.SECONDS))
+					.isInstanceOf(ExecutionException.class)
+					.hasCauseInstanceOf(IllegalStateException.class);
+			assertThat(server.games()).isEmpty();
+		}
+	}
+
+	@Test public void testOversizedFrameClosesConnection() throws IOException {
+		try (var server = GameServerTest.server();
+		     var network = start(server);
+		     var client = new Client(network)) {
+			client.out.putInt(1 << 20);
+			client.flush();
+			assertThat(client.in.read()).isEqualTo(-1);
+		}
+	}
+}
@@ -0,0 +1,193 @@
+package uk.ac.bris.cs.scotlandyard.server;
+
+import com.google.common.collect.ImmutableList;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.Comparator;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import uk.ac.bris.cs.scotlandyard.model.Board;
+import uk.ac.bris.cs.scotlandyard.model.GameSetup;
+import uk.ac.bris.cs.scotlandyard.model.GameStateCodec;
+import uk.ac.bris.cs.scotlandyard.model.Move;
+import uk.ac.bris.cs.scotlandyard.server.BinaryProtocolTest.Client;
+import uk.ac.bris.cs.scotlandyard.server.BinaryProtocolTest.Frame;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.MrX.MRX;
+import static uk.ac.bris.cs.scotlandyard.server.BinaryProtocol.readVarLong;
+import static uk.ac.bris.cs.scotlandyard.server.BinaryProtocol.writeVarLong;
+
+/**
+ * Tests fanning game updates out with a {@link Broadcaster}
+ */
+public class BroadcasterTest {
+
+	@BeforeClass public static void setUp() throws IOException {
+		GameServerTest.setUp();
+	}
+
+	private static void send(Client client, byte type, int request, long game) throws IOException {
+		int start = client.out.position();
+		client.request(type, request, game);
+		client.end(start);
+		client.flush();
+	}
+
+	// reads the OK of a watch and the snapshot sent with it, in either order
+	private static Frame watched(Client client) throws IOException {
+		Frame first = client.read(), second = client.read();
+		Frame snapshot = first.type == BinaryProtocol.SNAPSHOT ? first : second;
+		assertThat((first == snapshot ? second : first).type).isEqualTo(BinaryProtocol.OK);
+		assertThat(snapshot.type).isEqualTo(BinaryProtocol.SNAPSHOT);
+		return snapshot;
+	}
+
+	// the location of MrX in a snapshot, after the version, fingerprint, count and piece
+	private static long mrXLocation(Frame snapshot) {
+		snapshot.payload.position(1 + Long.BYTES + 1 + 1);
+		return readVarLong(snapshot.payload);
+	}
+
+	@Test public void testOnlyPrivilegedViewersSeeMrX() throws IOException {
+		try (var server = GameServerTest.server();
+		     var network = BinaryProtocolTest.start(server);
+		     var player = new Client(network);
+		     var spectator = new Client(network)) {
+			int start = player.out.position();
+			player.request(BinaryProtocol.HOST, 1, 0).put((byte) 0).put((byte) 1);
+			player.end(start);
+			player.flush();
+			long game = player.read().game;
+			send(player, BinaryProtocol.WATCH, 2, game);
+			assertThat(mrXLocation(watched(player))).isGreaterThan(0L);
+			send(spectator, BinaryProtocol.WATCH, 1, game);
+			assertThat(mrXLocation(watched(spectator))).isEqualTo(0L);
+
+			send(player, BinaryProtocol.MOVES, 3, game);
+			Frame moves = player.read();
+			assertThat(readVarLong(moves.payload)).isGreaterThan(0L);
+			long move = readVarLong(moves.payload);
+			start = player.out.position();
+			writeVarLong(player.request(BinaryProtocol.MOVE, 4, game), move);
+			player.end(start);
+			player.flush();
+
+			Frame delta = player.read();
+			if (delta.type == BinaryProtocol.OK) delta = player.read();
+			assertThat(delta.type).isEqualTo(BinaryProtocol.DELTA);
+			delta.payload.get();
+			assertThat(readVarLong(delta.payload)).isEqualTo(move);
+			delta = spectator.read();
+			assertThat(delta.type).isEqualTo(BinaryProtocol.DELTA);
+			delta.payload.get();
+			long hidden = readVarLong(delta.payload);
+			assertThat(MoveIds.piece(hidden)).isEqualTo(MRX);
+			assertThat(MoveIds.ticket(hidden, 0)).isEqualTo(MoveIds.ticket(move, 0));
+			assertThat(MoveIds.destination(hidden, 0)).isEqualTo(0);
+		}
+	}
+
+	// holds up the network thread so that frames stay queued, until the returned latch opens
+	private static CountDownLatch stall(NetworkServer network) throws InterruptedException {
+		var stalled = new CountDownLatch(1);
+		var resume = new CountDownLatch(1);
+		network.execute(() -> {
+			stalled.countDown();
+			try {
+				resume.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		});
+		assertThat(stalled.await(10, TimeUnit.SECONDS)).isTrue();
+		return resume;
+	}
+
+	private static Move firstMove(HostedGame game) {
+		return game.query(board -> board.getAvailableMoves().stream()
+				.min(Comparator.comparing(Move::toString)).orElseThrow()).join();
+	}
+
+	@Test public void testLaggingViewersAreDroppedOrSkippedAhead() throws Exception {
+		BlockingQueue<Connection> connections = new LinkedBlockingQueue<>();
+		Protocol ignore = connection -> {
+			connections.add(connection);
+			return in -> in.position(in.limit());
+		};
+		try (var server = GameServerTest.server();
+		     var network = NetworkServer.start(
+				     new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), ignore);
+		     var slow = new BinaryProtocolTest.Client(network);
+		     var dropped = new BinaryProtocolTest.Client(network)) {
+			Connection skipping = connections.poll(10, TimeUnit.SECONDS);
+			Connection dropping = connections.poll(10, TimeUnit.SECONDS);
+			HostedGame game = server.host(GameServerTest.setup, GameServerTest.MR_X,
+					GameServerTest.DETECTIVES, Seat.remote(), Seat.remote());
+			var skipper = new Broadcaster(game, 0, Broadcaster.Lag.SKIP_AHEAD);
+			var dropper = new Broadcaster(game, 0, Broadcaster.Lag.DROP);
+
+			// hold up the network thread so the snapshots stay queued
+			var resume = stall(network);
+			skipper.subscribe(skipping, false);
+			dropper.subscribe(dropping, false);
+			game.submit(firstMove(game)).get(10, TimeUnit.SECONDS);
+			assertThat(skipper.skipped()).isEqualTo(1L);
+			assertThat(dropper.dropped()).isEqualTo(1L);
+			resume.countDown();
+
+			for (long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+			     skipping.pending() > 0 && System.nanoTime() < deadline; )
+				Thread.sleep(10);
+			game.submit(firstMove(game)).get(10, TimeUnit.SECONDS);
+			// the delta of the first move was skipped, the second brings a fresh snapshot
+			assertThat(slow.read().type).isEqualTo(BinaryProtocol.SNAPSHOT);
+			Frame snapshot = slow.read();
+			assertThat(snapshot.type).isEqualTo(BinaryProtocol.SNAPSHOT);
+			assertThat(dropped.read().type).isEqualTo(BinaryProtocol.SNAPSHOT);
+			assertThat(dropped.in.read()).isEqualTo(-1);
+		}
+	}
+
+	@Test public void testLaggingViewersAreToldTheGameIsOver() throws Exception {
+		BlockingQueue<Connection> connections = new LinkedBlockingQueue<>();
+		Protocol ignore = connection -> {
+			connections.add(connection);
+			return in -> in.position(in.limit());
+		};
+		try (var server = GameServerTest.server();
+		     var network = NetworkServer.start(
+				     new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), ignore);
+		     var slow = new BinaryProtocolTest.Client(network)) {
+			Connection skipping = connections.poll(10, TimeUnit.SECONDS);
+			// a single round with a single detective ends after two moves
+			var setup = new GameSetup(GameServerTest.setup.graph, ImmutableList.of(false));
+			HostedGame game = server.host(setup, GameServerTest.MR_X,
+					GameServerTest.DETECTIVES.subList(0, 1), Seat.remote(), Seat.remote());
+			var skipper = new Broadcaster(game, 0, Broadcaster.Lag.SKIP_AHEAD);
+
+			var resume = stall(network);
+			skipper.subscribe(skipping, true);
+			game.submit(firstMove(game)).get(10, TimeUnit.SECONDS);
+			Board end = game.submit(firstMove(game)).get(10, TimeUnit.SECONDS);
+			assertThat(end.getWinner()).isNotEmpty();
+			assertThat(skipper.skipped()).isEqualTo(1L);
+			resume.countDown();
+			// the snapshot on subscribing, then the final one instead of the skipped deltas
+			assertThat(slow.read().type).isEqualTo(BinaryProtocol.SNAPSHOT);
+			Frame last = slow.read();
+			assertThat(last.type).isEqualTo(BinaryProtocol.SNAPSHOT);
+			var state = GameStateCodec.decode(last.payload, setup);
+			assertThat(state.getWinner()).isEqualTo(end.getWinner());
+		}
+	}
+}
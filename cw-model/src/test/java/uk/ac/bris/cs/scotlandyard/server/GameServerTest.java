@@ -0,0 +1,209 @@
+package uk.ac.bris.cs.scotlandyard.server;
+
+import com.google.common.collect.ImmutableList;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.Ai;
+import uk.ac.bris.cs.scotlandyard.model.Board;
+import uk.ac.bris.cs.scotlandyard.model.GameSetup;
+import uk.ac.bris.cs.scotlandyard.model.Model.Observer;
+import uk.ac.bris.cs.scotlandyard.model.Move;
+import uk.ac.bris.cs.scotlandyard.model.MyModelFactory;
+import uk.ac.bris.cs.scotlandyard.model.Player;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.BLUE;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.GREEN;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.RED;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.WHITE;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.YELLOW;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.MrX.MRX;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.STANDARD24ROUNDS;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket.TAXI;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.defaultDetectiveTickets;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.defaultMrXTickets;
+
+/**
+ * Tests hosting games on a {@link GameServer}
+ */
+public class GameServerTest {
+
+	static GameSetup setup;
+	static final Player MR_X = new Player(MRX, defaultMrXTickets(), 106);
+	static final ImmutableList<Player> DETECTIVES = ImmutableList.of(
+			new Player(RED, defaultDetectiveTickets(), 91),
+			new Player(GREEN, defaultDetectiveTickets(), 29),
+			new Player(BLUE, defaultDetectiveTickets(), 94),
+			new Player(WHITE, defaultDetectiveTickets(), 50),
+			new Player(YELLOW, defaultDetectiveTickets(), 138));
+
+	@BeforeClass public static void setUp() throws IOException {
+		setup = new GameSetup(ScotlandYard.standardGraph(), STANDARD24ROUNDS);
+	}
+
+	/**
+	 * Plays random moves, sorted first since the order of the move set differs between runs
+	 */
+	static final class RandomAi implements Ai {
+		private final SplittableRandom random;
+		RandomAi(long seed) { this.random = new SplittableRandom(seed); }
+		@Nonnull @Override public String name() { return "random"; }
+		@Nonnull @Override public Move pickMove(@Nonnull Board board,
+		                                        @Nonnull AtomicBoolean terminate) {
+			List<Move> moves = board.getAvailableMoves().stream()
+					.sorted(Comparator.comparing(Move::toString))
+					.collect(Collectors.toList());
+			return moves.get(random.nextInt(moves.size()));
+		}
+	}
+
+	static Seat randomAi() {
+		var seeds = new SplittableRandom(42);
+		return Seat.ai(() -> new RandomAi(seeds.nextLong()), Duration.ofSeconds(5));
+	}
+
+	static GameServer server() {
+		return new GameServer(new MyModelFactory(), new PooledScheduler(4), 4);
+	}
+
+	@Test public void testHostsManyConcurrentAiGames() throws Exception {
+		try (var server = server()) {
+			Seat ai = randomAi();
+			var games = new ArrayList<CompletableFuture<Board>>();
+			for (int i = 0; i < 1000; i++)
+				games.add(server.host(setup, MR_X, DETECTIVES, ai, ai).completion());
+			CompletableFuture.allOf(games.toArray(CompletableFuture[]::new))
+					.get(60, TimeUnit.SECONDS);
+			for (var game : games) assertThat(game.get().getWinner()).isNotEmpty();
+			assertThat(server.games()).isEmpty();
+		}
+	}
+
+	@Test public void testRemoteSeatPlaysAgainstAi() throws Exception {
+		try (var server = server()) {
+			HostedGame game = server.host(setup, MR_X, DETECTIVES, Seat.remote(), randomAi());
+			var moves = new CountDownLatch(1 + DETECTIVES.size());
+			game.observe(new Observer() {
+				@Override public void onModelChanged(@Nonnull Board board, @Nonnull Event event) {
+					moves.countDown();
+				}
+			});
+			assertThat(server.game(game.id())).contains(game);
+			assertThatThrownBy(() -> game.submit(new Move.SingleMove(RED, 91, TAXI, 56)).join())
+					.hasCauseInstanceOf(IllegalArgumentException.class);
+			assertThatThrownBy(() -> game.submit(new Move.SingleMove(MRX, 106, TAXI, 1)).join())
+					.hasCauseInstanceOf(IllegalArgumentException.class);
+			Board board = game.submit(new Move.SingleMove(MRX, 106, TAXI, 105)).get();
+			assertThat(board.getMrXTravelLog()).hasSize(1);
+			// the detectives answer on their own
+			assertThat(moves.await(10, TimeUnit.SECONDS)).isTrue();
+			assertThat(game.query(b -> b.getAvailableMoves().iterator().next().commencedBy())
+					.get()).isEqualTo(MRX);
+		}
+	}
+
+	@Test public void testFailingAiAbortsGame() throws InterruptedException {
+		try (var server = server()) {
+			Seat broken = Seat.ai(() -> new Ai() {
+				@Nonnull @Override public String name() { return "broken"; }
+				@Nonnull @Override public Move pickMove(@Nonnull Board board,
+				                                        @Nonnull AtomicBoolean terminate) {
+					throw new IllegalStateException("broken");
+				}
+			}, Duration.ofSeconds(1));
+			HostedGame game = server.host(setup, MR_X, DETECTIVES, broken, Seat.remote());
+			assertThatThrownBy(() -> game.completion().get(10, TimeUnit.SECONDS))
+					.isInstanceOf(ExecutionException.class)
+					.hasCauseInstanceOf(IllegalStateException.class);
+			assertThat(server.games()).isEmpty();
+		}
+	}
+
+	@Test public void testStuckAiForfeitsAndIsTerminatedOnceItReturns() throws Exception {
+		var release = new CountDownLatch(1);
+		var returned = new AtomicBoolean();
+		var terminated = new CompletableFuture<Boolean>();
+		Seat stuck = Seat.ai(() -> new Ai() {
+			@Nonnull @Override public String name() { return "stuck"; }
+			@Nonnull @Override public Move pickMove(@Nonnull Board board,
+			                                        @Nonnull AtomicBoolean terminate) {
+				// ignores terminate
+				try {
+					release.await();
+				} catch (InterruptedException e) { Thread.currentThread().interrupt(); }
+				returned.set(true);
+				return board.getAvailableMoves().iterator().next();
+			}
+			@Override public void onTerminate() { terminated.complete(returned.get()); }
+		}, Duration.ofMillis(50));
+		try (var server = new GameServer(new MyModelFactory(), new PooledScheduler(1), 1)) {
+			HostedGame game = server.host(setup, MR_X, DETECTIVES, stuck, Seat.remote());
+			assertThatThrownBy(() -> game.completion().get(10, TimeUnit.SECONDS))
+					.isInstanceOf(ExecutionException.class)
+					.hasCauseInstanceOf(TimeoutException.class);
+			assertThat(terminated.isDone()).isFalse();
+			// the only AI thread is still stuck, yet other games get to think
+			Seat ai = randomAi();
+			assertThat(server.host(setup, MR_X, DETECTIVES, ai, ai).completion()
+					.get(10, TimeUnit.SECONDS).getWinner()).isNotEmpty();
+			assertThat(terminated.isDone()).isFalse();
+			release.countDown();
+			assertThat(terminated.get(10, TimeUnit.SECONDS)).isTrue();
+		}
+	}
+
+	@Test public void testLimitStartsWhenAiStartsPicking() throws Exception {
+		var limits = new ConcurrentLinkedQueue<Long>();
+		var picks = new CountDownLatch(4);
+		Seat patient = Seat.ai(() -> new Ai() {
+			@Nonnull @Override public String name() { return "patient"; }
+			@Nonnull @Override public Move pickMove(@Nonnull Board board,
+			                                        @Nonnull AtomicBoolean terminate) {
+				long start = System.nanoTime();
+				while (!terminate.get()) Thread.onSpinWait();
+				limits.add(System.nanoTime() - start);
+				picks.countDown();
+				return board.getAvailableMoves().iterator().next();
+			}
+		}, Duration.ofMillis(100));
+		try (var server = new GameServer(new MyModelFactory(), new PooledScheduler(1), 1)) {
+			for (int i = 0; i < 4; i++)
+				server.host(setup, MR_X, DETECTIVES, patient, Seat.remote());
+			assertThat(picks.await(10, TimeUnit.SECONDS)).isTrue();
+			// queued picks get their whole limit too
+			for (long nanos : limits)
+				assertThat(nanos).isGreaterThanOrEqualTo(Duration.ofMillis(90).toNanos());
+		}
+	}
+
+	@Test public void testClosedServerRejectsGames() {
+		var server = server();
+		HostedGame game = server.host(setup, MR_X, DETECTIVES, Seat.remote(), Seat.remote());
+		server.close();
+		assertThatThrownBy(() -> game.completion().join())
+				.hasCauseInstanceOf(IllegalStateException.class);
+		assertThatThrownBy(() -> server.host(setup, MR_X, DETECTIVES, Seat.remote(),
+				Seat.remote())).isInstanceOf(IllegalStateException.class);
+	}
+}
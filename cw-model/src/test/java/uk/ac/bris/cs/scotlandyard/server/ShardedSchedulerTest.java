@@ -0,0 +1,114 @@
+package uk.ac.bris.cs.scotlandyard.server;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import uk.ac.bris.cs.scotlandyard.model.Board;
+import uk.ac.bris.cs.scotlandyard.model.MyModelFactory;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests running games on a {@link ShardedScheduler}
+ */
+public class ShardedSchedulerTest {
+
+	@BeforeClass public static void setUp() throws IOException {
+		GameServerTest.setUp();
+	}
+
+	@Test public void testGamesRunInOrderOnTheirShard() throws Exception {
+		try (var scheduler = new ShardedScheduler(4, Integer.MAX_VALUE)) {
+			var threads = new ArrayList<Set<Thread>>();
+			var orders = new ArrayList<List<Integer>>();
+			var done = new CountDownLatch(8);
+			for (long game = 0; game < 8; game++) {
+				assertThat(scheduler.shard(game)).isEqualTo((int) game % 4);
+				Executor executor = scheduler.executor(game);
+				Set<Thread> used = ConcurrentHashMap.newKeySet();
+				List<Integer> order = new ArrayList<>();
+				threads.add(used);
+				orders.add(order);
+				for (int i = 0; i < 100; i++) {
+					int task = i;
+					executor.execute(() -> {
+						used.add(Thread.currentThread());
+						order.add(task);
+						if (task == 99) done.countDown();
+					});
+				}
+			}
+			assertThat(done.await(10, TimeUnit.SECONDS)).isTrue();
+			for (int game = 0; game < 8; game++) {
+				assertThat(threads.get(game)).hasSize(1);
+				assertThat(threads.get(game)).isEqualTo(threads.get(game % 4));
+				assertThat(orders.get(game)).hasSize(100);
+				for (int i = 0; i < 100; i++) assertThat(orders.get(game).get(i)).isEqualTo(i);
+			}
+			for (int shard = 0; shard < 4; shard++) assertThat(scheduler.games(shard)).isEqualTo(2);
+			assertThat(scheduler.migrations()).isEqualTo(0L);
+		}
+	}
+
+	@Test public void testGamesMigrateFromOverloadedShard() throws Exception {
+		try (var scheduler = new ShardedScheduler(2, 0)) {
+			// games 0, 2 and 4 hash to shard 0, which is held up by game 0
+			var stalled = new CountDownLatch(1);
+			var resume = new CountDownLatch(1);
+			scheduler.executor(0).execute(() -> {
+				stalled.countDown();
+				try {
+					resume.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			});
+			assertThat(stalled.await(10, TimeUnit.SECONDS)).isTrue();
+			var waiting = new CountDownLatch(1);
+			scheduler.executor(2).execute(waiting::countDown);
+			assertThat(scheduler.depth(0)).isEqualTo(1);
+
+			var moved = new CountDownLatch(1);
+			scheduler.executor(4).execute(moved::countDown);
+			assertThat(moved.await(10, TimeUnit.SECONDS)).isTrue();
+			assertThat(scheduler.migrations()).isEqualTo(1L);
+			assertThat(scheduler.games(0)).isEqualTo(2);
+			assertThat(scheduler.games(1)).isEqualTo(1);
+			assertThat(waiting.getCount()).isEqualTo(1L);
+
+			resume.countDown();
+			assertThat(waiting.await(10, TimeUnit.SECONDS)).isTrue();
+			scheduler.release(0);
+			scheduler.release(2);
+			scheduler.release(4);
+			assertThat(scheduler.games(0) + scheduler.games(1)).isEqualTo(0);
+		}
+	}
+
+	@Test public void testHostsManyConcurrentAiGames() throws Exception {
+		var scheduler = new ShardedScheduler(4, 8);
+		try (var server = new GameServer(new MyModelFactory(), scheduler, 4)) {
+			Seat ai = GameServerTest.randomAi();
+			var games = new ArrayList<CompletableFuture<Board>>();
+			for (int i = 0; i < 1000; i++) {
+				games.add(server.host(GameServerTest.setup, GameServerTest.MR_X,
+						GameServerTest.DETECTIVES, ai, ai).completion());
+			}
+			CompletableFuture.allOf(games.toArray(CompletableFuture[]::new))
+					.get(60, TimeUnit.SECONDS);
+			for (var game : games) assertThat(game.get().getWinner()).isNotEmpty();
+			for (int shard = 0; shard < scheduler.shards(); shard++)
+				assertThat(scheduler.games(shard)).isEqualTo(0);
+		}
+	}
+}
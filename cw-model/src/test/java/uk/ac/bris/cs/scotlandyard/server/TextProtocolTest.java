@@ -0,0 +1,124 @@
+package uk.ac.bris.cs.scotlandyard.server;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Tests playing hosted games through the {@link TextProtocol} of a {@link NetworkServer}
+ */
+public class TextProtocolTest {
+
+	@BeforeClass public static void setUp() throws IOException {
+		GameServerTest.setUp();
+	}
+
+	private static final class Client implements AutoCloseable {
+		final Socket socket;
+		final BufferedReader in;
+		final PrintWriter out;
+		Client(NetworkServer network) throws IOException {
+			socket = new Socket(network.address().getAddress(), network.address().getPort());
+			socket.setSoTimeout(10_000);
+			in = new BufferedReader(new InputStreamReader(socket.getInputStream(),
+					StandardCharsets.US_ASCII));
+			out = new PrintWriter(socket.getOutputStream(), true, StandardCharsets.US_ASCII);
+		}
+		String ask(String command) throws IOException {
+			out.print(command + "\n");
+			out.flush();
+			return in.readLine();
+		}
+		@Override public void close() throws IOException { socket.close(); }
+	}
+
+	private static NetworkServer start(GameServer server) throws IOException {
+		return NetworkServer.start(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0),
+				new TextProtocol(server, GameServerTest.setup, GameServerTest.randomAi()));
+	}
+
+	@Test public void testRemoteMrXPlaysAgainstAiDetectives() throws IOException {
+		try (var server = GameServerTest.server();
+		     var network = start(server);
+		     var client = new Client(network)) {
+			String reply = client.ask("HOST remote ai 7");
+			assertThat(reply).startsWith("GAME ");
+			String id = reply.substring(5);
+			reply = client.ask("MOVES " + id);
+			assertThat(reply).startsWith("MOVES " + id + " MRX ");
+			// sorted, since the order of the move set differs between runs
+			String move = Arrays.stream(reply.substring(("MOVES " + id + " ").length()).split(","))
+					.sorted().findFirst().orElseThrow();
+			assertThat(client.ask("WATCH " + id)).isEqualTo("WATCHING " + id);
+			client.out.print("MOVE " + id + " " + move + "\n");
+			client.out.flush();
+			// the reply and the events of MrX's move and the detectives' answers, in any order,
+			// up to the end of the round or a capture
+			var lines = new ArrayList<String>();
+			boolean over = false;
+			while (!lines.contains("OK " + id)
+					|| !over && lines.size() < 2 + GameServerTest.DETECTIVES.size()) {
+				String line = client.in.readLine();
+				assertThat(line).isNotNull();
+				over |= line.startsWith("EVENT " + id + " GAME_OVER ");
+				lines.add(line);
+			}
+			lines.remove("OK " + id);
+			for (String event : lines) {
+				assertThat(event.startsWith("EVENT " + id + " MOVE_MADE ")
+						|| event.startsWith("EVENT " + id + " GAME_OVER ")).isTrue();
+				// MrX's destinations are hidden from watchers, the detectives' are not
+				assertThat(event.contains("?")).isEqualTo(event.contains(" MRX "));
+			}
+			assertThat(lines.stream().filter(event -> event.contains(" MRX ")).count())
+					.isEqualTo(1);
+		}
+	}
+
+	@Test public void testClosingConnectionAbortsItsGames() throws IOException {
+		try (var server = GameServerTest.server();
+		     var network = start(server)) {
+			HostedGame game;
+			try (var client = new Client(network)) {
+				String id = client.ask("HOST remote ai").substring(5);
+				game = server.game(Long.parseLong(id)).orElseThrow();
+			}
+			assertThatThrownBy(() -> game.completion().get(10, TimeUnit.SECONDS))
+					.isInstanceOf(ExecutionException.class)
+					.hasCauseInstanceOf(IllegalStateException.class);
+			assertThat(server.games()).isEmpty();
+		}
+	}
+
+	@Test public void testBadCommandsAreAnsweredWithErrors() throws IOException {
+		try (var server = GameServerTest.server();
+		     var network = start(server);
+		     var client = new Client(network)) {
+			assertThat(client.ask("JUMP")).startsWith("ERR ");
+			assertThat(client.ask("HOST ai nobody")).startsWith("ERR ");
+			assertThat(client.ask("HOST ai ai seven")).startsWith("ERR ");
+			assertThat(client.ask("MOVES 99")).startsWith("ERR ");
+			String id = client.ask("HOST remote remote").substring(5);
+			assertThat(client.ask("MOVE " + id + " MRX TAXI 1 2")).startsWith("ERR ");
+			try (var other = new Client(network)) {
+				assertThat(other.ask("MOVES " + id)).startsWith("ERR ");
+				assertThat(other.ask("WATCH " + id)).isEqualTo("WATCHING " + id);
+			}
+		}
+	}
+}